@@ -55,6 +55,12 @@ public interface AsyncFSOutput extends Closeable {
    */
   void write(ByteBuffer bb);
 
+  /**
+   * Copy {@code len} bytes of the given {@code bb}, starting at the absolute offset {@code off},
+   * into the buffer. The position and limit of {@code bb} are not changed.
+   */
+  void write(ByteBuffer bb, int off, int len);
+
   /**
    * Return the current size of buffered data.
    */
@@ -52,6 +52,7 @@ import org.apache.hadoop.fs.CreateFlag;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.io.asyncfs.FanOutOneBlockAsyncDFSOutputHelper.CancelOnClose;
 import org.apache.hadoop.hbase.io.asyncfs.monitor.StreamSlowMonitor;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
 import org.apache.hadoop.hbase.util.CancelableProgressable;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.hadoop.hbase.util.FutureUtils;
@@ -398,6 +399,23 @@ public class FanOutOneBlockAsyncDFSOutput implements AsyncFSOutput {
     buf.writeBytes(bb);
   }
 
+  @Override
+  public void write(ByteBuffer bb, int off, int len) {
+    buf.ensureWritable(len);
+    int writerIndex = buf.writerIndex();
+    if (buf.nioBufferCount() == 1) {
+      // copy straight into the memory of our buffer, without creating a view of the source buffer
+      // or of our buffer for every write
+      ByteBuffer dst = buf.internalNioBuffer(writerIndex, len);
+      ByteBufferUtils.copyFromBufferToBuffer(bb, dst, off, dst.position(), len);
+    } else {
+      ByteBuffer src = bb.duplicate();
+      src.limit(off + len).position(off);
+      buf.setBytes(writerIndex, src);
+    }
+    buf.writerIndex(writerIndex + len);
+  }
+
   @Override
   public void write(byte[] b) {
     write(b, 0, b.length);
@@ -72,6 +72,11 @@ public class WrapperAsyncFSOutput implements AsyncFSOutput {
     buffer.write(bb, bb.position(), bb.remaining());
   }
 
+  @Override
+  public void write(ByteBuffer bb, int off, int len) {
+    buffer.write(bb, off, len);
+  }
+
   @Override
   public int buffered() {
     return buffer.size();
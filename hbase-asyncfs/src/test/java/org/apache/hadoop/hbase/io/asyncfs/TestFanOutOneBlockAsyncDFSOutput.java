@@ -30,7 +30,9 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
@@ -281,4 +283,33 @@ public class TestFanOutOneBlockAsyncDFSOutput extends AsyncFSTestBase {
     }
     assertArrayEquals(b, actual);
   }
+
+  @Test
+  public void testWriteByteBufferRange()
+    throws IOException, InterruptedException, ExecutionException {
+    Path f = new Path("/" + name.getMethodName());
+    EventLoop eventLoop = EVENT_LOOP_GROUP.next();
+    FanOutOneBlockAsyncDFSOutput out = FanOutOneBlockAsyncDFSOutputHelper.createOutput(FS, f, true,
+      false, (short) 3, FS.getDefaultBlockSize(), eventLoop, CHANNEL_CLASS, MONITOR, true);
+    byte[] b = new byte[8 * 1024];
+    Bytes.random(b);
+    ByteBuffer heap = ByteBuffer.wrap(b);
+    ByteBuffer direct = ByteBuffer.allocateDirect(b.length);
+    direct.put(b).position(100).limit(200);
+    // write ranges out of both kinds of buffers, the position and limit should not be changed
+    out.write(heap, 10, 1000);
+    out.write(direct, 1010, b.length - 1010);
+    assertEquals(0, heap.position());
+    assertEquals(b.length, heap.limit());
+    assertEquals(100, direct.position());
+    assertEquals(200, direct.limit());
+    assertEquals(b.length - 10, out.flush(false).get().longValue());
+    out.close();
+    byte[] actual = new byte[b.length - 10];
+    try (FSDataInputStream in = FS.open(f)) {
+      in.readFully(actual);
+      assertEquals(-1, in.read());
+    }
+    assertArrayEquals(Arrays.copyOfRange(b, 10, b.length), actual);
+  }
 }
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.hbase.benchmarks.KeyValueGenerator;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link CellComparatorImpl#compare(Cell, Cell)} on neighbouring cells, which is the
+ * comparison pattern of memstore inserts and scanner heaps, for on heap {@link KeyValue}s and on or
+ * off heap {@link ByteBufferKeyValue}s. The SizeCached cell types are the ones the HFile readers
+ * return.
+ */
+@InterfaceAudience.Private
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CellComparatorBenchmark {
+
+  private static final int NUM_CELLS = 1024;
+
+  @Param({ "8", "48" })
+  public int rowPrefixLength;
+
+  @Param({ "KeyValue", "HeapByteBufferKeyValue", "DirectByteBufferKeyValue", "SizeCachedKeyValue",
+    "SizeCachedDirectByteBufferKeyValue" })
+  public String cellType;
+
+  private ExtendedCell[] cells;
+
+  private final CellComparator comparator = CellComparatorImpl.COMPARATOR;
+
+  @Setup
+  public void setUp() {
+    KeyValueGenerator generator = new KeyValueGenerator(rowPrefixLength, 16);
+    List<KeyValue> kvs = generator.generate(NUM_CELLS / 4, 4);
+    cells = new ExtendedCell[kvs.size()];
+    for (int i = 0; i < cells.length; i++) {
+      KeyValue kv = kvs.get(i);
+      switch (cellType) {
+        case "KeyValue":
+          cells[i] = kv;
+          break;
+        case "HeapByteBufferKeyValue":
+          cells[i] = KeyValueGenerator.toByteBufferKeyValue(kv, false);
+          break;
+        case "DirectByteBufferKeyValue":
+          cells[i] = KeyValueGenerator.toByteBufferKeyValue(kv, true);
+          break;
+        case "SizeCachedKeyValue":
+          cells[i] = new SizeCachedKeyValue(kv.getBuffer(), kv.getOffset(), kv.getLength(),
+            kv.getSequenceId(), kv.getKeyLength(), kv.getRowLength());
+          break;
+        case "SizeCachedDirectByteBufferKeyValue":
+          ByteBuffer buf = KeyValueGenerator.toByteBufferKeyValue(kv, true).getBuffer();
+          cells[i] = new SizeCachedByteBufferKeyValue(buf, 0, kv.getLength(), kv.getSequenceId(),
+            kv.getKeyLength(), kv.getRowLength());
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown cell type " + cellType);
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_CELLS - 1)
+  public void compareNeighbours(Blackhole bh) {
+    for (int i = 1; i < cells.length; i++) {
+      bh.consume(comparator.compare(cells[i - 1], cells[i]));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_CELLS - 1)
+  public void compareRows(Blackhole bh) {
+    for (int i = 1; i < cells.length; i++) {
+      bh.consume(comparator.compareRows(cells[i - 1], cells[i]));
+    }
+  }
+}
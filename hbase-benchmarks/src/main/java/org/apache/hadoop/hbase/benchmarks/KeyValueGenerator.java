@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.hadoop.hbase.ByteBufferKeyValue;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Deterministic generator of benchmark data. Everything is derived from the seed so the same
+ * parameters produce byte for byte the same cells on every run and every version, which is what
+ * makes results of different builds comparable.
+ * <p>
+ * Rows are made of a fixed prefix followed by a zero padded row number, so cells sorted by row
+ * number are also sorted by {@link CellComparator}. Qualifiers are {@code q<n>} and values are
+ * random bytes.
+ */
+@InterfaceAudience.Private
+public class KeyValueGenerator {
+
+  public static final long DEFAULT_SEED = 0x48426173654A4D48L;
+
+  public static final byte[] FAMILY = Bytes.toBytes("f");
+
+  private final long seed;
+  private final byte[] rowPrefix;
+  private final int valueLength;
+
+  /**
+   * @param seed            seed of all the random choices
+   * @param rowPrefixLength length of the prefix shared by all rows
+   * @param valueLength     length of the values
+   */
+  public KeyValueGenerator(long seed, int rowPrefixLength, int valueLength) {
+    this.seed = seed;
+    this.valueLength = valueLength;
+    Random random = new Random(seed);
+    this.rowPrefix = new byte[rowPrefixLength];
+    for (int i = 0; i < rowPrefixLength; i++) {
+      // printable, to keep the keys readable when debugging
+      rowPrefix[i] = (byte) ('a' + random.nextInt(26));
+    }
+  }
+
+  public KeyValueGenerator(int rowPrefixLength, int valueLength) {
+    this(DEFAULT_SEED, rowPrefixLength, valueLength);
+  }
+
+  public byte[] row(int rowNum) {
+    return Bytes.add(rowPrefix, Bytes.toBytes(String.format("%010d", rowNum)));
+  }
+
+  public static byte[] qualifier(int qualifierNum) {
+    return Bytes.toBytes(String.format("q%04d", qualifierNum));
+  }
+
+  /**
+   * Returns {@code numRows * numQualifiers} sorted cells, with timestamps and values drawn from the
+   * seeded random source.
+   */
+  public List<KeyValue> generate(int numRows, int numQualifiers) {
+    Random random = new Random(seed);
+    List<KeyValue> kvs = new ArrayList<>(numRows * numQualifiers);
+    for (int r = 0; r < numRows; r++) {
+      byte[] row = row(r);
+      for (int q = 0; q < numQualifiers; q++) {
+        byte[] value = new byte[valueLength];
+        random.nextBytes(value);
+        KeyValue kv = new KeyValue(row, FAMILY, qualifier(q), 1L + random.nextInt(1000000),
+          KeyValue.Type.Put, value);
+        kv.setSequenceId(1L + random.nextInt(1000));
+        kvs.add(kv);
+      }
+    }
+    return kvs;
+  }
+
+  /**
+   * Distributes the given sorted cells over {@code numLists} sorted lists, the way cells of one
+   * store are spread over several store files and memstore segments.
+   */
+  public List<List<ExtendedCell>> split(List<? extends ExtendedCell> sorted, int numLists) {
+    Random random = new Random(seed);
+    List<List<ExtendedCell>> lists = new ArrayList<>(numLists);
+    for (int i = 0; i < numLists; i++) {
+      lists.add(new ArrayList<>(sorted.size() / numLists + 1));
+    }
+    for (ExtendedCell cell : sorted) {
+      lists.get(random.nextInt(numLists)).add(cell);
+    }
+    return lists;
+  }
+
+  /** Returns a random permutation of {@code 0 .. n - 1}, to drive random seeks and lookups. */
+  public int[] permutation(int n) {
+    Random random = new Random(seed);
+    int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    for (int i = n - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int tmp = order[i];
+      order[i] = order[j];
+      order[j] = tmp;
+    }
+    return order;
+  }
+
+  /** Copies the cell into its own, optionally direct, buffer. */
+  public static ByteBufferKeyValue toByteBufferKeyValue(KeyValue kv, boolean direct) {
+    int length = kv.getSerializedSize();
+    ByteBuffer buf = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+    buf.put(kv.getBuffer(), kv.getOffset(), length);
+    return new ByteBufferKeyValue(buf, 0, length, kv.getSequenceId());
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.encoding;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.benchmarks.KeyValueGenerator;
+import org.apache.hadoop.hbase.io.ByteArrayOutputStream;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.nio.SingleByteBuff;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures encoding a data block and scanning and seeking inside it for the data block encodings,
+ * notably {@link FastDiffDeltaEncoder} and the {@link RowIndexSeekerV1} of ROW_INDEX_V1. The block
+ * holds about 64KB of cells, the default block size.
+ */
+@InterfaceAudience.Private
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DataBlockEncodingBenchmark {
+
+  private static final byte[] DUMMY_HEADER = new byte[HConstants.HFILEBLOCK_HEADER_SIZE];
+  private static final int ENCODED_DATA_OFFSET =
+    HConstants.HFILEBLOCK_HEADER_SIZE + DataBlockEncoding.ID_SIZE;
+
+  @Param({ "PREFIX", "DIFF", "FAST_DIFF", "ROW_INDEX_V1", "COLUMNAR" })
+  public DataBlockEncoding encoding;
+
+  @Param({ "false", "true" })
+  public boolean offheap;
+
+  private List<KeyValue> kvs;
+  private KeyValue[] seekKeys;
+  private DataBlockEncoder encoder;
+  private HFileBlockEncodingContext encodingContext;
+  private ByteBuffer encodedBlock;
+  private DataBlockEncoder.EncodedSeeker seeker;
+
+  @Setup
+  public void setUp() throws IOException {
+    Configuration conf = HBaseConfiguration.create();
+    KeyValueGenerator generator = new KeyValueGenerator(24, 64);
+    // ~128 bytes per cell, so that the block is about the default 64KB block size
+    kvs = generator.generate(128, 4);
+    int[] order = generator.permutation(kvs.size());
+    seekKeys = new KeyValue[order.length];
+    for (int i = 0; i < order.length; i++) {
+      seekKeys[i] = kvs.get(order[i]);
+    }
+
+    encoder = encoding.getEncoder();
+    HFileContext meta = new HFileContextBuilder().withHBaseCheckSum(false).withIncludesMvcc(true)
+      .withIncludesTags(false).withCellComparator(CellComparator.getInstance()).build();
+    encodingContext = encoder.newDataBlockEncodingContext(conf, encoding, DUMMY_HEADER, meta);
+    byte[] encoded = encode();
+    encodedBlock =
+      offheap ? ByteBuffer.allocateDirect(encoded.length) : ByteBuffer.allocate(encoded.length);
+    encodedBlock.put(encoded);
+    encodedBlock.rewind();
+    seeker = encoder.createSeeker(encoder.newDataBlockDecodingContext(conf, meta));
+  }
+
+  private byte[] encode() throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    baos.write(DUMMY_HEADER);
+    DataOutputStream dos = new DataOutputStream(baos);
+    encoder.startBlockEncoding(encodingContext, dos);
+    for (KeyValue kv : kvs) {
+      encoder.encode(kv, encodingContext, dos);
+    }
+    encoder.endBlockEncoding(encodingContext, dos, baos.getBuffer());
+    byte[] encoded = new byte[baos.size() - ENCODED_DATA_OFFSET];
+    System.arraycopy(baos.getBuffer(), ENCODED_DATA_OFFSET, encoded, 0, encoded.length);
+    return encoded;
+  }
+
+  @Benchmark
+  public byte[] encodeBlock() throws IOException {
+    return encode();
+  }
+
+  @Benchmark
+  public void scanBlock(Blackhole bh) {
+    seeker.setCurrentBuffer(new SingleByteBuff(encodedBlock.duplicate()));
+    do {
+      bh.consume(seeker.getCell());
+    } while (seeker.next());
+  }
+
+  @Benchmark
+  public void seekInBlock(Blackhole bh) {
+    seeker.setCurrentBuffer(new SingleByteBuff(encodedBlock.duplicate()));
+    for (KeyValue key : seekKeys) {
+      bh.consume(seeker.seekToKeyInBlock(key, false));
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.benchmarks.KeyValueGenerator;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.nio.MultiByteBuff;
+import org.apache.hadoop.hbase.nio.SingleByteBuff;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ChecksumType;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ChecksumUtil} checksum generation on write and validation on read of a 64KB
+ * block, with the block held in a heap, a direct or a multi piece buffer. Validation is measured
+ * both with hadoop's DataChecksum and with the JDK's checksums.
+ */
+@InterfaceAudience.Private
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChecksumBenchmark {
+
+  private static final int DATA_SIZE = 64 * 1024;
+  private static final int PIECE_SIZE = 8 * 1024;
+
+  @Param({ "CRC32", "CRC32C" })
+  public ChecksumType checksumType;
+
+  @Param({ "SingleHeap", "SingleDirect", "Multi" })
+  public String buffType;
+
+  @Param({ "16384" })
+  public int bytesPerChecksum;
+
+  @Param({ "false", "true" })
+  public boolean jdkChecksum;
+
+  private byte[] block;
+  private ByteBuff buf;
+
+  @Setup
+  public void setUp() throws IOException {
+    int sizeWithHeader = HConstants.HFILEBLOCK_HEADER_SIZE + DATA_SIZE;
+    int checksumSize = (int) ChecksumUtil.numBytes(sizeWithHeader, bytesPerChecksum);
+    block = new byte[sizeWithHeader + checksumSize];
+    new Random(KeyValueGenerator.DEFAULT_SEED).nextBytes(block);
+    block[HFileBlock.Header.CHECKSUM_TYPE_INDEX] = checksumType.getCode();
+    Bytes.putInt(block, HFileBlock.Header.BYTES_PER_CHECKSUM_INDEX, bytesPerChecksum);
+    Bytes.putInt(block, HFileBlock.Header.ON_DISK_DATA_SIZE_WITH_HEADER_INDEX, sizeWithHeader);
+    generateChecksums();
+
+    switch (buffType) {
+      case "SingleHeap":
+        buf = new SingleByteBuff(ByteBuffer.wrap(block));
+        break;
+      case "SingleDirect":
+        ByteBuffer direct = ByteBuffer.allocateDirect(block.length);
+        direct.put(block).rewind();
+        buf = new SingleByteBuff(direct);
+        break;
+      case "Multi":
+        int numPieces = (block.length + PIECE_SIZE - 1) / PIECE_SIZE;
+        ByteBuffer[] pieces = new ByteBuffer[numPieces];
+        for (int i = 0; i < numPieces; i++) {
+          int length = Math.min(PIECE_SIZE, block.length - i * PIECE_SIZE);
+          pieces[i] = ByteBuffer.allocateDirect(length);
+          pieces[i].put(block, i * PIECE_SIZE, length).rewind();
+        }
+        buf = new MultiByteBuff(pieces);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown buff type " + buffType);
+    }
+    if (!validateChecksum()) {
+      throw new IllegalStateException("Checksum of the generated block does not validate");
+    }
+  }
+
+  @Benchmark
+  public byte[] generateChecksums() throws IOException {
+    int sizeWithHeader = HConstants.HFILEBLOCK_HEADER_SIZE + DATA_SIZE;
+    ChecksumUtil.generateChecksums(block, 0, sizeWithHeader, block, sizeWithHeader, checksumType,
+      bytesPerChecksum);
+    return block;
+  }
+
+  @Benchmark
+  public boolean validateChecksum() {
+    return ChecksumUtil.validateChecksum(buf, "benchmark", 0, HConstants.HFILEBLOCK_HEADER_SIZE,
+      jdkChecksum);
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.benchmarks.KeyValueGenerator;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.BlockType;
+import org.apache.hadoop.hbase.io.hfile.Cacheable;
+import org.apache.hadoop.hbase.io.hfile.HFileBlock;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.util.ChecksumType;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link BucketCache} lookups of cached blocks and the insert path through the writer
+ * threads, with an off heap IOEngine so that no disk is involved.
+ */
+@InterfaceAudience.Private
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+public class BucketCacheBenchmark {
+
+  private static final String HFILE_NAME = "benchmark-hfile";
+
+  @Param({ "16384", "65536" })
+  public int blockSize;
+
+  @Param({ "4096" })
+  public int numBlocks;
+
+  private BucketCache cache;
+  private BlockCacheKey[] keys;
+  private HFileBlock block;
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+    private final Random random = new Random(KeyValueGenerator.DEFAULT_SEED);
+    private long nextOffset;
+  }
+
+  @Setup
+  public void setUp() throws IOException, InterruptedException {
+    long capacity =
+      2L * numBlocks * (blockSize + HConstants.HFILEBLOCK_HEADER_SIZE) + 64 * 1024 * 1024;
+    cache = new BucketCache("offheap", capacity, blockSize, null,
+      BucketCache.DEFAULT_WRITER_THREADS, BucketCache.DEFAULT_WRITER_QUEUE_ITEMS, null);
+    block = createBlock(blockSize);
+    keys = new BlockCacheKey[numBlocks];
+    for (int i = 0; i < numBlocks; i++) {
+      keys[i] = new BlockCacheKey(HFILE_NAME, (long) i * blockSize);
+      cache.cacheBlockWithWait(keys[i], block, false, true);
+    }
+    while (!cache.ramCache.isEmpty()) {
+      Thread.sleep(10);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    cache.shutdown();
+  }
+
+  private static HFileBlock createBlock(int blockSize) {
+    ByteBuffer buf = ByteBuffer.allocate(blockSize + HConstants.HFILEBLOCK_HEADER_SIZE);
+    new Random(KeyValueGenerator.DEFAULT_SEED).nextBytes(buf.array());
+    HFileContext meta = new HFileContextBuilder().withHBaseCheckSum(false).withBytesPerCheckSum(0)
+      .withChecksumType(ChecksumType.NULL).build();
+    return new HFileBlock(BlockType.DATA, blockSize, blockSize, -1, ByteBuff.wrap(buf),
+      HFileBlock.FILL_HEADER, 0, blockSize + HConstants.HFILEBLOCK_HEADER_SIZE, -1, meta,
+      ByteBuffAllocator.HEAP);
+  }
+
+  @Benchmark
+  public Cacheable getHit(ThreadState state) {
+    Cacheable cached = cache.getBlock(keys[state.random.nextInt(numBlocks)], true, false, true);
+    if (cached != null) {
+      cached.release();
+    }
+    return cached;
+  }
+
+  @Benchmark
+  public BlockCacheKey cacheAndEvict(ThreadState state) {
+    // every thread uses its own offsets, beyond the ones of the pre-cached blocks
+    long offset = (numBlocks + state.nextOffset++ % numBlocks) * (long) blockSize;
+    BlockCacheKey key = new BlockCacheKey(HFILE_NAME + Thread.currentThread().getId(), offset);
+    cache.evictBlock(key);
+    cache.cacheBlockWithWait(key, block, false, true);
+    return key;
+  }
+}
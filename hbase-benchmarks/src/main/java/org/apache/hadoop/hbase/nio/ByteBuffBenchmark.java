@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.nio;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.hbase.benchmarks.KeyValueGenerator;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the {@link ByteBuff} accessors used when reading cells out of blocks, for heap and
+ * direct {@link SingleByteBuff}s and for a {@link MultiByteBuff} made of 4KB pieces as handed out
+ * by the {@link org.apache.hadoop.hbase.io.ByteBuffAllocator} and the bucket cache.
+ */
+@InterfaceAudience.Private
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ByteBuffBenchmark {
+
+  private static final int CAPACITY = 64 * 1024;
+  private static final int PIECE_SIZE = 4 * 1024;
+  private static final int NUM_OFFSETS = 1024;
+
+  @Param({ "SingleHeap", "SingleDirect", "Multi" })
+  public String buffType;
+
+  private ByteBuff buf;
+  private int[] offsets;
+  private final byte[] dst = new byte[128];
+
+  @Setup
+  public void setUp() {
+    byte[] content = new byte[CAPACITY];
+    new Random(KeyValueGenerator.DEFAULT_SEED).nextBytes(content);
+    switch (buffType) {
+      case "SingleHeap":
+        buf = new SingleByteBuff(ByteBuffer.wrap(content));
+        break;
+      case "SingleDirect":
+        ByteBuffer direct = ByteBuffer.allocateDirect(CAPACITY);
+        direct.put(content).rewind();
+        buf = new SingleByteBuff(direct);
+        break;
+      case "Multi":
+        ByteBuffer[] pieces = new ByteBuffer[CAPACITY / PIECE_SIZE];
+        for (int i = 0; i < pieces.length; i++) {
+          pieces[i] = ByteBuffer.allocateDirect(PIECE_SIZE);
+          pieces[i].put(content, i * PIECE_SIZE, PIECE_SIZE).rewind();
+        }
+        buf = new MultiByteBuff(pieces);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown buff type " + buffType);
+    }
+    // random offsets, some of which straddle the piece boundaries of the MultiByteBuff
+    Random random = new Random(KeyValueGenerator.DEFAULT_SEED);
+    offsets = new int[NUM_OFFSETS];
+    for (int i = 0; i < NUM_OFFSETS; i++) {
+      offsets[i] = random.nextInt(CAPACITY - dst.length);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_OFFSETS)
+  public void getIntAbsolute(Blackhole bh) {
+    for (int offset : offsets) {
+      bh.consume(buf.getInt(offset));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_OFFSETS)
+  public void getLongAbsolute(Blackhole bh) {
+    for (int offset : offsets) {
+      bh.consume(buf.getLong(offset));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_OFFSETS)
+  public void getBytesAbsolute(Blackhole bh) {
+    for (int offset : offsets) {
+      buf.get(offset, dst, 0, dst.length);
+      bh.consume(dst);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CAPACITY / 8)
+  public void getLongSequential(Blackhole bh) {
+    buf.rewind();
+    while (buf.remaining() >= 8) {
+      bh.consume(buf.getLong());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CAPACITY / 8)
+  public void getIntAfterPositionSequential(Blackhole bh) {
+    buf.rewind();
+    for (int i = 0; i < CAPACITY / 8; i++) {
+      bh.consume(buf.getIntAfterPosition(i * 4));
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.benchmarks.KeyValueGenerator;
+import org.apache.hadoop.hbase.util.CollectionBackedScanner;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the merge done by {@link KeyValueHeap} over a number of sorted scanners, as for a store
+ * with that many store files and memstore segments. The scanners are in memory so mostly the heap
+ * and the comparator are measured. Cells are dealt to the scanners at random, with a fixed seed.
+ * {@code loserTree} switches the heap from a {@link java.util.PriorityQueue} to a
+ * {@link KeyValueScannerLoserTree}.
+ */
+@InterfaceAudience.Private
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class KeyValueHeapBenchmark {
+
+  @Param({ "2", "8", "32" })
+  public int numScanners;
+
+  @Param({ "10000" })
+  public int numCells;
+
+  @Param({ "false", "true" })
+  public boolean loserTree;
+
+  private List<List<ExtendedCell>> inputs;
+  private List<KeyValue> seekKeys;
+  private KeyValueHeap heap;
+
+  @Setup
+  public void setUp() {
+    KeyValueGenerator generator = new KeyValueGenerator(16, 32);
+    List<KeyValue> kvs = generator.generate(numCells / 4, 4);
+    inputs = generator.split(kvs, numScanners);
+    // reseek only moves forward, so the seek keys are picked in sorted order
+    seekKeys = new ArrayList<>();
+    for (int i = 0; i < kvs.size(); i += Math.max(1, kvs.size() / 100)) {
+      seekKeys.add(kvs.get(i));
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void createHeap() throws IOException {
+    List<KeyValueScanner> scanners = new ArrayList<>(inputs.size());
+    for (List<ExtendedCell> input : inputs) {
+      scanners.add(new CollectionBackedScanner(input, CellComparator.getInstance()));
+    }
+    heap = new KeyValueHeap(scanners, CellComparator.getInstance(), loserTree);
+  }
+
+  @TearDown(Level.Invocation)
+  public void closeHeap() {
+    heap.close();
+  }
+
+  @Benchmark
+  public void mergeAll(Blackhole bh) throws IOException {
+    ExtendedCell cell;
+    while ((cell = heap.next()) != null) {
+      bh.consume(cell);
+    }
+  }
+
+  @Benchmark
+  public void reseek(Blackhole bh) throws IOException {
+    for (KeyValue key : seekKeys) {
+      bh.consume(heap.reseek(key));
+      bh.consume(heap.peek());
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the contention of the writers of one region on its
+ * {@link MultiVersionConcurrencyControl}, every thread running write transactions of the shape of
+ * the region write paths: begin with the WAL append action then complete, or complete and wait for
+ * the read point to catch up.
+ */
+@InterfaceAudience.Private
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MVCCBenchmark {
+
+  private final MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl();
+
+  // stands for the sequence of the WAL ring buffer, taken in the order of the write numbers
+  private final AtomicLong txid = new AtomicLong();
+
+  @Benchmark
+  @Threads(1)
+  public long beginComplete1() {
+    return beginComplete();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public long beginComplete8() {
+    return beginComplete();
+  }
+
+  @Benchmark
+  @Threads(32)
+  public long beginComplete32() {
+    return beginComplete();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public long beginCompleteAndWait8() {
+    return beginCompleteAndWait();
+  }
+
+  @Benchmark
+  @Threads(32)
+  public long beginCompleteAndWait32() {
+    return beginCompleteAndWait();
+  }
+
+  private long beginComplete() {
+    MultiVersionConcurrencyControl.WriteEntry e = mvcc.begin(txid::incrementAndGet);
+    mvcc.complete(e);
+    return e.getWriteNumber();
+  }
+
+  private long beginCompleteAndWait() {
+    MultiVersionConcurrencyControl.WriteEntry e = mvcc.begin(txid::incrementAndGet);
+    mvcc.completeAndWait(e);
+    return e.getWriteNumber();
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.ByteBufferKeyValue;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.benchmarks.KeyValueGenerator;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the memstore indexes: the {@link java.util.concurrent.ConcurrentSkipListMap} behind the
+ * {@link CellSet} of a mutable segment and the {@link CellChunkSkipListMap} which can replace it,
+ * into which cells are inserted in random order, and the {@link CellChunkMap} built when a segment
+ * is flattened. Cells are copied into MSLAB chunks first, as the memstore does.
+ */
+@InterfaceAudience.Private
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MemStoreIndexBenchmark {
+
+  @Param({ "100000" })
+  public int numCells;
+
+  private ChunkCreator chunkCreator;
+  private MemStoreLAB mslab;
+  /** The cells in MSLAB chunks, in random order. */
+  private List<ExtendedCell> shuffled;
+  /** The cells in MSLAB chunks, sorted. */
+  private List<ExtendedCell> sorted;
+  private CellSet<ExtendedCell> skipList;
+  private CellChunkMap<ExtendedCell> cellChunkMap;
+  private CellChunkSkipListMap<ExtendedCell> chunkSkipList;
+  private final List<Chunk> indexChunks = new ArrayList<>();
+  /** Holds the index chunks of the chunk skip lists built by an invocation. */
+  private MemStoreLAB indexMslab;
+
+  @Setup
+  public void setUp() {
+    Configuration conf = HBaseConfiguration.create();
+    chunkCreator = ChunkCreator.initialize(MemStoreLAB.CHUNK_SIZE_DEFAULT, false,
+      2L * 1024 * 1024 * 1024, 0.2f, MemStoreLAB.POOL_INITIAL_SIZE_DEFAULT, null,
+      MemStoreLAB.INDEX_CHUNK_SIZE_PERCENTAGE_DEFAULT);
+    mslab = new MemStoreLABImpl(conf);
+
+    KeyValueGenerator generator = new KeyValueGenerator(16, 64);
+    List<KeyValue> kvs = generator.generate(numCells / 4, 4);
+    sorted = new ArrayList<>(kvs.size());
+    for (KeyValue kv : kvs) {
+      sorted.add(mslab.copyCellInto(kv));
+    }
+    shuffled = new ArrayList<>(sorted.size());
+    for (int i : generator.permutation(sorted.size())) {
+      shuffled.add(sorted.get(i));
+    }
+    skipList = new CellSet<>(CellComparator.getInstance());
+    for (ExtendedCell cell : shuffled) {
+      skipList.add(cell);
+    }
+    cellChunkMap = buildCellChunkMap();
+    chunkSkipList = new CellChunkSkipListMap<>(CellComparator.getInstance(), mslab);
+    for (ExtendedCell cell : shuffled) {
+      chunkSkipList.put(cell, cell);
+    }
+    // the chunks of the map used for lookups must outlive the invocations
+    indexChunks.clear();
+  }
+
+  @TearDown
+  public void tearDown() {
+    mslab.close();
+  }
+
+  @TearDown(Level.Invocation)
+  public void releaseIndexChunks() {
+    if (!indexChunks.isEmpty()) {
+      chunkCreator
+        .putbackChunks(indexChunks.stream().map(Chunk::getId).collect(Collectors.toSet()));
+      indexChunks.clear();
+    }
+    if (indexMslab != null) {
+      indexMslab.close();
+      indexMslab = null;
+    }
+  }
+
+  @Benchmark
+  public CellSet<ExtendedCell> insertSkipList() {
+    CellSet<ExtendedCell> set = new CellSet<>(CellComparator.getInstance());
+    for (ExtendedCell cell : shuffled) {
+      set.add(cell);
+    }
+    return set;
+  }
+
+  @Benchmark
+  public CellChunkSkipListMap<ExtendedCell> insertChunkSkipList() {
+    indexMslab = new MemStoreLABImpl(HBaseConfiguration.create());
+    CellChunkSkipListMap<ExtendedCell> map =
+      new CellChunkSkipListMap<>(CellComparator.getInstance(), indexMslab);
+    for (ExtendedCell cell : shuffled) {
+      map.put(cell, cell);
+    }
+    return map;
+  }
+
+  @Benchmark
+  public CellChunkMap<ExtendedCell> flattenToCellChunkMap() {
+    return buildCellChunkMap();
+  }
+
+  @Benchmark
+  public void getSkipList(Blackhole bh) {
+    for (ExtendedCell cell : shuffled) {
+      bh.consume(skipList.get(cell));
+    }
+  }
+
+  @Benchmark
+  public void getChunkSkipList(Blackhole bh) {
+    for (ExtendedCell cell : shuffled) {
+      bh.consume(chunkSkipList.get(cell));
+    }
+  }
+
+  @Benchmark
+  public void getCellChunkMap(Blackhole bh) {
+    for (ExtendedCell cell : shuffled) {
+      bh.consume(cellChunkMap.get(cell));
+    }
+  }
+
+  /**
+   * Writes one cell representation (chunk id, offset, length, sequence id) per cell into index
+   * chunks, the way {@link CellChunkImmutableSegment} does when flattening.
+   */
+  private CellChunkMap<ExtendedCell> buildCellChunkMap() {
+    int entriesPerChunk = (chunkCreator.getChunkSize() - ChunkCreator.SIZEOF_CHUNK_HEADER)
+      / ClassSize.CELL_CHUNK_MAP_ENTRY;
+    Chunk[] chunks = new Chunk[(sorted.size() + entriesPerChunk - 1) / entriesPerChunk];
+    int chunkIndex = -1;
+    ByteBuffer idxBuffer = null;
+    int idxOffset = 0;
+    for (int i = 0; i < sorted.size(); i++) {
+      if (i % entriesPerChunk == 0) {
+        chunks[++chunkIndex] = chunkCreator.getChunk();
+        indexChunks.add(chunks[chunkIndex]);
+        idxBuffer = chunks[chunkIndex].getData();
+        idxOffset = ChunkCreator.SIZEOF_CHUNK_HEADER;
+      }
+      ByteBufferKeyValue cell = (ByteBufferKeyValue) sorted.get(i);
+      idxOffset = ByteBufferUtils.putInt(idxBuffer, idxOffset, cell.getChunkId());
+      idxOffset = ByteBufferUtils.putInt(idxBuffer, idxOffset, cell.getOffset());
+      idxOffset = ByteBufferUtils.putInt(idxBuffer, idxOffset, cell.getSerializedSize());
+      idxOffset = ByteBufferUtils.putLong(idxBuffer, idxOffset, cell.getSequenceId());
+    }
+    return new CellChunkMap<>(CellComparator.getInstance(), chunks, 0, sorted.size(), false);
+  }
+}
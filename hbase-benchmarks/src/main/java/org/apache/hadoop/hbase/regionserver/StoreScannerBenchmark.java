@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeepDeletedCells;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.benchmarks.KeyValueGenerator;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.CollectionBackedScanner;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures a full {@link StoreScanner#next(List)} loop over in memory scanners, covering the query
+ * matcher, the column trackers and the {@link KeyValueHeap} underneath, either returning every
+ * column (wildcard) or a single explicit column out of the row.
+ */
+@InterfaceAudience.Private
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StoreScannerBenchmark {
+
+  @Param({ "1", "8" })
+  public int numScanners;
+
+  @Param({ "20" })
+  public int numQualifiers;
+
+  @Param({ "false", "true" })
+  public boolean explicitColumn;
+
+  @Param({ "2000" })
+  public int numRows;
+
+  private List<List<ExtendedCell>> inputs;
+  private ScanInfo scanInfo;
+  private NavigableSet<byte[]> columns;
+  private StoreScanner scanner;
+
+  @Setup
+  public void setUp() {
+    KeyValueGenerator generator = new KeyValueGenerator(16, 32);
+    List<KeyValue> kvs = generator.generate(numRows, numQualifiers);
+    inputs = generator.split(kvs, numScanners);
+    Configuration conf = HBaseConfiguration.create();
+    scanInfo = new ScanInfo(conf, KeyValueGenerator.FAMILY, 0, Integer.MAX_VALUE, Long.MAX_VALUE,
+      KeepDeletedCells.FALSE, HConstants.DEFAULT_BLOCKSIZE, 0, CellComparator.getInstance(), false);
+    if (explicitColumn) {
+      columns = new TreeSet<>(Bytes.BYTES_COMPARATOR);
+      columns.add(KeyValueGenerator.qualifier(numQualifiers / 2));
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void createScanner() throws IOException {
+    List<KeyValueScanner> scanners = new ArrayList<>(inputs.size());
+    for (List<ExtendedCell> input : inputs) {
+      scanners.add(new CollectionBackedScanner(input, CellComparator.getInstance()));
+    }
+    Scan scan = new Scan();
+    if (columns != null) {
+      scan.addColumn(KeyValueGenerator.FAMILY, columns.first());
+    }
+    scanner = new StoreScanner(scan, scanInfo, columns, scanners);
+  }
+
+  @Benchmark
+  public void scanAll(Blackhole bh) throws IOException {
+    List<ExtendedCell> results = new ArrayList<>();
+    try {
+      boolean more;
+      do {
+        more = scanner.next(results);
+        bh.consume(results);
+        results.clear();
+      } while (more);
+    } finally {
+      scanner.close();
+    }
+  }
+}
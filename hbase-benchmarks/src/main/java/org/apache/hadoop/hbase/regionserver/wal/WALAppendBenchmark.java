@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.wal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.benchmarks.KeyValueGenerator;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.CommonFSUtils;
+import org.apache.hadoop.hbase.wal.AsyncFSWALProvider;
+import org.apache.hadoop.hbase.wal.WAL;
+import org.apache.hadoop.hbase.wal.WALEdit;
+import org.apache.hadoop.hbase.wal.WALEditInternalHelper;
+import org.apache.hadoop.hbase.wal.WALKeyImpl;
+import org.apache.hadoop.hbase.wal.WALProvider.AsyncWriter;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.hbase.thirdparty.io.netty.channel.EventLoopGroup;
+import org.apache.hbase.thirdparty.io.netty.channel.nio.NioEventLoopGroup;
+import org.apache.hbase.thirdparty.io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * Measures appending entries to the {@link AsyncProtobufLogWriter}, with the cells on heap or in
+ * direct buffers like the ones of off-heap MSLAB chunks. Run with {@code -prof gc} to see the
+ * allocation per append. The WAL is written to the local file system, and synced every
+ * {@link #SYNC_INTERVAL} appends so the output buffer does not grow without bound.
+ */
+@InterfaceAudience.Private
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WALAppendBenchmark {
+
+  private static final int SYNC_INTERVAL = 1000;
+
+  private static final int NUM_ENTRIES = 1024;
+
+  @Param({ "100", "4096", "65536" })
+  public int valueSize;
+
+  @Param({ "4" })
+  public int cellsPerEntry;
+
+  @Param({ "false", "true" })
+  public boolean offheap;
+
+  private File dir;
+  private EventLoopGroup eventLoopGroup;
+  private AsyncWriter writer;
+  private WAL.Entry[] entries;
+  private int index;
+
+  @Setup
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("WALAppendBenchmark").toFile();
+    Configuration conf = HBaseConfiguration.create();
+    // the local file system does not support hflush
+    conf.setBoolean(CommonFSUtils.UNSAFE_STREAM_CAPABILITY_ENFORCE, false);
+    FileSystem fs = FileSystem.getLocal(conf);
+    eventLoopGroup = new NioEventLoopGroup(1);
+    writer = AsyncFSWALProvider.createAsyncWriter(conf, fs, new Path(dir.getAbsolutePath(), "wal"),
+      true, eventLoopGroup, NioSocketChannel.class);
+
+    KeyValueGenerator generator = new KeyValueGenerator(16, valueSize);
+    List<KeyValue> kvs = generator.generate(NUM_ENTRIES, cellsPerEntry);
+    byte[] encodedRegionName = Bytes.toBytes("0123456789abcdef0123456789abcdef");
+    TableName tableName = TableName.valueOf("benchmark");
+    entries = new WAL.Entry[NUM_ENTRIES];
+    for (int i = 0; i < NUM_ENTRIES; i++) {
+      WALEdit edit = new WALEdit();
+      for (int j = 0; j < cellsPerEntry; j++) {
+        KeyValue kv = kvs.get(i * cellsPerEntry + j);
+        WALEditInternalHelper.addExtendedCell(edit,
+          offheap ? KeyValueGenerator.toByteBufferKeyValue(kv, true) : kv);
+      }
+      entries[i] = new WAL.Entry(new WALKeyImpl(encodedRegionName, tableName, i,
+        System.currentTimeMillis(), HConstants.DEFAULT_CLUSTER_ID), edit);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    writer.close();
+    eventLoopGroup.shutdownGracefully().get();
+    FileUtils.deleteDirectory(dir);
+  }
+
+  @Benchmark
+  public long append() {
+    writer.append(entries[index % NUM_ENTRIES]);
+    if (++index % SYNC_INTERVAL == 0) {
+      return writer.sync(false).join();
+    }
+    return writer.getLength();
+  }
+}
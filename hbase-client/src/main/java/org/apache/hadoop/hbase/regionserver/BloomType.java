@@ -36,5 +36,10 @@ public enum BloomType {
   /**
    * Bloom enabled with Table row prefix as Key, specify the length of the prefix
    */
-  ROWPREFIX_FIXED_LENGTH
+  ROWPREFIX_FIXED_LENGTH,
+  /**
+   * Bloom enabled with Table row as Key, like {@link #ROW}, with all the probes of a key within a
+   * single 64 byte block of the filter so that a check touches a single cache line
+   */
+  ROW_BLOCKED
 }
@@ -109,6 +109,15 @@ public class CellComparatorImpl implements CellComparator {
     // Compare Rows. Cache row length.
     int leftRowLength = left.getRowLength();
     int rightRowLength = right.getRowLength();
+    if (leftRowLength == rightRowLength) {
+      int leftFamilyLength = left.getFamilyLength(left.getFamilyLengthPosition(leftRowLength));
+      if (
+        leftFamilyLength != 0 && leftFamilyLength
+            == right.getFamilyLength(right.getFamilyLengthPosition(rightRowLength))
+      ) {
+        return compareKeyValuesAsOneRun(left, right, leftRowLength, leftFamilyLength);
+      }
+    }
     diff = Bytes.compareTo(left.getRowArray(), left.getRowOffset(), leftRowLength,
       right.getRowArray(), right.getRowOffset(), rightRowLength);
     if (diff != 0) {
@@ -192,6 +201,15 @@ public class CellComparatorImpl implements CellComparator {
     // Compare Rows. Cache row length.
     int leftRowLength = left.getRowLength();
     int rightRowLength = right.getRowLength();
+    if (leftRowLength == rightRowLength) {
+      int leftFamilyLength = left.getFamilyLength(left.getFamilyLengthPosition(leftRowLength));
+      if (
+        leftFamilyLength != 0 && leftFamilyLength
+            == right.getFamilyLength(right.getFamilyLengthPosition(rightRowLength))
+      ) {
+        return compareBBKVAsOneRun(left, right, leftRowLength, leftFamilyLength);
+      }
+    }
     diff = ByteBufferUtils.compareTo(left.getRowByteBuffer(), left.getRowPosition(), leftRowLength,
       right.getRowByteBuffer(), right.getRowPosition(), rightRowLength);
     if (diff != 0) {
@@ -274,6 +292,15 @@ public class CellComparatorImpl implements CellComparator {
     // Compare Rows. Cache row length.
     int leftRowLength = left.getRowLength();
     int rightRowLength = right.getRowLength();
+    if (leftRowLength == rightRowLength) {
+      int leftFamilyLength = left.getFamilyLength(left.getFamilyLengthPosition(leftRowLength));
+      if (
+        leftFamilyLength != 0 && leftFamilyLength
+            == right.getFamilyLength(right.getFamilyLengthPosition(rightRowLength))
+      ) {
+        return compareKVVsBBKVAsOneRun(left, right, leftRowLength, leftFamilyLength);
+      }
+    }
     diff = ByteBufferUtils.compareTo(left.getRowArray(), left.getRowOffset(), leftRowLength,
       right.getRowByteBuffer(), right.getRowPosition(), rightRowLength);
     if (diff != 0) {
@@ -351,6 +378,81 @@ public class CellComparatorImpl implements CellComparator {
     return (0xff & rightType) - (0xff & leftType);
   }
 
+  /**
+   * Compares two keys whose rows and families are of the same length. The row, the family length
+   * byte, the family and the qualifier are laid out back to back in the key, so with equal row and
+   * family lengths the lexicographic order of that single run is the order of the rows, then the
+   * families, then the qualifiers. Comparing it in one call lets the byte comparer go a word at a
+   * time across the field boundaries instead of restarting on every short field. The family must
+   * not be empty, which rules out the "minimum" fake keys that sort after the rest of their row.
+   * Sub classes that only compare family lengths assume the families are equal anyway, so including
+   * the family bytes does not change their order.
+   */
+  private static int compareKeyValuesAsOneRun(final KeyValue left, final KeyValue right,
+    int rowLength, int familyLength) {
+    int leftKeyLength = left.getKeyLength();
+    int rightKeyLength = right.getKeyLength();
+    int columnStart = rowLength + Bytes.SIZEOF_BYTE + familyLength;
+    int diff = Bytes.compareTo(left.getRowArray(), left.getRowOffset(),
+      columnStart + left.getQualifierLength(leftKeyLength, rowLength, familyLength),
+      right.getRowArray(), right.getRowOffset(),
+      columnStart + right.getQualifierLength(rightKeyLength, rowLength, familyLength));
+    if (diff != 0) {
+      return diff;
+    }
+    diff = Long.compare(right.getTimestamp(rightKeyLength), left.getTimestamp(leftKeyLength));
+    if (diff != 0) {
+      return diff;
+    }
+    return (0xff & right.getTypeByte(rightKeyLength)) - (0xff & left.getTypeByte(leftKeyLength));
+  }
+
+  /**
+   * {@link ByteBufferKeyValue} version of
+   * {@link #compareKeyValuesAsOneRun(KeyValue, KeyValue, int, int)}.
+   */
+  private static int compareBBKVAsOneRun(final ByteBufferKeyValue left,
+    final ByteBufferKeyValue right, int rowLength, int familyLength) {
+    int leftKeyLength = left.getKeyLength();
+    int rightKeyLength = right.getKeyLength();
+    int columnStart = rowLength + Bytes.SIZEOF_BYTE + familyLength;
+    int diff = ByteBufferUtils.compareTo(left.getRowByteBuffer(), left.getRowPosition(),
+      columnStart + left.getQualifierLength(leftKeyLength, rowLength, familyLength),
+      right.getRowByteBuffer(), right.getRowPosition(),
+      columnStart + right.getQualifierLength(rightKeyLength, rowLength, familyLength));
+    if (diff != 0) {
+      return diff;
+    }
+    diff = Long.compare(right.getTimestamp(rightKeyLength), left.getTimestamp(leftKeyLength));
+    if (diff != 0) {
+      return diff;
+    }
+    return (0xff & right.getTypeByte(rightKeyLength)) - (0xff & left.getTypeByte(leftKeyLength));
+  }
+
+  /**
+   * {@link KeyValue} vs {@link ByteBufferKeyValue} version of
+   * {@link #compareKeyValuesAsOneRun(KeyValue, KeyValue, int, int)}.
+   */
+  private static int compareKVVsBBKVAsOneRun(final KeyValue left, final ByteBufferKeyValue right,
+    int rowLength, int familyLength) {
+    int leftKeyLength = left.getKeyLength();
+    int rightKeyLength = right.getKeyLength();
+    int columnStart = rowLength + Bytes.SIZEOF_BYTE + familyLength;
+    int diff = ByteBufferUtils.compareTo(left.getRowArray(), left.getRowOffset(),
+      columnStart + left.getQualifierLength(leftKeyLength, rowLength, familyLength),
+      right.getRowByteBuffer(), right.getRowPosition(),
+      columnStart + right.getQualifierLength(rightKeyLength, rowLength, familyLength));
+    if (diff != 0) {
+      return diff;
+    }
+    diff = Long.compare(right.getTimestamp(rightKeyLength), left.getTimestamp(leftKeyLength));
+    if (diff != 0) {
+      return diff;
+    }
+    return (0xff & right.getTypeByte(rightKeyLength)) - (0xff & left.getTypeByte(leftKeyLength));
+  }
+
   /**
    * Compares the family and qualifier part of the cell
    * @return 0 if both cells are equal, 1 if left cell is bigger than right, -1 otherwise
@@ -32,9 +32,11 @@ import org.apache.yetus.audience.InterfaceAudience;
 public class SizeCachedKeyValue extends KeyValue {
   // Overhead in this class alone. Parent's overhead will be considered in usage places by calls to
   // super. methods
-  private static final int FIXED_OVERHEAD = Bytes.SIZEOF_SHORT + Bytes.SIZEOF_INT;
+  private static final int FIXED_OVERHEAD =
+    Bytes.SIZEOF_SHORT + Bytes.SIZEOF_BYTE + Bytes.SIZEOF_INT;
 
   private short rowLen;
+  private byte famLen;
   private int keyLen;
 
   public SizeCachedKeyValue(byte[] bytes, int offset, int length, long seqId, int keyLen) {
@@ -42,6 +44,7 @@ public class SizeCachedKeyValue extends KeyValue {
     // We will read all these cached values at least once. Initialize now itself so that we can
     // avoid uninitialized checks with every time call
     this.rowLen = super.getRowLength();
+    this.famLen = super.getFamilyLength(super.getFamilyLengthPosition(this.rowLen));
     this.keyLen = keyLen;
     setSequenceId(seqId);
   }
@@ -52,6 +55,7 @@ public class SizeCachedKeyValue extends KeyValue {
     // We will read all these cached values at least once. Initialize now itself so that we can
     // avoid uninitialized checks with every time call
     this.rowLen = rowLen;
+    this.famLen = super.getFamilyLength(super.getFamilyLengthPosition(rowLen));
     this.keyLen = keyLen;
     setSequenceId(seqId);
   }
@@ -61,6 +65,16 @@ public class SizeCachedKeyValue extends KeyValue {
     return rowLen;
   }
 
+  @Override
+  public byte getFamilyLength() {
+    return famLen;
+  }
+
+  @Override
+  public byte getFamilyLength(int famLenPos) {
+    return famLen;
+  }
+
   @Override
   public int getKeyLength() {
     return this.keyLen;
@@ -28,8 +28,10 @@ import org.apache.yetus.audience.InterfaceAudience;
 @InterfaceAudience.Private
 public class SizeCachedNoTagsByteBufferKeyValue extends NoTagsByteBufferKeyValue {
 
-  public static final int FIXED_OVERHEAD = Bytes.SIZEOF_SHORT + Bytes.SIZEOF_INT;
+  public static final int FIXED_OVERHEAD =
+    Bytes.SIZEOF_SHORT + Bytes.SIZEOF_BYTE + Bytes.SIZEOF_INT;
   private short rowLen;
+  private byte famLen;
   private int keyLen;
 
   public SizeCachedNoTagsByteBufferKeyValue(ByteBuffer buf, int offset, int length, long seqId,
@@ -38,6 +40,7 @@ public class SizeCachedNoTagsByteBufferKeyValue extends NoTagsByteBufferKeyValue
     // We will read all these cached values at least once. Initialize now itself so that we can
     // avoid uninitialized checks with every time call
     this.rowLen = super.getRowLength();
+    this.famLen = super.getFamilyLength(super.getFamilyLengthPosition(this.rowLen));
     this.keyLen = keyLen;
     setSequenceId(seqId);
   }
@@ -48,6 +51,7 @@ public class SizeCachedNoTagsByteBufferKeyValue extends NoTagsByteBufferKeyValue
     // We will read all these cached values at least once. Initialize now itself so that we can
     // avoid uninitialized checks with every time call
     this.rowLen = rowLen;
+    this.famLen = super.getFamilyLength(super.getFamilyLengthPosition(rowLen));
     this.keyLen = keyLen;
     setSequenceId(seqId);
   }
@@ -57,6 +61,16 @@ public class SizeCachedNoTagsByteBufferKeyValue extends NoTagsByteBufferKeyValue
     return rowLen;
   }
 
+  @Override
+  public byte getFamilyLength() {
+    return famLen;
+  }
+
+  @Override
+  byte getFamilyLength(int famLenPos) {
+    return famLen;
+  }
+
   @Override
   public int getKeyLength() {
     return this.keyLen;
@@ -417,6 +417,14 @@ public final class Compression {
      */
     public abstract CompressionCodec reload(Configuration conf);
 
+    /**
+     * Returns the name of the codec class this algorithm resolved to, or null if it has no codec.
+     */
+    public String getCodecClassName() {
+      CompressionCodec codec = getCodec(conf);
+      return codec != null ? codec.getClass().getName() : null;
+    }
+
     public InputStream createDecompressionStream(InputStream downStream, Decompressor decompressor,
       int downStreamBufferSize) throws IOException {
       CompressionCodec codec = getCodec(conf);
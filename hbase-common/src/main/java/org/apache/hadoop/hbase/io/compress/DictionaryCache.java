@@ -74,10 +74,10 @@ public final class DictionaryCache {
               @Override
               public byte[] load(String s) throws Exception {
                 byte[] bytes;
-                if (path.startsWith(RESOURCE_SCHEME)) {
-                  bytes = loadFromResource(conf, path, maxSize);
+                if (s.startsWith(RESOURCE_SCHEME)) {
+                  bytes = loadFromResource(conf, s, maxSize);
                 } else {
-                  bytes = loadFromHadoopFs(conf, path, maxSize);
+                  bytes = loadFromHadoopFs(conf, s, maxSize);
                 }
                 LOG.info("Loaded dictionary from {} (size {})", s, bytes.length);
                 return bytes;
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.encoding;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.ByteArrayOutputStream;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.nio.SingleByteBuff;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Store the cells of a block column group by column group (PAX), so a scan of a few columns of wide
+ * rows can skip the other cells of the block without reading their values. Format: integer: number
+ * of cells, integer: number of rows, integer: number of distinct columns, 13 integers: start offset
+ * of each section below relative to the end of the header, integer: total size of the sections,
+ * then the sections:
+ * <ol>
+ * <li>row first cells: integer per row, the index of the row's first cell, and the cell count</li>
+ * <li>row offsets: integer per row, the offset of the row in the rows section, and its size</li>
+ * <li>rows: the distinct rows</li>
+ * <li>column offsets: integer per column, the offset of the column in the columns section, and its
+ * size</li>
+ * <li>columns: per distinct column, byte: family length, family, qualifier</li>
+ * <li>cell columns: integer per cell, the index of the cell's column</li>
+ * <li>timestamps: long per cell</li>
+ * <li>types: byte per cell</li>
+ * <li>sequence ids: long per cell, only if the file includes mvcc</li>
+ * <li>value offsets: integer per cell, the offset of the value in the values section, and its
+ * size</li>
+ * <li>values</li>
+ * <li>tag offsets: integer per cell and the size of the tags section, only if the file includes
+ * tags</li>
+ * <li>tags: uncompressed, like {@link RowIndexCodecV1} does</li>
+ * </ol>
+ */
+@InterfaceAudience.Private
+public class ColumnarCodec extends AbstractDataBlockEncoder {
+
+  static final int ROW_FIRST_CELLS = 0;
+  static final int ROW_OFFSETS = 1;
+  static final int ROWS = 2;
+  static final int COLUMN_OFFSETS = 3;
+  static final int COLUMNS = 4;
+  static final int CELL_COLUMNS = 5;
+  static final int TIMESTAMPS = 6;
+  static final int TYPES = 7;
+  static final int SEQ_IDS = 8;
+  static final int VALUE_OFFSETS = 9;
+  static final int VALUES = 10;
+  static final int TAG_OFFSETS = 11;
+  static final int TAGS = 12;
+  static final int NUM_SECTIONS = 13;
+  /** The three counts, the section offsets and the total size of the sections. */
+  static final int HEADER_SIZE = (3 + NUM_SECTIONS + 1) * Bytes.SIZEOF_INT;
+
+  private static class ColumnarEncodingState extends EncodingState {
+    ColumnarEncoder encoder = null;
+  }
+
+  @Override
+  public void startBlockEncoding(HFileBlockEncodingContext blkEncodingCtx, DataOutputStream out)
+    throws IOException {
+    if (blkEncodingCtx.getClass() != HFileBlockDefaultEncodingContext.class) {
+      throw new IOException(this.getClass().getName() + " only accepts "
+        + HFileBlockDefaultEncodingContext.class.getName() + " as the " + "encoding context.");
+    }
+
+    HFileBlockDefaultEncodingContext encodingCtx =
+      (HFileBlockDefaultEncodingContext) blkEncodingCtx;
+    encodingCtx.prepareEncoding(out);
+
+    ColumnarEncodingState state = new ColumnarEncodingState();
+    state.encoder = new ColumnarEncoder(out, encodingCtx);
+    blkEncodingCtx.setEncodingState(state);
+  }
+
+  @Override
+  public void encode(ExtendedCell cell, HFileBlockEncodingContext encodingCtx, DataOutputStream out)
+    throws IOException {
+    ColumnarEncodingState state = (ColumnarEncodingState) encodingCtx.getEncodingState();
+    state.encoder.write(cell);
+  }
+
+  @Override
+  public void endBlockEncoding(HFileBlockEncodingContext encodingCtx, DataOutputStream out,
+    byte[] uncompressedBytesWithHeader) throws IOException {
+    ColumnarEncodingState state = (ColumnarEncodingState) encodingCtx.getEncodingState();
+    state.encoder.flush();
+    postEncoding(encodingCtx);
+  }
+
+  @Override
+  public ByteBuffer decodeKeyValues(DataInputStream source, HFileBlockDecodingContext decodingCtx)
+    throws IOException {
+    ByteBuffer sourceAsBuffer = ByteBufferUtils.drainInputStreamToBuffer(source);// waste
+    ColumnarSeeker seeker = new ColumnarSeeker(decodingCtx);
+    seeker.setCurrentBuffer(new SingleByteBuff(sourceAsBuffer));
+    boolean includesMvcc = decodingCtx.getHFileContext().isIncludesMvcc();
+    boolean includesTags = decodingCtx.getHFileContext().isIncludesTags();
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(baos)) {
+      do {
+        ExtendedCell cell = seeker.getCell();
+        cell.write(out, false);
+        if (includesTags) {
+          int tagsLength = cell.getTagsLength();
+          out.writeShort(tagsLength);
+          if (tagsLength > 0) {
+            PrivateCellUtil.writeTags(out, cell, tagsLength);
+          }
+        }
+        if (includesMvcc) {
+          WritableUtils.writeVLong(out, cell.getSequenceId());
+        }
+      } while (seeker.next());
+      out.flush();
+    }
+    return ByteBuffer.wrap(baos.getBuffer(), 0, baos.size());
+  }
+
+  @Override
+  public ExtendedCell getFirstKeyCellInBlock(ByteBuff block) {
+    return ColumnarSeeker.getFirstKey(block);
+  }
+
+  @Override
+  public EncodedSeeker createSeeker(HFileBlockDecodingContext decodingCtx) {
+    return new ColumnarSeeker(decodingCtx);
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.encoding;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.ByteArrayOutputStream;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Buffers the cells of a block column group by column group and writes them out in the layout
+ * described in {@link ColumnarCodec} when the block is finished. All the cell bytes are copied on
+ * {@link #write(ExtendedCell)}, so the encoder never holds a reference to a cell.
+ */
+@InterfaceAudience.Private
+public class ColumnarEncoder {
+
+  private final DataOutputStream out;
+  private final HFileBlockDefaultEncodingContext context;
+  private final CellComparator comparator;
+  private final boolean includesMvcc;
+  private final boolean includesTags;
+
+  private final ByteArrayOutputStream rowFirstCells = new ByteArrayOutputStream(64 * 4);
+  private final ByteArrayOutputStream rowOffsets = new ByteArrayOutputStream(64 * 4);
+  private final ByteArrayOutputStream rows = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream columnOffsets = new ByteArrayOutputStream(64 * 4);
+  private final ByteArrayOutputStream columns = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream cellColumns = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream timestamps = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream types = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream seqIds = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream valueOffsets = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream values = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream tagOffsets = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream tags = new ByteArrayOutputStream();
+
+  /** Dictionary of the distinct (family, qualifier) pairs of the block. */
+  private final Map<ByteBuffer, Integer> columnIds = new HashMap<>();
+  private byte[] columnScratch = new byte[64];
+
+  private int cellCount = 0;
+  private int rowCount = 0;
+  private int lastRowOffset = -1;
+  private int lastRowLength = 0;
+
+  public ColumnarEncoder(DataOutputStream out, HFileBlockDefaultEncodingContext encodingCtx) {
+    this.out = out;
+    this.context = encodingCtx;
+    this.comparator = encodingCtx.getHFileContext().getCellComparator();
+    this.includesMvcc = encodingCtx.getHFileContext().isIncludesMvcc();
+    this.includesTags = encodingCtx.getHFileContext().isIncludesTags();
+    valueOffsets.writeInt(0);
+    if (includesTags) {
+      tagOffsets.writeInt(0);
+    }
+  }
+
+  public void write(ExtendedCell cell) throws IOException {
+    if (cell == null) {
+      throw new IOException("Key cannot be null or empty");
+    }
+    int encodedSize = 0;
+    if (!isSameRow(cell)) {
+      rowFirstCells.writeInt(cellCount);
+      rowOffsets.writeInt(rows.size());
+      lastRowOffset = rows.size();
+      lastRowLength = cell.getRowLength();
+      PrivateCellUtil.writeRow(rows, cell, cell.getRowLength());
+      rowCount++;
+      encodedSize += 2 * Bytes.SIZEOF_INT + lastRowLength;
+    }
+    int columnsBefore = columns.size();
+    cellColumns.writeInt(columnId(cell));
+    encodedSize += columns.size() - columnsBefore + Bytes.SIZEOF_INT;
+
+    writeLong(timestamps, cell.getTimestamp());
+    types.write(cell.getTypeByte());
+    encodedSize += Bytes.SIZEOF_LONG + Bytes.SIZEOF_BYTE;
+    if (includesMvcc) {
+      writeLong(seqIds, cell.getSequenceId());
+      encodedSize += Bytes.SIZEOF_LONG;
+    }
+    int valueLength = cell.getValueLength();
+    PrivateCellUtil.writeValue(values, cell, valueLength);
+    valueOffsets.writeInt(values.size());
+    encodedSize += Bytes.SIZEOF_INT + valueLength;
+
+    // The unencoded size is what NoneEncoder would have written for this cell.
+    int unencodedSize = cell.getSerializedSize(false);
+    if (includesTags) {
+      int tagsLength = cell.getTagsLength();
+      if (tagsLength > 0) {
+        PrivateCellUtil.writeTags(tags, cell, tagsLength);
+      }
+      tagOffsets.writeInt(tags.size());
+      encodedSize += Bytes.SIZEOF_INT + tagsLength;
+      unencodedSize += KeyValue.TAGS_LENGTH_SIZE + tagsLength;
+    }
+    if (includesMvcc) {
+      unencodedSize += WritableUtils.getVIntSize(cell.getSequenceId());
+    }
+    cellCount++;
+    context.getEncodingState().postCellEncode(unencodedSize, encodedSize);
+  }
+
+  private boolean isSameRow(ExtendedCell cell) throws IOException {
+    if (lastRowOffset < 0) {
+      return false;
+    }
+    int keyComp = comparator.compareRows(cell, rows.getBuffer(), lastRowOffset, lastRowLength);
+    if (keyComp < 0) {
+      throw new IOException("Added a key not lexically larger than previous. Current cell = " + cell
+        + ", last row = " + Bytes.toStringBinary(rows.getBuffer(), lastRowOffset, lastRowLength));
+    }
+    return keyComp == 0;
+  }
+
+  /**
+   * Returns the dictionary id of the cell's column, adding the column to the block's column group
+   * the first time it is seen.
+   */
+  private int columnId(ExtendedCell cell) {
+    byte familyLength = cell.getFamilyLength();
+    int length = Bytes.SIZEOF_BYTE + familyLength + cell.getQualifierLength();
+    if (columnScratch.length < length) {
+      columnScratch = new byte[Math.max(length, 2 * columnScratch.length)];
+    }
+    columnScratch[0] = familyLength;
+    int pos = CellUtil.copyFamilyTo(cell, columnScratch, Bytes.SIZEOF_BYTE);
+    CellUtil.copyQualifierTo(cell, columnScratch, pos);
+    Integer id = columnIds.get(ByteBuffer.wrap(columnScratch, 0, length));
+    if (id == null) {
+      id = columnIds.size();
+      columnIds.put(ByteBuffer.wrap(Arrays.copyOf(columnScratch, length)), id);
+      columnOffsets.writeInt(columns.size());
+      columns.write(columnScratch, 0, length);
+    }
+    return id;
+  }
+
+  private static void writeLong(ByteArrayOutputStream baos, long value) {
+    baos.writeInt((int) (value >>> Integer.SIZE));
+    baos.writeInt((int) value);
+  }
+
+  public void flush() throws IOException {
+    rowFirstCells.writeInt(cellCount);
+    rowOffsets.writeInt(rows.size());
+    columnOffsets.writeInt(columns.size());
+
+    ByteArrayOutputStream[] sections = { rowFirstCells, rowOffsets, rows, columnOffsets, columns,
+      cellColumns, timestamps, types, seqIds, valueOffsets, values, tagOffsets, tags };
+    out.writeInt(cellCount);
+    out.writeInt(rowCount);
+    out.writeInt(columnIds.size());
+    int offset = 0;
+    for (ByteArrayOutputStream section : sections) {
+      out.writeInt(offset);
+      offset += section.size();
+    }
+    out.writeInt(offset);
+    for (ByteArrayOutputStream section : sections) {
+      out.write(section.getBuffer(), 0, section.size());
+    }
+  }
+}
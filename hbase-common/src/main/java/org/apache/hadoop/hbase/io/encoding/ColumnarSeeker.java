@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.encoding;
+
+import static org.apache.hadoop.hbase.io.encoding.ColumnarCodec.CELL_COLUMNS;
+import static org.apache.hadoop.hbase.io.encoding.ColumnarCodec.COLUMNS;
+import static org.apache.hadoop.hbase.io.encoding.ColumnarCodec.COLUMN_OFFSETS;
+import static org.apache.hadoop.hbase.io.encoding.ColumnarCodec.HEADER_SIZE;
+import static org.apache.hadoop.hbase.io.encoding.ColumnarCodec.NUM_SECTIONS;
+import static org.apache.hadoop.hbase.io.encoding.ColumnarCodec.ROWS;
+import static org.apache.hadoop.hbase.io.encoding.ColumnarCodec.ROW_FIRST_CELLS;
+import static org.apache.hadoop.hbase.io.encoding.ColumnarCodec.ROW_OFFSETS;
+import static org.apache.hadoop.hbase.io.encoding.ColumnarCodec.SEQ_IDS;
+import static org.apache.hadoop.hbase.io.encoding.ColumnarCodec.TAGS;
+import static org.apache.hadoop.hbase.io.encoding.ColumnarCodec.TAG_OFFSETS;
+import static org.apache.hadoop.hbase.io.encoding.ColumnarCodec.TIMESTAMPS;
+import static org.apache.hadoop.hbase.io.encoding.ColumnarCodec.TYPES;
+import static org.apache.hadoop.hbase.io.encoding.ColumnarCodec.VALUES;
+import static org.apache.hadoop.hbase.io.encoding.ColumnarCodec.VALUE_OFFSETS;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NavigableSet;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.encoding.AbstractDataBlockEncoder.AbstractEncodedSeeker;
+import org.apache.hadoop.hbase.io.encoding.BufferedDataBlockEncoder.OffheapDecodedExtendedCell;
+import org.apache.hadoop.hbase.io.encoding.BufferedDataBlockEncoder.OnheapDecodedCell;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ObjectIntPair;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Seeker for blocks written by {@link ColumnarEncoder}. Every cell is addressable by its index, so
+ * moving to a cell costs the same wherever it is in the block and seeks binary search the cells.
+ * Only the key of the current cell is materialized, in {@link KeyValue} key format; the value and
+ * the tags are read from the block when {@link #getCell()} or {@link #getValueShallowCopy()} is
+ * called, so the cells a scan skips never have their value touched. When the reader sets a column
+ * projection, {@link #next()} steps over the puts of the other columns without decoding their key.
+ */
+@InterfaceAudience.Private
+public class ColumnarSeeker extends AbstractEncodedSeeker {
+
+  // A temp pair object which will be reused by ByteBuff#asSubByteBuffer calls. This avoids too
+  // many object creations.
+  private final ObjectIntPair<ByteBuffer> tmpPair = new ObjectIntPair<>();
+  private final CellComparator cellComparator;
+
+  private ByteBuff data;
+  private final int[] sections = new int[NUM_SECTIONS + 1];
+  private int cellCount;
+  private int rowCount;
+
+  private int current;
+  private int currentRow;
+
+  /** The qualifiers the reader asks for, or null for all of them. */
+  private NavigableSet<byte[]> projection;
+  /** Per column of the current block, whether it is outside the projection. Null if none is. */
+  private boolean[] skippedColumns;
+
+  /** The key of the current cell. Its row and column are only rewritten when they change. */
+  private byte[] keyBuffer = new byte[128];
+  private int keyLength;
+  private int keyRow = -1;
+  private int keyColumn = -1;
+  private int columnPosition;
+  private final KeyValue.KeyOnlyKeyValue currentKey = new KeyValue.KeyOnlyKeyValue();
+
+  public ColumnarSeeker(HFileBlockDecodingContext decodingCtx) {
+    super(decodingCtx);
+    this.cellComparator = decodingCtx.getHFileContext().getCellComparator();
+  }
+
+  @Override
+  public void setCurrentBuffer(ByteBuff buffer) {
+    int start = buffer.position();
+    cellCount = buffer.getInt(start);
+    rowCount = buffer.getInt(start + Bytes.SIZEOF_INT);
+    readSections(buffer, start, sections);
+    ByteBuff dup = buffer.duplicate();
+    dup.position(start);
+    dup.limit(start + sections[NUM_SECTIONS]);
+    data = dup.slice();
+    keyRow = -1;
+    keyColumn = -1;
+    updateSkippedColumns();
+    moveTo(0, 0);
+  }
+
+  @Override
+  public void setColumnProjection(NavigableSet<byte[]> qualifiers) {
+    projection = qualifiers == null || qualifiers.isEmpty() ? null : qualifiers;
+    if (data != null) {
+      updateSkippedColumns();
+    }
+  }
+
+  /** Looks up the columns of the current block in the projection. */
+  private void updateSkippedColumns() {
+    skippedColumns = null;
+    if (projection == null) {
+      return;
+    }
+    int columnCount = data.getInt(2 * Bytes.SIZEOF_INT);
+    for (int column = 0; column < columnCount; column++) {
+      int columnStart = data.getInt(sections[COLUMN_OFFSETS] + column * Bytes.SIZEOF_INT);
+      int columnLength =
+        data.getInt(sections[COLUMN_OFFSETS] + (column + 1) * Bytes.SIZEOF_INT) - columnStart;
+      int familyLength = data.get(sections[COLUMNS] + columnStart);
+      byte[] qualifier = new byte[columnLength - 1 - familyLength];
+      data.get(sections[COLUMNS] + columnStart + 1 + familyLength, qualifier, 0, qualifier.length);
+      if (!projection.contains(qualifier)) {
+        if (skippedColumns == null) {
+          skippedColumns = new boolean[columnCount];
+        }
+        skippedColumns[column] = true;
+      }
+    }
+  }
+
+  /** Returns whether {@link #next()} may step over the given cell. */
+  private boolean isSkipped(int cell) {
+    // Delete markers are kept, they may have to hide the cells of the projected columns
+    return skippedColumns[data.getInt(sections[CELL_COLUMNS] + cell * Bytes.SIZEOF_INT)]
+      && data.get(sections[TYPES] + cell) == KeyValue.Type.Put.getCode();
+  }
+
+  /**
+   * Reads the section offsets of the block starting at {@code start}, as offsets from the start of
+   * the block.
+   */
+  private static void readSections(ByteBuff buffer, int start, int[] sections) {
+    int pos = start + 3 * Bytes.SIZEOF_INT;
+    for (int i = 0; i <= NUM_SECTIONS; i++) {
+      sections[i] = HEADER_SIZE + buffer.getInt(pos + i * Bytes.SIZEOF_INT);
+    }
+  }
+
+  /** Returns the key of the first cell of the block starting at the position of {@code block}. */
+  static KeyValue.KeyOnlyKeyValue getFirstKey(ByteBuff block) {
+    int start = block.position();
+    int[] sections = new int[NUM_SECTIONS + 1];
+    readSections(block, start, sections);
+    int rowLength = block.getInt(start + sections[ROW_OFFSETS] + Bytes.SIZEOF_INT);
+    int column = block.getInt(start + sections[CELL_COLUMNS]);
+    int columnStart = block.getInt(start + sections[COLUMN_OFFSETS] + column * Bytes.SIZEOF_INT);
+    int columnLength =
+      block.getInt(start + sections[COLUMN_OFFSETS] + (column + 1) * Bytes.SIZEOF_INT)
+        - columnStart;
+    byte[] key =
+      new byte[Bytes.SIZEOF_SHORT + rowLength + columnLength + KeyValue.TIMESTAMP_TYPE_SIZE];
+    int pos = Bytes.putShort(key, 0, (short) rowLength);
+    block.get(start + sections[ROWS], key, pos, rowLength);
+    pos += rowLength;
+    block.get(start + sections[COLUMNS] + columnStart, key, pos, columnLength);
+    pos += columnLength;
+    pos = Bytes.putLong(key, pos, block.getLong(start + sections[TIMESTAMPS]));
+    key[pos] = block.get(start + sections[TYPES]);
+    return new KeyValue.KeyOnlyKeyValue(key, 0, key.length);
+  }
+
+  private int rowFirstCell(int row) {
+    return data.getInt(sections[ROW_FIRST_CELLS] + row * Bytes.SIZEOF_INT);
+  }
+
+  /** Returns the row the given cell belongs to. */
+  private int rowOf(int cell) {
+    int low = 0;
+    int high = rowCount - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (rowFirstCell(mid) <= cell) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  private void ensureKeyCapacity(int length) {
+    if (keyBuffer.length < length) {
+      keyBuffer = Arrays.copyOf(keyBuffer, Math.max(length, 2 * keyBuffer.length));
+    }
+  }
+
+  /** Positions the seeker on the given cell and decodes its key. */
+  private void moveTo(int cell, int row) {
+    current = cell;
+    currentRow = row;
+    if (row != keyRow) {
+      int rowStart = data.getInt(sections[ROW_OFFSETS] + row * Bytes.SIZEOF_INT);
+      int rowLength = data.getInt(sections[ROW_OFFSETS] + (row + 1) * Bytes.SIZEOF_INT) - rowStart;
+      ensureKeyCapacity(Bytes.SIZEOF_SHORT + rowLength);
+      columnPosition = Bytes.putShort(keyBuffer, 0, (short) rowLength);
+      data.get(sections[ROWS] + rowStart, keyBuffer, columnPosition, rowLength);
+      columnPosition += rowLength;
+      keyRow = row;
+      keyColumn = -1;
+    }
+    int column = data.getInt(sections[CELL_COLUMNS] + cell * Bytes.SIZEOF_INT);
+    if (column != keyColumn) {
+      int columnStart = data.getInt(sections[COLUMN_OFFSETS] + column * Bytes.SIZEOF_INT);
+      int columnLength =
+        data.getInt(sections[COLUMN_OFFSETS] + (column + 1) * Bytes.SIZEOF_INT) - columnStart;
+      keyLength = columnPosition + columnLength + KeyValue.TIMESTAMP_TYPE_SIZE;
+      ensureKeyCapacity(keyLength);
+      data.get(sections[COLUMNS] + columnStart, keyBuffer, columnPosition, columnLength);
+      keyColumn = column;
+    }
+    int pos = Bytes.putLong(keyBuffer, keyLength - KeyValue.TIMESTAMP_TYPE_SIZE,
+      data.getLong(sections[TIMESTAMPS] + cell * Bytes.SIZEOF_LONG));
+    keyBuffer[pos] = data.get(sections[TYPES] + cell);
+    currentKey.setKey(keyBuffer, 0, keyLength);
+  }
+
+  private void moveTo(int cell) {
+    moveTo(cell, rowOf(cell));
+  }
+
+  @Override
+  public ExtendedCell getKey() {
+    return new KeyValue.KeyOnlyKeyValue(Bytes.copy(keyBuffer, 0, keyLength), 0, keyLength);
+  }
+
+  @Override
+  public ByteBuffer getValueShallowCopy() {
+    int valueOffset = data.getInt(sections[VALUE_OFFSETS] + current * Bytes.SIZEOF_INT);
+    int valueLength =
+      data.getInt(sections[VALUE_OFFSETS] + (current + 1) * Bytes.SIZEOF_INT) - valueOffset;
+    data.asSubByteBuffer(sections[VALUES] + valueOffset, valueLength, tmpPair);
+    ByteBuffer dup = tmpPair.getFirst().duplicate();
+    dup.position(tmpPair.getSecond());
+    dup.limit(tmpPair.getSecond() + valueLength);
+    return dup.slice();
+  }
+
+  @Override
+  public ExtendedCell getCell() {
+    int valueOffset = data.getInt(sections[VALUE_OFFSETS] + current * Bytes.SIZEOF_INT);
+    int valueLength =
+      data.getInt(sections[VALUE_OFFSETS] + (current + 1) * Bytes.SIZEOF_INT) - valueOffset;
+    data.asSubByteBuffer(sections[VALUES] + valueOffset, valueLength, tmpPair);
+    ByteBuffer valueBuffer = tmpPair.getFirst();
+    int valuePosition = tmpPair.getSecond();
+
+    ByteBuffer tagsBuffer = HConstants.EMPTY_BYTE_BUFFER;
+    int tagsPosition = 0;
+    int tagsLength = 0;
+    if (includesTags()) {
+      int tagsOffset = data.getInt(sections[TAG_OFFSETS] + current * Bytes.SIZEOF_INT);
+      tagsLength =
+        data.getInt(sections[TAG_OFFSETS] + (current + 1) * Bytes.SIZEOF_INT) - tagsOffset;
+      if (tagsLength > 0) {
+        data.asSubByteBuffer(sections[TAGS] + tagsOffset, tagsLength, tmpPair);
+        tagsBuffer = tmpPair.getFirst();
+        tagsPosition = tmpPair.getSecond();
+      }
+    }
+    long seqId = 0L;
+    if (includesMvcc()) {
+      seqId = data.getLong(sections[SEQ_IDS] + current * Bytes.SIZEOF_LONG);
+    }
+
+    short rowLength = currentKey.getRowLength();
+    int familyOffset = currentKey.getFamilyOffset();
+    byte familyLength = currentKey.getFamilyLength();
+    int qualifierOffset = currentKey.getQualifierOffset();
+    int qualifierLength = currentKey.getQualifierLength();
+    long timestamp = currentKey.getTimestamp();
+    byte type = currentKey.getTypeByte();
+    byte[] key = Bytes.copy(keyBuffer, 0, keyLength);
+    if (valueBuffer.hasArray() && (tagsLength == 0 || tagsBuffer.hasArray())) {
+      byte[] tagsArray = HConstants.EMPTY_BYTE_ARRAY;
+      if (tagsLength > 0) {
+        tagsArray = tagsBuffer.array();
+        tagsPosition += tagsBuffer.arrayOffset();
+      }
+      return new OnheapDecodedCell(key, rowLength, familyOffset, familyLength, qualifierOffset,
+        qualifierLength, timestamp, type, valueBuffer.array(),
+        valueBuffer.arrayOffset() + valuePosition, valueLength, seqId, tagsArray, tagsPosition,
+        tagsLength);
+    }
+    return new OffheapDecodedExtendedCell(ByteBuffer.wrap(key), rowLength, familyOffset,
+      familyLength, qualifierOffset, qualifierLength, timestamp, type, valueBuffer, valuePosition,
+      valueLength, seqId, tagsBuffer, tagsPosition, tagsLength);
+  }
+
+  @Override
+  public void rewind() {
+    moveTo(0, 0);
+  }
+
+  @Override
+  public boolean next() {
+    int cell = current + 1;
+    if (skippedColumns != null) {
+      while (cell < cellCount && isSkipped(cell)) {
+        cell++;
+      }
+    }
+    if (cell >= cellCount) {
+      return false;
+    }
+    int row = currentRow;
+    while (cell >= rowFirstCell(row + 1)) {
+      row++;
+    }
+    moveTo(cell, row);
+    return true;
+  }
+
+  @Override
+  public int seekToKeyInBlock(ExtendedCell seekCell, boolean seekBefore) {
+    // Find the first cell not smaller than the seek key. Cells only differing in their sequence id
+    // compare equal here, the first of them is the one a linear scan would stop at.
+    int low = 0;
+    int high = cellCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      moveTo(mid);
+      if (compareKey(cellComparator, seekCell) > 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    if (low < cellCount) {
+      moveTo(low);
+      if (compareKey(cellComparator, seekCell) == 0) {
+        if (!seekBefore) {
+          return 0;
+        }
+        if (low == 0) {
+          // The caller (seekBefore) has to ensure that we are not at the first key in the block.
+          throw new IllegalStateException("Cannot seekBefore if positioned at the first key in the"
+            + " block: key=" + Bytes.toStringBinary(seekCell.getRowArray()));
+        }
+      }
+    }
+    if (low == 0) {
+      moveTo(0, 0);
+      return HConstants.INDEX_KEY_MAGIC; // using optimized index key
+    }
+    moveTo(low - 1);
+    return 1;
+  }
+
+  @Override
+  public int compareKey(CellComparator comparator, ExtendedCell key) {
+    return PrivateCellUtil.compareKeyIgnoresMvcc(comparator, key, currentKey);
+  }
+}
@@ -21,6 +21,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.NavigableSet;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.CellComparator;
 import org.apache.hadoop.hbase.ExtendedCell;
@@ -140,6 +141,15 @@ public interface DataBlockEncoder {
      */
     boolean next();
 
+    /**
+     * Tells the seeker which qualifiers the reader is going to use. A seeker may then have
+     * {@link #next()} step over the puts of the other qualifiers, the seeks still position on any
+     * cell. The default ignores the projection.
+     * @param qualifiers the qualifiers asked for, null or empty for all of them
+     */
+    default void setColumnProjection(NavigableSet<byte[]> qualifiers) {
+    }
+
     /**
      * Moves the seeker position within the current block to:
      * <ul>
@@ -40,7 +40,9 @@ public enum DataBlockEncoding {
   // id 5 is reserved for the COPY_KEY algorithm for benchmarking
   // COPY_KEY(5, "org.apache.hadoop.hbase.io.encoding.CopyKeyDataBlockEncoder"),
   // PREFIX_TREE(6, "org.apache.hadoop.hbase.codec.prefixtree.PrefixTreeCodec"),
-  ROW_INDEX_V1(7, "org.apache.hadoop.hbase.io.encoding.RowIndexCodecV1");
+  ROW_INDEX_V1(7, "org.apache.hadoop.hbase.io.encoding.RowIndexCodecV1"),
+  /** Column grouped (PAX) layout for scans of a few columns of wide rows. */
+  COLUMNAR(8, "org.apache.hadoop.hbase.io.encoding.ColumnarCodec");
 
   private final short id;
   private final byte[] idInBytes;
@@ -281,14 +281,17 @@ public class EncodedDataBlock {
       baos.flush();
       baosBytes = baos.toByteArray();
       this.dataBlockEncoder.endBlockEncoding(encodingCtx, out, baosBytes);
-      // In endBlockEncoding(encodingCtx, out, baosBytes), Encoder ROW_INDEX_V1 write integer in
-      // out while the others write integer in baosBytes(byte array). We need to add
-      // baos.toByteArray() after endBlockEncoding again to make sure the integer writes in
-      // outputstream with Encoder ROW_INDEX_V1 dump to byte array (baosBytes).
-      // The if branch is necessary because Encoders excepts ROW_INDEX_V1 write integer in
+      // In endBlockEncoding(encodingCtx, out, baosBytes), Encoders ROW_INDEX_V1 and COLUMNAR
+      // write in out while the others write integer in baosBytes(byte array). We need to add
+      // baos.toByteArray() after endBlockEncoding again to make sure the bytes written in
+      // outputstream by Encoders ROW_INDEX_V1 and COLUMNAR dump to byte array (baosBytes).
+      // The if branch is necessary because the other Encoders write integer in
       // baosBytes directly, without if branch and do toByteArray() again, baosBytes won't
       // contains the integer wrotten in endBlockEncoding.
-      if (this.encoding.equals(DataBlockEncoding.ROW_INDEX_V1)) {
+      if (
+        this.encoding.equals(DataBlockEncoding.ROW_INDEX_V1)
+          || this.encoding.equals(DataBlockEncoding.COLUMNAR)
+      ) {
         baosBytes = baos.toByteArray();
       }
     } catch (IOException e) {
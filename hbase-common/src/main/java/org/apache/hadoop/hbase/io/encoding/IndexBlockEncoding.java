@@ -32,8 +32,11 @@ public enum IndexBlockEncoding {
 
   /** Disable index block encoding. */
   NONE(0, null),
-  // id 1 is reserved for the PREFIX_TREE algorithm to be added later
-  PREFIX_TREE(1, null);
+  /**
+   * Prefix compress the keys of index blocks, storing the prefix shared by all keys of a block once
+   * and front coding the remaining bytes in small groups that can be binary searched.
+   */
+  PREFIX_TREE(1, "org.apache.hadoop.hbase.io.hfile.PrefixTreeIndexBlockEncoder");
 
   private final short id;
   private final byte[] idInBytes;
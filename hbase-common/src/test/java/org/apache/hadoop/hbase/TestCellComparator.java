@@ -21,7 +21,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
 import org.apache.hadoop.hbase.testclassification.MiscTests;
@@ -153,6 +156,72 @@ public class TestCellComparator {
     assertTrue(comparator.compareRows(bbCell1, bbCell2) < 0);
   }
 
+  /**
+   * Keys with rows and families of the same length are compared as one run from the row to the end
+   * of the qualifier. Make sure that gives the same order as comparing field by field, for all the
+   * KeyValue and ByteBufferKeyValue flavours and mixes of them.
+   */
+  @Test
+  public void testCompareSameGeometryKeys() {
+    byte[][] rows = { Bytes.toBytes("a"), Bytes.toBytes("b"), new byte[] { (byte) 0xff },
+      Bytes.toBytes("ab"), Bytes.toBytes("ba"), new byte[] { 0, (byte) 0x80 } };
+    byte[][] families = { fam0, Bytes.toBytes("f"), Bytes.toBytes("g"), Bytes.toBytes("ff") };
+    byte[][] qualifiers = { HConstants.EMPTY_BYTE_ARRAY, Bytes.toBytes("q"), Bytes.toBytes("qq"),
+      Bytes.toBytes("r"), new byte[] { (byte) 0xff, 0 }, Bytes.toBytes("qualifier-00000001"),
+      Bytes.toBytes("qualifier-00000002") };
+    KeyValue.Type[] types =
+      { KeyValue.Type.Put, KeyValue.Type.Delete, KeyValue.Type.Minimum, KeyValue.Type.Maximum };
+    Random rand = new Random(12345);
+    List<Cell> references = new ArrayList<>();
+    List<Cell[]> flavours = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      byte[] row = rows[rand.nextInt(rows.length)];
+      byte[] family = families[rand.nextInt(families.length)];
+      byte[] qualifier = qualifiers[rand.nextInt(qualifiers.length)];
+      long ts = rand.nextInt(3);
+      KeyValue.Type type = types[rand.nextInt(types.length)];
+      references.add(new IndividualBytesFieldCell(row, family, qualifier, ts, type, 0,
+        HConstants.EMPTY_BYTE_ARRAY, HConstants.EMPTY_BYTE_ARRAY));
+      KeyValue kv = new KeyValue(row, family, qualifier, ts, type);
+      ByteBuffer direct = ByteBuffer.allocateDirect(kv.getLength());
+      direct.put(kv.getBuffer(), kv.getOffset(), kv.getLength());
+      Cell[] cells =
+        { kv, new ByteBufferKeyValue(ByteBuffer.wrap(kv.getBuffer()), 0, kv.getLength()),
+          new SizeCachedKeyValue(kv.getBuffer(), 0, kv.getLength(), 0, kv.getKeyLength()),
+          new SizeCachedNoTagsKeyValue(kv.getBuffer(), 0, kv.getLength(), 0, kv.getKeyLength(),
+            kv.getRowLength()),
+          new SizeCachedByteBufferKeyValue(direct, 0, kv.getLength(), 0, kv.getKeyLength()),
+          new SizeCachedNoTagsByteBufferKeyValue(direct, 0, kv.getLength(), 0, kv.getKeyLength(),
+            kv.getRowLength()),
+          new KeyValue.KeyOnlyKeyValue(kv.getBuffer(), kv.getKeyOffset(), kv.getKeyLength()) };
+      for (Cell cell : cells) {
+        assertEquals(family.length, cell.getFamilyLength());
+        assertTrue(CellUtil.equals(kv, cell));
+      }
+      flavours.add(cells);
+    }
+    for (int i = 0; i < references.size(); i++) {
+      for (int j = 0; j < references.size(); j++) {
+        if (isLastOnRow(references.get(i)) && isLastOnRow(references.get(j))) {
+          // Two "last on row" fake keys both claim to sort after the other, order is undefined.
+          continue;
+        }
+        int expected = Integer.signum(comparator.compare(references.get(i), references.get(j)));
+        for (Cell left : flavours.get(i)) {
+          for (Cell right : flavours.get(j)) {
+            assertEquals(left + " vs " + right, expected,
+              Integer.signum(comparator.compare(left, right)));
+          }
+        }
+      }
+    }
+  }
+
+  private static boolean isLastOnRow(Cell cell) {
+    return PrivateCellUtil.getTypeByte(cell) == KeyValue.Type.Minimum.getCode()
+      && cell.getFamilyLength() == 0 && cell.getQualifierLength() == 0;
+  }
+
   /**
    * Test meta comparisons using our new ByteBufferKeyValue Cell type, the type we use everywhere in
    * 2.0.
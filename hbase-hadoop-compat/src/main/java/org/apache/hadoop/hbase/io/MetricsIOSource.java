@@ -46,6 +46,7 @@ public interface MetricsIOSource extends BaseSource {
   String FS_READ_TIME_HISTO_KEY = "fsReadTime";
   String FS_PREAD_TIME_HISTO_KEY = "fsPReadTime";
   String FS_WRITE_HISTO_KEY = "fsWriteTime";
+  String CHECKSUM_TIME_HISTO_KEY = "fsChecksumTime";
 
   String SLOW_FS_READS_KEY = "fsSlowReadsCount";
   String SLOW_FS_READS_DESC = "Number of HFile reads which were slower than a configured threshold";
@@ -59,6 +60,9 @@ public interface MetricsIOSource extends BaseSource {
   String FS_WRITE_TIME_HISTO_DESC =
     "Latency of HFile's writes on this region server in milliseconds";
 
+  String CHECKSUM_TIME_HISTO_DESC =
+    "Time spent verifying the HBase level checksums of each HFile block read, in microseconds";
+
   String CHECKSUM_FAILURES_DESC = "Number of checksum failures for the HBase HFile checksums at the"
     + " HBase level (separate from HDFS checksums)";
 
@@ -80,5 +84,11 @@ public interface MetricsIOSource extends BaseSource {
    */
   void updateFsWriteTime(long t);
 
+  /**
+   * Update the checksum verification time histogram
+   * @param t time it took, in microseconds
+   */
+  void updateChecksumTime(long t);
+
   void incrSlowFsRead();
 }
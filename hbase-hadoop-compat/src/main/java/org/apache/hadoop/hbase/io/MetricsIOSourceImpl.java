@@ -33,6 +33,7 @@ public class MetricsIOSourceImpl extends BaseSourceImpl implements MetricsIOSour
   private final MetricHistogram fsReadTimeHisto;
   private final MetricHistogram fsPReadTimeHisto;
   private final MetricHistogram fsWriteTimeHisto;
+  private final MetricHistogram checksumTimeHisto;
   private final MutableFastCounter fsSlowReads;
 
   public MetricsIOSourceImpl(MetricsIOWrapper wrapper) {
@@ -51,6 +52,8 @@ public class MetricsIOSourceImpl extends BaseSourceImpl implements MetricsIOSour
       getMetricsRegistry().newTimeHistogram(FS_PREAD_TIME_HISTO_KEY, FS_PREAD_TIME_HISTO_DESC);
     fsWriteTimeHisto =
       getMetricsRegistry().newTimeHistogram(FS_WRITE_HISTO_KEY, FS_WRITE_TIME_HISTO_DESC);
+    checksumTimeHisto =
+      getMetricsRegistry().newTimeHistogram(CHECKSUM_TIME_HISTO_KEY, CHECKSUM_TIME_HISTO_DESC);
     fsSlowReads = getMetricsRegistry().newCounter(SLOW_FS_READS_KEY, SLOW_FS_READS_DESC, 0L);
   }
 
@@ -69,6 +72,11 @@ public class MetricsIOSourceImpl extends BaseSourceImpl implements MetricsIOSour
     fsWriteTimeHisto.add(t);
   }
 
+  @Override
+  public void updateChecksumTime(long t) {
+    checksumTimeHisto.add(t);
+  }
+
   @Override
   public void incrSlowFsRead() {
     fsSlowReads.incr();
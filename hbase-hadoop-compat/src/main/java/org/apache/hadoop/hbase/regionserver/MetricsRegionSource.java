@@ -56,6 +56,12 @@ public interface MetricsRegionSource extends Comparable<MetricsRegionSource> {
   String ROW_READS_ONLY_ON_MEMSTORE_DESC = "Row reads happening completely out of memstore";
   String MIXED_ROW_READS = "mixedRowReadsCount";
   String MIXED_ROW_READS_ON_STORE_DESC = "Row reads happening out of files and memstore on store";
+  String MEMSTORE_COMPACTED_CELLS = "memstoreCompactedCellsCount";
+  String MEMSTORE_COMPACTED_CELLS_DESC =
+    "Number of cells written by the in-memory compactions and merges of the store";
+  String MEMSTORE_COMPACTION_TIME = "memstoreCompactionTime";
+  String MEMSTORE_COMPACTION_TIME_DESC =
+    "Time in milliseconds spent in the in-memory compactions and merges of the store";
 
   /**
    * Close the region's metrics as this region is closing.
@@ -286,6 +286,12 @@ public class MetricsRegionSourceImpl implements MetricsRegionSource {
         MetricsRegionSource.ROW_READS_ONLY_ON_MEMSTORE_DESC);
       addCounter(mrb, this.regionWrapper.getMixedRowReadsCount(),
         MetricsRegionSource.MIXED_ROW_READS, MetricsRegionSource.MIXED_ROW_READS_ON_STORE_DESC);
+      addCounter(mrb, this.regionWrapper.getMemStoreCompactedCellsCount(),
+        MetricsRegionSource.MEMSTORE_COMPACTED_CELLS,
+        MetricsRegionSource.MEMSTORE_COMPACTED_CELLS_DESC);
+      addCounter(mrb, this.regionWrapper.getMemStoreCompactionTime(),
+        MetricsRegionSource.MEMSTORE_COMPACTION_TIME,
+        MetricsRegionSource.MEMSTORE_COMPACTION_TIME_DESC);
     }
   }
 
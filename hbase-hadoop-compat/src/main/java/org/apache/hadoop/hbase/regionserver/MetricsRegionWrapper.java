@@ -166,4 +166,10 @@ public interface MetricsRegionWrapper {
   /** Returns the number of row reads on memstore and file per store */
   Map<String, Long> getMixedRowReadsCount();
 
+  /** Returns the number of cells written by in-memory compactions and merges per store */
+  Map<String, Long> getMemStoreCompactedCellsCount();
+
+  /** Returns the time in milliseconds spent in in-memory compactions and merges per store */
+  Map<String, Long> getMemStoreCompactionTime();
+
 }
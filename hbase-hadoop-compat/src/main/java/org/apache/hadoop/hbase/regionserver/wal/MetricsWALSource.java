@@ -57,6 +57,11 @@ public interface MetricsWALSource extends BaseSource {
   String SLOW_APPEND_COUNT_DESC = "Number of appends that were slow.";
   String SYNC_TIME = "syncTime";
   String SYNC_TIME_DESC = "The time it took to sync the WAL to HDFS.";
+  String SYNC_BATCH_SIZE = "syncBatchSize";
+  String SYNC_BATCH_SIZE_DESC = "Number of sync requests finished by a single sync of the WAL.";
+  String GROUP_COMMIT_WAIT_TIME = "groupCommitWaitTime";
+  String GROUP_COMMIT_WAIT_TIME_DESC =
+    "The time (in microseconds) a WAL sync was held back to group it with later sync requests.";
   String ROLL_REQUESTED = "rollRequest";
   String ROLL_REQUESTED_DESC = "How many times a roll has been requested total";
   String ERROR_ROLL_REQUESTED = "errorRollRequest";
@@ -101,6 +106,10 @@ public interface MetricsWALSource extends BaseSource {
    */
   void incrementSyncTime(long time);
 
+  void incrementSyncBatchSize(int syncs);
+
+  void incrementGroupCommitWaitTime(long time);
+
   void incrementLogRollRequested();
 
   void incrementErrorLogRoll();
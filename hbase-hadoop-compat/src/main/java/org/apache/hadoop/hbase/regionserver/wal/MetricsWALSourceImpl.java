@@ -36,6 +36,8 @@ public class MetricsWALSourceImpl extends BaseSourceImpl implements MetricsWALSo
   private final MetricHistogram appendSizeHisto;
   private final MetricHistogram appendTimeHisto;
   private final MetricHistogram syncTimeHisto;
+  private final MetricHistogram syncBatchSizeHisto;
+  private final MetricHistogram groupCommitWaitTimeHisto;
   private final MutableFastCounter appendCount;
   private final MutableFastCounter slowAppendCount;
   private final MutableFastCounter logRollRequested;
@@ -64,6 +66,10 @@ public class MetricsWALSourceImpl extends BaseSourceImpl implements MetricsWALSo
     slowAppendCount =
       this.getMetricsRegistry().newCounter(SLOW_APPEND_COUNT, SLOW_APPEND_COUNT_DESC, 0L);
     syncTimeHisto = this.getMetricsRegistry().newTimeHistogram(SYNC_TIME, SYNC_TIME_DESC);
+    syncBatchSizeHisto =
+      this.getMetricsRegistry().newHistogram(SYNC_BATCH_SIZE, SYNC_BATCH_SIZE_DESC);
+    groupCommitWaitTimeHisto = this.getMetricsRegistry().newTimeHistogram(GROUP_COMMIT_WAIT_TIME,
+      GROUP_COMMIT_WAIT_TIME_DESC);
     logRollRequested =
       this.getMetricsRegistry().newCounter(ROLL_REQUESTED, ROLL_REQUESTED_DESC, 0L);
     errorRollRequested =
@@ -124,6 +130,16 @@ public class MetricsWALSourceImpl extends BaseSourceImpl implements MetricsWALSo
     syncTimeHisto.add(time);
   }
 
+  @Override
+  public void incrementSyncBatchSize(int syncs) {
+    syncBatchSizeHisto.add(syncs);
+  }
+
+  @Override
+  public void incrementGroupCommitWaitTime(long time) {
+    groupCommitWaitTimeHisto.add(time);
+  }
+
   @Override
   public void incrementLogRollRequested() {
     logRollRequested.incr();
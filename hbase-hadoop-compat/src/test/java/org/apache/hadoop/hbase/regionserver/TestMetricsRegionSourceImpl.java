@@ -237,5 +237,19 @@ public class TestMetricsRegionSourceImpl {
       map.put("info", 0L);
       return map;
     }
+
+    @Override
+    public Map<String, Long> getMemStoreCompactedCellsCount() {
+      Map<String, Long> map = new HashMap<String, Long>();
+      map.put("info", 0L);
+      return map;
+    }
+
+    @Override
+    public Map<String, Long> getMemStoreCompactionTime() {
+      Map<String, Long> map = new HashMap<String, Long>();
+      map.put("info", 0L);
+      return map;
+    }
   }
 }
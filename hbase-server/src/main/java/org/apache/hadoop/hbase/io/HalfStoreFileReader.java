@@ -19,6 +19,7 @@ package org.apache.hadoop.hbase.io;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.NavigableSet;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.IntConsumer;
@@ -278,6 +279,11 @@ public class HalfStoreFileReader extends StoreFileReader {
       public void recordBlockSize(IntConsumer blockSizeConsumer) {
         this.delegate.recordBlockSize(blockSizeConsumer);
       }
+
+      @Override
+      public void setColumnProjection(NavigableSet<byte[]> qualifiers) {
+        this.delegate.setColumnProjection(qualifiers);
+      }
     };
   }
 
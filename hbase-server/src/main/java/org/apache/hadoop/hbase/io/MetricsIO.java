@@ -76,6 +76,10 @@ public class MetricsIO {
     source.updateFsWriteTime(t);
   }
 
+  public void updateChecksumTime(long t) {
+    source.updateChecksumTime(t);
+  }
+
   public void incrSlowFsRead() {
     source.incrSlowFsRead();
   }
@@ -19,11 +19,16 @@ package org.apache.hadoop.hbase.io.hfile;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
 import org.apache.hadoop.fs.ChecksumException;
 import org.apache.hadoop.hbase.nio.ByteBuff;
 import org.apache.hadoop.hbase.nio.SingleByteBuff;
 import org.apache.hadoop.hbase.util.ChecksumType;
+import org.apache.hadoop.hbase.util.ObjectIntPair;
 import org.apache.hadoop.util.DataChecksum;
+import org.apache.hadoop.util.NativeCodeLoader;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +50,13 @@ public class ChecksumUtil {
    */
   private static boolean generateExceptions = false;
 
+  /**
+   * Whether hadoop's native checksums are available. Without them, {@link DataChecksum} falls back
+   * to pure java implementations, which are several times slower than the intrinsified
+   * {@link CRC32} and {@link CRC32C} of the JDK.
+   */
+  private static final boolean NATIVE_CHECKSUMS = NativeCodeLoader.isNativeCodeLoaded();
+
   /**
    * Generates a checksum for all the data in indata. The checksum is written to outdata.
    * @param indata           input data stream
@@ -154,9 +166,63 @@ public class ChecksumUtil {
     return true;
   }
 
+  /**
+   * Verifies the checksum of each chunk in data with the JDK's {@link CRC32} or {@link CRC32C},
+   * which are updated straight from the {@link ByteBuffer}s backing the {@link ByteBuff}, so
+   * neither a {@link SingleByteBuff} nor a {@link org.apache.hadoop.hbase.nio.MultiByteBuff} is
+   * copied. A chunk spanning several of the buffers of a MultiByteBuff is updated once per buffer.
+   * @param dataChecksum to calculate the checksum.
+   * @param data         as the input
+   * @param checksums    to compare
+   * @param pathName     indicate that the data is read from which file.
+   * @return a flag indicate the checksum match or mismatch.
+   */
+  private static boolean verifyChunkedSumsWithJdkChecksum(DataChecksum dataChecksum, ByteBuff data,
+    ByteBuff checksums, String pathName) {
+    Checksum checksum;
+    switch (dataChecksum.getChecksumType()) {
+      case CRC32:
+        checksum = new CRC32();
+        break;
+      case CRC32C:
+        checksum = new CRC32C();
+        break;
+      default:
+        return true;
+    }
+    int bytesPerChecksum = dataChecksum.getBytesPerChecksum();
+    ObjectIntPair<ByteBuffer> piece = new ObjectIntPair<>();
+    int checksumPos = checksums.position();
+    for (int chunkPos = data.position(); chunkPos < data.limit(); chunkPos += bytesPerChecksum) {
+      int chunkEnd = Math.min(chunkPos + bytesPerChecksum, data.limit());
+      checksum.reset();
+      for (int pos = chunkPos, len; pos < chunkEnd; pos += len) {
+        // Asking for a single byte never copies, and tells how much of the chunk is in its buffer
+        data.asSubByteBuffer(pos, 1, piece);
+        ByteBuffer bb = piece.getFirst();
+        int offsetInBB = piece.getSecond();
+        len = Math.min(chunkEnd - pos, bb.limit() - offsetInBB);
+        checksum.update(bb.duplicate().limit(offsetInBB + len).position(offsetInBB));
+      }
+      int calculated = (int) checksum.getValue();
+      int stored = checksums.getInt(checksumPos);
+      checksumPos += HFileBlock.CHECKSUM_SIZE;
+      if (calculated != stored) {
+        if (LOG.isTraceEnabled()) {
+          LOG.trace("Checksum error: {} at {} expected: {} got: {}", pathName,
+            chunkPos - data.position(), stored, calculated);
+        }
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Validates that the data in the specified HFileBlock matches the checksum. Generates the
    * checksums for the data and then validate that it matches those stored in the end of the data.
+   * The JDK's checksums are used unless the block is a {@link SingleByteBuff} which hadoop's native
+   * checksums can verify.
    * @param buf      Contains the data in following order: HFileBlock header, data, checksums.
    * @param pathName Path of the HFile to which the {@code data} belongs. Only used for logging.
    * @param offset   offset of the data being validated. Only used for logging.
@@ -164,6 +230,18 @@ public class ChecksumUtil {
    * @return True if checksum matches, else false.
    */
   static boolean validateChecksum(ByteBuff buf, String pathName, long offset, int hdrSize) {
+    return validateChecksum(buf, pathName, offset, hdrSize,
+      !NATIVE_CHECKSUMS || !(buf instanceof SingleByteBuff));
+  }
+
+  /**
+   * Like {@link #validateChecksum(ByteBuff, String, long, int)}, but with the choice of checksum
+   * implementation left to the caller, for benchmarks and tests.
+   * @param jdkChecksum whether to verify with the JDK's checksums, or with hadoop's
+   *                    {@link DataChecksum}
+   */
+  static boolean validateChecksum(ByteBuff buf, String pathName, long offset, int hdrSize,
+    boolean jdkChecksum) {
     ChecksumType ctype = ChecksumType.codeToType(buf.get(HFileBlock.Header.CHECKSUM_TYPE_INDEX));
     if (ctype == ChecksumType.NULL) {
       return true;// No checksum validations needed for this block.
@@ -183,7 +261,9 @@ public class ChecksumUtil {
       bytesPerChecksum);
     ByteBuff data = buf.duplicate().position(0).limit(onDiskDataSizeWithHeader);
     ByteBuff checksums = buf.duplicate().position(onDiskDataSizeWithHeader).limit(buf.limit());
-    return verifyChunkedSums(dataChecksum, data, checksums, pathName);
+    return jdkChecksum
+      ? verifyChunkedSumsWithJdkChecksum(dataChecksum, data, checksums, pathName)
+      : verifyChunkedSums(dataChecksum, data, checksums, pathName);
   }
 
   /**
@@ -46,6 +46,8 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
 
   private int hashCount;
   private Hash hash;
+  // whether the chunks are BlockedBloomFilterChunks
+  private final boolean blocked;
 
   private long[] numQueriesPerChunk;
   private long[] numPositivesPerChunk;
@@ -59,8 +61,20 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
    */
   public CompoundBloomFilter(DataInput meta, HFile.Reader reader, BloomFilterMetrics metrics)
     throws IOException {
+    this(meta, reader, metrics, false);
+  }
+
+  /**
+   * De-serialization for compound Bloom filter metadata, see
+   * {@link #CompoundBloomFilter(DataInput, HFile.Reader, BloomFilterMetrics)}.
+   * @param blocked whether the chunks are
+   *                {@link org.apache.hadoop.hbase.util.BlockedBloomFilterChunk}s
+   */
+  public CompoundBloomFilter(DataInput meta, HFile.Reader reader, BloomFilterMetrics metrics,
+    boolean blocked) throws IOException {
     this.reader = reader;
     this.metrics = metrics;
+    this.blocked = blocked;
 
     totalByteSize = meta.readLong();
     hashCount = meta.readInt();
@@ -107,8 +121,11 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
     HFileBlock bloomBlock = getBloomBlock(block);
     try {
       ByteBuff bloomBuf = bloomBlock.getBufferReadOnly();
-      result = BloomFilterUtil.contains(key, keyOffset, keyLength, bloomBuf,
-        bloomBlock.headerSize(), bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount);
+      result = blocked
+        ? BloomFilterUtil.containsBlocked(key, keyOffset, keyLength, bloomBuf,
+          bloomBlock.headerSize(), bloomBlock.getUncompressedSizeWithoutHeader(), hash)
+        : BloomFilterUtil.contains(key, keyOffset, keyLength, bloomBuf, bloomBlock.headerSize(),
+          bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount);
     } finally {
       // After the use, should release the block to deallocate byte buffers.
       bloomBlock.release();
@@ -156,8 +173,11 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
     HFileBlock bloomBlock = getBloomBlock(block);
     try {
       ByteBuff bloomBuf = bloomBlock.getBufferReadOnly();
-      result = BloomFilterUtil.contains(keyCell, bloomBuf, bloomBlock.headerSize(),
-        bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount, type);
+      result = blocked
+        ? BloomFilterUtil.containsBlocked(keyCell, bloomBuf, bloomBlock.headerSize(),
+          bloomBlock.getUncompressedSizeWithoutHeader(), hash)
+        : BloomFilterUtil.contains(keyCell, bloomBuf, bloomBlock.headerSize(),
+          bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount, type);
     } finally {
       // After the use, should release the block to deallocate the byte buffers.
       bloomBlock.release();
@@ -35,6 +35,13 @@ public class CompoundBloomFilterBase implements BloomFilterBase {
    */
   public static final int VERSION = 3;
 
+  /**
+   * The version of the compound Bloom filters made of
+   * {@link org.apache.hadoop.hbase.util.BlockedBloomFilterChunk}s, which older readers do not know
+   * how to check and turn off.
+   */
+  public static final int BLOCKED_VERSION = 4;
+
   /** Target error rate for configuring the filter and for information */
   protected float errorRate;
 
@@ -200,6 +200,10 @@ public final class HFile {
     }
   }
 
+  public static final void updateChecksumTime(long micros) {
+    MetricsIO.getInstance().updateChecksumTime(micros);
+  }
+
   public static final void updateWriteLatency(long latencyMillis) {
     MetricsIO.getInstance().updateFsWriteTime(latencyMillis);
   }
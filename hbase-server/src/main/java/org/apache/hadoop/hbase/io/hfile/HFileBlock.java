@@ -34,6 +34,7 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -1885,7 +1886,10 @@ public class HFileBlock implements Cacheable {
       if (!fileContext.isUseHBaseChecksum()) {
         return false;
       }
-      return ChecksumUtil.validateChecksum(data, pathName, offset, hdrSize);
+      long start = System.nanoTime();
+      boolean valid = ChecksumUtil.validateChecksum(data, pathName, offset, hdrSize);
+      HFile.updateChecksumTime(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+      return valid;
     }
 
     @Override
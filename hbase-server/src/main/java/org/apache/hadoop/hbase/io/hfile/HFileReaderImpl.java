@@ -25,6 +25,7 @@ import java.io.DataInput;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.NavigableSet;
 import java.util.Optional;
 import java.util.function.IntConsumer;
 import org.apache.hadoop.conf.Configurable;
@@ -1491,6 +1492,11 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
       reset();
     }
 
+    @Override
+    public void setColumnProjection(NavigableSet<byte[]> qualifiers) {
+      seeker.setColumnProjection(qualifiers);
+    }
+
     /**
      * Updates the current block to be the given {@link HFileBlock}. Seeks to the the first
      * key/value pair.
@@ -20,6 +20,7 @@ package org.apache.hadoop.hbase.io.hfile;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.NavigableSet;
 import java.util.function.IntConsumer;
 import org.apache.hadoop.hbase.ExtendedCell;
 import org.apache.hadoop.hbase.regionserver.Shipper;
@@ -131,4 +132,13 @@ public interface HFileScanner extends Shipper, Closeable {
    * @param blockSizeConsumer to be called with block size in bytes, once per block.
    */
   void recordBlockSize(IntConsumer blockSizeConsumer);
+
+  /**
+   * Tells the scanner which qualifiers the caller is going to use, so {@link #next()} may step over
+   * the puts of the other qualifiers where the block encoding allows it. Seeks still position on
+   * any cell.
+   * @param qualifiers the qualifiers asked for, null or empty for all of them
+   */
+  default void setColumnProjection(NavigableSet<byte[]> qualifiers) {
+  }
 }
@@ -0,0 +1,601 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.apache.hadoop.hbase.io.hfile.HFileBlockIndex.MID_KEY_METADATA_SIZE;
+
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.ByteArrayOutputStream;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.io.encoding.IndexBlockEncoding;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.nio.SingleByteBuff;
+import org.apache.hadoop.hbase.regionserver.KeyValueScanner;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Encodes block index chunks as a shallow prefix tree. The root of the tree is the prefix shared by
+ * all keys of the chunk, which is stored only once. Its children are groups of at most
+ * {@link #RESTART_INTERVAL} consecutive entries; the first key of every group (the restart key) is
+ * stored as a suffix of the common prefix and the remaining keys of a group are front coded against
+ * their predecessor. The same layout is used for root and non-root index blocks:
+ *
+ * <pre>
+ * int                 number of entries
+ * int                 common prefix length
+ * byte[]              common prefix
+ * int[numGroups + 1]  group offsets relative to the start of the entries, the last one being the
+ *                     total length of the entries
+ * entries             vlong block offset, vint on-disk size, vint shared length (with the previous
+ *                     key, not counting the common prefix), vint suffix length, suffix bytes
+ * </pre>
+ *
+ * A lookup binary searches the restart keys through the group offsets and then scans at most one
+ * group, so the block never has to be fully decoded. The root index block is kept in its encoded
+ * form by the {@link PrefixTreeEncodedSeeker}, which also saves heap compared to materializing one
+ * {@link KeyValue.KeyOnlyKeyValue} per root entry.
+ */
+@InterfaceAudience.Private
+public class PrefixTreeIndexBlockEncoder implements HFileIndexBlockEncoder {
+
+  public static final PrefixTreeIndexBlockEncoder INSTANCE = new PrefixTreeIndexBlockEncoder();
+
+  /** Number of entries front coded against each other before a full suffix is written again. */
+  static final int RESTART_INTERVAL = 16;
+
+  /** Cannot be instantiated. Use {@link #INSTANCE} instead. */
+  private PrefixTreeIndexBlockEncoder() {
+  }
+
+  @Override
+  public void saveMetadata(HFile.Writer writer) throws IOException {
+    writer.appendFileInfo(INDEX_BLOCK_ENCODING, getIndexBlockEncoding().getNameInBytes());
+  }
+
+  @Override
+  public void encode(BlockIndexChunk blockIndexChunk, boolean rootIndexBlock, DataOutput out)
+    throws IOException {
+    int numEntries = blockIndexChunk.getNumEntries();
+    out.writeInt(numEntries);
+    if (numEntries == 0) {
+      return;
+    }
+
+    // Keys are sorted, so the prefix shared by all of them is the one shared by the first and the
+    // last key.
+    byte[] firstKey = blockIndexChunk.getBlockKey(0);
+    int prefixLength =
+      commonPrefix(firstKey, blockIndexChunk.getBlockKey(numEntries - 1), firstKey.length);
+    out.writeInt(prefixLength);
+    out.write(firstKey, 0, prefixLength);
+
+    ByteArrayOutputStream entries = new ByteArrayOutputStream();
+    DataOutputStream entriesOut = new DataOutputStream(entries);
+    int numGroups = getNumGroups(numEntries);
+    int[] groupOffsets = new int[numGroups + 1];
+    byte[] previousKey = null;
+    for (int i = 0; i < numEntries; i++) {
+      byte[] key = blockIndexChunk.getBlockKey(i);
+      int shared = 0;
+      if (i % RESTART_INTERVAL == 0) {
+        groupOffsets[i / RESTART_INTERVAL] = entriesOut.size();
+      } else {
+        shared = commonPrefix(previousKey, key, prefixLength);
+      }
+      WritableUtils.writeVLong(entriesOut, blockIndexChunk.getBlockOffset(i));
+      WritableUtils.writeVInt(entriesOut, blockIndexChunk.getOnDiskDataSize(i));
+      WritableUtils.writeVInt(entriesOut, shared);
+      int suffixOffset = prefixLength + shared;
+      WritableUtils.writeVInt(entriesOut, key.length - suffixOffset);
+      entriesOut.write(key, suffixOffset, key.length - suffixOffset);
+      previousKey = key;
+    }
+    groupOffsets[numGroups] = entriesOut.size();
+
+    for (int groupOffset : groupOffsets) {
+      out.writeInt(groupOffset);
+    }
+    out.write(entries.getBuffer(), 0, entries.size());
+  }
+
+  /**
+   * Returns the length of the common prefix of the two keys, ignoring the first {@code from} bytes
+   * which are known to be equal.
+   */
+  private static int commonPrefix(byte[] left, byte[] right, int from) {
+    int length = Math.min(left.length, right.length);
+    int i = from;
+    while (i < length && left[i] == right[i]) {
+      i++;
+    }
+    return i - from;
+  }
+
+  private static int getNumGroups(int numEntries) {
+    return (numEntries + RESTART_INTERVAL - 1) / RESTART_INTERVAL;
+  }
+
+  @Override
+  public IndexBlockEncoding getIndexBlockEncoding() {
+    return IndexBlockEncoding.PREFIX_TREE;
+  }
+
+  @Override
+  public EncodedSeeker createSeeker() {
+    return new PrefixTreeEncodedSeeker();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName();
+  }
+
+  /**
+   * Read-only view over one prefix tree encoded index chunk. Does not hold any mutable state so a
+   * single instance can be shared by concurrent readers.
+   */
+  static final class EncodedChunk {
+    private final ByteBuff buf;
+    private final int numEntries;
+    private final int prefixOffset;
+    private final int prefixLength;
+    private final int numGroups;
+    private final int groupOffsetsPos;
+    private final int entriesPos;
+    private final int endPos;
+
+    /**
+     * @param buf    the buffer holding the chunk
+     * @param offset where the chunk starts in {@code buf}
+     */
+    EncodedChunk(ByteBuff buf, int offset) {
+      this.buf = buf;
+      this.numEntries = buf.getInt(offset);
+      // An empty chunk is made of the number of entries only.
+      this.prefixLength = numEntries == 0 ? 0 : buf.getInt(offset + Bytes.SIZEOF_INT);
+      this.prefixOffset = offset + 2 * Bytes.SIZEOF_INT;
+      this.numGroups = getNumGroups(numEntries);
+      this.groupOffsetsPos = prefixOffset + prefixLength;
+      this.entriesPos = groupOffsetsPos + (numGroups + 1) * Bytes.SIZEOF_INT;
+      this.endPos =
+        numEntries == 0 ? offset + Bytes.SIZEOF_INT : entriesPos + groupOffset(numGroups);
+    }
+
+    int getNumEntries() {
+      return numEntries;
+    }
+
+    /** Returns the position right after the encoded chunk. */
+    int getEndPosition() {
+      return endPos;
+    }
+
+    private int groupOffset(int group) {
+      return buf.getInt(groupOffsetsPos + group * Bytes.SIZEOF_INT);
+    }
+
+    Cursor cursor() {
+      return new Cursor();
+    }
+
+    /** Returns a copy of the i-th key or null if there is no such entry. */
+    byte[] getKey(int i) {
+      if (i < 0 || i >= numEntries) {
+        return null;
+      }
+      Cursor cursor = cursor();
+      cursor.seekToEntry(i);
+      return cursor.copyKey();
+    }
+
+    /**
+     * Finds the last entry whose key is less than or equal to the given key. The returned cursor is
+     * positioned on that entry and its {@link Cursor#nextKey} is filled in when there is a
+     * following entry in the chunk.
+     * @return the cursor or null if the key is before the first key of the chunk
+     */
+    Cursor locate(Cell key, CellComparator comparator, boolean ignoreMvcc) {
+      if (numEntries == 0) {
+        return null;
+      }
+      Cursor cursor = cursor();
+      // Binary search the restart keys for the last group starting at or before the key.
+      int low = 0;
+      int high = numGroups - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        cursor.seekToGroup(mid);
+        cursor.next();
+        if (cursor.compareTo(key, comparator, ignoreMvcc) >= 0) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      int group = low - 1;
+      if (group < 0) {
+        return null;
+      }
+
+      // Scan the group. The restart key is known to be less than or equal to the key and the
+      // restart key of the next group, if any, to be greater, so we decode at most one entry past
+      // the end of the group.
+      cursor.seekToGroup(group);
+      cursor.next();
+      while (cursor.index + 1 < numEntries) {
+        long offset = cursor.blockOffset;
+        int onDiskSize = cursor.onDiskSize;
+        cursor.next();
+        if (cursor.compareTo(key, comparator, ignoreMvcc) < 0) {
+          // We went one entry too far, step back keeping the key we just decoded as next key.
+          cursor.nextKey = cursor.copyKey();
+          cursor.index--;
+          cursor.blockOffset = offset;
+          cursor.onDiskSize = onDiskSize;
+          break;
+        }
+      }
+      return cursor;
+    }
+
+    /**
+     * Sequential decoder over the entries of the chunk. Decoded keys are reconstructed in a private
+     * buffer which is reused from one entry to the next.
+     */
+    final class Cursor {
+      private final ByteBuff in = buf.duplicate();
+      private final KeyValue.KeyOnlyKeyValue keyOnlyKeyValue = new KeyValue.KeyOnlyKeyValue();
+      private byte[] key = new byte[Math.max(64, prefixLength * 2)];
+      private int keyLength;
+      int index = -1;
+      long blockOffset;
+      int onDiskSize;
+      byte[] nextKey;
+
+      private Cursor() {
+        in.get(prefixOffset, key, 0, prefixLength);
+      }
+
+      void seekToGroup(int group) {
+        in.position(entriesPos + groupOffset(group));
+        index = group * RESTART_INTERVAL - 1;
+        keyLength = prefixLength;
+      }
+
+      void seekToEntry(int i) {
+        seekToGroup(i / RESTART_INTERVAL);
+        while (index < i) {
+          next();
+        }
+      }
+
+      void next() {
+        blockOffset = ByteBufferUtils.readVLong(in);
+        onDiskSize = (int) ByteBufferUtils.readVLong(in);
+        int shared = (int) ByteBufferUtils.readVLong(in);
+        int suffixLength = (int) ByteBufferUtils.readVLong(in);
+        int suffixOffset = prefixLength + shared;
+        keyLength = suffixOffset + suffixLength;
+        if (keyLength > key.length) {
+          byte[] newKey = new byte[Math.max(keyLength, key.length * 2)];
+          System.arraycopy(key, 0, newKey, 0, suffixOffset);
+          key = newKey;
+        }
+        in.get(key, suffixOffset, suffixLength);
+        index++;
+      }
+
+      /** Compares the given key to the key of the current entry. */
+      int compareTo(Cell other, CellComparator comparator, boolean ignoreMvcc) {
+        keyOnlyKeyValue.setKey(key, 0, keyLength);
+        // we have to compare in this order, because the comparator order
+        // has special logic when the 'left side' is a special key.
+        return ignoreMvcc
+          ? PrivateCellUtil.compareKeyIgnoresMvcc(comparator, other, keyOnlyKeyValue)
+          : comparator.compare(other, keyOnlyKeyValue);
+      }
+
+      byte[] copyKey() {
+        byte[] copy = new byte[keyLength];
+        System.arraycopy(key, 0, copy, 0, keyLength);
+        return copy;
+      }
+    }
+  }
+
+  protected static class PrefixTreeEncodedSeeker implements EncodedSeeker {
+
+    /** The root index block in its encoded form, copied out of the block. */
+    private byte[] rootBytes;
+    private EncodedChunk root;
+    private int rootCount = 0;
+    private ExtendedCell firstKey;
+
+    // Mid-key metadata.
+    protected long midLeafBlockOffset = -1;
+    protected int midLeafBlockOnDiskSize = -1;
+    protected int midKeyEntry = -1;
+
+    private CellComparator comparator;
+    protected int searchTreeLevel;
+
+    /** Pre-computed mid-key */
+    private AtomicReference<ExtendedCell> midKey = new AtomicReference<>();
+
+    @Override
+    public long heapSize() {
+      long heapSize = ClassSize.align(ClassSize.OBJECT);
+
+      // Mid-key metadata.
+      heapSize += MID_KEY_METADATA_SIZE;
+
+      if (rootBytes != null) {
+        heapSize += ClassSize.align(ClassSize.ARRAY + rootBytes.length);
+        // The chunk view and its buffer wrapper
+        heapSize +=
+          ClassSize.align(ClassSize.OBJECT + 2 * ClassSize.REFERENCE + 7 * Bytes.SIZEOF_INT)
+            + ClassSize.BYTE_BUFFER;
+      }
+      if (firstKey != null) {
+        heapSize += ClassSize.align(firstKey.heapSize());
+      }
+      // Add rootBytes, root, firstKey, comparator and the midkey atomicreference
+      heapSize += 5 * ClassSize.REFERENCE;
+      // Add rootCount and searchTreeLevel
+      heapSize += 2 * Bytes.SIZEOF_INT;
+
+      return ClassSize.align(heapSize);
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return rootCount == 0;
+    }
+
+    @Override
+    public ExtendedCell getRootBlockKey(int i) {
+      if (i == 0) {
+        return firstKey;
+      }
+      byte[] key = root.getKey(i);
+      if (key == null) {
+        throw new ArrayIndexOutOfBoundsException(i);
+      }
+      return new KeyValue.KeyOnlyKeyValue(key, 0, key.length);
+    }
+
+    @Override
+    public int getRootBlockCount() {
+      return rootCount;
+    }
+
+    @Override
+    public void initRootIndex(HFileBlock blk, int numEntries, CellComparator comparator,
+      int treeLevel) throws IOException {
+      this.comparator = comparator;
+      this.searchTreeLevel = treeLevel;
+
+      ByteBuff buf = blk.getBufferWithoutHeader();
+      EncodedChunk chunk = new EncodedChunk(buf, 0);
+      if (chunk.getNumEntries() != numEntries) {
+        throw new IOException("Root index block has " + chunk.getNumEntries()
+          + " entries but the trailer expects " + numEntries);
+      }
+      int end = chunk.getEndPosition();
+      rootBytes = buf.toBytes(0, end);
+      root = new EncodedChunk(new SingleByteBuff(ByteBuffer.wrap(rootBytes)), 0);
+      rootCount = numEntries;
+      if (rootCount > 0) {
+        byte[] key = root.getKey(0);
+        firstKey = new KeyValue.KeyOnlyKeyValue(key, 0, key.length);
+      }
+
+      if (buf.limit() - end < MID_KEY_METADATA_SIZE) {
+        // No mid-key metadata available.
+        return;
+      }
+      midLeafBlockOffset = buf.getLong(end);
+      midLeafBlockOnDiskSize = buf.getInt(end + Bytes.SIZEOF_LONG);
+      midKeyEntry = buf.getInt(end + Bytes.SIZEOF_LONG + Bytes.SIZEOF_INT);
+    }
+
+    @Override
+    public ExtendedCell midkey(HFile.CachingBlockReader cachingBlockReader) throws IOException {
+      if (rootCount == 0) {
+        throw new IOException("HFile empty");
+      }
+
+      ExtendedCell targetMidKey = this.midKey.get();
+      if (targetMidKey != null) {
+        return targetMidKey;
+      }
+
+      if (midLeafBlockOffset >= 0) {
+        if (cachingBlockReader == null) {
+          throw new IOException(
+            "Have to read the middle leaf block but " + "no block reader available");
+        }
+
+        // Caching, using pread, assuming this is not a compaction.
+        HFileBlock midLeafBlock = cachingBlockReader.readBlock(midLeafBlockOffset,
+          midLeafBlockOnDiskSize, true, true, false, true, BlockType.LEAF_INDEX, null);
+        try {
+          byte[] bytes =
+            new EncodedChunk(midLeafBlock.getBufferWithoutHeader(), 0).getKey(midKeyEntry);
+          assert bytes != null;
+          targetMidKey = new KeyValue.KeyOnlyKeyValue(bytes, 0, bytes.length);
+        } finally {
+          midLeafBlock.release();
+        }
+      } else {
+        // The middle of the root-level index.
+        targetMidKey = getRootBlockKey(rootCount / 2);
+      }
+
+      this.midKey.set(targetMidKey);
+      return targetMidKey;
+    }
+
+    @Override
+    public BlockWithScanInfo loadDataBlockWithScanInfo(ExtendedCell key, HFileBlock currentBlock,
+      boolean cacheBlocks, boolean pread, boolean isCompaction,
+      DataBlockEncoding expectedDataBlockEncoding, HFile.CachingBlockReader cachingBlockReader)
+      throws IOException {
+      EncodedChunk.Cursor rootCursor = root.locate(key, comparator, false);
+      if (rootCursor == null) {
+        return null;
+      }
+
+      // Read the next-level (intermediate or leaf) index block.
+      long currentOffset = rootCursor.blockOffset;
+      int currentOnDiskSize = rootCursor.onDiskSize;
+
+      // the next indexed key
+      ExtendedCell nextIndexedKey;
+      if (rootCursor.nextKey != null) {
+        nextIndexedKey =
+          new KeyValue.KeyOnlyKeyValue(rootCursor.nextKey, 0, rootCursor.nextKey.length);
+      } else {
+        nextIndexedKey = KeyValueScanner.NO_NEXT_INDEXED_KEY;
+      }
+
+      int lookupLevel = 1; // How many levels deep we are in our lookup.
+
+      HFileBlock block = null;
+      while (true) {
+        try {
+          // Must initialize it with null here, because if don't and once an exception happen in
+          // readBlock, then we'll release the previous assigned block twice in the finally block.
+          // (See HBASE-22422)
+          block = null;
+          if (currentBlock != null && currentBlock.getOffset() == currentOffset) {
+            // Avoid reading the same block again, even with caching turned off.
+            block = currentBlock;
+          } else {
+            // Call HFile's caching block reader API. We always cache index
+            // blocks, otherwise we might get terrible performance.
+            boolean shouldCache = cacheBlocks || (lookupLevel < searchTreeLevel);
+            BlockType expectedBlockType;
+            if (lookupLevel < searchTreeLevel - 1) {
+              expectedBlockType = BlockType.INTERMEDIATE_INDEX;
+            } else if (lookupLevel == searchTreeLevel - 1) {
+              expectedBlockType = BlockType.LEAF_INDEX;
+            } else {
+              // this also accounts for ENCODED_DATA
+              expectedBlockType = BlockType.DATA;
+            }
+            block = cachingBlockReader.readBlock(currentOffset, currentOnDiskSize, shouldCache,
+              pread, isCompaction, true, expectedBlockType, expectedDataBlockEncoding);
+          }
+
+          if (block == null) {
+            throw new IOException("Failed to read block at offset " + currentOffset
+              + ", onDiskSize=" + currentOnDiskSize);
+          }
+
+          // Found a data block, break the loop and check our level in the tree.
+          if (block.getBlockType().isData()) {
+            break;
+          }
+
+          // Not a data block. This must be a leaf-level or intermediate-level
+          // index block. We don't allow going deeper than searchTreeLevel.
+          if (++lookupLevel > searchTreeLevel) {
+            throw new IOException("Search Tree Level overflow: lookupLevel=" + lookupLevel
+              + ", searchTreeLevel=" + searchTreeLevel);
+          }
+
+          // Locate the entry corresponding to the given key in the non-root
+          // (leaf or intermediate-level) index block.
+          EncodedChunk.Cursor cursor =
+            new EncodedChunk(block.getBufferWithoutHeader(), 0).locate(key, comparator, true);
+          if (cursor == null) {
+            throw new IOException("The key " + CellUtil.getCellKeyAsString(key) + " is before the"
+              + " first key of the non-root index block " + block);
+          }
+
+          currentOffset = cursor.blockOffset;
+          currentOnDiskSize = cursor.onDiskSize;
+
+          // Only update next indexed key if there is a next indexed key in the current level
+          if (cursor.nextKey != null) {
+            nextIndexedKey = new KeyValue.KeyOnlyKeyValue(cursor.nextKey, 0, cursor.nextKey.length);
+          }
+        } finally {
+          if (block != null && !block.getBlockType().isData()) {
+            // Release the block immediately if it is not the data block
+            block.release();
+          }
+        }
+      }
+
+      if (lookupLevel != searchTreeLevel) {
+        assert block.getBlockType().isData();
+        // Though we have retrieved a data block we have found an issue
+        // in the retrieved data block. Hence returned the block so that
+        // the ref count can be decremented
+        if (block != null) {
+          block.release();
+        }
+        throw new IOException("Reached a data block at level " + lookupLevel
+          + " but the number of levels is " + searchTreeLevel);
+      }
+
+      // set the next indexed key for the current block.
+      return new BlockWithScanInfo(block, nextIndexedKey);
+    }
+
+    @Override
+    public int rootBlockContainingKey(Cell key) {
+      EncodedChunk.Cursor cursor = root.locate(key, comparator, false);
+      return cursor == null ? -1 : cursor.index;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append("size=" + rootCount).append("\n");
+      if (rootCount > 0) {
+        EncodedChunk.Cursor cursor = root.cursor();
+        cursor.seekToGroup(0);
+        for (int i = 0; i < rootCount; i++) {
+          cursor.next();
+          byte[] key = cursor.copyKey();
+          sb.append("key=").append(new KeyValue.KeyOnlyKeyValue(key, 0, key.length))
+            .append("\n  offset=").append(cursor.blockOffset)
+            .append(", dataSize=" + cursor.onDiskSize).append("\n");
+        }
+      }
+      return sb.toString();
+    }
+  }
+}
@@ -17,10 +17,12 @@
  */
 package org.apache.hadoop.hbase.io.hfile.bucket;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
@@ -42,6 +44,12 @@ import org.apache.hbase.thirdparty.org.apache.commons.collections4.map.LinkedMap
  * manages an array of buckets, each bucket is associated with a size and caches elements up to this
  * size. For a completely empty bucket, this size could be re-specified dynamically.
  * <p/>
+ * The allocator keeps a histogram of the sizes of the live blocks. From it,
+ * {@link #adaptBucketSizes()} can re-derive the bucket sizes which minimize the space lost to
+ * fragmentation. Bucket sizes which are no longer wanted are retired: they stop taking allocations
+ * and give their buckets back as these empty out, so the buckets migrate to the new sizes without a
+ * restart.
+ * <p/>
  * This class is not thread safe.
  */
 @InterfaceAudience.Private
@@ -175,6 +183,8 @@ public final class BucketAllocator {
     // only modified under synchronization, but also read outside it.
     private volatile long fragmentationBytes;
     private int sizeIndex;
+    // A retired bucket size takes no more allocations and gives its buckets away once empty.
+    private volatile boolean retired;
 
     BucketSizeInfo(int sizeIndex) {
       bucketList = new LinkedMap();
@@ -226,8 +236,10 @@ public final class BucketAllocator {
 
     public Bucket findAndRemoveCompletelyFreeBucket() {
       Bucket b = null;
-      assert bucketList.size() > 0;
-      if (bucketList.size() == 1) {
+      if (bucketList.size() == 0) {
+        return null;
+      }
+      if (bucketList.size() == 1 && !retired) {
         // So we never get complete starvation of a bucket for a size
         return null;
       }
@@ -258,6 +270,15 @@ public final class BucketAllocator {
       if (b.isCompletelyFree()) completelyFreeBuckets.put(b, b);
     }
 
+    boolean isRetired() {
+      return retired;
+    }
+
+    /** Returns true if this bucket size is retired and has given all its buckets away */
+    synchronized boolean isDrained() {
+      return retired && bucketList.isEmpty();
+    }
+
     public synchronized IndexStatistics statistics() {
       long free = 0, used = 0;
       int full = 0;
@@ -283,7 +304,7 @@ public final class BucketAllocator {
     @Override
     public String toString() {
       return MoreObjects.toStringHelper(this.getClass()).add("sizeIndex", sizeIndex)
-        .add("bucketSize", bucketSizes[sizeIndex]).toString();
+        .add("bucketSize", bucketSizes[sizeIndex]).add("retired", retired).toString();
     }
   }
 
@@ -301,8 +322,9 @@ public final class BucketAllocator {
    * Round up the given block size to bucket size, and get the corresponding BucketSizeInfo
    */
   public BucketSizeInfo roundUpToBucketSizeInfo(int blockSize) {
-    for (int i = 0; i < bucketSizes.length; ++i)
-      if (blockSize <= bucketSizes[i]) return bucketSizeInfos[i];
+    BucketSizeInfo[] infos = activeBucketSizeInfos;
+    for (int i = 0; i < infos.length; ++i)
+      if (blockSize <= bucketSizes[infos[i].sizeIndex()]) return infos[i];
     return null;
   }
 
@@ -311,14 +333,32 @@ public final class BucketAllocator {
    */
   static public final int FEWEST_ITEMS_IN_BUCKET = 4;
 
-  private final int[] bucketSizes;
+  /**
+   * The granularity, in bytes, of the block size histogram and of the adapted bucket sizes. Block
+   * offsets must stay multiples of it, see {@link BucketEntry}.
+   */
+  static final int SIZE_GRANULE = 256;
+
+  /**
+   * Adapted bucket sizes are only applied if they cut the space lost to fragmentation by at least
+   * this ratio, so that the buckets do not churn for marginal gains.
+   */
+  static final double MIN_ADAPTIVE_IMPROVEMENT = 0.1;
+
+  // Indexed by the sizeIndex of the buckets, retired sizes included. Both arrays are only replaced
+  // under the allocator lock, bucketSizes first, so readers never see a sizeIndex out of range.
+  private volatile int[] bucketSizes;
   private final int bigItemSize;
   // The capacity size for each bucket
   private final long bucketCapacity;
   private Bucket[] buckets;
-  private BucketSizeInfo[] bucketSizeInfos;
+  private volatile BucketSizeInfo[] bucketSizeInfos;
+  // The bucket sizes taking allocations, sorted by size
+  private volatile BucketSizeInfo[] activeBucketSizeInfos;
   private final long totalSize;
   private transient long usedSize = 0;
+  // Number of live blocks per size, in SIZE_GRANULE units rounded up
+  private final long[] liveBlockSizes;
 
   BucketAllocator(long availableSpace, int[] bucketSizes) throws BucketAllocatorException {
     this.bucketSizes = bucketSizes == null ? DEFAULT_BUCKET_SIZES : bucketSizes;
@@ -333,6 +373,8 @@ public final class BucketAllocator {
     for (int i = 0; i < this.bucketSizes.length; ++i) {
       bucketSizeInfos[i] = new BucketSizeInfo(i);
     }
+    activeBucketSizeInfos = bucketSizeInfos.clone();
+    liveBlockSizes = new long[toGranules(bigItemSize) + 1];
     for (int i = 0; i < buckets.length; ++i) {
       buckets[i] = new Bucket(bucketCapacity * i);
       bucketSizeInfos[i < this.bucketSizes.length ? i : this.bucketSizes.length - 1]
@@ -407,6 +449,7 @@ public final class BucketAllocator {
         reconfigured[bucketNo] = true;
       }
       if (buckets[bucketNo].addAllocation(foundOffset)) {
+        liveBlockSizes[toGranules(foundLen)]++;
         realCacheSize.add(foundLen);
         usedSize += buckets[bucketNo].getItemAllocationSize();
         bucketSizeInfos[bucketSizeIndex].blockAllocated(b);
@@ -466,11 +509,20 @@ public final class BucketAllocator {
     // Ask caller to free up space and try again!
     if (offset < 0) throw new CacheFullException(blockSize, bsi.sizeIndex());
     usedSize += bucketSizes[bsi.sizeIndex()];
+    liveBlockSizes[toGranules(blockSize)]++;
     return offset;
   }
 
   private Bucket grabGlobalCompletelyFreeBucket() {
-    for (BucketSizeInfo bsi : bucketSizeInfos) {
+    BucketSizeInfo[] infos = bucketSizeInfos;
+    // Take the buckets of the retired sizes first, they will not be used anymore.
+    for (BucketSizeInfo bsi : infos) {
+      if (bsi.isRetired()) {
+        Bucket b = bsi.findAndRemoveCompletelyFreeBucket();
+        if (b != null) return b;
+      }
+    }
+    for (BucketSizeInfo bsi : infos) {
       Bucket b = bsi.findAndRemoveCompletelyFreeBucket();
       if (b != null) return b;
     }
@@ -488,9 +540,200 @@ public final class BucketAllocator {
     Bucket targetBucket = buckets[bucketNo];
     bucketSizeInfos[targetBucket.sizeIndex()].freeBlock(targetBucket, offset, length);
     usedSize -= targetBucket.getItemAllocationSize();
+    liveBlockSizes[toGranules(length)]--;
     return targetBucket.getItemAllocationSize();
   }
 
+  private static int toGranules(int size) {
+    return (size + SIZE_GRANULE - 1) / SIZE_GRANULE;
+  }
+
+  /** Returns the sizes of the buckets taking allocations, in ascending order */
+  public int[] getActiveBucketSizes() {
+    BucketSizeInfo[] infos = activeBucketSizeInfos;
+    int[] sizes = new int[infos.length];
+    for (int i = 0; i < infos.length; i++) {
+      sizes[i] = bucketSizes[infos[i].sizeIndex()];
+    }
+    return sizes;
+  }
+
+  /** Returns a copy of the number of live blocks per size, in {@link #SIZE_GRANULE} units */
+  synchronized long[] getLiveBlockSizes() {
+    return liveBlockSizes.clone();
+  }
+
+  /**
+   * Re-derives the bucket sizes from the sizes of the live blocks, keeping the number of bucket
+   * sizes and the largest one, and switches to them if they cut the space lost to fragmentation by
+   * at least {@link #MIN_ADAPTIVE_IMPROVEMENT}.
+   * @return true if the bucket sizes changed
+   */
+  public boolean adaptBucketSizes() {
+    long[] histogram = getLiveBlockSizes();
+    int numSizes = activeBucketSizeInfos.length;
+    int[] current = getActiveBucketSizes();
+    int[] derived = deriveBucketSizes(histogram, numSizes, bigItemSize, bucketCapacity);
+    long currentCost = fragmentationCost(histogram, current, bucketCapacity);
+    long derivedCost = fragmentationCost(histogram, derived, bucketCapacity);
+    if (
+      Arrays.equals(current, derived) || derivedCost > currentCost * (1 - MIN_ADAPTIVE_IMPROVEMENT)
+    ) {
+      LOG.debug("Keeping bucket sizes {}, lost bytes {}; derived {} would lose {}",
+        Arrays.toString(current), currentCost, Arrays.toString(derived), derivedCost);
+      return false;
+    }
+    LOG.info("Switching bucket sizes from {} to {}, bytes lost to fragmentation from {} to {}",
+      Arrays.toString(current), Arrays.toString(derived), currentCost, derivedCost);
+    setBucketSizes(derived);
+    return true;
+  }
+
+  /**
+   * Makes the given sizes the ones taking allocations. Sizes which are not wanted anymore are
+   * retired, the buckets of a retired size are handed to the other sizes as they become completely
+   * free. New sizes reuse the index of a drained retired size if there is one.
+   */
+  synchronized void setBucketSizes(int[] newSizes) {
+    int[] sizes = bucketSizes.clone();
+    List<BucketSizeInfo> infos = new ArrayList<>(Arrays.asList(bucketSizeInfos));
+    BucketSizeInfo[] active = new BucketSizeInfo[newSizes.length];
+    boolean[] wanted = new boolean[sizes.length];
+    for (int n = 0; n < newSizes.length; n++) {
+      Preconditions.checkArgument(
+        newSizes[n] == bigItemSize
+          || (newSizes[n] < bigItemSize && newSizes[n] % SIZE_GRANULE == 0),
+        "Bad bucket size %s", newSizes[n]);
+      int index = -1;
+      for (int i = 0; i < sizes.length; i++) {
+        if (sizes[i] == newSizes[n]) {
+          index = i;
+          break;
+        }
+      }
+      if (index < 0) {
+        for (int i = 0; i < sizes.length; i++) {
+          if (!wanted[i] && infos.get(i).isDrained()) {
+            index = i;
+            break;
+          }
+        }
+      }
+      if (index < 0) {
+        index = sizes.length;
+        sizes = Arrays.copyOf(sizes, index + 1);
+        wanted = Arrays.copyOf(wanted, index + 1);
+        infos.add(new BucketSizeInfo(index));
+      }
+      sizes[index] = newSizes[n];
+      wanted[index] = true;
+      active[n] = infos.get(index);
+    }
+    int[] allSizes = sizes;
+    Arrays.sort(active, Comparator.comparingInt(bsi -> allSizes[bsi.sizeIndex()]));
+    this.bucketSizes = allSizes;
+    this.bucketSizeInfos = infos.toArray(new BucketSizeInfo[0]);
+    for (int i = 0; i < allSizes.length; i++) {
+      bucketSizeInfos[i].retired = !wanted[i];
+    }
+    this.activeBucketSizeInfos = active;
+  }
+
+  /**
+   * Computes the bucket sizes which lose the fewest bytes for the given live block sizes. The bytes
+   * lost by a block are the difference between its bucket size and its own size, plus its share of
+   * the remainder of the bucket capacity which its bucket size does not divide. The largest bucket
+   * size is always kept, so that every block which fitted before still fits.
+   * @param histogram      the number of live blocks per size, in {@link #SIZE_GRANULE} units
+   * @param numSizes       the number of bucket sizes to derive
+   * @param largestSize    the largest bucket size
+   * @param bucketCapacity the capacity of a bucket
+   * @return the bucket sizes, in ascending order, at most numSizes of them
+   */
+  static int[] deriveBucketSizes(long[] histogram, int numSizes, int largestSize,
+    long bucketCapacity) {
+    int largest = toGranules(largestSize);
+    // The distinct block sizes seen, the largest bucket size always being the last one.
+    int[] points = new int[largest + 1];
+    int n = 0;
+    for (int g = 1; g < largest && g < histogram.length; g++) {
+      if (histogram[g] > 0) {
+        points[n++] = g;
+      }
+    }
+    points[n++] = largest;
+    // Prefix sums of the counts and of the sizes, for the cost of a bucket size in O(1).
+    long[] counts = new long[n + 1];
+    long[] sizes = new long[n + 1];
+    for (int i = 0; i < n; i++) {
+      long count = points[i] < histogram.length ? histogram[points[i]] : 0;
+      counts[i + 1] = counts[i] + count;
+      sizes[i + 1] = sizes[i] + count * points[i];
+    }
+    int k = Math.min(numSizes, n);
+    // cost[j] is the least cost of covering points 0..j with the sizes chosen so far, the last of
+    // them being points[j]; from[s][j] the last point covered by the previous size.
+    long[] cost = new long[n];
+    int[][] from = new int[k][n];
+    for (int j = 0; j < n; j++) {
+      cost[j] = coverCost(points, counts, sizes, 0, j, bucketCapacity);
+      from[0][j] = -1;
+    }
+    for (int s = 1; s < k; s++) {
+      long[] next = new long[n];
+      Arrays.fill(next, Long.MAX_VALUE);
+      for (int j = s; j < n; j++) {
+        for (int i = s - 1; i < j; i++) {
+          long c = cost[i] + coverCost(points, counts, sizes, i + 1, j, bucketCapacity);
+          if (c < next[j]) {
+            next[j] = c;
+            from[s][j] = i;
+          }
+        }
+      }
+      cost = next;
+    }
+    int[] result = new int[k];
+    for (int s = k - 1, j = n - 1; s >= 0; j = from[s][j], s--) {
+      result[s] = points[j] * SIZE_GRANULE;
+    }
+    result[k - 1] = largestSize;
+    return result;
+  }
+
+  /** The bytes lost by the blocks of points[i..j] when stored in buckets of size points[j]. */
+  private static long coverCost(int[] points, long[] counts, long[] sizes, int i, int j,
+    long bucketCapacity) {
+    long count = counts[j + 1] - counts[i];
+    long size = (long) points[j] * SIZE_GRANULE;
+    long internal = (count * points[j] - (sizes[j + 1] - sizes[i])) * SIZE_GRANULE;
+    return internal + count * (bucketCapacity % size) / (bucketCapacity / size);
+  }
+
+  /**
+   * Returns the bytes the blocks of the histogram lose when stored in buckets of the given sizes,
+   * see {@link #deriveBucketSizes(long[], int, int, long)}.
+   */
+  static long fragmentationCost(long[] histogram, int[] bucketSizes, long bucketCapacity) {
+    long cost = 0;
+    int s = 0;
+    for (int g = 1; g < histogram.length; g++) {
+      if (histogram[g] == 0) {
+        continue;
+      }
+      long blockSize = (long) g * SIZE_GRANULE;
+      while (s < bucketSizes.length && bucketSizes[s] < blockSize) {
+        s++;
+      }
+      if (s == bucketSizes.length) {
+        break;
+      }
+      long size = bucketSizes[s];
+      cost += histogram[g] * (size - blockSize + (bucketCapacity % size) / (bucketCapacity / size));
+    }
+    return cost;
+  }
+
   public int sizeIndexOfAllocation(long offset) {
     int bucketNo = (int) (offset / bucketCapacity);
     assert bucketNo >= 0 && bucketNo < buckets.length;
@@ -527,7 +770,7 @@ public final class BucketAllocator {
    * 3. Memory waste, because a bucket's itemSize is not a perfect divisor of bucketCapacity. see
    * {@link #wastedBytes()} for details.<br>
    */
-  static class IndexStatistics {
+  public static class IndexStatistics {
     private long freeCount, usedCount, itemSize, totalCount, wastedBytes, fragmentationBytes;
     private int fullBuckets, completelyFreeBuckets;
 
@@ -687,11 +930,18 @@ public final class BucketAllocator {
     return stats;
   }
 
-  IndexStatistics[] getIndexStatistics() {
-    IndexStatistics[] stats = new IndexStatistics[bucketSizes.length];
-    for (int i = 0; i < stats.length; ++i)
-      stats[i] = bucketSizeInfos[i].statistics();
-    return stats;
+  /**
+   * Returns the statistics of the bucket sizes taking allocations, and of the retired ones still
+   * holding buckets.
+   */
+  public IndexStatistics[] getIndexStatistics() {
+    List<IndexStatistics> stats = new ArrayList<>();
+    for (BucketSizeInfo bsi : bucketSizeInfos) {
+      if (!bsi.isDrained()) {
+        stats.add(bsi.statistics());
+      }
+    }
+    return stats.toArray(new IndexStatistics[0]);
   }
 
   public int getBucketIndex(long offset) {
@@ -718,8 +968,9 @@ public final class BucketAllocator {
 
     for (int i = 0; i < buckets.length; i++) {
       if (!excludedBuckets.contains(i) && !buckets[i].isUninstantiated() &&
-      // Avoid the buckets that are the only buckets for a sizeIndex
-        bucketSizeInfos[buckets[i].sizeIndex()].bucketList.size() != 1
+      // Avoid the buckets that are the only buckets for a sizeIndex still in use
+        (bucketSizeInfos[buckets[i].sizeIndex()].bucketList.size() != 1
+          || bucketSizeInfos[buckets[i].sizeIndex()].isRetired())
       ) {
         queue.add(i);
       }
@@ -32,7 +32,6 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableSet;
 import java.util.Optional;
 import java.util.PriorityQueue;
 import java.util.Set;
@@ -40,11 +39,11 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
@@ -128,6 +127,59 @@ public class BucketCache implements BlockCache, HeapSize {
   static final String BACKING_MAP_PERSISTENCE_CHUNK_SIZE =
     "hbase.bucketcache.persistence.chunksize";
 
+  /**
+   * Use a {@link CompactBackingMap} instead of a {@link ConcurrentHashMap} as backing map, to cut
+   * the per block heap overhead of large caches.
+   */
+  static final String BACKING_MAP_COMPACT_KEY = "hbase.bucketcache.backingmap.compact";
+  static final boolean BACKING_MAP_COMPACT_DEFAULT = false;
+
+  /**
+   * Put a TinyLFU admission filter in front of the cache writes: once the cache is full, a block is
+   * only admitted when its estimated recent access frequency reaches
+   * {@link #ADMISSION_MIN_FREQUENCY_KEY}, so one-hit-wonders of large scans and compaction
+   * triggered prefetches do not flush the hot working set out. In-memory blocks are always
+   * admitted.
+   */
+  static final String ADMISSION_FILTER_KEY = "hbase.bucketcache.admission.filter.enabled";
+  static final boolean ADMISSION_FILTER_DEFAULT = false;
+  static final String ADMISSION_MIN_FREQUENCY_KEY = "hbase.bucketcache.admission.min.frequency";
+  static final int ADMISSION_MIN_FREQUENCY_DEFAULT = 2;
+
+  /**
+   * Periodically re-derive the bucket sizes from the sizes of the cached blocks, see
+   * {@link BucketAllocator#adaptBucketSizes()}. Not supported with a persistent cache, as the
+   * bucket sizes are taken from the configuration when the cache is restored.
+   */
+  static final String ADAPTIVE_BUCKET_SIZES_KEY = "hbase.bucketcache.bucket.sizes.adaptive";
+  static final boolean ADAPTIVE_BUCKET_SIZES_DEFAULT = false;
+  /** Seconds between two derivations of the bucket sizes. */
+  static final String ADAPTIVE_BUCKET_SIZES_PERIOD_KEY =
+    "hbase.bucketcache.bucket.sizes.adaptive.period";
+  static final int ADAPTIVE_BUCKET_SIZES_PERIOD_DEFAULT = 10 * 60;
+
+  /**
+   * Checkpoint a persistent file cache by appending the blocks cached and evicted since the
+   * previous checkpoint to a log, instead of rewriting the whole backing map every time. See
+   * {@link BucketCachePersistenceLog}.
+   */
+  static final String PERSISTENCE_LOG_KEY = "hbase.bucketcache.persistence.log.enabled";
+  static final boolean PERSISTENCE_LOG_DEFAULT = false;
+  /**
+   * The log is compacted into a new snapshot once it holds more changed blocks than this ratio of
+   * the number of cached blocks.
+   */
+  static final String PERSISTENCE_LOG_COMPACTION_RATIO_KEY =
+    "hbase.bucketcache.persistence.log.compaction.ratio";
+  static final float PERSISTENCE_LOG_COMPACTION_RATIO_DEFAULT = 0.5f;
+
+  /**
+   * Serve the blocks of a persistent file cache as soon as their entries are retrieved, instead of
+   * missing until the whole backing map has been retrieved. Blocks are not cached until then.
+   */
+  static final String LAZY_RETRIEVAL_KEY = "hbase.bucketcache.persistence.lazy.retrieval";
+  static final boolean LAZY_RETRIEVAL_DEFAULT = false;
+
   /** Use strong reference for offsetLock or not */
   private static final String STRONG_REF_KEY = "hbase.bucketcache.offsetlock.usestrongref";
   private static final boolean STRONG_REF_DEFAULT = false;
@@ -223,6 +275,16 @@ public class BucketCache implements BlockCache, HeapSize {
   /** Cache access count (sequential ID) */
   private final AtomicLong accessCount = new AtomicLong();
 
+  /** Number of reads from the IOEngine in flight */
+  private final AtomicInteger ioReadsInFlight = new AtomicInteger();
+
+  /** Access frequencies of the blocks, null when the admission filter is disabled */
+  final FrequencySketch frequencySketch;
+  private final int admissionMinFrequency;
+  /** Null unless {@link #PERSISTENCE_LOG_KEY} is set for a persistent file cache. */
+  final BucketCachePersistenceLog persistenceLog;
+  private final boolean lazyRetrieval;
+
   private static final int DEFAULT_CACHE_WAIT_TIME = 50;
 
   private final BucketCacheStats cacheStats = new BucketCacheStats();
@@ -250,8 +312,7 @@ public class BucketCache implements BlockCache, HeapSize {
    */
   transient final IdReadWriteLock<Long> offsetLock;
 
-  NavigableSet<BlockCacheKey> blocksByHFile = new ConcurrentSkipListSet<>(
-    Comparator.comparing(BlockCacheKey::getHfileName).thenComparingLong(BlockCacheKey::getOffset));
+  final FileBlockIndex blocksByHFile = new FileBlockIndex();
 
   /** Statistics thread schedule pool (for heavy debugging, could remove) */
   private transient final ScheduledExecutorService scheduleThreadPool =
@@ -381,9 +442,28 @@ public class BucketCache implements BlockCache, HeapSize {
     assert writerQueues.size() == writerThreads.length;
     this.ramCache = new RAMCache();
 
-    this.backingMap = new ConcurrentHashMap<>((int) blockNumCapacity);
+    this.backingMap = conf.getBoolean(BACKING_MAP_COMPACT_KEY, BACKING_MAP_COMPACT_DEFAULT)
+      ? new CompactBackingMap((int) blockNumCapacity)
+      : new ConcurrentHashMap<>((int) blockNumCapacity);
+    this.frequencySketch = conf.getBoolean(ADMISSION_FILTER_KEY, ADMISSION_FILTER_DEFAULT)
+      ? new FrequencySketch(blockNumCapacity)
+      : null;
+    this.admissionMinFrequency =
+      conf.getInt(ADMISSION_MIN_FREQUENCY_KEY, ADMISSION_MIN_FREQUENCY_DEFAULT);
     instantiateWriterThreads();
 
+    // Only the file ioengine checks the blocks read against their entries, and is checkpointed.
+    boolean persistentFileCache = isCachePersistent() && ioEngine instanceof FileIOEngine;
+    this.persistenceLog =
+      persistentFileCache && conf.getBoolean(PERSISTENCE_LOG_KEY, PERSISTENCE_LOG_DEFAULT)
+        ? new BucketCachePersistenceLog(this, persistencePath,
+          conf.getFloat(PERSISTENCE_LOG_COMPACTION_RATIO_KEY,
+            PERSISTENCE_LOG_COMPACTION_RATIO_DEFAULT),
+          persistenceChunkSize)
+        : null;
+    this.lazyRetrieval =
+      persistentFileCache && conf.getBoolean(LAZY_RETRIEVAL_KEY, LAZY_RETRIEVAL_DEFAULT);
+
     if (isCachePersistent()) {
       if (ioEngine instanceof FileIOEngine) {
         startBucketCachePersisterThread();
@@ -400,12 +480,35 @@ public class BucketCache implements BlockCache, HeapSize {
     // every five minutes.
     this.scheduleThreadPool.scheduleAtFixedRate(new StatisticsThread(this), statThreadPeriod,
       statThreadPeriod, TimeUnit.SECONDS);
+    if (conf.getBoolean(ADAPTIVE_BUCKET_SIZES_KEY, ADAPTIVE_BUCKET_SIZES_DEFAULT)) {
+      if (isCachePersistent()) {
+        LOG.warn("Adaptive bucket sizes are not supported with a persistent cache, ignoring {}",
+          ADAPTIVE_BUCKET_SIZES_KEY);
+      } else {
+        int period =
+          conf.getInt(ADAPTIVE_BUCKET_SIZES_PERIOD_KEY, ADAPTIVE_BUCKET_SIZES_PERIOD_DEFAULT);
+        this.scheduleThreadPool.scheduleAtFixedRate(this::adaptBucketSizes, period, period,
+          TimeUnit.SECONDS);
+      }
+    }
     LOG.info("Started bucket cache; ioengine=" + ioEngineName + ", capacity="
       + StringUtils.byteDesc(capacity) + ", blockSize=" + StringUtils.byteDesc(blockSize)
       + ", writerThreadNum=" + writerThreadNum + ", writerQLen=" + writerQLen + ", persistencePath="
       + persistencePath + ", bucketAllocator=" + BucketAllocator.class.getName());
   }
 
+  void adaptBucketSizes() {
+    if (!isCacheInitialized("BucketCache::adaptBucketSizes")) {
+      return;
+    }
+    try {
+      bucketAllocator.adaptBucketSizes();
+    } catch (Throwable t) {
+      // Do not let an exception cancel the scheduled derivations
+      LOG.warn("Failed to adapt the bucket sizes", t);
+    }
+  }
+
   private void startPersistenceRetriever(int[] bucketSizes, long capacity) {
     Runnable persistentCacheRetriever = () -> {
       try {
@@ -486,6 +589,14 @@ public class BucketCache implements BlockCache, HeapSize {
     return this.cacheState == CacheState.ENABLED;
   }
 
+  /**
+   * Whether blocks can be read, which with {@link #LAZY_RETRIEVAL_KEY} is already the case while
+   * the backing map is being retrieved.
+   */
+  private boolean isCacheReadable() {
+    return isCacheEnabled() || (lazyRetrieval && cacheState == CacheState.INITIALIZING);
+  }
+
   @Override
   public long getMaxSize() {
     return this.cacheCapacity;
@@ -582,12 +693,30 @@ public class BucketCache implements BlockCache, HeapSize {
           }
           cacheBlockWithWaitInternal(cacheKey, cachedItem, inMemory, wait);
         }
-      } else {
+      } else if (shouldAdmit(cacheKey, inMemory)) {
         cacheBlockWithWaitInternal(cacheKey, cachedItem, inMemory, wait);
       }
     }
   }
 
+  /**
+   * Decides whether a block which is not in the cache yet should be cached, see
+   * {@link #ADMISSION_FILTER_KEY}. Blocks are always admitted until the cache fills up to the
+   * minimum size freeSpace brings it back to, as until then caching a block evicts nothing.
+   */
+  private boolean shouldAdmit(BlockCacheKey cacheKey, boolean inMemory) {
+    if (
+      frequencySketch == null || inMemory || bucketAllocator.getUsedSize() < getPartitionSize(1.0f)
+    ) {
+      return true;
+    }
+    if (frequencySketch.frequency(cacheKey) >= admissionMinFrequency) {
+      return true;
+    }
+    cacheStats.admissionRejected();
+    return false;
+  }
+
   protected boolean shouldReplaceExistingCacheBlock(BlockCacheKey cacheKey, Cacheable newBlock) {
     return BlockCacheUtil.shouldReplaceExistingCacheBlock(this, cacheKey, newBlock);
   }
@@ -671,10 +800,13 @@ public class BucketCache implements BlockCache, HeapSize {
   @Override
   public Cacheable getBlock(BlockCacheKey key, boolean caching, boolean repeat,
     boolean updateCacheMetrics) {
-    if (!isCacheEnabled()) {
+    if (!isCacheReadable()) {
       cacheStats.miss(caching, key.isPrimary(), key.getBlockType());
       return null;
     }
+    if (frequencySketch != null && !repeat) {
+      frequencySketch.increment(key);
+    }
     RAMQueueEntry re = ramCache.get(key);
     if (re != null) {
       if (updateCacheMetrics) {
@@ -701,33 +833,18 @@ public class BucketCache implements BlockCache, HeapSize {
           // Read the block from IOEngine based on the bucketEntry's offset and length, NOTICE: the
           // block will use the refCnt of bucketEntry, which means if two HFileBlock mapping to
           // the same BucketEntry, then all of the three will share the same refCnt.
-          Cacheable cachedBlock = ioEngine.read(bucketEntry);
-          if (ioEngine.usesSharedMemory()) {
-            // If IOEngine use shared memory, cachedBlock and BucketEntry will share the
-            // same RefCnt, do retain here, in order to count the number of RPC references
-            cachedBlock.retain();
-          }
-          // Update the cache statistics.
-          if (updateCacheMetrics) {
-            cacheStats.hit(caching, key.isPrimary(), key.getBlockType());
-            cacheStats.ioHit(System.nanoTime() - start);
-          }
-          bucketEntry.access(accessCount.incrementAndGet());
-          if (this.ioErrorStartTime > 0) {
-            ioErrorStartTime = -1;
+          int queueDepth = ioReadsInFlight.incrementAndGet();
+          Cacheable cachedBlock;
+          try {
+            cachedBlock = ioEngine.read(bucketEntry);
+          } finally {
+            ioReadsInFlight.decrementAndGet();
           }
-          return cachedBlock;
+          cacheStats.ioRead(queueDepth, System.nanoTime() - start);
+          return blockRead(key, bucketEntry, cachedBlock, caching, updateCacheMetrics, start);
         }
-      } catch (HBaseIOException hioex) {
-        // When using file io engine persistent cache,
-        // the cache map state might differ from the actual cache. If we reach this block,
-        // we should remove the cache key entry from the backing map
-        backingMap.remove(key);
-        fullyCachedFiles.remove(key.getHfileName());
-        LOG.debug("Failed to fetch block for cache key: {}.", key, hioex);
       } catch (IOException ioex) {
-        LOG.error("Failed reading block " + key + " from bucket cache", ioex);
-        checkIOErrorIsTolerated();
+        readFailed(key, ioex);
       } finally {
         lock.readLock().unlock();
       }
@@ -738,6 +855,47 @@ public class BucketCache implements BlockCache, HeapSize {
     return null;
   }
 
+  /**
+   * Called, with the offset lock of the bucket entry held, once its block has been read from the
+   * IOEngine.
+   * @return the block to hand out to the caller
+   */
+  private Cacheable blockRead(BlockCacheKey key, BucketEntry bucketEntry, Cacheable cachedBlock,
+    boolean caching, boolean updateCacheMetrics, long start) {
+    if (ioEngine.usesSharedMemory()) {
+      // If IOEngine use shared memory, cachedBlock and BucketEntry will share the
+      // same RefCnt, do retain here, in order to count the number of RPC references
+      cachedBlock.retain();
+    }
+    // Update the cache statistics.
+    if (updateCacheMetrics) {
+      cacheStats.hit(caching, key.isPrimary(), key.getBlockType());
+      cacheStats.ioHit(System.nanoTime() - start);
+    }
+    bucketEntry.access(accessCount.incrementAndGet());
+    if (this.ioErrorStartTime > 0) {
+      ioErrorStartTime = -1;
+    }
+    return cachedBlock;
+  }
+
+  private void readFailed(BlockCacheKey key, IOException ioex) {
+    if (ioex instanceof HBaseIOException) {
+      // When using file io engine persistent cache,
+      // the cache map state might differ from the actual cache. If we reach this block,
+      // we should remove the cache key entry from the backing map
+      backingMap.remove(key);
+      fullyCachedFiles.remove(key.getHfileName());
+      if (persistenceLog != null) {
+        persistenceLog.blockChanged(key);
+      }
+      LOG.debug("Failed to fetch block for cache key: {}.", key, ioex);
+    } else {
+      LOG.error("Failed reading block " + key + " from bucket cache", ioex);
+      checkIOErrorIsTolerated();
+    }
+  }
+
   /**
    * This method is invoked after the bucketEntry is removed from {@link BucketCache#backingMap}
    */
@@ -757,6 +915,9 @@ public class BucketCache implements BlockCache, HeapSize {
     if (ioEngine.isPersistent()) {
       setCacheInconsistent(true);
     }
+    if (persistenceLog != null) {
+      persistenceLog.blockChanged(cacheKey);
+    }
   }
 
   private void fileNotFullyCached(String hfileName) {
@@ -964,7 +1125,8 @@ public class BucketCache implements BlockCache, HeapSize {
       + StringUtils.byteDesc(cacheSize) + ", " + "accesses=" + cacheStats.getRequestCount() + ", "
       + "hits=" + cacheStats.getHitCount() + ", " + "IOhitsPerSecond="
       + cacheStats.getIOHitsPerSecond() + ", " + "IOTimePerHit="
-      + String.format("%.2f", cacheStats.getIOTimePerHit()) + ", " + "hitRatio="
+      + String.format("%.2f", cacheStats.getIOTimePerHit()) + ", " + "evictionTimePerFile="
+      + String.format("%.2f", cacheStats.getEvictionTimePerFile()) + ", " + "hitRatio="
       + (cacheStats.getHitCount() == 0
         ? "0,"
         : (StringUtils.formatPercent(cacheStats.getHitRatio(), 2) + ", "))
@@ -1287,6 +1449,9 @@ public class BucketCache implements BlockCache, HeapSize {
   protected void putIntoBackingMap(BlockCacheKey key, BucketEntry bucketEntry) {
     BucketEntry previousEntry = backingMap.put(key, bucketEntry);
     blocksByHFile.add(key);
+    if (persistenceLog != null) {
+      persistenceLog.blockChanged(key);
+    }
     updateRegionCachedSize(key.getFilePath(), bucketEntry.getLength());
     if (previousEntry != null && previousEntry != bucketEntry) {
       previousEntry.withWriteLock(offsetLock, () -> {
@@ -1479,21 +1644,26 @@ public class BucketCache implements BlockCache, HeapSize {
   }
 
   /**
+   * @return true if the new persistence file replaced the previous one
    * @see #retrieveFromFile(int[])
    */
   @edu.umd.cs.findbugs.annotations.SuppressWarnings(value = "OBL_UNSATISFIED_OBLIGATION",
       justification = "false positive, try-with-resources ensures close is called.")
-  void persistToFile() throws IOException {
+  boolean persistToFile() throws IOException {
     LOG.debug("Thread {} started persisting bucket cache to file",
       Thread.currentThread().getName());
     if (!isCachePersistent()) {
       throw new IOException("Attempt to persist non-persistent cache mappings!");
     }
-    File tempPersistencePath = new File(persistencePath + EnvironmentEdgeManager.currentTime());
+    long persistenceId = EnvironmentEdgeManager.currentTime();
+    File tempPersistencePath = new File(persistencePath + persistenceId);
+    if (persistenceLog != null) {
+      persistenceLog.snapshotStarted();
+    }
     try (FileOutputStream fos = new FileOutputStream(tempPersistencePath, false)) {
       LOG.debug("Persist in new chunked persistence format.");
 
-      persistChunkedBackingMap(fos);
+      persistChunkedBackingMap(fos, persistenceId);
 
       LOG.debug(
         "PersistToFile: after persisting backing map size: {}, fullycachedFiles size: {},"
@@ -1511,7 +1681,28 @@ public class BucketCache implements BlockCache, HeapSize {
     if (!tempPersistencePath.renameTo(new File(persistencePath))) {
       LOG.warn("Failed to commit cache persistent file. We might lose cached blocks if "
         + "RS crashes/restarts before we successfully checkpoint again.");
+      return false;
+    }
+    if (persistenceLog != null) {
+      persistenceLog.snapshotWritten(persistenceId);
+    }
+    return true;
+  }
+
+  /**
+   * Persists the changes of the backing map since the previous checkpoint, see
+   * {@link BucketCachePersister}.
+   * @return true if the changes were persisted, false if they still have to be, as when the cache
+   *         is still initializing with a persistence log
+   */
+  boolean checkpoint() throws IOException {
+    if (persistenceLog == null) {
+      return persistToFile();
+    }
+    if (cacheState == CacheState.INITIALIZING) {
+      return false;
     }
+    return persistenceLog.checkpoint();
   }
 
   public boolean isCachePersistent() {
@@ -1602,11 +1793,10 @@ public class BucketCache implements BlockCache, HeapSize {
     }
   }
 
-  private void verifyFileIntegrity(BucketCacheProtos.BucketCacheEntry proto) {
+  private void verifyFileIntegrity(byte[] checksum) {
     try {
-      if (proto.hasChecksum()) {
-        ((PersistentIOEngine) ioEngine).verifyFileIntegrity(proto.getChecksum().toByteArray(),
-          algorithm);
+      if (checksum != null) {
+        ((PersistentIOEngine) ioEngine).verifyFileIntegrity(checksum, algorithm);
       }
       backingMapValidated.set(true);
     } catch (IOException e) {
@@ -1645,37 +1835,46 @@ public class BucketCache implements BlockCache, HeapSize {
   }
 
   private void updateCacheIndex(BucketCacheProtos.BackingMap chunk,
-    java.util.Map<java.lang.Integer, java.lang.String> deserializer) throws IOException {
-    Pair<ConcurrentHashMap<BlockCacheKey, BucketEntry>, NavigableSet<BlockCacheKey>> pair2 =
+    java.util.Map<java.lang.Integer, java.lang.String> deserializer, Set<BlockCacheKey> changedKeys)
+    throws IOException {
+    ConcurrentHashMap<BlockCacheKey, BucketEntry> entries =
       BucketProtoUtils.fromPB(deserializer, chunk, this::createRecycler);
-    backingMap.putAll(pair2.getFirst());
-    blocksByHFile.addAll(pair2.getSecond());
+    // The blocks changed by the persistence log are put once it has been applied
+    entries.keySet().removeAll(changedKeys);
+    backingMap.putAll(entries);
+    entries.keySet().forEach(blocksByHFile::add);
   }
 
   private void parsePB(BucketCacheProtos.BucketCacheEntry proto) throws IOException {
-    Pair<ConcurrentHashMap<BlockCacheKey, BucketEntry>, NavigableSet<BlockCacheKey>> pair =
-      BucketProtoUtils.fromPB(proto.getDeserializersMap(), proto.getBackingMap(),
-        this::createRecycler);
-    backingMap = pair.getFirst();
-    blocksByHFile = pair.getSecond();
+    ConcurrentHashMap<BlockCacheKey, BucketEntry> entries = BucketProtoUtils
+      .fromPB(proto.getDeserializersMap(), proto.getBackingMap(), this::createRecycler);
+    if (backingMap instanceof CompactBackingMap) {
+      backingMap.clear();
+      backingMap.putAll(entries);
+    } else {
+      backingMap = entries;
+    }
+    blocksByHFile.clear();
+    entries.keySet().forEach(blocksByHFile::add);
     fullyCachedFiles.clear();
     fullyCachedFiles.putAll(BucketProtoUtils.fromPB(proto.getCachedFilesMap()));
 
     LOG.info("After retrieval Backing map size: {}, fullyCachedFiles size: {}", backingMap.size(),
       fullyCachedFiles.size());
 
-    verifyFileIntegrity(proto);
+    verifyFileIntegrity(proto.hasChecksum() ? proto.getChecksum().toByteArray() : null);
     updateRegionSizeMapWhileRetrievingFromFile();
     verifyCapacityAndClasses(proto.getCacheCapacity(), proto.getIoClass(), proto.getMapClass());
   }
 
-  private void persistChunkedBackingMap(FileOutputStream fos) throws IOException {
+  private void persistChunkedBackingMap(FileOutputStream fos, long persistenceId)
+    throws IOException {
     LOG.debug(
       "persistToFile: before persisting backing map size: {}, "
         + "fullycachedFiles size: {}, chunkSize: {}",
       backingMap.size(), fullyCachedFiles.size(), persistenceChunkSize);
 
-    BucketProtoUtils.serializeAsPB(this, fos, persistenceChunkSize);
+    BucketProtoUtils.serializeAsPB(this, fos, persistenceChunkSize, persistenceId);
 
     LOG.debug(
       "persistToFile: after persisting backing map size: {}, " + "fullycachedFiles size: {}",
@@ -1687,9 +1886,17 @@ public class BucketCache implements BlockCache, HeapSize {
     // Read the first chunk that has all the details.
     BucketCacheProtos.BucketCacheEntry cacheEntry =
       BucketCacheProtos.BucketCacheEntry.parseDelimitedFrom(in);
+    // Verified up front, as with lazy retrieval the entries are read as soon as they are put.
+    verifyCapacityAndClasses(cacheEntry.getCacheCapacity(), cacheEntry.getIoClass(),
+      cacheEntry.getMapClass());
+
+    // The log is read first, so no entry it changed is ever visible in its stale snapshot state.
+    BucketCachePersistenceLog.Replay logReplay =
+      BucketCachePersistenceLog.replay(persistencePath, cacheEntry, this::createRecycler);
 
     fullyCachedFiles.clear();
-    fullyCachedFiles.putAll(BucketProtoUtils.fromPB(cacheEntry.getCachedFilesMap()));
+    fullyCachedFiles.putAll(BucketProtoUtils.fromPB(
+      logReplay.cachedFiles != null ? logReplay.cachedFiles : cacheEntry.getCachedFilesMap()));
 
     backingMap.clear();
     blocksByHFile.clear();
@@ -1698,14 +1905,22 @@ public class BucketCache implements BlockCache, HeapSize {
     int numChunks = 0;
     while (in.available() > 0) {
       updateCacheIndex(BucketCacheProtos.BackingMap.parseDelimitedFrom(in),
-        cacheEntry.getDeserializersMap());
+        cacheEntry.getDeserializersMap(), logReplay.changes.keySet());
       numChunks++;
     }
+    logReplay.changes.forEach((key, entry) -> {
+      if (entry != null) {
+        backingMap.put(key, entry);
+        blocksByHFile.add(key);
+      }
+    });
 
     LOG.info("Retrieved {} of chunks with blockCount = {}.", numChunks, backingMap.size());
-    verifyFileIntegrity(cacheEntry);
-    verifyCapacityAndClasses(cacheEntry.getCacheCapacity(), cacheEntry.getIoClass(),
-      cacheEntry.getMapClass());
+    if (logReplay.numRecords > 0) {
+      verifyFileIntegrity(logReplay.checksum);
+    } else {
+      verifyFileIntegrity(cacheEntry.hasChecksum() ? cacheEntry.getChecksum().toByteArray() : null);
+    }
     updateRegionSizeMapWhileRetrievingFromFile();
   }
 
@@ -1858,22 +2073,23 @@ public class BucketCache implements BlockCache, HeapSize {
 
   @Override
   public int evictBlocksRangeByHfileName(String hfileName, long initOffset, long endOffset) {
+    long start = System.nanoTime();
     fileNotFullyCached(hfileName);
-    Set<BlockCacheKey> keySet = getAllCacheKeysForFile(hfileName, initOffset, endOffset);
-    LOG.debug("found {} blocks for file {}, starting offset: {}, end offset: {}", keySet.size(),
+    List<BlockCacheKey> keys = getAllCacheKeysForFile(hfileName, initOffset, endOffset);
+    LOG.debug("found {} blocks for file {}, starting offset: {}, end offset: {}", keys.size(),
       hfileName, initOffset, endOffset);
     int numEvicted = 0;
-    for (BlockCacheKey key : keySet) {
+    for (BlockCacheKey key : keys) {
       if (evictBlock(key)) {
         ++numEvicted;
       }
     }
+    cacheStats.evictedByFile(System.nanoTime() - start);
     return numEvicted;
   }
 
-  private Set<BlockCacheKey> getAllCacheKeysForFile(String hfileName, long init, long end) {
-    return blocksByHFile.subSet(new BlockCacheKey(hfileName, init), true,
-      new BlockCacheKey(hfileName, end), true);
+  private List<BlockCacheKey> getAllCacheKeysForFile(String hfileName, long init, long end) {
+    return blocksByHFile.getBlocks(hfileName, init, end);
   }
 
   /**
@@ -2283,7 +2499,7 @@ public class BucketCache implements BlockCache, HeapSize {
     try {
       final MutableInt count = new MutableInt();
       LOG.debug("iterating over {} entries in the backing map", backingMap.size());
-      Set<BlockCacheKey> result = getAllCacheKeysForFile(fileName.getName(), 0, Long.MAX_VALUE);
+      List<BlockCacheKey> result = getAllCacheKeysForFile(fileName.getName(), 0, Long.MAX_VALUE);
       if (result.isEmpty() && StoreFileInfo.isReference(fileName)) {
         result = getAllCacheKeysForFile(
           StoreFileInfo.getReferredToRegionAndFile(fileName.getName()).getSecond(), 0,
@@ -2299,7 +2515,6 @@ public class BucketCache implements BlockCache, HeapSize {
           count.increment();
         }
       });
-      int metaCount = totalBlockCount - dataBlockCount;
       // BucketCache would only have data blocks
       if (dataBlockCount == count.getValue()) {
         LOG.debug("File {} has now been fully cached.", fileName);
@@ -2319,10 +2534,7 @@ public class BucketCache implements BlockCache, HeapSize {
             + "and try the verification again.", fileName);
           Thread.sleep(100);
           notifyFileCachingCompleted(fileName, totalBlockCount, dataBlockCount, size);
-        } else if (
-          (getAllCacheKeysForFile(fileName.getName(), 0, Long.MAX_VALUE).size() - metaCount)
-              == dataBlockCount
-        ) {
+        } else if (blocksByHFile.getBlockCount(fileName.getName()) == totalBlockCount) {
           LOG.debug("We counted {} data blocks, expected was {}, there was no more pending in "
             + "the cache write queue but we now found that total cached blocks for file {} "
             + "is equal to data block count.", count, dataBlockCount, fileName.getName());
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator.Recycler;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.protobuf.ByteString;
+
+import org.apache.hadoop.hbase.shaded.protobuf.generated.BucketCacheProtos;
+
+/**
+ * Incremental persistence of the {@link BucketCache} backing map. Rewriting the whole backing map
+ * on every checkpoint costs time and IO proportional to the size of the cache, however few blocks
+ * changed. Instead, the keys of the blocks cached and evicted are collected here, and each
+ * checkpoint only appends a {@link BucketCacheProtos.BackingMapDelta} record with their current
+ * state to a log next to the persistence file. The log is compacted into a new full snapshot, see
+ * {@link BucketCache#persistToFile()}, once it holds more records than the given ratio of the
+ * number of cached blocks. Each record carries the id of the snapshot it was appended against, so
+ * the records left over from a previous snapshot are ignored on retrieval.
+ */
+@InterfaceAudience.Private
+class BucketCachePersistenceLog {
+  private static final Logger LOG = LoggerFactory.getLogger(BucketCachePersistenceLog.class);
+
+  static final String LOG_SUFFIX = ".log";
+
+  private final BucketCache cache;
+  private final File logFile;
+  private final float compactionRatio;
+  private final long minCompactionSize;
+  private final Set<BlockCacheKey> changedKeys = ConcurrentHashMap.newKeySet();
+  // Only accessed by the checkpointing thread. No records are appended until this cache writes a
+  // snapshot, as the one it was retrieved from may be stale.
+  private long snapshotId = -1;
+  private long numRecords;
+
+  BucketCachePersistenceLog(BucketCache cache, String persistencePath, float compactionRatio,
+    long minCompactionSize) {
+    this.cache = cache;
+    this.logFile = new File(persistencePath + LOG_SUFFIX);
+    this.compactionRatio = compactionRatio;
+    this.minCompactionSize = minCompactionSize;
+  }
+
+  /**
+   * Records that the block with the given key was cached or evicted.
+   */
+  void blockChanged(BlockCacheKey key) {
+    changedKeys.add(key);
+  }
+
+  /**
+   * Persists the blocks changed since the previous checkpoint, either by appending them to the log
+   * or, when the log grew too large or there is no snapshot to append to, by writing a new
+   * snapshot.
+   * @return true if the changed blocks were persisted
+   */
+  boolean checkpoint() throws IOException {
+    long logSize = numRecords + changedKeys.size();
+    if (
+      snapshotId < 0
+        || logSize > compactionRatio * Math.max(cache.backingMap.size(), minCompactionSize)
+    ) {
+      LOG.debug("Compacting {} changed blocks of the persistence log into a new snapshot", logSize);
+      return cache.persistToFile();
+    }
+    if (!changedKeys.isEmpty()) {
+      append();
+    }
+    return true;
+  }
+
+  /**
+   * Called before a new snapshot is written, as any block changed from here on may be missed by the
+   * snapshot.
+   */
+  void snapshotStarted() {
+    changedKeys.clear();
+    snapshotId = -1;
+  }
+
+  /**
+   * Called once the snapshot with the given id replaced the persistence file. The records of the
+   * previous snapshot are dropped.
+   */
+  void snapshotWritten(long persistenceId) {
+    snapshotId = persistenceId;
+    numRecords = 0;
+    if (logFile.exists() && !logFile.delete()) {
+      LOG.warn("Failed to delete the persistence log {}, its records will be ignored", logFile);
+    }
+  }
+
+  private void append() throws IOException {
+    BucketCacheProtos.BackingMapDelta.Builder builder =
+      BucketCacheProtos.BackingMapDelta.newBuilder().setPersistenceId(snapshotId);
+    Iterator<BlockCacheKey> iter = changedKeys.iterator();
+    while (iter.hasNext()) {
+      BlockCacheKey key = iter.next();
+      // Remove the key before looking it up, so a change racing with us is logged next time.
+      iter.remove();
+      BucketEntry entry = cache.backingMap.get(key);
+      if (entry != null) {
+        builder.addAdded(BucketCacheProtos.BackingMapEntry.newBuilder()
+          .setKey(BucketProtoUtils.toPB(key)).setValue(BucketProtoUtils.toPB(entry)));
+      } else {
+        builder.addEvicted(BucketProtoUtils.toPB(key));
+      }
+    }
+    builder.putAllCachedFiles(BucketProtoUtils.toCachedPB(cache.fullyCachedFiles))
+      .setChecksum(ByteString
+        .copyFrom(((PersistentIOEngine) cache.ioEngine).calculateChecksum(cache.getAlgorithm())));
+    BucketCacheProtos.BackingMapDelta delta = builder.build();
+    try (FileOutputStream fos = new FileOutputStream(logFile, true)) {
+      delta.writeDelimitedTo(fos);
+    }
+    numRecords += delta.getAddedCount() + delta.getEvictedCount();
+    LOG.debug("Appended {} cached and {} evicted blocks to the persistence log",
+      delta.getAddedCount(), delta.getEvictedCount());
+  }
+
+  /**
+   * Reads the records of the log at the given path appended against the snapshot with the given id.
+   * A record torn by a crash ends the log.
+   */
+  static Replay replay(String persistencePath, BucketCacheProtos.BucketCacheEntry snapshot,
+    Function<BucketEntry, Recycler> createRecycler) throws IOException {
+    Replay replay = new Replay();
+    File logFile = new File(persistencePath + LOG_SUFFIX);
+    if (!snapshot.hasPersistenceId() || !logFile.exists()) {
+      return replay;
+    }
+    try (FileInputStream in = new FileInputStream(logFile)) {
+      while (in.available() > 0) {
+        BucketCacheProtos.BackingMapDelta delta;
+        try {
+          delta = BucketCacheProtos.BackingMapDelta.parseDelimitedFrom(in);
+        } catch (IOException e) {
+          LOG.warn("Ignoring the torn tail of the persistence log {}", logFile, e);
+          break;
+        }
+        if (delta == null) {
+          break;
+        }
+        if (delta.getPersistenceId() != snapshot.getPersistenceId()) {
+          continue;
+        }
+        for (BucketCacheProtos.BackingMapEntry entry : delta.getAddedList()) {
+          replay.changes.put(BucketProtoUtils.fromPB(entry.getKey()), BucketProtoUtils
+            .fromPB(snapshot.getDeserializersMap(), entry.getValue(), createRecycler));
+        }
+        for (BucketCacheProtos.BlockCacheKey key : delta.getEvictedList()) {
+          replay.changes.put(BucketProtoUtils.fromPB(key), null);
+        }
+        replay.cachedFiles = delta.getCachedFilesMap();
+        replay.checksum = delta.hasChecksum() ? delta.getChecksum().toByteArray() : null;
+        replay.numRecords++;
+      }
+    }
+    LOG.info("Replayed {} records of the persistence log {} with {} changed blocks",
+      replay.numRecords, logFile, replay.changes.size());
+    return replay;
+  }
+
+  /**
+   * The changes recorded by the log on top of a snapshot.
+   */
+  static final class Replay {
+    /** The latest entry of each changed block, null for the evicted ones. */
+    final Map<BlockCacheKey, BucketEntry> changes = new HashMap<>();
+    /** The cached files and checksum of the last record, null when there is none. */
+    Map<String, BucketCacheProtos.RegionFileSizeMap> cachedFiles;
+    byte[] checksum;
+    int numRecords;
+  }
+}
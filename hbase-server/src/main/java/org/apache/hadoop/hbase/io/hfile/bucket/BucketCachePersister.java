@@ -45,8 +45,11 @@ public class BucketCachePersister extends Thread {
           Thread.sleep(intervalMillis);
           if (cache.isCacheInconsistent()) {
             LOG.debug("Cache is inconsistent, persisting to disk");
-            cache.persistToFile();
-            cache.setCacheInconsistent(false);
+            // Nothing is written while the cache is initializing, so keep it marked inconsistent
+            // until a checkpoint does persist the changes.
+            if (cache.checkpoint()) {
+              cache.setCacheInconsistent(false);
+            }
           }
           // Thread.interrupt may cause an InterruptException inside util method used for checksum
           // calculation in persistToFile. This util currently swallows the exception, causing this
@@ -20,6 +20,7 @@ package org.apache.hadoop.hbase.io.hfile.bucket;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
 import org.apache.hadoop.hbase.io.hfile.CacheStats;
+import org.apache.hadoop.hbase.metrics.impl.FastLongHistogram;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.yetus.audience.InterfaceAudience;
 
@@ -30,6 +31,14 @@ import org.apache.yetus.audience.InterfaceAudience;
 public class BucketCacheStats extends CacheStats {
   private final LongAdder ioHitCount = new LongAdder();
   private final LongAdder ioHitTime = new LongAdder();
+  private final LongAdder evictedByFileCount = new LongAdder();
+  private final LongAdder evictedByFileTime = new LongAdder();
+  /** Blocks the admission filter kept out of the cache */
+  private final LongAdder admissionRejectedCount = new LongAdder();
+  /** Number of IOEngine reads in flight, this one included, when a read is submitted. */
+  private final FastLongHistogram ioQueueDepth = new FastLongHistogram();
+  /** Time, in microseconds, from the submission of an IOEngine read to its completion. */
+  private final FastLongHistogram ioReadLatency = new FastLongHistogram();
   private static final long NANO_TIME = TimeUnit.MILLISECONDS.toNanos(1);
   private long lastLogTime = EnvironmentEdgeManager.currentTime();
 
@@ -45,7 +54,10 @@ public class BucketCacheStats extends CacheStats {
   @Override
   public String toString() {
     return super.toString() + ", ioHitsPerSecond=" + getIOHitsPerSecond() + ", ioTimePerHit="
-      + getIOTimePerHit() + ", allocationFailCount=" + getAllocationFailCount();
+      + getIOTimePerHit() + ", ioQueueDepth99th=" + get99thPercentile(ioQueueDepth)
+      + ", ioReadLatency99thUs=" + get99thPercentile(ioReadLatency) + ", admissionRejectedCount="
+      + getAdmissionRejectedCount() + ", evictionTimePerFile=" + getEvictionTimePerFile()
+      + ", allocationFailCount=" + getAllocationFailCount();
   }
 
   public void ioHit(long time) {
@@ -66,9 +78,66 @@ public class BucketCacheStats extends CacheStats {
     return ((float) time / (float) count);
   }
 
+  /**
+   * Records a read from the IOEngine.
+   * @param queueDepth the number of reads in flight when this one was submitted, itself included
+   * @param time       the time from the submission of the read to its completion, in nanoseconds
+   */
+  public void ioRead(int queueDepth, long time) {
+    ioQueueDepth.add(queueDepth, 1);
+    ioReadLatency.add(TimeUnit.NANOSECONDS.toMicros(time), 1);
+  }
+
+  /** Returns the histogram of the number of IOEngine reads in flight at the submission of a read */
+  public FastLongHistogram getIOQueueDepth() {
+    return ioQueueDepth;
+  }
+
+  /** Returns the histogram of the latencies, in microseconds, of the IOEngine reads */
+  public FastLongHistogram getIOReadLatency() {
+    return ioReadLatency;
+  }
+
+  private static long get99thPercentile(FastLongHistogram histogram) {
+    return histogram.getQuantiles(new double[] { 0.99 })[0];
+  }
+
+  /**
+   * Records the eviction of the blocks of an hfile, or of a range of them.
+   * @param time the time the eviction took, in nanoseconds
+   */
+  public void evictedByFile(long time) {
+    evictedByFileCount.increment();
+    evictedByFileTime.add(time);
+  }
+
+  public void admissionRejected() {
+    admissionRejectedCount.increment();
+  }
+
+  /** Returns the number of blocks the admission filter kept out of the cache */
+  public long getAdmissionRejectedCount() {
+    return admissionRejectedCount.sum();
+  }
+
+  public long getEvictedByFileCount() {
+    return evictedByFileCount.sum();
+  }
+
+  /** Returns the average time, in milliseconds, to evict the blocks of an hfile. */
+  public double getEvictionTimePerFile() {
+    long count = evictedByFileCount.sum();
+    return count == 0 ? 0 : (double) evictedByFileTime.sum() / NANO_TIME / count;
+  }
+
   public void reset() {
     ioHitCount.reset();
     ioHitTime.reset();
+    evictedByFileCount.reset();
+    evictedByFileTime.reset();
+    admissionRejectedCount.reset();
+    ioQueueDepth.snapshotAndReset();
+    ioReadLatency.snapshotAndReset();
     allocationFailCount.reset();
   }
 
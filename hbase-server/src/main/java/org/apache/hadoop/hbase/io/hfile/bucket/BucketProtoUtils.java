@@ -19,12 +19,9 @@ package org.apache.hadoop.hbase.io.hfile.bucket;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.NavigableSet;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.function.Function;
 import org.apache.hadoop.hbase.io.ByteBuffAllocator;
 import org.apache.hadoop.hbase.io.ByteBuffAllocator.Recycler;
@@ -50,7 +47,7 @@ final class BucketProtoUtils {
   }
 
   static BucketCacheProtos.BucketCacheEntry toPB(BucketCache cache,
-    BucketCacheProtos.BackingMap.Builder backingMapBuilder) {
+    BucketCacheProtos.BackingMap.Builder backingMapBuilder, long persistenceId) {
     return BucketCacheProtos.BucketCacheEntry.newBuilder().setCacheCapacity(cache.getMaxSize())
       .setIoClass(cache.ioEngine.getClass().getName())
       .setMapClass(cache.backingMap.getClass().getName())
@@ -59,11 +56,11 @@ final class BucketProtoUtils {
       .setBackingMap(backingMapBuilder.build())
       .setChecksum(ByteString
         .copyFrom(((PersistentIOEngine) cache.ioEngine).calculateChecksum(cache.getAlgorithm())))
-      .build();
+      .setPersistenceId(persistenceId).build();
   }
 
-  public static void serializeAsPB(BucketCache cache, FileOutputStream fos, long chunkSize)
-    throws IOException {
+  public static void serializeAsPB(BucketCache cache, FileOutputStream fos, long chunkSize,
+    long persistenceId) throws IOException {
     // Write the new version of magic number.
     fos.write(PB_MAGIC_V2);
 
@@ -72,7 +69,7 @@ final class BucketProtoUtils {
       BucketCacheProtos.BackingMapEntry.newBuilder();
 
     // Persist the metadata first.
-    toPB(cache, builder).writeDelimitedTo(fos);
+    toPB(cache, builder, persistenceId).writeDelimitedTo(fos);
 
     int blockCount = 0;
     // Persist backing map entries in chunks of size 'chunkSize'.
@@ -99,7 +96,7 @@ final class BucketProtoUtils {
     builder.addEntry(entryBuilder.build());
   }
 
-  private static BucketCacheProtos.BlockCacheKey toPB(BlockCacheKey key) {
+  static BucketCacheProtos.BlockCacheKey toPB(BlockCacheKey key) {
     return BucketCacheProtos.BlockCacheKey.newBuilder().setHfilename(key.getHfileName())
       .setOffset(key.getOffset()).setPrimaryReplicaBlock(key.isPrimary())
       .setBlockType(toPB(key.getBlockType())).build();
@@ -136,7 +133,7 @@ final class BucketProtoUtils {
     }
   }
 
-  private static BucketCacheProtos.BucketEntry toPB(BucketEntry entry) {
+  static BucketCacheProtos.BucketEntry toPB(BucketEntry entry) {
     return BucketCacheProtos.BucketEntry.newBuilder().setOffset(entry.offset())
       .setCachedTime(entry.getCachedTime()).setLength(entry.getLength())
       .setDiskSizeWithHeader(entry.getOnDiskSizeWithHeader())
@@ -157,43 +154,46 @@ final class BucketProtoUtils {
     }
   }
 
-  static Pair<ConcurrentHashMap<BlockCacheKey, BucketEntry>, NavigableSet<BlockCacheKey>> fromPB(
-    Map<Integer, String> deserializers, BucketCacheProtos.BackingMap backingMap,
-    Function<BucketEntry, Recycler> createRecycler) throws IOException {
+  static ConcurrentHashMap<BlockCacheKey, BucketEntry> fromPB(Map<Integer, String> deserializers,
+    BucketCacheProtos.BackingMap backingMap, Function<BucketEntry, Recycler> createRecycler)
+    throws IOException {
     ConcurrentHashMap<BlockCacheKey, BucketEntry> result = new ConcurrentHashMap<>();
-    NavigableSet<BlockCacheKey> resultSet = new ConcurrentSkipListSet<>(Comparator
-      .comparing(BlockCacheKey::getHfileName).thenComparingLong(BlockCacheKey::getOffset));
     for (BucketCacheProtos.BackingMapEntry entry : backingMap.getEntryList()) {
-      BucketCacheProtos.BlockCacheKey protoKey = entry.getKey();
-      BlockCacheKey key = new BlockCacheKey(protoKey.getHfilename(), protoKey.getOffset(),
-        protoKey.getPrimaryReplicaBlock(), fromPb(protoKey.getBlockType()));
-      BucketCacheProtos.BucketEntry protoValue = entry.getValue();
-      // TODO:We use ByteBuffAllocator.HEAP here, because we could not get the ByteBuffAllocator
-      // which created by RpcServer elegantly.
-      BucketEntry value = new BucketEntry(protoValue.getOffset(), protoValue.getLength(),
-        protoValue.getDiskSizeWithHeader(), protoValue.getAccessCounter(),
-        protoValue.getCachedTime(),
-        protoValue.getPriority() == BucketCacheProtos.BlockPriority.memory, createRecycler,
-        ByteBuffAllocator.HEAP);
-      // This is the deserializer that we stored
-      int oldIndex = protoValue.getDeserialiserIndex();
-      String deserializerClass = deserializers.get(oldIndex);
-      if (deserializerClass == null) {
-        throw new IOException("Found deserializer index without matching entry.");
-      }
-      // Convert it to the identifier for the deserializer that we have in this runtime
-      if (deserializerClass.equals(HFileBlock.BlockDeserializer.class.getName())) {
-        int actualIndex = HFileBlock.BLOCK_DESERIALIZER.getDeserializerIdentifier();
-        value.deserializerIndex = (byte) actualIndex;
-      } else {
-        // We could make this more plugable, but right now HFileBlock is the only implementation
-        // of Cacheable outside of tests, so this might not ever matter.
-        throw new IOException("Unknown deserializer class found: " + deserializerClass);
-      }
-      result.put(key, value);
-      resultSet.add(key);
+      result.put(fromPB(entry.getKey()), fromPB(deserializers, entry.getValue(), createRecycler));
+    }
+    return result;
+  }
+
+  static BlockCacheKey fromPB(BucketCacheProtos.BlockCacheKey protoKey) {
+    return new BlockCacheKey(protoKey.getHfilename(), protoKey.getOffset(),
+      protoKey.getPrimaryReplicaBlock(), fromPb(protoKey.getBlockType()));
+  }
+
+  static BucketEntry fromPB(Map<Integer, String> deserializers,
+    BucketCacheProtos.BucketEntry protoValue, Function<BucketEntry, Recycler> createRecycler)
+    throws IOException {
+    // TODO:We use ByteBuffAllocator.HEAP here, because we could not get the ByteBuffAllocator
+    // which created by RpcServer elegantly.
+    BucketEntry value = new BucketEntry(protoValue.getOffset(), protoValue.getLength(),
+      protoValue.getDiskSizeWithHeader(), protoValue.getAccessCounter(), protoValue.getCachedTime(),
+      protoValue.getPriority() == BucketCacheProtos.BlockPriority.memory, createRecycler,
+      ByteBuffAllocator.HEAP);
+    // This is the deserializer that we stored
+    int oldIndex = protoValue.getDeserialiserIndex();
+    String deserializerClass = deserializers.get(oldIndex);
+    if (deserializerClass == null) {
+      throw new IOException("Found deserializer index without matching entry.");
+    }
+    // Convert it to the identifier for the deserializer that we have in this runtime
+    if (deserializerClass.equals(HFileBlock.BlockDeserializer.class.getName())) {
+      int actualIndex = HFileBlock.BLOCK_DESERIALIZER.getDeserializerIdentifier();
+      value.deserializerIndex = (byte) actualIndex;
+    } else {
+      // We could make this more plugable, but right now HFileBlock is the only implementation
+      // of Cacheable outside of tests, so this might not ever matter.
+      throw new IOException("Unknown deserializer class found: " + deserializerClass);
     }
-    return new Pair<>(result, resultSet);
+    return value;
   }
 
   private static BlockType fromPb(BucketCacheProtos.BlockType blockType) {
@@ -0,0 +1,646 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.BlockType;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A {@link ConcurrentMap} from {@link BlockCacheKey} to {@link BucketEntry} to be used as the
+ * {@link BucketCache} backing map of large caches.
+ * <p>
+ * A {@link ConcurrentHashMap} costs a node, a {@link BlockCacheKey} and a reference to the hfile
+ * name per cached block, on top of the {@link BucketEntry}. With hundreds of millions of blocks
+ * cached in a file backed cache this adds up to tens of GB of heap made of small objects. Here the
+ * hfile names are interned to int ids, and the keys are kept in a fixed number of open addressing
+ * tables made of primitive arrays, so the only per block object left is the {@link BucketEntry},
+ * which carries the reference count of the block and so has to keep its identity.
+ * <p>
+ * Each table is guarded by a {@link StampedLock}: lookups are optimistic and only take the read
+ * lock if they raced with a writer. Collisions are resolved by linear probing, and removal shifts
+ * the following entries back instead of leaving tombstones.
+ * <p>
+ * Only the storage of the keys is compact: a {@link BlockCacheKey} is still created for every entry
+ * an iterator returns, and for every block the caller looks up or caches. The keys carry the hfile
+ * name, offset, block type and replica flag of the key that was put, but not its file path. Like
+ * the ones of {@link ConcurrentHashMap}, the iterators are weakly consistent: each table is copied
+ * under its read lock when the iteration reaches it.
+ */
+@InterfaceAudience.Private
+public class CompactBackingMap extends AbstractMap<BlockCacheKey, BucketEntry>
+  implements ConcurrentMap<BlockCacheKey, BucketEntry> {
+
+  static final int DEFAULT_NUM_SEGMENTS = 64;
+
+  private static final float LOAD_FACTOR = 0.75f;
+  private static final int MIN_SEGMENT_CAPACITY = 16;
+
+  /** Bit of the flags byte set for primary replica blocks, the other bits hold the block type. */
+  private static final int PRIMARY_REPLICA_FLAG = 0x80;
+  private static final int BLOCK_TYPE_MASK = 0x7F;
+  private static final BlockType[] BLOCK_TYPES = BlockType.values();
+
+  private final HFileNames hfileNames = new HFileNames();
+  private final Segment[] segments;
+  private final int segmentMask;
+
+  private Set<Map.Entry<BlockCacheKey, BucketEntry>> entrySet;
+
+  public CompactBackingMap(int expectedSize) {
+    this(expectedSize, DEFAULT_NUM_SEGMENTS);
+  }
+
+  CompactBackingMap(int expectedSize, int numSegments) {
+    if (numSegments <= 0 || Integer.bitCount(numSegments) != 1) {
+      throw new IllegalArgumentException("Number of segments must be a power of 2");
+    }
+    this.segments = new Segment[numSegments];
+    this.segmentMask = numSegments - 1;
+    int segmentCapacity = tableSizeFor((long) (expectedSize / numSegments / LOAD_FACTOR) + 1);
+    for (int i = 0; i < numSegments; i++) {
+      segments[i] = new Segment(segmentCapacity);
+    }
+  }
+
+  private static int tableSizeFor(long capacity) {
+    if (capacity <= MIN_SEGMENT_CAPACITY) {
+      return MIN_SEGMENT_CAPACITY;
+    }
+    if (capacity >= 1 << 30) {
+      return 1 << 30;
+    }
+    return Integer.highestOneBit((int) capacity - 1) << 1;
+  }
+
+  static int hash(int fileId, long offset) {
+    // murmur3 finalizer, the low bits pick the slot and the high bits pick the segment
+    long h = offset * 0x9E3779B97F4A7C15L + fileId;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
+  private Segment segmentFor(int hash) {
+    return segments[(hash >>> 24) & segmentMask];
+  }
+
+  /** Packs the block type and replica flag of a key, see {@link #toKey(String, long, byte)}. */
+  static byte keyFlags(BlockCacheKey key) {
+    BlockType blockType = key.getBlockType();
+    int flags = blockType == null ? 0 : blockType.ordinal() + 1;
+    return (byte) (key.isPrimary() ? flags | PRIMARY_REPLICA_FLAG : flags);
+  }
+
+  static BlockCacheKey toKey(String hfileName, long offset, byte flags) {
+    int blockType = flags & BLOCK_TYPE_MASK;
+    return new BlockCacheKey(hfileName, offset, (flags & PRIMARY_REPLICA_FLAG) != 0,
+      blockType == 0 ? null : BLOCK_TYPES[blockType - 1]);
+  }
+
+  @Override
+  public BucketEntry get(Object key) {
+    if (!(key instanceof BlockCacheKey)) {
+      return null;
+    }
+    BlockCacheKey cacheKey = (BlockCacheKey) key;
+    int fileId = hfileNames.lookup(cacheKey.getHfileName());
+    if (fileId == HFileNames.NO_ID) {
+      return null;
+    }
+    int hash = hash(fileId, cacheKey.getOffset());
+    return segmentFor(hash).get(fileId, cacheKey.getOffset(), hash);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public BucketEntry put(BlockCacheKey key, BucketEntry value) {
+    return put(key, value, false);
+  }
+
+  @Override
+  public BucketEntry putIfAbsent(BlockCacheKey key, BucketEntry value) {
+    return put(key, value, true);
+  }
+
+  private BucketEntry put(BlockCacheKey key, BucketEntry value, boolean onlyIfAbsent) {
+    if (value == null) {
+      throw new NullPointerException();
+    }
+    // take the reference on the file id first so it can not be released under us
+    int fileId = hfileNames.acquire(key.getHfileName());
+    int hash = hash(fileId, key.getOffset());
+    BucketEntry previous =
+      segmentFor(hash).put(fileId, key.getOffset(), hash, keyFlags(key), value, onlyIfAbsent);
+    if (previous != null) {
+      // the existing entry already holds a reference on the file id
+      hfileNames.release(fileId);
+    }
+    return previous;
+  }
+
+  @Override
+  public BucketEntry remove(Object key) {
+    return doRemove(key, null);
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    return value != null && doRemove(key, value) != null;
+  }
+
+  /** Removes the key if it is mapped to {@code expected}, or to anything if it is null. */
+  private BucketEntry doRemove(Object key, Object expected) {
+    if (!(key instanceof BlockCacheKey)) {
+      return null;
+    }
+    BlockCacheKey cacheKey = (BlockCacheKey) key;
+    int fileId = hfileNames.lookup(cacheKey.getHfileName());
+    if (fileId == HFileNames.NO_ID) {
+      return null;
+    }
+    int hash = hash(fileId, cacheKey.getOffset());
+    BucketEntry removed = segmentFor(hash).remove(fileId, cacheKey.getOffset(), hash, expected);
+    if (removed != null) {
+      hfileNames.release(fileId);
+    }
+    return removed;
+  }
+
+  @Override
+  public BucketEntry replace(BlockCacheKey key, BucketEntry value) {
+    return doReplace(key, null, value);
+  }
+
+  @Override
+  public boolean replace(BlockCacheKey key, BucketEntry oldValue, BucketEntry newValue) {
+    if (oldValue == null) {
+      throw new NullPointerException();
+    }
+    return doReplace(key, oldValue, newValue) != null;
+  }
+
+  private BucketEntry doReplace(BlockCacheKey key, BucketEntry expected, BucketEntry value) {
+    if (value == null) {
+      throw new NullPointerException();
+    }
+    int fileId = hfileNames.lookup(key.getHfileName());
+    if (fileId == HFileNames.NO_ID) {
+      return null;
+    }
+    int hash = hash(fileId, key.getOffset());
+    return segmentFor(hash).replace(fileId, key.getOffset(), hash, expected, value);
+  }
+
+  @Override
+  public int size() {
+    long size = 0;
+    for (Segment segment : segments) {
+      size += segment.size;
+    }
+    return (int) Math.min(size, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    for (Segment segment : segments) {
+      if (segment.size != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    long[] stamps = new long[segments.length];
+    for (int i = 0; i < segments.length; i++) {
+      stamps[i] = segments[i].lock.writeLock();
+    }
+    try {
+      for (Segment segment : segments) {
+        segment.clear();
+      }
+      hfileNames.clear();
+    } finally {
+      for (int i = 0; i < segments.length; i++) {
+        segments[i].lock.unlockWrite(stamps[i]);
+      }
+    }
+  }
+
+  @Override
+  public Set<Map.Entry<BlockCacheKey, BucketEntry>> entrySet() {
+    Set<Map.Entry<BlockCacheKey, BucketEntry>> es = entrySet;
+    if (es == null) {
+      es = new AbstractSet<Map.Entry<BlockCacheKey, BucketEntry>>() {
+        @Override
+        public Iterator<Map.Entry<BlockCacheKey, BucketEntry>> iterator() {
+          return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+          return CompactBackingMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+          CompactBackingMap.this.clear();
+        }
+      };
+      entrySet = es;
+    }
+    return es;
+  }
+
+  /** Returns the number of distinct hfile names currently interned, for testing. */
+  int getNumberOfHFileNames() {
+    return hfileNames.size();
+  }
+
+  /**
+   * Interns hfile names to int ids. An id is reference counted by the entries using it and is
+   * released with the last of them. Ids are not reused, so a lookup racing with the release of a
+   * name can only miss, it never finds the blocks of another file.
+   */
+  private static final class HFileNames {
+
+    static final int NO_ID = 0;
+
+    private static final class HFileName {
+      final int id;
+      final String name;
+      int refCount;
+
+      HFileName(int id, String name) {
+        this.id = id;
+        this.name = name;
+      }
+    }
+
+    private final ConcurrentHashMap<String, HFileName> byName = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, HFileName> byId = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(NO_ID);
+
+    int lookup(String name) {
+      HFileName hfileName = byName.get(name);
+      return hfileName == null ? NO_ID : hfileName.id;
+    }
+
+    String name(int id) {
+      HFileName hfileName = byId.get(id);
+      return hfileName == null ? null : hfileName.name;
+    }
+
+    int acquire(String name) {
+      return byName.compute(name, (n, hfileName) -> {
+        if (hfileName == null) {
+          int id = nextId.incrementAndGet();
+          if (id == NO_ID) {
+            id = nextId.incrementAndGet();
+          }
+          hfileName = new HFileName(id, n);
+          byId.put(id, hfileName);
+        }
+        hfileName.refCount++;
+        return hfileName;
+      }).id;
+    }
+
+    void release(int id) {
+      HFileName hfileName = byId.get(id);
+      if (hfileName == null) {
+        return;
+      }
+      byName.computeIfPresent(hfileName.name, (n, current) -> {
+        if (current.id == id && --current.refCount == 0) {
+          byId.remove(id);
+          return null;
+        }
+        return current;
+      });
+    }
+
+    int size() {
+      return byName.size();
+    }
+
+    void clear() {
+      byName.clear();
+      byId.clear();
+    }
+  }
+
+  /**
+   * The arrays of an open addressing table. They are replaced all together on resize so that an
+   * optimistic reader always probes arrays of the same length.
+   */
+  private static final class Table {
+    /** The hfile name ids, {@link HFileNames#NO_ID} for empty slots. */
+    final int[] fileIds;
+    final long[] offsets;
+    final byte[] flags;
+    final BucketEntry[] values;
+
+    Table(int capacity) {
+      fileIds = new int[capacity];
+      offsets = new long[capacity];
+      flags = new byte[capacity];
+      values = new BucketEntry[capacity];
+    }
+  }
+
+  private static final class Segment {
+    final StampedLock lock = new StampedLock();
+    volatile Table table;
+    volatile int size;
+    private int threshold;
+
+    Segment(int capacity) {
+      setTable(new Table(capacity));
+    }
+
+    private void setTable(Table table) {
+      this.table = table;
+      this.threshold = (int) (table.fileIds.length * LOAD_FACTOR);
+    }
+
+    /** Returns the slot of the given key, or -1. Safe to call without holding the lock. */
+    private static int find(Table t, int fileId, long offset, int hash) {
+      int[] fileIds = t.fileIds;
+      int mask = fileIds.length - 1;
+      int i = hash & mask;
+      for (int probes = 0; probes <= mask; probes++) {
+        int id = fileIds[i];
+        if (id == HFileNames.NO_ID) {
+          return -1;
+        }
+        if (id == fileId && t.offsets[i] == offset) {
+          return i;
+        }
+        i = (i + 1) & mask;
+      }
+      return -1;
+    }
+
+    BucketEntry get(int fileId, long offset, int hash) {
+      long stamp = lock.tryOptimisticRead();
+      if (stamp != 0) {
+        Table t = table;
+        int i = find(t, fileId, offset, hash);
+        BucketEntry value = i < 0 ? null : t.values[i];
+        if (lock.validate(stamp)) {
+          return value;
+        }
+      }
+      stamp = lock.readLock();
+      try {
+        Table t = table;
+        int i = find(t, fileId, offset, hash);
+        return i < 0 ? null : t.values[i];
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    BucketEntry put(int fileId, long offset, int hash, byte flags, BucketEntry value,
+      boolean onlyIfAbsent) {
+      long stamp = lock.writeLock();
+      try {
+        Table t = table;
+        int i = find(t, fileId, offset, hash);
+        if (i >= 0) {
+          BucketEntry previous = t.values[i];
+          if (!onlyIfAbsent) {
+            t.flags[i] = flags;
+            t.values[i] = value;
+          }
+          return previous;
+        }
+        if (size >= threshold) {
+          resize();
+          t = table;
+        }
+        insert(t, fileId, offset, hash, flags, value);
+        size++;
+        return null;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    /**
+     * Replaces the value of the given key if it is mapped to {@code expected}, or to anything if
+     * {@code expected} is null. Returns the value replaced, or null.
+     */
+    BucketEntry replace(int fileId, long offset, int hash, BucketEntry expected,
+      BucketEntry value) {
+      long stamp = lock.writeLock();
+      try {
+        Table t = table;
+        int i = find(t, fileId, offset, hash);
+        if (i < 0 || (expected != null && !expected.equals(t.values[i]))) {
+          return null;
+        }
+        BucketEntry previous = t.values[i];
+        t.values[i] = value;
+        return previous;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    /**
+     * Removes the given key if it is mapped to {@code expected}, or to anything if {@code expected}
+     * is null. Returns the value removed, or null.
+     */
+    BucketEntry remove(int fileId, long offset, int hash, Object expected) {
+      long stamp = lock.writeLock();
+      try {
+        Table t = table;
+        int i = find(t, fileId, offset, hash);
+        if (i < 0 || (expected != null && !expected.equals(t.values[i]))) {
+          return null;
+        }
+        BucketEntry previous = t.values[i];
+        delete(t, i);
+        size--;
+        return previous;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    private static void insert(Table t, int fileId, long offset, int hash, byte flags,
+      BucketEntry value) {
+      int mask = t.fileIds.length - 1;
+      int i = hash & mask;
+      while (t.fileIds[i] != HFileNames.NO_ID) {
+        i = (i + 1) & mask;
+      }
+      t.offsets[i] = offset;
+      t.flags[i] = flags;
+      t.values[i] = value;
+      t.fileIds[i] = fileId;
+    }
+
+    /** Deletes slot i, moving back the entries of the probe sequence which follow it. */
+    private static void delete(Table t, int i) {
+      int mask = t.fileIds.length - 1;
+      int j = i;
+      while (true) {
+        j = (j + 1) & mask;
+        int fileId = t.fileIds[j];
+        if (fileId == HFileNames.NO_ID) {
+          break;
+        }
+        int home = hash(fileId, t.offsets[j]) & mask;
+        // the entry at j can fill the hole at i unless its home slot is cyclically in (i, j]
+        boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+        if (!stays) {
+          t.fileIds[i] = fileId;
+          t.offsets[i] = t.offsets[j];
+          t.flags[i] = t.flags[j];
+          t.values[i] = t.values[j];
+          i = j;
+        }
+      }
+      t.fileIds[i] = HFileNames.NO_ID;
+      t.offsets[i] = 0;
+      t.flags[i] = 0;
+      t.values[i] = null;
+    }
+
+    private void resize() {
+      Table old = table;
+      if (old.fileIds.length >= 1 << 30) {
+        throw new IllegalStateException("Backing map segment is full");
+      }
+      Table t = new Table(old.fileIds.length << 1);
+      for (int i = 0; i < old.fileIds.length; i++) {
+        int fileId = old.fileIds[i];
+        if (fileId != HFileNames.NO_ID) {
+          insert(t, fileId, old.offsets[i], hash(fileId, old.offsets[i]), old.flags[i],
+            old.values[i]);
+        }
+      }
+      setTable(t);
+    }
+
+    /** Must be called under the write lock. */
+    void clear() {
+      Table t = table;
+      Arrays.fill(t.fileIds, HFileNames.NO_ID);
+      Arrays.fill(t.values, null);
+      size = 0;
+    }
+  }
+
+  /**
+   * Iterates the segments one by one, copying the primitive key fields of each under its read lock.
+   * The {@link BlockCacheKey} of an entry is only created when the entry is returned.
+   */
+  private final class EntryIterator implements Iterator<Map.Entry<BlockCacheKey, BucketEntry>> {
+    private int nextSegment = 0;
+    private String[] names = new String[0];
+    private long[] offsets = new long[0];
+    private byte[] flags = new byte[0];
+    private BucketEntry[] values = new BucketEntry[0];
+    private int index = 0;
+    private int count = 0;
+    private Map.Entry<BlockCacheKey, BucketEntry> last;
+
+    @Override
+    public boolean hasNext() {
+      while (index >= count) {
+        if (nextSegment >= segments.length) {
+          return false;
+        }
+        copy(segments[nextSegment++]);
+      }
+      return true;
+    }
+
+    private void copy(Segment segment) {
+      long stamp = segment.lock.readLock();
+      try {
+        Table t = segment.table;
+        if (values.length < segment.size) {
+          names = new String[segment.size];
+          offsets = new long[segment.size];
+          flags = new byte[segment.size];
+          values = new BucketEntry[segment.size];
+        } else {
+          Arrays.fill(names, null);
+          Arrays.fill(values, null);
+        }
+        count = 0;
+        index = 0;
+        for (int i = 0; i < t.fileIds.length; i++) {
+          int fileId = t.fileIds[i];
+          if (fileId != HFileNames.NO_ID) {
+            // the entry holds a reference on its file id, so the name can not be released here
+            names[count] = hfileNames.name(fileId);
+            offsets[count] = t.offsets[i];
+            flags[count] = t.flags[i];
+            values[count++] = t.values[i];
+          }
+        }
+      } finally {
+        segment.lock.unlockRead(stamp);
+      }
+    }
+
+    @Override
+    public Map.Entry<BlockCacheKey, BucketEntry> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      last = new AbstractMap.SimpleImmutableEntry<>(
+        toKey(names[index], offsets[index], flags[index]), values[index]);
+      index++;
+      return last;
+    }
+
+    @Override
+    public void remove() {
+      if (last == null) {
+        throw new IllegalStateException();
+      }
+      CompactBackingMap.this.remove(last.getKey());
+      last = null;
+    }
+  }
+}
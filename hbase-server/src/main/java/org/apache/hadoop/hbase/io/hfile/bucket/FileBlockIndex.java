@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Index of the blocks of each hfile in the {@link BucketCache}, so that evicting the blocks of a
+ * file or counting them costs time proportional to the number of blocks of that file rather than to
+ * the size of the cache.
+ * <p>
+ * The offsets of the blocks of a file are kept in a small open addressing set of primitive longs,
+ * along with the block type and replica flag of their keys, so the index holds no per block object.
+ * The {@link BlockCacheKey}s returned are created on the fly.
+ */
+@InterfaceAudience.Private
+class FileBlockIndex {
+
+  private final ConcurrentHashMap<String, FileBlocks> files = new ConcurrentHashMap<>();
+
+  void add(BlockCacheKey key) {
+    files.compute(key.getHfileName(), (name, blocks) -> {
+      if (blocks == null) {
+        blocks = new FileBlocks();
+      }
+      blocks.add(key.getOffset(), CompactBackingMap.keyFlags(key));
+      return blocks;
+    });
+  }
+
+  void remove(BlockCacheKey key) {
+    files.computeIfPresent(key.getHfileName(),
+      (name, blocks) -> blocks.remove(key.getOffset()) && blocks.isEmpty() ? null : blocks);
+  }
+
+  /**
+   * Returns the keys of the blocks of the given file with an offset in [init, end], in no
+   * particular order. The result is a copy, it is safe to evict the blocks while iterating it.
+   */
+  List<BlockCacheKey> getBlocks(String hfileName, long init, long end) {
+    FileBlocks blocks = files.get(hfileName);
+    return blocks == null ? new ArrayList<>(0) : blocks.getKeys(hfileName, init, end);
+  }
+
+  /** Returns the number of blocks of the given file. */
+  int getBlockCount(String hfileName) {
+    FileBlocks blocks = files.get(hfileName);
+    return blocks == null ? 0 : blocks.size();
+  }
+
+  /** Returns the number of files with blocks in the index. */
+  int getFileCount() {
+    return files.size();
+  }
+
+  boolean isEmpty() {
+    return files.isEmpty();
+  }
+
+  void clear() {
+    files.clear();
+  }
+
+  /**
+   * Set of block offsets of one file, with linear probing and backward shift deletion. Offsets are
+   * never negative, so -1 marks the empty slots.
+   */
+  private static final class FileBlocks {
+    private static final int INITIAL_CAPACITY = 8;
+    private static final long EMPTY = -1;
+
+    private long[] offsets = newOffsets(INITIAL_CAPACITY);
+    private byte[] flags = new byte[INITIAL_CAPACITY];
+    private int size;
+
+    private static long[] newOffsets(int capacity) {
+      long[] offsets = new long[capacity];
+      Arrays.fill(offsets, EMPTY);
+      return offsets;
+    }
+
+    private static int slot(long offset, int mask) {
+      long h = offset * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    synchronized void add(long offset, byte flag) {
+      int mask = offsets.length - 1;
+      int i = slot(offset, mask);
+      while (offsets[i] != EMPTY) {
+        if (offsets[i] == offset) {
+          flags[i] = flag;
+          return;
+        }
+        i = (i + 1) & mask;
+      }
+      offsets[i] = offset;
+      flags[i] = flag;
+      if (++size > offsets.length * 3 / 4) {
+        resize();
+      }
+    }
+
+    synchronized boolean remove(long offset) {
+      int mask = offsets.length - 1;
+      int i = slot(offset, mask);
+      while (offsets[i] != offset) {
+        if (offsets[i] == EMPTY) {
+          return false;
+        }
+        i = (i + 1) & mask;
+      }
+      // move back the entries of the probe sequence which can fill the hole
+      int j = i;
+      while (true) {
+        j = (j + 1) & mask;
+        if (offsets[j] == EMPTY) {
+          break;
+        }
+        int home = slot(offsets[j], mask);
+        boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+        if (!stays) {
+          offsets[i] = offsets[j];
+          flags[i] = flags[j];
+          i = j;
+        }
+      }
+      offsets[i] = EMPTY;
+      size--;
+      return true;
+    }
+
+    private void resize() {
+      long[] oldOffsets = offsets;
+      byte[] oldFlags = flags;
+      offsets = newOffsets(oldOffsets.length << 1);
+      flags = new byte[oldOffsets.length << 1];
+      size = 0;
+      for (int i = 0; i < oldOffsets.length; i++) {
+        if (oldOffsets[i] != EMPTY) {
+          add(oldOffsets[i], oldFlags[i]);
+        }
+      }
+    }
+
+    synchronized List<BlockCacheKey> getKeys(String hfileName, long init, long end) {
+      List<BlockCacheKey> keys = new ArrayList<>(size);
+      for (int i = 0; i < offsets.length; i++) {
+        long offset = offsets[i];
+        if (offset != EMPTY && offset >= init && offset <= end) {
+          keys.add(CompactBackingMap.toKey(hfileName, offset, flags[i]));
+        }
+      }
+      return keys;
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    synchronized boolean isEmpty() {
+      return size == 0;
+    }
+  }
+}
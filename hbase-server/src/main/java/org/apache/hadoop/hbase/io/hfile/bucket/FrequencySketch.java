@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A count-min sketch estimating how often blocks are accessed, for the TinyLFU admission policy of
+ * {@link BucketCache}. Each key maps to four 4 bit counters, so a frequency saturates at 15, kept
+ * in a direct buffer of longs, sixteen counters to a long, so large caches do not pay for it on
+ * heap.
+ * <p>
+ * Once the number of increments reaches ten times the number of longs, all the counters are halved,
+ * so the sketch follows the recent popularity of the blocks rather than their whole history.
+ * <p>
+ * Counters are updated without synchronization, a lost increment only makes the estimate a little
+ * less accurate, which the sketch tolerates anyway.
+ */
+@InterfaceAudience.Private
+class FrequencySketch {
+  /**
+   * The largest table, in longs. The table size is a power of two, and the byte offset of its last
+   * long has to fit in an int to address a single direct buffer, which makes it 1 GB.
+   */
+  static final int MAX_TABLE_SIZE = 1 << 27;
+
+  private static final long[] SEEDS =
+    { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+  private static final long RESET_MASK = 0x7777777777777777L;
+
+  private final ByteBuffer table;
+  private final int tableMask;
+  private final int sampleSize;
+  private final AtomicInteger additions = new AtomicInteger();
+
+  /**
+   * @param expectedKeys the number of keys the sketch should tell apart, typically the number of
+   *                     blocks the cache can hold
+   */
+  FrequencySketch(long expectedKeys) {
+    long keys = Math.min(Math.max(expectedKeys, 2), MAX_TABLE_SIZE);
+    int tableSize = (int) Long.highestOneBit(keys - 1) << 1;
+    this.table = ByteBuffer.allocateDirect(tableSize * Long.BYTES);
+    this.tableMask = tableSize - 1;
+    this.sampleSize = (int) Math.min(10L * tableSize, Integer.MAX_VALUE);
+  }
+
+  /** Returns the size of the sketch, in longs */
+  int getTableSize() {
+    return tableMask + 1;
+  }
+
+  /** Records an access to the block with the given key. */
+  void increment(BlockCacheKey key) {
+    long hash = hash(key);
+    boolean added = false;
+    for (int i = 0; i < SEEDS.length; i++) {
+      long h = rehash(hash, i);
+      int index = indexOf(h);
+      int shift = shiftOf(h);
+      long slot = table.getLong(index);
+      if (((slot >>> shift) & 0xF) != 0xF) {
+        table.putLong(index, slot + (1L << shift));
+        added = true;
+      }
+    }
+    if (added && additions.incrementAndGet() == sampleSize) {
+      reset();
+    }
+  }
+
+  /** Returns the estimated number of recent accesses to the block with the given key, up to 15 */
+  int frequency(BlockCacheKey key) {
+    long hash = hash(key);
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < SEEDS.length; i++) {
+      long h = rehash(hash, i);
+      int count = (int) ((table.getLong(indexOf(h)) >>> shiftOf(h)) & 0xF);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /** Halves all the counters. */
+  void reset() {
+    for (int i = 0; i <= tableMask; i++) {
+      int index = i * Long.BYTES;
+      table.putLong(index, (table.getLong(index) >>> 1) & RESET_MASK);
+    }
+    additions.set(0);
+  }
+
+  private static long hash(BlockCacheKey key) {
+    // String caches its hash code, and the offset keeps blocks of the same file apart.
+    long h = key.getHfileName().hashCode() * 0x9e3779b97f4a7c15L + key.getOffset();
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static long rehash(long hash, int i) {
+    long h = (hash + SEEDS[i]) * SEEDS[i];
+    return h ^ (h >>> 32);
+  }
+
+  private int indexOf(long h) {
+    return ((int) h & tableMask) * Long.BYTES;
+  }
+
+  private static int shiftOf(long h) {
+    // The top bits are independent of the ones picking the slot.
+    return (int) (h >>> 60) << 2;
+  }
+}
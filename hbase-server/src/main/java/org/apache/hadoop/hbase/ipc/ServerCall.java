@@ -578,13 +578,14 @@ public abstract class ServerCall<T extends ServerRpcConnection> implements RpcCa
     return response;
   }
 
+  // Synchronized as the helpers of a ParallelSeekPipeline read files in the call of the handler
   @Override
-  public void updateFsReadTime(long latencyMillis) {
+  public synchronized void updateFsReadTime(long latencyMillis) {
     fsReadTimeMillis += latencyMillis;
   }
 
   @Override
-  public long getFsReadTime() {
+  public synchronized long getFsReadTime() {
     return fsReadTimeMillis;
   }
 }
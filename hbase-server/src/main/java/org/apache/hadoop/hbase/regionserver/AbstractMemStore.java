@@ -89,7 +89,8 @@ public abstract class AbstractMemStore implements MemStore {
     // Record the MutableSegment' heap overhead when initialing
     MemStoreSizing memstoreAccounting = new NonThreadSafeMemStoreSizing();
     // Reset heap to not include any keys
-    active = SegmentFactory.instance().createMutableSegment(conf, comparator, memstoreAccounting);
+    active = SegmentFactory.instance().createMutableSegment(conf, comparator, memstoreAccounting,
+      getActiveIndexType());
     // regionServices can be null when testing
     if (regionServices != null) {
       regionServices.addMemStoreSize(memstoreAccounting.getDataSize(),
@@ -98,6 +99,14 @@ public abstract class AbstractMemStore implements MemStore {
     }
   }
 
+  /**
+   * Returns the type of the index of the active segment. Called when the active segment is reset,
+   * which happens from the constructor, so implementations must not depend on their own fields.
+   */
+  protected CompactingMemStore.IndexType getActiveIndexType() {
+    return CompactingMemStore.IndexType.CSLM_MAP;
+  }
+
   protected void resetTimeOfOldestEdit() {
     this.timeOfOldestEdit = Long.MAX_VALUE;
   }
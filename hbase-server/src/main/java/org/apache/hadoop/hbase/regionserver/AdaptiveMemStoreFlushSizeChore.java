@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.hadoop.hbase.ScheduledChore;
+import org.apache.hadoop.hbase.Stoppable;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A chore sharing the global memstore budget of the region server among its regions. Each region
+ * gets a flush size in proportion to its recent write rate, weighted up by the number of its store
+ * files relative to the blocking count, so hot regions and regions behind on compactions flush
+ * fewer, larger files. The budget is the low water mark of {@link RegionServerAccounting}, which
+ * follows the global memstore size tuned by the {@link HeapMemoryManager}.
+ * <p>
+ * A region never flushes before its configured flush size, which cold regions keep, and never later
+ * than {@link #MAX_MULTIPLIER_KEY} times it. The size blocking the updates of a region moves along
+ * with its flush size. Regions of system tables keep their configured flush size.
+ */
+@InterfaceAudience.Private
+public class AdaptiveMemStoreFlushSizeChore extends ScheduledChore {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AdaptiveMemStoreFlushSizeChore.class);
+
+  /**
+   * The period (in milliseconds) for adjusting the flush sizes of the regions.
+   */
+  public static final String ADAPTIVE_FLUSH_SIZE_PERIOD_KEY =
+    "hbase.regionserver.flush.adaptive.period";
+  static final int DEFAULT_ADAPTIVE_FLUSH_SIZE_PERIOD = 0; // disabled by default
+
+  /**
+   * The largest flush size of a region, as a multiple of its configured flush size.
+   */
+  public static final String MAX_MULTIPLIER_KEY =
+    "hbase.regionserver.flush.adaptive.max.multiplier";
+  static final int DEFAULT_MAX_MULTIPLIER = 4;
+
+  // weight of the last period in the smoothed write rate of a region
+  private static final double RATE_SMOOTHING = 0.5;
+
+  private final HRegionServer regionServer;
+  private final int maxMultiplier;
+
+  // encodedName -> write rate
+  private final Map<String, WriteRate> writeRates = new HashMap<>();
+  private long lastRunTime;
+
+  public AdaptiveMemStoreFlushSizeChore(int period, HRegionServer regionServer,
+    Stoppable stoppable) {
+    super("AdaptiveMemStoreFlushSizeChore", stoppable, period);
+    this.regionServer = regionServer;
+    this.maxMultiplier = Math.max(1,
+      regionServer.getConfiguration().getInt(MAX_MULTIPLIER_KEY, DEFAULT_MAX_MULTIPLIER));
+  }
+
+  @Override
+  protected void chore() {
+    adjust(regionServer.getOnlineRegionsLocalContext(),
+      regionServer.getRegionServerAccounting().getGlobalMemStoreLimitLowMark(),
+      EnvironmentEdgeManager.currentTime());
+  }
+
+  void adjust(Collection<HRegion> regions, long budget, long now) {
+    long elapsed = now - lastRunTime;
+    boolean firstRun = lastRunTime == 0;
+    lastRunTime = now;
+    if (!firstRun && elapsed <= 0) {
+      return;
+    }
+    Map<HRegion, Double> weights = new HashMap<>();
+    Set<String> online = new HashSet<>();
+    double totalWeight = 0;
+    for (HRegion region : regions) {
+      if (region.getRegionInfo().getTable().isSystemTable()) {
+        continue;
+      }
+      String encodedName = region.getRegionInfo().getEncodedName();
+      online.add(encodedName);
+      long added = region.getMemStoreDataSizeAdded();
+      WriteRate writeRate = writeRates.get(encodedName);
+      if (writeRate == null) {
+        // measured from the next run on
+        writeRates.put(encodedName, new WriteRate(added));
+        continue;
+      }
+      double rate = (double) (added - writeRate.lastAdded) / elapsed;
+      writeRate.lastAdded = added;
+      writeRate.bytesPerMs = RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * writeRate.bytesPerMs;
+      double weight = writeRate.bytesPerMs * (1 + getStoreFilePressure(region));
+      weights.put(region, weight);
+      totalWeight += weight;
+    }
+    writeRates.keySet().retainAll(online);
+
+    for (Map.Entry<HRegion, Double> entry : weights.entrySet()) {
+      HRegion region = entry.getKey();
+      long configured = region.getConfiguredMemStoreFlushSize();
+      long flushSize = configured;
+      if (totalWeight > 0) {
+        flushSize =
+          Math.min((long) (budget * (entry.getValue() / totalWeight)), configured * maxMultiplier);
+      }
+      long previous = region.getMemStoreFlushSize();
+      region.setAdaptiveMemStoreFlushSize(flushSize);
+      if (LOG.isDebugEnabled() && previous != region.getMemStoreFlushSize()) {
+        LOG.debug("Flush size of {} moved from {} to {}", region.getRegionInfo().getEncodedName(),
+          StringUtils.byteDesc(previous), StringUtils.byteDesc(region.getMemStoreFlushSize()));
+      }
+    }
+  }
+
+  /**
+   * Returns how close the store of the region with most store files is to blocking the updates,
+   * from 0 to 1.
+   */
+  private static double getStoreFilePressure(HRegion region) {
+    double pressure = 0;
+    for (HStore store : region.getStores()) {
+      long blockingFileCount = store.getBlockingFileCount();
+      if (blockingFileCount > 0) {
+        pressure = Math.max(pressure,
+          Math.min(1.0, (double) store.getStorefilesCount() / blockingFileCount));
+      }
+    }
+    return pressure;
+  }
+
+  private static final class WriteRate {
+    private long lastAdded;
+    private double bytesPerMs;
+
+    private WriteRate(long lastAdded) {
+      this.lastAdded = lastAdded;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A mutable segment indexed by a {@link CellChunkSkipListMap}, so the index of the active segment
+ * is allocated on the index chunks of its MSLAB (off-heap when the MSLAB is) instead of being made
+ * of per-Cell objects. All the Cells of this segment are allocated on the MSLAB, also the ones
+ * which are usually not (big Cells and Cells from Append/Increment operations).
+ */
+@InterfaceAudience.Private
+public class CellChunkMutableSegment extends MutableSegment {
+
+  public static final long DEEP_OVERHEAD_CCSLM = MutableSegment.DEEP_OVERHEAD
+    - ClassSize.CONCURRENT_SKIPLISTMAP + CellChunkSkipListMap.DEEP_OVERHEAD;
+
+  protected CellChunkMutableSegment(CellComparator comparator, MemStoreLAB memStoreLAB,
+    MemStoreSizing memstoreSizing) {
+    super(new CellSet<>(new CellChunkSkipListMap<>(comparator, memStoreLAB)), comparator,
+      memStoreLAB, memstoreSizing);
+    // the map object is on-heap, its entries are accounted per Cell
+    long indexOverhead = DEEP_OVERHEAD_CCSLM - MutableSegment.DEEP_OVERHEAD;
+    incMemStoreSize(0, indexOverhead, 0, 0);
+    if (memstoreSizing != null) {
+      memstoreSizing.incMemStoreSize(0, indexOverhead, 0, 0);
+    }
+  }
+
+  @Override
+  public void add(ExtendedCell cell, boolean mslabUsed, MemStoreSizing memStoreSizing,
+    boolean sizeAddedPreOperation) {
+    if (!mslabUsed) {
+      cell = maybeCloneWithAllocator(cell, true);
+    }
+    super.add(cell, true, memStoreSizing, sizeAddedPreOperation);
+  }
+
+  @Override
+  public void upsert(ExtendedCell cell, long readpoint, MemStoreSizing memStoreSizing,
+    boolean sizeAddedPreOperation) {
+    // the cell was not copied to MSLAB by the caller, see AbstractMemStore#doUpsert
+    super.upsert(maybeCloneWithAllocator(cell, true), readpoint, memStoreSizing,
+      sizeAddedPreOperation);
+  }
+
+  /**
+   * The Cells removed by upsert stay on the MSLAB, and their nodes stay in the index, until the
+   * segment is released. Keep them accounted so that frequently updated columns still trigger
+   * flushes instead of growing the MSLAB unnoticed.
+   */
+  @Override
+  protected boolean releasesRemovedCells() {
+    return false;
+  }
+
+  @Override
+  protected long indexEntryOnHeapSize(boolean onHeap) {
+    if (onHeap) {
+      return indexEntrySize();
+    }
+    // else the index is allocated off-heap
+    return 0;
+  }
+
+  @Override
+  protected long indexEntryOffHeapSize(boolean offHeap) {
+    if (offHeap) {
+      return indexEntrySize();
+    }
+    // else the index is allocated on-heap
+    return 0;
+  }
+
+  @Override
+  protected long indexEntrySize() {
+    // the Cell objects are not kept by the index
+    return ((long) CellChunkSkipListMap.ENTRY_SIZE - KeyValue.FIXED_OVERHEAD);
+  }
+}
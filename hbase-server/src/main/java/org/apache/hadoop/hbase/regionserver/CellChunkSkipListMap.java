@@ -0,0 +1,952 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.hadoop.hbase.ByteBufferKeyValue;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * CellChunkSkipListMap is a concurrent, mutable index of Cells whose nodes are laid out in index
+ * chunks of a {@link MemStoreLAB}, so it can serve as the index of the active segment without
+ * allocating per-Cell objects. Like {@link CellChunkMap}, it only references Cells which are
+ * already allocated on MSLAB chunks, by chunk ID, offset, length and sequence ID, and the index
+ * chunks are off-heap whenever the MSLAB is.
+ * <p>
+ * The map is a skip list where all references are longs holding the position of the index chunk in
+ * the array of index chunks (upper 32 bits) and the offset inside it (lower 32 bits); 0 is the null
+ * reference as the chunk header occupies the start of each chunk. Nodes are linked with CAS
+ * operations, bottom level first, so readers and writers never block each other. Nodes are never
+ * unlinked: a removal clears the value reference of the node, and putting an equal Cell later
+ * revives it. The memory is freed as a whole with the MSLAB, as it is for the Cell data.
+ * <p>
+ * The memory layout of a node and of a Cell record on an index chunk:
+ *
+ * <pre>
+ *
+ * <--------------------------- node ---------------------------> <--------- record --------->
+ * --------------------------------------------------------------------------------------------
+ *  long      | long        | integer | integer | long * level   | integer | integer | integer |
+ *  8 bytes   | 8 bytes     | 4 bytes | 4 bytes | 8 bytes each   | 4 bytes | 4 bytes | 4 bytes |
+ *  key       | value       | level   | padding | next node on   | chunkID | offset  | length  |
+ *  record    | record or 0 |         |         | each level     | of data | of Cell | of Cell |
+ * --------------------------------------------------------------------------------------------
+ * </pre>
+ *
+ * A record is followed by 4 bytes of padding and the sequence ID of the Cell (long).
+ */
+@InterfaceAudience.Private
+public class CellChunkSkipListMap<T extends Cell> implements NavigableMap<T, T> {
+
+  private static final VarHandle REF =
+    MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+  static final long NULL = 0L;
+  static final int MAX_LEVEL = 16;
+
+  private static final int KEY_OFFSET = 0;
+  private static final int VALUE_OFFSET = KEY_OFFSET + Bytes.SIZEOF_LONG;
+  private static final int LEVEL_OFFSET = VALUE_OFFSET + Bytes.SIZEOF_LONG;
+  private static final int NEXT_OFFSET = LEVEL_OFFSET + 2 * Bytes.SIZEOF_INT;
+  private static final int RECORD_SIZE = 4 * Bytes.SIZEOF_INT + Bytes.SIZEOF_LONG;
+
+  /**
+   * The size of the index entry of one Cell, that is a node with the expected number of levels
+   * (4/3, rounded up) and a record.
+   */
+  public static final int ENTRY_SIZE = NEXT_OFFSET + 2 * Bytes.SIZEOF_LONG + RECORD_SIZE;
+
+  public static final long DEEP_OVERHEAD =
+    ClassSize.align(ClassSize.OBJECT + 3 * ClassSize.REFERENCE + 3 * Bytes.SIZEOF_BOOLEAN)
+      + ClassSize.align(ClassSize.OBJECT + 5 * ClassSize.REFERENCE + Bytes.SIZEOF_LONG)
+      + ClassSize.REENTRANT_LOCK + ClassSize.ARRAY;
+
+  private final SkipList<T> list;
+  // the bounds of a sub-map, null when unbounded
+  private final T lo;
+  private final boolean loInclusive;
+  private final T hi;
+  private final boolean hiInclusive;
+  private final boolean descending;
+
+  public CellChunkSkipListMap(CellComparator comparator, MemStoreLAB memStoreLAB) {
+    this(new SkipList<>(comparator, memStoreLAB), null, false, null, false, false);
+  }
+
+  private CellChunkSkipListMap(SkipList<T> list, T lo, boolean loInclusive, T hi,
+    boolean hiInclusive, boolean descending) {
+    this.list = list;
+    this.lo = lo;
+    this.loInclusive = loInclusive;
+    this.hi = hi;
+    this.hiInclusive = hiInclusive;
+    this.descending = descending;
+  }
+
+  /** Returns the number of index chunks allocated by this map. Used for tests. */
+  int getNumOfIndexChunks() {
+    return list.chunks.length;
+  }
+
+  /**
+   * The shared skip list, all sub-maps of a map are views over the same instance.
+   */
+  private static final class SkipList<T extends Cell> {
+    private final CellComparator comparator;
+    private final MemStoreLAB memStoreLAB;
+    private final ChunkCreator chunkCreator;
+    private final ReentrantLock lock = new ReentrantLock();
+    // only ever replaced by a longer copy, the last chunk is the one we allocate from
+    private volatile Chunk[] chunks = new Chunk[0];
+    // allocated with the first index chunk, so empty segments do not hold any index chunk
+    private volatile long head = NULL;
+
+    SkipList(CellComparator comparator, MemStoreLAB memStoreLAB) {
+      this.comparator = comparator;
+      this.memStoreLAB = memStoreLAB;
+      this.chunkCreator = ChunkCreator.getInstance();
+    }
+
+    // ---------------- Memory access ----------------
+    private ByteBuffer buffer(long ref) {
+      return chunks[(int) (ref >>> 32)].getData();
+    }
+
+    private static int offset(long ref) {
+      return (int) ref;
+    }
+
+    private long getRef(long ref, int fieldOffset) {
+      return (long) REF.getAcquire(buffer(ref), offset(ref) + fieldOffset);
+    }
+
+    private void setRef(long ref, int fieldOffset, long value) {
+      REF.setRelease(buffer(ref), offset(ref) + fieldOffset, value);
+    }
+
+    private boolean casRef(long ref, int fieldOffset, long expected, long value) {
+      return REF.compareAndSet(buffer(ref), offset(ref) + fieldOffset, expected, value);
+    }
+
+    private long next(long node, int level) {
+      return getRef(node, NEXT_OFFSET + level * Bytes.SIZEOF_LONG);
+    }
+
+    private boolean casNext(long node, int level, long expected, long value) {
+      return casRef(node, NEXT_OFFSET + level * Bytes.SIZEOF_LONG, expected, value);
+    }
+
+    private long value(long node) {
+      return getRef(node, VALUE_OFFSET);
+    }
+
+    private int level(long node) {
+      return ByteBufferUtils.toInt(buffer(node), offset(node) + LEVEL_OFFSET);
+    }
+
+    private long allocate(int size) {
+      while (true) {
+        Chunk[] cs = chunks;
+        if (cs.length > 0) {
+          int offset = cs[cs.length - 1].alloc(size);
+          if (offset >= 0) {
+            return ((long) (cs.length - 1) << 32) | offset;
+          }
+        }
+        lock.lock();
+        try {
+          // another thread may have added a chunk while we were waiting
+          if (chunks == cs) {
+            addChunk(size);
+          }
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+
+    private void addChunk(int size) {
+      Chunk chunk = memStoreLAB.getNewExternalChunk(ChunkCreator.ChunkType.INDEX_CHUNK);
+      // skip the chunk header so all the longs of the nodes are 8 bytes aligned, as required by
+      // the atomic accesses
+      chunk.alloc(Bytes.SIZEOF_INT);
+      if (size + 2 * Bytes.SIZEOF_INT > chunk.size) {
+        throw new IllegalStateException(
+          "Index chunk of " + chunk.size + " bytes is too small for " + size + " bytes");
+      }
+      Chunk[] newChunks = Arrays.copyOf(chunks, chunks.length + 1);
+      newChunks[newChunks.length - 1] = chunk;
+      chunks = newChunks;
+    }
+
+    private long head() {
+      long h = head;
+      if (h == NULL) {
+        lock.lock();
+        try {
+          h = head;
+          if (h == NULL) {
+            h = newNode(NULL, MAX_LEVEL);
+            head = h;
+          }
+        } finally {
+          lock.unlock();
+        }
+      }
+      return h;
+    }
+
+    private long newNode(long record, int level) {
+      long node = allocate(NEXT_OFFSET + level * Bytes.SIZEOF_LONG);
+      ByteBuffer buf = buffer(node);
+      int offset = offset(node);
+      ByteBufferUtils.putInt(buf, offset + LEVEL_OFFSET, level);
+      for (int i = 0; i < level; i++) {
+        REF.set(buf, offset + NEXT_OFFSET + i * Bytes.SIZEOF_LONG, NULL);
+      }
+      REF.set(buf, offset + KEY_OFFSET, record);
+      // published by the CAS which links the node
+      REF.set(buf, offset + VALUE_OFFSET, record);
+      return node;
+    }
+
+    private long newRecord(ByteBufferKeyValue cell) {
+      long record = allocate(RECORD_SIZE);
+      ByteBuffer buf = buffer(record);
+      int offset = offset(record);
+      offset = ByteBufferUtils.putInt(buf, offset, cell.getChunkId());
+      offset = ByteBufferUtils.putInt(buf, offset, cell.getOffset());
+      offset = ByteBufferUtils.putInt(buf, offset, cell.getSerializedSize());
+      ByteBufferUtils.putLong(buf, offset + Bytes.SIZEOF_INT, cell.getSequenceId());
+      return record;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T cell(long record) {
+      ByteBuffer buf = buffer(record);
+      int offset = offset(record);
+      int chunkId = ByteBufferUtils.toInt(buf, offset);
+      Chunk chunk = chunkCreator.getChunk(chunkId);
+      if (chunk == null) {
+        // this should not happen
+        throw new IllegalStateException(
+          "In CellChunkSkipListMap, cell must be associated with chunk " + chunkId);
+      }
+      return (T) new ByteBufferChunkKeyValue(chunk.getData(),
+        ByteBufferUtils.toInt(buf, offset + Bytes.SIZEOF_INT),
+        ByteBufferUtils.toInt(buf, offset + 2 * Bytes.SIZEOF_INT),
+        ByteBufferUtils.toLong(buf, offset + 4 * Bytes.SIZEOF_INT));
+    }
+
+    T key(long node) {
+      return cell(getRef(node, KEY_OFFSET));
+    }
+
+    /** Returns the current Cell of the node, or null if it was removed. */
+    T valueOf(long node) {
+      long value = value(node);
+      return value == NULL ? null : cell(value);
+    }
+
+    private int compare(Cell key, long node) {
+      return comparator.compare(key, key(node));
+    }
+
+    private static int randomLevel() {
+      // each level holds a quarter of the nodes of the level below it
+      int level = 1;
+      int rnd = ThreadLocalRandom.current().nextInt();
+      while (level < MAX_LEVEL && (rnd & 3) == 0) {
+        level++;
+        rnd >>>= 2;
+      }
+      return level;
+    }
+
+    // ---------------- Search ----------------
+    /**
+     * Fills the predecessors and successors of the key on each level, the successors being the
+     * first nodes not less than the key.
+     * @return the node equal to the key, or {@link #NULL}
+     */
+    private long search(Cell key, long[] preds, long[] succs) {
+      long pred = head();
+      long found = NULL;
+      for (int i = MAX_LEVEL - 1; i >= 0; i--) {
+        long curr = next(pred, i);
+        while (curr != NULL) {
+          int c = compare(key, curr);
+          if (c > 0) {
+            pred = curr;
+            curr = next(curr, i);
+          } else {
+            if (c == 0) {
+              found = curr;
+            }
+            break;
+          }
+        }
+        preds[i] = pred;
+        succs[i] = curr;
+      }
+      return found;
+    }
+
+    /** Returns the node equal to the key, removed or not, or {@link #NULL}. */
+    long find(Cell key) {
+      long h = head;
+      if (h == NULL) {
+        return NULL;
+      }
+      long pred = h;
+      for (int i = MAX_LEVEL - 1; i >= 0; i--) {
+        long curr = next(pred, i);
+        while (curr != NULL) {
+          int c = compare(key, curr);
+          if (c == 0) {
+            return curr;
+          } else if (c > 0) {
+            pred = curr;
+            curr = next(curr, i);
+          } else {
+            break;
+          }
+        }
+      }
+      return NULL;
+    }
+
+    /** Returns the first live node greater than (or equal to) the key, or {@link #NULL}. */
+    long ceiling(Cell key, boolean inclusive) {
+      long h = head;
+      if (h == NULL) {
+        return NULL;
+      }
+      long pred = h;
+      long curr = NULL;
+      for (int i = MAX_LEVEL - 1; i >= 0; i--) {
+        curr = next(pred, i);
+        while (curr != NULL) {
+          int c = compare(key, curr);
+          if (c > 0 || (c == 0 && !inclusive)) {
+            pred = curr;
+            curr = next(curr, i);
+          } else {
+            break;
+          }
+        }
+      }
+      return curr == NULL || value(curr) != NULL ? curr : successor(curr);
+    }
+
+    /** Returns the first live node less than (or equal to) the key, or {@link #NULL}. */
+    long floor(Cell key, boolean inclusive) {
+      while (true) {
+        long h = head;
+        if (h == NULL) {
+          return NULL;
+        }
+        long pred = h;
+        for (int i = MAX_LEVEL - 1; i >= 0; i--) {
+          long curr = next(pred, i);
+          while (curr != NULL) {
+            int c = key == null ? 1 : compare(key, curr);
+            if (c > 0 || (c == 0 && inclusive)) {
+              pred = curr;
+              curr = next(curr, i);
+            } else {
+              break;
+            }
+          }
+        }
+        if (pred == h || value(pred) != NULL) {
+          return pred == h ? NULL : pred;
+        }
+        // the node was removed, look for the one before it
+        key = key(pred);
+        inclusive = false;
+      }
+    }
+
+    long first() {
+      long h = head;
+      return h == NULL ? NULL : successor(h);
+    }
+
+    long last() {
+      return floor(null, false);
+    }
+
+    /** Returns the next live node after the given one on the bottom level, or {@link #NULL}. */
+    long successor(long node) {
+      long curr = next(node, 0);
+      while (curr != NULL && value(curr) == NULL) {
+        curr = next(curr, 0);
+      }
+      return curr;
+    }
+
+    // ---------------- Updates ----------------
+    T put(ByteBufferKeyValue cell) {
+      long record = newRecord(cell);
+      long[] preds = new long[MAX_LEVEL];
+      long[] succs = new long[MAX_LEVEL];
+      long node = NULL;
+      int level = 0;
+      while (true) {
+        long found = search(cell, preds, succs);
+        if (found != NULL) {
+          // an equal Cell is already in the map (or was removed from it), replace it
+          while (true) {
+            long old = value(found);
+            if (casRef(found, VALUE_OFFSET, old, record)) {
+              return old == NULL ? null : cell(old);
+            }
+          }
+        }
+        if (node == NULL) {
+          level = randomLevel();
+          node = newNode(record, level);
+        }
+        setRef(node, NEXT_OFFSET, succs[0]);
+        if (casNext(preds[0], 0, succs[0], node)) {
+          break;
+        }
+      }
+      // the node is in the map now, link it on the upper levels
+      for (int i = 1; i < level; i++) {
+        while (true) {
+          setRef(node, NEXT_OFFSET + i * Bytes.SIZEOF_LONG, succs[i]);
+          if (casNext(preds[i], i, succs[i], node)) {
+            break;
+          }
+          search(cell, preds, succs);
+        }
+      }
+      return null;
+    }
+
+    T remove(long node) {
+      while (true) {
+        long old = value(node);
+        if (old == NULL) {
+          return null;
+        }
+        if (casRef(node, VALUE_OFFSET, old, NULL)) {
+          return cell(old);
+        }
+      }
+    }
+  }
+
+  // ---------------- Bounds ----------------
+  private boolean tooLow(Cell key) {
+    if (lo == null) {
+      return false;
+    }
+    int c = list.comparator.compare(key, lo);
+    return c < 0 || (c == 0 && !loInclusive);
+  }
+
+  private boolean tooHigh(Cell key) {
+    if (hi == null) {
+      return false;
+    }
+    int c = list.comparator.compare(key, hi);
+    return c > 0 || (c == 0 && !hiInclusive);
+  }
+
+  private boolean inBounds(Cell key) {
+    return !tooLow(key) && !tooHigh(key);
+  }
+
+  /* Returns the lowest live node in the bounds, in the ascending order */
+  private long lowestNode() {
+    long node = lo == null ? list.first() : list.ceiling(lo, loInclusive);
+    return node == NULL || tooHigh(list.key(node)) ? NULL : node;
+  }
+
+  /* Returns the highest live node in the bounds, in the ascending order */
+  private long highestNode() {
+    long node = hi == null ? list.last() : list.floor(hi, hiInclusive);
+    return node == NULL || tooLow(list.key(node)) ? NULL : node;
+  }
+
+  /* Returns the live node following the given one in the bounds, in the order of this map */
+  private long nextNode(long node) {
+    if (descending) {
+      node = list.floor(list.key(node), false);
+      return node == NULL || tooLow(list.key(node)) ? NULL : node;
+    }
+    node = list.successor(node);
+    return node == NULL || tooHigh(list.key(node)) ? NULL : node;
+  }
+
+  /*
+   * Returns the live node nearest to the key in the bounds, greater than the key in the ascending
+   * order when above is true
+   */
+  private long nearNode(T key, boolean above, boolean inclusive) {
+    if (above) {
+      if (tooLow(key)) {
+        return lowestNode();
+      }
+      long node = list.ceiling(key, inclusive);
+      return node == NULL || tooHigh(list.key(node)) ? NULL : node;
+    } else {
+      if (tooHigh(key)) {
+        return highestNode();
+      }
+      long node = list.floor(key, inclusive);
+      return node == NULL || tooLow(list.key(node)) ? NULL : node;
+    }
+  }
+
+  private T nearKey(T key, boolean above, boolean inclusive) {
+    return valueOrNull(nearNode(key, above ^ descending, inclusive));
+  }
+
+  private T valueOrNull(long node) {
+    return node == NULL ? null : list.valueOf(node);
+  }
+
+  private CellChunkSkipListMap<T> subMap(T fromKey, boolean fromInclusive, boolean hasFrom, T toKey,
+    boolean toInclusive, boolean hasTo) {
+    if (descending) {
+      // the bounds of a descending map are given in the descending order
+      T tmpKey = fromKey;
+      fromKey = toKey;
+      toKey = tmpKey;
+      boolean tmp = fromInclusive;
+      fromInclusive = toInclusive;
+      toInclusive = tmp;
+      tmp = hasFrom;
+      hasFrom = hasTo;
+      hasTo = tmp;
+    }
+    T newLo = lo;
+    boolean newLoInclusive = loInclusive;
+    if (hasFrom && !tooLow(fromKey)) {
+      newLo = fromKey;
+      newLoInclusive = fromInclusive;
+    }
+    T newHi = hi;
+    boolean newHiInclusive = hiInclusive;
+    if (hasTo && !tooHigh(toKey)) {
+      newHi = toKey;
+      newHiInclusive = toInclusive;
+    }
+    return new CellChunkSkipListMap<>(list, newLo, newLoInclusive, newHi, newHiInclusive,
+      descending);
+  }
+
+  @Override
+  public Comparator<? super T> comparator() {
+    return list.comparator;
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (long node = descending ? highestNode() : lowestNode(); node != NULL; node =
+      nextNode(node)) {
+      size++;
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return lowestNode() == NULL;
+  }
+
+  // ---------------- Sub-Maps ----------------
+  @Override
+  public NavigableMap<T, T> subMap(T fromKey, boolean fromInclusive, T toKey, boolean toInclusive) {
+    return subMap(fromKey, fromInclusive, true, toKey, toInclusive, true);
+  }
+
+  @Override
+  public NavigableMap<T, T> headMap(T toKey, boolean inclusive) {
+    return subMap(null, false, false, toKey, inclusive, true);
+  }
+
+  @Override
+  public NavigableMap<T, T> tailMap(T fromKey, boolean inclusive) {
+    return subMap(fromKey, inclusive, true, null, false, false);
+  }
+
+  @Override
+  public NavigableMap<T, T> descendingMap() {
+    return new CellChunkSkipListMap<>(list, lo, loInclusive, hi, hiInclusive, !descending);
+  }
+
+  @Override
+  public NavigableMap<T, T> subMap(T k1, T k2) {
+    return this.subMap(k1, true, k2, false);
+  }
+
+  @Override
+  public NavigableMap<T, T> headMap(T k) {
+    return this.headMap(k, false);
+  }
+
+  @Override
+  public NavigableMap<T, T> tailMap(T k) {
+    return this.tailMap(k, true);
+  }
+
+  // -------------------------------- Key's getters --------------------------------
+  @Override
+  public T firstKey() {
+    T cell = valueOrNull(descending ? highestNode() : lowestNode());
+    if (cell == null) {
+      throw new NoSuchElementException();
+    }
+    return cell;
+  }
+
+  @Override
+  public T lastKey() {
+    T cell = valueOrNull(descending ? lowestNode() : highestNode());
+    if (cell == null) {
+      throw new NoSuchElementException();
+    }
+    return cell;
+  }
+
+  @Override
+  public T lowerKey(T k) {
+    return nearKey(k, false, false);
+  }
+
+  @Override
+  public T floorKey(T k) {
+    return nearKey(k, false, true);
+  }
+
+  @Override
+  public T ceilingKey(T k) {
+    return nearKey(k, true, true);
+  }
+
+  @Override
+  public T higherKey(T k) {
+    return nearKey(k, true, false);
+  }
+
+  @Override
+  public boolean containsKey(Object o) {
+    return get(o) != null;
+  }
+
+  @Override
+  public boolean containsValue(Object o) { // use containsKey(Object o) instead
+    throw new UnsupportedOperationException("Use containsKey(Object o) instead");
+  }
+
+  @Override
+  public T get(Object o) {
+    Cell key = (Cell) o;
+    if (!inBounds(key)) {
+      return null;
+    }
+    long node = list.find(key);
+    return valueOrNull(node);
+  }
+
+  // -------------------------------- Entry's getters --------------------------------
+
+  private static class CellChunkSkipListMapEntry<T> implements Entry<T, T> {
+    private final T cell;
+
+    public CellChunkSkipListMapEntry(T cell) {
+      this.cell = cell;
+    }
+
+    @Override
+    public T getKey() {
+      return cell;
+    }
+
+    @Override
+    public T getValue() {
+      return cell;
+    }
+
+    @Override
+    public T setValue(T value) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static <T> Entry<T, T> entryOrNull(T cell) {
+    return cell == null ? null : new CellChunkSkipListMapEntry<>(cell);
+  }
+
+  @Override
+  public Entry<T, T> lowerEntry(T k) {
+    return entryOrNull(lowerKey(k));
+  }
+
+  @Override
+  public Entry<T, T> higherEntry(T k) {
+    return entryOrNull(higherKey(k));
+  }
+
+  @Override
+  public Entry<T, T> ceilingEntry(T k) {
+    return entryOrNull(ceilingKey(k));
+  }
+
+  @Override
+  public Entry<T, T> floorEntry(T k) {
+    return entryOrNull(floorKey(k));
+  }
+
+  @Override
+  public Entry<T, T> firstEntry() {
+    return entryOrNull(valueOrNull(descending ? highestNode() : lowestNode()));
+  }
+
+  @Override
+  public Entry<T, T> lastEntry() {
+    return entryOrNull(valueOrNull(descending ? lowestNode() : highestNode()));
+  }
+
+  @Override
+  public Entry<T, T> pollFirstEntry() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Entry<T, T> pollLastEntry() {
+    throw new UnsupportedOperationException();
+  }
+
+  // -------------------------------- Updates --------------------------------
+  /**
+   * Puts the Cell in the map, overwriting an equal Cell. The Cell must be allocated on a chunk of
+   * the MSLAB, and the key and the value must be the same Cell.
+   */
+  @Override
+  public T put(T k, T v) {
+    if (k != v) {
+      throw new IllegalArgumentException("CellChunkSkipListMap maps a Cell to itself");
+    }
+    if (
+      !(k instanceof ByteBufferKeyValue)
+        || ((ExtendedCell) k).getChunkId() == ExtendedCell.CELL_NOT_BASED_ON_CHUNK
+    ) {
+      throw new IllegalArgumentException(
+        "CellChunkSkipListMap only accepts Cells allocated on MSLAB chunks, got " + k);
+    }
+    if (!inBounds(k)) {
+      throw new IllegalArgumentException("Key out of range: " + k);
+    }
+    return list.put((ByteBufferKeyValue) k);
+  }
+
+  @Override
+  public void clear() {
+    for (Iterator<T> it = values().iterator(); it.hasNext();) {
+      it.next();
+      it.remove();
+    }
+  }
+
+  @Override
+  public T remove(Object o) {
+    Cell key = (Cell) o;
+    if (!inBounds(key)) {
+      return null;
+    }
+    long node = list.find(key);
+    return node == NULL ? null : list.remove(node);
+  }
+
+  @Override
+  public void putAll(Map<? extends T, ? extends T> map) {
+    throw new UnsupportedOperationException();
+  }
+
+  // -------------------------------- Sub-Sets --------------------------------
+  @Override
+  public NavigableSet<T> navigableKeySet() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public NavigableSet<T> descendingKeySet() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public NavigableSet<T> keySet() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Collection<T> values() {
+    return new CellChunkSkipListMapCollection();
+  }
+
+  @Override
+  public Set<Entry<T, T>> entrySet() {
+    throw new UnsupportedOperationException();
+  }
+
+  // -------------------------------- Iterator K --------------------------------
+  private final class CellChunkSkipListMapIterator implements Iterator<T> {
+    private long nextNode;
+    private T nextCell;
+    private long lastNode = NULL;
+
+    private CellChunkSkipListMapIterator() {
+      nextNode = descending ? highestNode() : lowestNode();
+      advance();
+    }
+
+    /* Skips the nodes removed since they were found */
+    private void advance() {
+      while (nextNode != NULL) {
+        nextCell = list.valueOf(nextNode);
+        if (nextCell != null) {
+          return;
+        }
+        nextNode = nextNode(nextNode);
+      }
+      nextCell = null;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return nextCell != null;
+    }
+
+    @Override
+    public T next() {
+      if (nextCell == null) {
+        throw new NoSuchElementException();
+      }
+      T cell = nextCell;
+      lastNode = nextNode;
+      nextNode = nextNode(nextNode);
+      advance();
+      return cell;
+    }
+
+    @Override
+    public void remove() {
+      if (lastNode == NULL) {
+        throw new IllegalStateException();
+      }
+      list.remove(lastNode);
+      lastNode = NULL;
+    }
+  }
+
+  // -------------------------------- Collection --------------------------------
+  private final class CellChunkSkipListMapCollection implements Collection<T> {
+
+    @Override
+    public int size() {
+      return CellChunkSkipListMap.this.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return CellChunkSkipListMap.this.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+      CellChunkSkipListMap.this.clear();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return containsKey(o);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return new CellChunkSkipListMapIterator();
+    }
+
+    @Override
+    public Object[] toArray() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] ts) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean add(T k) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> collection) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> collection) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> collection) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> collection) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -64,6 +64,15 @@ public class CompactingMemStore extends AbstractMemStore {
   public static final String IN_MEMORY_CONPACTION_POOL_SIZE_KEY =
     "hbase.regionserver.inmemory.compaction.pool.size";
   public static final int IN_MEMORY_CONPACTION_POOL_SIZE_DEFAULT = 10;
+  // Number of key ranges an in-memory compaction or merge is split into, each compacted by its own
+  // thread, 1 keeps the in-memory compaction on a single thread
+  public static final String IN_MEMORY_COMPACTION_PARALLELISM_KEY =
+    "hbase.hregion.compacting.memstore.compaction.parallelism";
+  public static final int IN_MEMORY_COMPACTION_PARALLELISM_DEFAULT = 1;
+  // Minimal number of cells per key range of a parallel in-memory compaction
+  public static final String IN_MEMORY_COMPACTION_PARTITION_MIN_CELLS_KEY =
+    "hbase.hregion.compacting.memstore.compaction.partition.min.cells";
+  public static final int IN_MEMORY_COMPACTION_PARTITION_MIN_CELLS_DEFAULT = 100000;
 
   private static final Logger LOG = LoggerFactory.getLogger(CompactingMemStore.class);
   private HStore store;
@@ -53,6 +53,15 @@ import org.slf4j.LoggerFactory;
 public class DefaultMemStore extends AbstractMemStore {
   private static final Logger LOG = LoggerFactory.getLogger(DefaultMemStore.class);
 
+  /**
+   * The index of the active segment, CSLM_MAP (the default) for a ConcurrentSkipListMap or
+   * CHUNK_MAP for a {@link CellChunkSkipListMap} allocated on the index chunks of the MSLAB.
+   * CHUNK_MAP needs MSLAB to be enabled, otherwise the default is used.
+   */
+  public static final String MEMSTORE_ACTIVE_INDEX_KEY = "hbase.hregion.memstore.active.index";
+  public static final String MEMSTORE_ACTIVE_INDEX_DEFAULT =
+    String.valueOf(CompactingMemStore.IndexType.CSLM_MAP);
+
   public final static long DEEP_OVERHEAD = ClassSize.align(AbstractMemStore.DEEP_OVERHEAD);
   public final static long FIXED_OVERHEAD = ClassSize.align(AbstractMemStore.FIXED_OVERHEAD);
 
@@ -80,6 +89,12 @@ public class DefaultMemStore extends AbstractMemStore {
     super(conf, c, regionServices);
   }
 
+  @Override
+  protected CompactingMemStore.IndexType getActiveIndexType() {
+    return CompactingMemStore.IndexType.valueOf(getConfiguration()
+      .get(MEMSTORE_ACTIVE_INDEX_KEY, MEMSTORE_ACTIVE_INDEX_DEFAULT).toUpperCase());
+  }
+
   /**
    * Creates a snapshot of the current memstore. Snapshot must be cleared by call to
    * {@link #clearSnapshot(long)}
@@ -51,6 +51,7 @@ import java.util.Optional;
 import java.util.RandomAccess;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
@@ -130,6 +131,8 @@ import org.apache.hadoop.hbase.errorhandling.ForeignExceptionSnare;
 import org.apache.hadoop.hbase.exceptions.FailedSanityCheckException;
 import org.apache.hadoop.hbase.exceptions.TimeoutIOException;
 import org.apache.hadoop.hbase.exceptions.UnknownProtocolException;
+import org.apache.hadoop.hbase.executor.ExecutorService;
+import org.apache.hadoop.hbase.executor.ExecutorType;
 import org.apache.hadoop.hbase.filter.BinaryComparator;
 import org.apache.hadoop.hbase.filter.ByteArrayComparable;
 import org.apache.hadoop.hbase.filter.Filter;
@@ -333,6 +336,15 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
   // - the row itself
   private final ConcurrentHashMap<HashedBytes, RowLockContext> lockedRows =
     new ConcurrentHashMap<>();
+  // The row locks taken from a fixed table of pooled contexts instead of lockedRows, null when
+  // ROW_LOCK_STRIPES_KEY is not set
+  private final StripedRowLocks stripedRowLocks;
+  // The families whose increments are combined, and the combiner, null when there is none
+  private final Set<byte[]> incrementCombiningFamilies;
+  private final IncrementCombiner incrementCombiner;
+  // Store file seeks of a region scanner in flight at once, 0 when they are not pipelined
+  private final int seekPipelineConcurrency;
+  private volatile ThreadPoolExecutor seekPipelineExecutor;
 
   protected final Map<byte[], HStore> stores =
     new ConcurrentSkipListMap<>(Bytes.BYTES_RAWCOMPARATOR);
@@ -363,6 +375,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
   // Number of requests blocked by memstore size.
   private final LongAdder blockedRequestsCount = new LongAdder();
 
+  // Data size ever added to the memstore, the write rate of the region in bytes
+  private final LongAdder memStoreDataSizeAdded = new LongAdder();
+
   // Compaction LongAdders
   final LongAdder compactionsFinished = new LongAdder();
   final LongAdder compactionsFailed = new LongAdder();
@@ -373,13 +388,31 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
 
   private BlockCache blockCache;
   private MobFileCache mobFileCache;
-  private final WAL wal;
+  // Only changed by switchWAL, under the updates lock
+  private volatile WAL wal;
   private final HRegionFileSystem fs;
   protected final Configuration conf;
   private final Configuration baseConf;
   private final int rowLockWaitDuration;
   static final int DEFAULT_ROWLOCK_WAIT_DURATION = 30000;
 
+  /**
+   * The number of stripes of the table the row locks are taken from, see {@link StripedRowLocks}.
+   * The default of 0 keeps a map of the locked rows instead.
+   */
+  public static final String ROW_LOCK_STRIPES_KEY = "hbase.rowlock.stripes";
+  public static final int DEFAULT_ROW_LOCK_STRIPES = 0;
+
+  /**
+   * Set to true on a column family, or on its table, to combine the concurrent increments of a row
+   * touching only such families, see {@link IncrementCombiner}. Not done while a coprocessor of the
+   * region observes increments. Off by default.
+   */
+  public static final String INCREMENT_COMBINING_KEY = "hbase.hregion.increment.combining";
+  public static final String INCREMENT_COMBINING_MAX_BATCH_KEY =
+    "hbase.hregion.increment.combining.max.batch";
+  public static final int DEFAULT_INCREMENT_COMBINING_MAX_BATCH = 128;
+
   private Path regionWalDir;
   private FileSystem walFS;
 
@@ -698,7 +731,11 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
 
   final WriteState writestate = new WriteState();
 
-  long memstoreFlushSize;
+  volatile long memstoreFlushSize;
+  // The flush size from the table descriptor or the configuration, which the flush size only moves
+  // away from when adjusted by AdaptiveMemStoreFlushSizeChore
+  private long configuredMemStoreFlushSize;
+  private long memStoreBlockMultiplier;
   final long timestampSlop;
 
   // Last flush time for each Store. Useful when we are flushing for each column
@@ -709,7 +746,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
   private long flushCheckInterval;
   // flushPerChanges is to prevent too many changes in memstore
   private long flushPerChanges;
-  private long blockingMemStoreSize;
+  private volatile long blockingMemStoreSize;
   // Used to guard closes
   final ReentrantReadWriteLock lock;
   // Used to track interruptible holders of the region lock. Currently that is only RPC handler
@@ -823,6 +860,8 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       tmpRowLockDuration = 1;
     }
     this.rowLockWaitDuration = tmpRowLockDuration;
+    int rowLockStripes = conf.getInt(ROW_LOCK_STRIPES_KEY, DEFAULT_ROW_LOCK_STRIPES);
+    this.stripedRowLocks = rowLockStripes > 0 ? new StripedRowLocks(rowLockStripes) : null;
 
     this.smallestReadPointCalcLock = new ReadPointCalculationLock(conf);
 
@@ -893,6 +932,29 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       this.metricsRegionWrapper = null;
       this.metricsRegion = null;
     }
+    // Combined increments go through the coprocessors as one, so only combine when none observes
+    // increments.
+    Set<byte[]> combiningFamilies = new TreeSet<>(Bytes.BYTES_COMPARATOR);
+    if (coprocessorHost == null || !coprocessorHost.hasIncrementObserver()) {
+      for (ColumnFamilyDescriptor family : htd.getColumnFamilies()) {
+        if (
+          StoreUtils.createStoreConfiguration(conf, htd, family).getBoolean(INCREMENT_COMBINING_KEY,
+            false)
+        ) {
+          combiningFamilies.add(family.getName());
+        }
+      }
+    }
+    this.incrementCombiningFamilies = combiningFamilies.isEmpty() ? null : combiningFamilies;
+    this.incrementCombiner = combiningFamilies.isEmpty()
+      ? null
+      : new IncrementCombiner(
+        (combined,
+          nonceKeys) -> mutate(new MutationBatchOperation(this, new Mutation[] { combined }, true,
+            HConstants.NO_NONCE, HConstants.NO_NONCE, nonceKeys)).getResult(),
+        conf.getInt(INCREMENT_COMBINING_MAX_BATCH_KEY, DEFAULT_INCREMENT_COMBINING_MAX_BATCH));
+    this.seekPipelineConcurrency =
+      conf.getInt(ParallelSeekPipeline.CONCURRENCY_KEY, ParallelSeekPipeline.DEFAULT_CONCURRENCY);
     if (LOG.isDebugEnabled()) {
       // Write out region name, its encoded name and storeHotnessProtector as string.
       LOG.debug("Instantiated " + this + "; " + storeHotnessProtector.toString());
@@ -939,9 +1001,10 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         TableDescriptorBuilder.DEFAULT_MEMSTORE_FLUSH_SIZE);
     }
     this.memstoreFlushSize = flushSize;
-    long mult = conf.getLong(HConstants.HREGION_MEMSTORE_BLOCK_MULTIPLIER,
+    this.configuredMemStoreFlushSize = flushSize;
+    this.memStoreBlockMultiplier = conf.getLong(HConstants.HREGION_MEMSTORE_BLOCK_MULTIPLIER,
       HConstants.DEFAULT_HREGION_MEMSTORE_BLOCK_MULTIPLIER);
-    this.blockingMemStoreSize = this.memstoreFlushSize * mult;
+    this.blockingMemStoreSize = this.memstoreFlushSize * memStoreBlockMultiplier;
   }
 
   /**
@@ -1381,9 +1444,17 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     }
     long dataSize = this.memStoreSizing.incMemStoreSize(dataSizeDelta, heapSizeDelta,
       offHeapSizeDelta, cellsCountDelta);
+    if (dataSizeDelta > 0) {
+      memStoreDataSizeAdded.add(dataSizeDelta);
+    }
     checkNegativeMemStoreDataSize(dataSize, dataSizeDelta);
   }
 
+  /** Returns the data size ever added to the memstore of this region */
+  long getMemStoreDataSizeAdded() {
+    return memStoreDataSizeAdded.sum();
+  }
+
   void decrMemStoreSize(MemStoreSize mss) {
     decrMemStoreSize(mss.getDataSize(), mss.getHeapSize(), mss.getOffHeapSize(),
       mss.getCellsCount());
@@ -2115,6 +2186,50 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     return this.wal;
   }
 
+  /**
+   * Moves the region to another WAL of this server, see {@link WALGroupSwitcher}. The region is
+   * flushed with its updates blocked first, so that the WAL it leaves holds no edit which is not in
+   * a store file and the {@code SequenceIdAccounting} of both WALs stays exact. Most of the
+   * memstore is flushed before blocking the updates, to keep the time they are blocked short.
+   * <p>
+   * Regions of replicated tables stay on their WAL, a serial replication peer needs all the edits
+   * of a region opening in the same WAL group to ship them in order.
+   * @return true if the region is on the given WAL, false if it could not be flushed
+   * @throws IOException if the flush failed, see
+   *                     {@link #flushcache(List, boolean, FlushLifeCycleTracker)}
+   */
+  boolean switchWAL(WAL newWAL) throws IOException {
+    if (newWAL == this.wal) {
+      return true;
+    }
+    if (getRegionInfo().isMetaRegion() || htableDescriptor.hasGlobalReplicationScope()) {
+      return false;
+    }
+    flushcache(true, false, FlushLifeCycleTracker.DUMMY);
+    lock.readLock().lock();
+    try {
+      if (this.closing.get() || this.closed.get()) {
+        return false;
+      }
+      this.updatesLock.writeLock().lock();
+      try {
+        FlushResult result = flushcache(true, false, FlushLifeCycleTracker.DUMMY);
+        // a compacting memstore may keep segments in memory after a flush
+        if (result.getResult() == FlushResult.Result.CANNOT_FLUSH || getMemStoreDataSize() > 0) {
+          LOG.debug("Not switching {} to WAL {}, {}", this, newWAL, result);
+          return false;
+        }
+        LOG.info("Switching {} from WAL {} to WAL {}", this, this.wal, newWAL);
+        this.wal = newWAL;
+        return true;
+      } finally {
+        this.updatesLock.writeLock().unlock();
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
   public BlockCache getBlockCache() {
     return this.blockCache;
   }
@@ -3813,15 +3928,24 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     // For nonce operations
     private long nonceGroup;
     private long nonce;
+    // The nonces of the increments combined into the batch, their operations are started and ended
+    // by the callers of IncrementCombiner
+    private final List<NonceKey> combinedNonceKeys;
     protected boolean canProceed;
     private boolean regionReplicateEnable;
 
     public MutationBatchOperation(final HRegion region, Mutation[] operations, boolean atomic,
       long nonceGroup, long nonce) {
+      this(region, operations, atomic, nonceGroup, nonce, Collections.emptyList());
+    }
+
+    MutationBatchOperation(final HRegion region, Mutation[] operations, boolean atomic,
+      long nonceGroup, long nonce, List<NonceKey> combinedNonceKeys) {
       super(region, operations);
       this.atomic = atomic;
       this.nonceGroup = nonceGroup;
       this.nonce = nonce;
+      this.combinedNonceKeys = combinedNonceKeys;
       this.regionReplicateEnable = region.regionReplicationSink.isPresent();
     }
 
@@ -4367,6 +4491,22 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
             writeEntry.getWriteNumber());
         }
       }
+      if (region.rsServices != null && region.rsServices.getNonceManager() != null) {
+        for (NonceKey nonceKey : combinedNonceKeys) {
+          region.rsServices.getNonceManager().addMvccToOperationContext(nonceKey.getNonceGroup(),
+            nonceKey.getNonce(), writeEntry.getWriteNumber());
+        }
+      }
+    }
+
+    /**
+     * Records the nonces of the increments combined into the batch in its WAL entry.
+     */
+    void addCombinedNonceKeys(WALKeyImpl walKey) {
+      if (!combinedNonceKeys.isEmpty()) {
+        walKey.addExtendedAttribute(IncrementCombiner.NONCES_ATTRIBUTE,
+          IncrementCombiner.toNoncesAttribute(combinedNonceKeys));
+      }
     }
 
     @Override
@@ -5190,8 +5330,12 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
 
   private OperationStatus mutate(Mutation mutation, boolean atomic, long nonceGroup, long nonce)
     throws IOException {
-    OperationStatus[] status =
-      this.batchMutate(new Mutation[] { mutation }, atomic, nonceGroup, nonce);
+    return mutate(
+      new MutationBatchOperation(this, new Mutation[] { mutation }, atomic, nonceGroup, nonce));
+  }
+
+  private OperationStatus mutate(MutationBatchOperation batchOp) throws IOException {
+    OperationStatus[] status = batchMutate(batchOp);
     if (status[0].getOperationStatusCode().equals(OperationStatusCode.SANITY_CHECK_FAILURE)) {
       throw new FailedSanityCheckException(status[0].getExceptionMsg());
     } else if (status[0].getOperationStatusCode().equals(OperationStatusCode.BAD_FAMILY)) {
@@ -5643,6 +5787,8 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
 
           if (ng != null) { // some test, or nonces disabled
             ng.reportOperationFromWal(key.getNonceGroup(), key.getNonce(), key.getWriteTime());
+            IncrementCombiner.reportOperationsFromWal(ng,
+              key.getExtendedAttribute(IncrementCombiner.NONCES_ATTRIBUTE), key.getWriteTime());
           }
 
           if (reporter != null) {
@@ -7009,6 +7155,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
   // will be override in tests
   protected RowLock getRowLockInternal(byte[] row, boolean readLock, RowLock prevRowLock)
     throws IOException {
+    if (stripedRowLocks != null) {
+      return getStripedRowLock(row, readLock, prevRowLock);
+    }
     // create an object to use a a key in the row lock map
     HashedBytes rowKey = new HashedBytes(row);
 
@@ -7040,6 +7189,45 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         }
       }
 
+      lockRow(result.getLock(), row);
+      rowLockContext.setThreadName(Thread.currentThread().getName());
+      success = true;
+      return result;
+    } finally {
+      // Clean up the counts just in case this was the thing keeping the context alive.
+      if (!success && rowLockContext != null) {
+        rowLockContext.cleanUp();
+      }
+    }
+  }
+
+  private RowLock getStripedRowLock(byte[] row, boolean readLock, RowLock prevRowLock)
+    throws IOException {
+    // If the caller has locked the same row in the same mode previously, it will not try to acquire
+    // the same lock again. It simply returns the previous row lock.
+    if (StripedRowLocks.isLockOn(prevRowLock, row, readLock)) {
+      return prevRowLock;
+    }
+    StripedRowLocks.PooledRowLock result = stripedRowLocks.acquire(row, readLock);
+    boolean success = false;
+    try {
+      lockRow(result.getLock(), row);
+      result.setThreadName(Thread.currentThread().getName());
+      success = true;
+      return result;
+    } finally {
+      if (!success) {
+        result.abandon();
+      }
+    }
+  }
+
+  /**
+   * Locks the given lock of the row, waiting up to the row lock wait duration, or less if the
+   * deadline of the current call comes first.
+   */
+  private void lockRow(Lock lock, byte[] row) throws IOException {
+    try {
       int timeout = rowLockWaitDuration;
       boolean reachDeadlineFirst = false;
       Optional<RpcCall> call = RpcServer.getCurrentCall();
@@ -7054,9 +7242,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         }
       }
 
-      if (timeout <= 0 || !result.getLock().tryLock(timeout, TimeUnit.MILLISECONDS)) {
-        String message = "Timed out waiting for lock for row: " + rowKey + " in region "
-          + getRegionInfo().getEncodedName();
+      if (timeout <= 0 || !lock.tryLock(timeout, TimeUnit.MILLISECONDS)) {
+        String message = "Timed out waiting for lock for row: " + Bytes.toStringBinary(row)
+          + " in region " + getRegionInfo().getEncodedName();
         if (reachDeadlineFirst) {
           throw new TimeoutIOException(message);
         } else {
@@ -7064,13 +7252,10 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
           throw new IOException(message);
         }
       }
-      rowLockContext.setThreadName(Thread.currentThread().getName());
-      success = true;
-      return result;
     } catch (InterruptedException ie) {
       if (LOG.isDebugEnabled()) {
-        LOG.debug("Thread interrupted waiting for lock on row: {}, in region {}", rowKey,
-          getRegionInfo().getRegionNameAsString());
+        LOG.debug("Thread interrupted waiting for lock on row: {}, in region {}",
+          Bytes.toStringBinary(row), getRegionInfo().getRegionNameAsString());
       }
       throw throwOnInterrupt(ie);
     } catch (Error error) {
@@ -7081,11 +7266,6 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         getRegionInfo().getRegionNameAsString(), error);
       IOException ioe = new IOException(error);
       throw ioe;
-    } finally {
-      // Clean up the counts just in case this was the thing keeping the context alive.
-      if (!success && rowLockContext != null) {
-        rowLockContext.cleanUp();
-      }
     }
   }
 
@@ -7112,6 +7292,19 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     return lockedRows;
   }
 
+  /** Returns a description of every row locked or waited for in this region */
+  public List<String> getLockedRowDescriptions() {
+    if (stripedRowLocks != null) {
+      return stripedRowLocks.getLockedRows();
+    }
+    return lockedRows.values().stream().map(RowLockContext::toString).collect(Collectors.toList());
+  }
+
+  /** Returns the number of rows locked or waited for in this region */
+  public int getNumLockedRows() {
+    return stripedRowLocks != null ? stripedRowLocks.getNumLockedRows() : lockedRows.size();
+  }
+
   class RowLockContext {
     private final HashedBytes row;
     final ReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
@@ -8102,6 +8295,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       checkResources();
       startRegionOperation(Operation.INCREMENT);
       try {
+        if (canCombine(increment)) {
+          return incrementCombined(increment, nonceGroup, nonce);
+        }
         // All edits for the given row (across all column families) must happen atomically.
         return mutate(increment, true, nonceGroup, nonce).getResult();
       } finally {
@@ -8110,6 +8306,84 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     }, () -> createRegionSpan("Region.increment"));
   }
 
+  /**
+   * Applies the increment through the {@link IncrementCombiner}. The batch the increment ends up in
+   * only records its nonce, so its nonce operation is started and ended here, as
+   * {@link MutationBatchOperation} does for the increments applied alone.
+   */
+  private Result incrementCombined(Increment increment, long nonceGroup, long nonce)
+    throws IOException {
+    if (nonce == HConstants.NO_NONCE) {
+      return incrementCombiner.increment(increment, null);
+    }
+    ServerNonceManager nonceManager = rsServices == null ? null : rsServices.getNonceManager();
+    if (nonceManager != null) {
+      boolean canProceed;
+      try {
+        canProceed = nonceManager.startOperation(nonceGroup, nonce, rsServices);
+      } catch (InterruptedException ex) {
+        throw new InterruptedIOException("Nonce start operation interrupted");
+      }
+      if (!canProceed) {
+        // convert duplicate increment to get
+        return increment.isReturnResults()
+          ? Result.create(get(MutationBatchOperation.toGet(increment), false, nonceGroup, nonce))
+          : Result.EMPTY_RESULT;
+      }
+    }
+    boolean success = false;
+    try {
+      Result result = incrementCombiner.increment(increment, new NonceKey(nonceGroup, nonce));
+      success = true;
+      return result;
+    } finally {
+      if (nonceManager != null) {
+        nonceManager.endOperation(nonceGroup, nonce, success);
+      }
+    }
+  }
+
+  private boolean canCombine(Increment increment) {
+    if (incrementCombiner == null) {
+      return false;
+    }
+    for (byte[] family : increment.getFamilyCellMap().keySet()) {
+      if (!incrementCombiningFamilies.contains(family)) {
+        return false;
+      }
+    }
+    return IncrementCombiner.canCombine(increment);
+  }
+
+  /**
+   * Returns a pipeline to seek the store files of a new region scanner with, or null if seeks are
+   * not pipelined or the region is not hosted by a region server.
+   */
+  ParallelSeekPipeline newSeekPipeline() {
+    if (seekPipelineConcurrency <= 0 || rsServices == null) {
+      return null;
+    }
+    ThreadPoolExecutor executor = seekPipelineExecutor;
+    if (executor == null) {
+      ExecutorService executorService = rsServices.getExecutorService();
+      if (executorService == null) {
+        return null;
+      }
+      executor = executorService.getExecutorLazily(
+        executorService.new ExecutorConfig().setExecutorType(ExecutorType.RS_PARALLEL_SEEK)
+          .setCorePoolSize(
+            conf.getInt(ParallelSeekPipeline.THREADS_KEY, ParallelSeekPipeline.DEFAULT_THREADS))
+          .setAllowCoreThreadTimeout(true));
+      seekPipelineExecutor = executor;
+    }
+    return new ParallelSeekPipeline(executor, seekPipelineConcurrency);
+  }
+
+  /** Returns the combiner of the increments of this region, null if no family combines them */
+  IncrementCombiner getIncrementCombiner() {
+    return incrementCombiner;
+  }
+
   private WALKeyImpl createWALKeyForWALAppend(boolean isReplay, BatchOperation<?> batchOp, long now,
     long nonceGroup, long nonce) {
     WALKeyImpl walKey = isReplay
@@ -8121,6 +8395,8 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         batchOp.getClusterIds(), nonceGroup, nonce, mvcc, this.getReplicationScope());
     if (isReplay) {
       walKey.setOrigLogSeqNum(batchOp.getOrigLogSeqNum());
+    } else if (batchOp instanceof MutationBatchOperation) {
+      ((MutationBatchOperation) batchOp).addCombinedNonceKeys(walKey);
     }
     return walKey;
   }
@@ -8781,6 +9057,21 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     return this.memstoreFlushSize;
   }
 
+  /** Returns the flush size set by the table descriptor or the configuration */
+  long getConfiguredMemStoreFlushSize() {
+    return this.configuredMemStoreFlushSize;
+  }
+
+  /**
+   * Sets the flush size of the memstore, never below the configured one, and moves the size
+   * blocking the updates along with it.
+   */
+  void setAdaptiveMemStoreFlushSize(long flushSize) {
+    long size = Math.max(flushSize, configuredMemStoreFlushSize);
+    this.memstoreFlushSize = size;
+    this.blockingMemStoreSize = size * memStoreBlockMultiplier;
+  }
+
   //// method for debugging tests
   void throwException(String title, String regionName) {
     StringBuilder buf = new StringBuilder();
@@ -173,6 +173,9 @@ import org.apache.hadoop.hbase.util.ServerRegionReplicaUtil;
 import org.apache.hadoop.hbase.util.Threads;
 import org.apache.hadoop.hbase.util.VersionInfo;
 import org.apache.hadoop.hbase.wal.AbstractFSWALProvider;
+import org.apache.hadoop.hbase.wal.LoadAwareGroupingStrategy;
+import org.apache.hadoop.hbase.wal.RegionGroupingProvider;
+import org.apache.hadoop.hbase.wal.RegionGroupingProvider.RegionGroupingStrategy;
 import org.apache.hadoop.hbase.wal.WAL;
 import org.apache.hadoop.hbase.wal.WALFactory;
 import org.apache.hadoop.hbase.zookeeper.MasterAddressTracker;
@@ -368,6 +371,9 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
 
   private LogRoller walRoller;
 
+  // Moves the regions to the WAL group of their placement, if the loadaware strategy places them
+  private WALGroupSwitcher walGroupSwitcher;
+
   // A thread which calls reportProcedureDone
   private RemoteProcedureResultReporter procedureResultReporter;
 
@@ -431,6 +437,8 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
   // chore for refreshing store files for secondary regions
   private StorefileRefresherChore storefileRefresher;
 
+  private AdaptiveMemStoreFlushSizeChore adaptiveFlushSizeChore;
+
   private volatile RegionServerCoprocessorHost rsHost;
 
   private RegionServerProcedureManagerHost rspmHost;
@@ -632,14 +640,12 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
   public void dumpRowLocks(final PrintWriter out) {
     StringBuilder sb = new StringBuilder();
     for (HRegion region : getRegions()) {
-      if (region.getLockedRows().size() > 0) {
-        for (HRegion.RowLockContext rowLockContext : region.getLockedRows().values()) {
-          sb.setLength(0);
-          sb.append(region.getTableDescriptor().getTableName()).append(",")
-            .append(region.getRegionInfo().getEncodedName()).append(",");
-          sb.append(rowLockContext.toString());
-          out.println(sb);
-        }
+      for (String lockedRow : region.getLockedRowDescriptions()) {
+        sb.setLength(0);
+        sb.append(region.getTableDescriptor().getTableName()).append(",")
+          .append(region.getRegionInfo().getEncodedName()).append(",");
+        sb.append(lockedRow);
+        out.println(sb);
       }
     }
   }
@@ -1807,6 +1813,14 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
     if (walEventListener != null && factory.getWALProvider() != null) {
       factory.getWALProvider().addWALActionsListener(walEventListener);
     }
+    if (factory.getWALProvider() instanceof RegionGroupingProvider) {
+      RegionGroupingStrategy strategy =
+        ((RegionGroupingProvider) factory.getWALProvider()).getRegionGroupingStrategy();
+      if (strategy instanceof LoadAwareGroupingStrategy) {
+        walGroupSwitcher = new WALGroupSwitcher(this);
+        ((LoadAwareGroupingStrategy) strategy).setPlacementListener(walGroupSwitcher);
+      }
+    }
     this.walFactory = factory;
   }
 
@@ -1987,6 +2001,9 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
     if (this.storefileRefresher != null) {
       choreService.scheduleChore(storefileRefresher);
     }
+    if (this.adaptiveFlushSizeChore != null) {
+      choreService.scheduleChore(adaptiveFlushSizeChore);
+    }
     if (this.fsUtilizationChore != null) {
       choreService.scheduleChore(fsUtilizationChore);
     }
@@ -2099,6 +2116,14 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
         new StorefileRefresherChore(storefileRefreshPeriod, onlyMetaRefresh, this, this);
     }
 
+    int adaptiveFlushSizePeriod =
+      conf.getInt(AdaptiveMemStoreFlushSizeChore.ADAPTIVE_FLUSH_SIZE_PERIOD_KEY,
+        AdaptiveMemStoreFlushSizeChore.DEFAULT_ADAPTIVE_FLUSH_SIZE_PERIOD);
+    if (adaptiveFlushSizePeriod > 0) {
+      this.adaptiveFlushSizeChore =
+        new AdaptiveMemStoreFlushSizeChore(adaptiveFlushSizePeriod, this, this);
+    }
+
     int brokenStoreFileCleanerPeriod =
       conf.getInt(BrokenStoreFileCleaner.BROKEN_STOREFILE_CLEANER_PERIOD,
         BrokenStoreFileCleaner.DEFAULT_BROKEN_STOREFILE_CLEANER_PERIOD);
@@ -2521,6 +2546,9 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
     if (this.walRoller != null) {
       this.walRoller.close();
     }
+    if (this.walGroupSwitcher != null) {
+      this.walGroupSwitcher.stop();
+    }
     if (this.compactSplitThread != null) {
       this.compactSplitThread.join();
     }
@@ -3694,6 +3722,7 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
     shutdownChore(healthCheckChore);
     shutdownChore(executorStatusChore);
     shutdownChore(storefileRefresher);
+    shutdownChore(adaptiveFlushSizeChore);
     shutdownChore(fsUtilizationChore);
     shutdownChore(namedQueueServiceChore);
     shutdownChore(brokenStoreFileCleaner);
@@ -161,6 +161,9 @@ public class HStore
   private LongAdder memstoreOnlyRowReadsCount = new LongAdder();
   // rows that has cells from both memstore and files (or only files)
   private LongAdder mixedRowReadsCount = new LongAdder();
+  // cells written and time spent by the in-memory compactions of a CompactingMemStore
+  private LongAdder memStoreCompactedCellsCount = new LongAdder();
+  private LongAdder memStoreCompactionTime = new LongAdder();
 
   /**
    * Lock specific to archiving compacted store files. This avoids races around the combination of
@@ -1703,6 +1706,15 @@ public class HStore
    */
   public KeyValueScanner getScanner(Scan scan, final NavigableSet<byte[]> targetCols, long readPt)
     throws IOException {
+    return getScanner(scan, targetCols, readPt, null);
+  }
+
+  /**
+   * Return a scanner for both the memstore and the HStore files, which hands the seeks of its store
+   * files to the given pipeline if not null.
+   */
+  KeyValueScanner getScanner(Scan scan, final NavigableSet<byte[]> targetCols, long readPt,
+    ParallelSeekPipeline seekPipeline) throws IOException {
     storeEngine.readLock();
     try {
       ScanInfo scanInfo;
@@ -1711,6 +1723,9 @@ public class HStore
       } else {
         scanInfo = getScanInfo();
       }
+      if (seekPipeline != null) {
+        scanInfo = scanInfo.withSeekPipeline(seekPipeline);
+      }
       return createScanner(scan, scanInfo, targetCols, readPt);
     } finally {
       storeEngine.readUnlock();
@@ -2449,6 +2464,21 @@ public class HStore
     return new ReadOnlyConfiguration(this.conf);
   }
 
+  /** Returns the number of cells written by in-memory compactions and merges of this store */
+  public long getMemStoreCompactedCellsCount() {
+    return memStoreCompactedCellsCount.sum();
+  }
+
+  /** Returns the time in milliseconds spent in in-memory compactions and merges of this store */
+  public long getMemStoreCompactionTime() {
+    return memStoreCompactionTime.sum();
+  }
+
+  void updateMemStoreCompactionMetrics(long cellsCount, long time) {
+    memStoreCompactedCellsCount.add(cellsCount);
+    memStoreCompactionTime.add(time);
+  }
+
   void updateMetricsStore(boolean memstoreRead) {
     if (memstoreRead) {
       memstoreOnlyRowReadsCount.increment();
@@ -104,6 +104,9 @@ public class HStoreFile implements StoreFile {
   /** Key for Timerange information in metadata */
   public static final byte[] TIMERANGE_KEY = Bytes.toBytes("TIMERANGE");
 
+  /** Key for the row prefix filter in metadata, see {@link RowPrefixRangeFilter} */
+  public static final byte[] ROW_PREFIX_FILTER_KEY = Bytes.toBytes("ROW_PREFIX_FILTER");
+
   /** Key for timestamp of earliest-put in metadata */
   public static final byte[] EARLIEST_PUT_TS = Bytes.toBytes("EARLIEST_PUT_TS");
 
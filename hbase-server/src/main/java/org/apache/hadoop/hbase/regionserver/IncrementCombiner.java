@@ -0,0 +1,421 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellBuilderType;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.ExtendedCellBuilderFactory;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.client.Durability;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.exceptions.FailedSanityCheckException;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.HashedBytes;
+import org.apache.hadoop.hbase.util.NonceKey;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Combines the concurrent increments of a row into a single increment, applied with one row lock,
+ * one read of the current values and one WAL entry for the whole batch.
+ * <p>
+ * The increments of a row queue up. The first caller to find nobody combining the row becomes the
+ * combiner: it drains the queue, applies the sum of the queued increments through the regular write
+ * path and completes every caller of the batch with the values it would have seen had the
+ * increments been applied one after the other, in queue order. Callers arriving meanwhile queue up
+ * for the next batch, which grows with the contention on the row. Once its own increment is done
+ * the combiner hands the role over to the oldest waiting caller, so nobody combines for others
+ * forever.
+ * <p>
+ * Every caller still returns only after its increment is durable and visible, so reads need not
+ * know about the queued increments: an increment is not acknowledged before it is applied. A batch
+ * rejected before it was written is applied again one increment at a time, any other failure of the
+ * batch fails all of its increments.
+ * <p>
+ * A WAL entry has room for one nonce only, so the batch is written without one and the nonces of
+ * its increments go to the {@link #NONCES_ATTRIBUTE} extended attribute of the entry instead. Each
+ * caller starts and ends the nonce operation of its own increment, and the replay of the WAL
+ * reports the nonces of the attribute, so a retry is detected whether or not its increment was
+ * combined.
+ */
+@InterfaceAudience.Private
+class IncrementCombiner {
+
+  /**
+   * Applies an increment through the regular write path of the region.
+   */
+  @FunctionalInterface
+  interface Applier {
+    /**
+     * @param nonceKeys the nonces of the increments the increment is made of, to be recorded in its
+     *                  WAL entry
+     */
+    Result apply(Increment increment, List<NonceKey> nonceKeys) throws IOException;
+  }
+
+  /** The extended attribute of the WAL entry of a batch holding the nonces of its increments */
+  static final String NONCES_ATTRIBUTE = "hbase.increment.combined.nonces";
+
+  private final ConcurrentMap<HashedBytes, Slot> slots = new ConcurrentHashMap<>();
+  private final Applier applier;
+  private final int maxBatchSize;
+
+  private final LongAdder combinedIncrements = new LongAdder();
+  private final LongAdder appliedBatches = new LongAdder();
+
+  IncrementCombiner(Applier applier, int maxBatchSize) {
+    this.applier = applier;
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+  }
+
+  /**
+   * Returns true if the increment can be combined with others: it must carry plain long deltas
+   * only, without attributes, cell tags, time range, TTL or durability of its own, as none of them
+   * would survive the merge.
+   */
+  static boolean canCombine(Increment increment) {
+    if (
+      !increment.getTimeRange().isAllTime() || increment.getTTL() != Long.MAX_VALUE
+        || increment.getDurability() != Durability.USE_DEFAULT
+        || !increment.getAttributesMap().isEmpty() || increment.isEmpty()
+    ) {
+      return false;
+    }
+    for (List<Cell> cells : increment.getFamilyCellMap().values()) {
+      for (Cell cell : cells) {
+        if (
+          cell.getValueLength() != Bytes.SIZEOF_LONG
+            || (cell instanceof ExtendedCell && ((ExtendedCell) cell).getTagsLength() > 0)
+        ) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the value of the {@link #NONCES_ATTRIBUTE} for the nonces, two longs for each.
+   */
+  static byte[] toNoncesAttribute(List<NonceKey> nonceKeys) {
+    ByteBuffer buf = ByteBuffer.allocate(nonceKeys.size() * 2 * Bytes.SIZEOF_LONG);
+    for (NonceKey nonceKey : nonceKeys) {
+      buf.putLong(nonceKey.getNonceGroup()).putLong(nonceKey.getNonce());
+    }
+    return buf.array();
+  }
+
+  /**
+   * Reports the nonces of a {@link #NONCES_ATTRIBUTE} read back from the WAL, see
+   * {@link ServerNonceManager#reportOperationFromWal(long, long, long)}.
+   * @param attribute the value of the attribute, null if the entry has none
+   */
+  static void reportOperationsFromWal(ServerNonceManager nonceManager, byte[] attribute,
+    long writeTime) {
+    if (attribute == null) {
+      return;
+    }
+    ByteBuffer buf = ByteBuffer.wrap(attribute);
+    while (buf.remaining() >= 2 * Bytes.SIZEOF_LONG) {
+      nonceManager.reportOperationFromWal(buf.getLong(), buf.getLong(), writeTime);
+    }
+  }
+
+  /**
+   * Applies the increment, possibly combined with the concurrent increments of the same row. The
+   * nonce operation of the increment, if any, must have been started by the caller.
+   * @param nonceKey the nonce of the increment, null if it has none
+   * @return the result of the increment, as returned by {@link HRegion#increment(Increment)}
+   */
+  Result increment(Increment increment, NonceKey nonceKey) throws IOException {
+    Waiter waiter = new Waiter(increment, nonceKey);
+    Slot slot = slots.computeIfAbsent(new HashedBytes(increment.getRow()), Slot::new);
+    slot.queue.add(waiter);
+    if (slot.combining.compareAndSet(false, true) || waiter.awaitTurn()) {
+      try {
+        while (!waiter.isDone()) {
+          applyBatch(slot);
+        }
+      } finally {
+        handOver(slot);
+      }
+    }
+    return waiter.get();
+  }
+
+  /** Returns the number of increments applied as part of a batch of more than one increment */
+  long getNumCombinedIncrements() {
+    return combinedIncrements.sum();
+  }
+
+  /** Returns the number of batches of more than one increment applied */
+  long getNumAppliedBatches() {
+    return appliedBatches.sum();
+  }
+
+  /** Returns the number of increments of the row waiting to be applied */
+  int getQueueLength(byte[] row) {
+    Slot slot = slots.get(new HashedBytes(row));
+    return slot == null ? 0 : slot.queue.size();
+  }
+
+  private void applyBatch(Slot slot) {
+    List<Waiter> batch = new ArrayList<>();
+    for (Waiter waiter; batch.size() < maxBatchSize && (waiter = slot.queue.poll()) != null;) {
+      batch.add(waiter);
+    }
+    if (batch.size() == 1) {
+      applyAlone(batch.get(0));
+      return;
+    }
+    Increment combined = new Increment(batch.get(0).increment.getRow());
+    Map<byte[], NavigableMap<byte[], Long>> sums = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    List<NonceKey> nonceKeys = new ArrayList<>();
+    boolean returnResults = false;
+    for (Waiter waiter : batch) {
+      addTo(sums, waiter.increment);
+      if (waiter.nonceKey != null) {
+        nonceKeys.add(waiter.nonceKey);
+      }
+      returnResults |= waiter.increment.isReturnResults();
+    }
+    for (Map.Entry<byte[], NavigableMap<byte[], Long>> family : sums.entrySet()) {
+      for (Map.Entry<byte[], Long> column : family.getValue().entrySet()) {
+        combined.addColumn(family.getKey(), column.getKey(), column.getValue());
+      }
+    }
+    combined.setReturnResults(returnResults);
+    Result result;
+    try {
+      result = applier.apply(combined, nonceKeys);
+    } catch (FailedSanityCheckException | NoSuchColumnFamilyException e) {
+      // Rejected before anything was written. Do not let one bad increment fail the others, apply
+      // them one by one instead.
+      for (Waiter waiter : batch) {
+        applyAlone(waiter);
+      }
+      return;
+    } catch (Throwable t) {
+      // The combined increment may have been written before it failed, applying its increments
+      // again could apply them twice.
+      for (Waiter waiter : batch) {
+        waiter.complete(null, t);
+      }
+      return;
+    }
+    combinedIncrements.add(batch.size());
+    appliedBatches.increment();
+    if (!returnResults) {
+      for (Waiter waiter : batch) {
+        waiter.complete(Result.EMPTY_RESULT, null);
+      }
+      return;
+    }
+    // The combined result holds the values after the last increment of the batch. Walk the batch
+    // backwards taking each increment off to get the values seen by the one before it.
+    Cell[] cells = result.rawCells();
+    byte[][] families = new byte[cells.length][];
+    byte[][] qualifiers = new byte[cells.length][];
+    long[] values = new long[cells.length];
+    for (int i = 0; i < cells.length; i++) {
+      families[i] = CellUtil.cloneFamily(cells[i]);
+      qualifiers[i] = CellUtil.cloneQualifier(cells[i]);
+      values[i] = PrivateCellUtil.getValueAsLong(cells[i]);
+    }
+    for (int i = batch.size() - 1; i >= 0; i--) {
+      Increment increment = batch.get(i).increment;
+      Result waiterResult = Result.EMPTY_RESULT;
+      if (increment.isReturnResults()) {
+        List<Cell> waiterCells = new ArrayList<>(increment.numFamilies());
+        for (int j = 0; j < cells.length; j++) {
+          if (increment.has(families[j], qualifiers[j])) {
+            waiterCells.add(withValue(cells[j], values[j]));
+          }
+        }
+        waiterResult = Result.create(waiterCells);
+      }
+      batch.get(i).complete(waiterResult, null);
+      for (int j = 0; j < cells.length; j++) {
+        values[j] -= getDelta(increment, families[j], qualifiers[j]);
+      }
+    }
+  }
+
+  private void applyAlone(Waiter waiter) {
+    try {
+      waiter.complete(applier.apply(waiter.increment,
+        waiter.nonceKey == null
+          ? Collections.emptyList()
+          : Collections.singletonList(waiter.nonceKey)),
+        null);
+    } catch (Throwable t) {
+      waiter.complete(null, t);
+    }
+  }
+
+  /**
+   * Passes the combiner role to the oldest waiting caller, or gives it up if there is none.
+   */
+  private void handOver(Slot slot) {
+    for (;;) {
+      Waiter next = slot.queue.peek();
+      if (next != null) {
+        next.takeTurn();
+        return;
+      }
+      slot.combining.set(false);
+      // Recheck as a caller may have queued up after the peek and lost the race for the role.
+      if (slot.queue.isEmpty() || !slot.combining.compareAndSet(false, true)) {
+        if (slot.queue.isEmpty()) {
+          // A caller still holding the removed slot becomes its combiner, which is fine as the
+          // batches of a row are serialized by the row lock anyway.
+          slots.remove(slot.row, slot);
+        }
+        return;
+      }
+    }
+  }
+
+  private static void addTo(Map<byte[], NavigableMap<byte[], Long>> sums, Increment increment) {
+    for (Map.Entry<byte[], List<Cell>> family : increment.getFamilyCellMap().entrySet()) {
+      NavigableMap<byte[], Long> columns =
+        sums.computeIfAbsent(family.getKey(), k -> new TreeMap<>(Bytes.BYTES_COMPARATOR));
+      for (Cell cell : family.getValue()) {
+        columns.merge(CellUtil.cloneQualifier(cell), PrivateCellUtil.getValueAsLong(cell),
+          Long::sum);
+      }
+    }
+  }
+
+  private static long getDelta(Increment increment, byte[] family, byte[] qualifier) {
+    List<Cell> cells = increment.getFamilyCellMap().get(family);
+    long delta = 0;
+    if (cells != null) {
+      for (Cell cell : cells) {
+        if (CellUtil.matchingQualifier(cell, qualifier)) {
+          delta += PrivateCellUtil.getValueAsLong(cell);
+        }
+      }
+    }
+    return delta;
+  }
+
+  private static Cell withValue(Cell cell, long value) {
+    byte[] bytes = Bytes.toBytes(value);
+    return ExtendedCellBuilderFactory.create(CellBuilderType.DEEP_COPY)
+      .setRow(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength())
+      .setFamily(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength())
+      .setQualifier(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength())
+      .setTimestamp(cell.getTimestamp()).setType(KeyValue.Type.Put.getCode())
+      .setValue(bytes, 0, bytes.length).build();
+  }
+
+  private static final class Slot {
+    private final HashedBytes row;
+    private final Queue<Waiter> queue = new ConcurrentLinkedQueue<>();
+    // whether a caller is combining the increments of the row
+    private final AtomicBoolean combining = new AtomicBoolean();
+
+    private Slot(HashedBytes row) {
+      this.row = row;
+    }
+  }
+
+  private static final class Waiter {
+    private final Increment increment;
+    private final NonceKey nonceKey;
+    private boolean done;
+    private boolean turn;
+    private Result result;
+    private Throwable error;
+
+    private Waiter(Increment increment, NonceKey nonceKey) {
+      this.increment = increment;
+      this.nonceKey = nonceKey;
+    }
+
+    synchronized void complete(Result result, Throwable error) {
+      this.result = result;
+      this.error = error;
+      this.done = true;
+      notifyAll();
+    }
+
+    synchronized void takeTurn() {
+      this.turn = true;
+      notifyAll();
+    }
+
+    synchronized boolean isDone() {
+      return done;
+    }
+
+    /**
+     * Waits until the increment is done by another combiner, returning false, or until the role is
+     * handed over to this caller, returning true. The increment may already be on its way to the
+     * WAL, so an interrupt does not abandon it: the wait goes on and the interrupt is kept.
+     */
+    synchronized boolean awaitTurn() {
+      boolean interrupted = false;
+      try {
+        while (!done && !turn) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+        return turn;
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    synchronized Result get() throws IOException {
+      if (error instanceof IOException) {
+        throw (IOException) error;
+      } else if (error instanceof RuntimeException) {
+        throw (RuntimeException) error;
+      } else if (error instanceof Error) {
+        throw (Error) error;
+      } else if (error != null) {
+        throw new IOException(error);
+      }
+      return result;
+    }
+  }
+}
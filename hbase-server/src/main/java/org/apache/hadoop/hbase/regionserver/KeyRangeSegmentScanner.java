@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A forward only scanner of the cells of a single memstore segment in a key range, from the start
+ * key (inclusive) to the stop key (exclusive). Used to compact the pipeline of a
+ * {@link CompactingMemStore} in parallel, one key range per task.
+ */
+@InterfaceAudience.Private
+public class KeyRangeSegmentScanner extends SegmentScanner {
+
+  // null when the range is unbounded on this side
+  private final ExtendedCell startKey;
+  private final ExtendedCell stopKey;
+
+  protected KeyRangeSegmentScanner(Segment segment, long readPoint, ExtendedCell startKey,
+    ExtendedCell stopKey) throws IOException {
+    super(segment, readPoint);
+    this.startKey = startKey;
+    this.stopKey = stopKey;
+    // restart from the beginning of the range, bounded by getIterator
+    seek(startKey == null ? KeyValue.LOWESTKEY : startKey);
+  }
+
+  /**
+   * Adds the scanners of the non empty segments in the given key range to the list.
+   */
+  public static void addToScanners(List<? extends Segment> segments, long readPt,
+    ExtendedCell startKey, ExtendedCell stopKey, List<KeyValueScanner> scanners)
+    throws IOException {
+    for (Segment segment : segments) {
+      if (!segment.isEmpty()) {
+        scanners.add(new KeyRangeSegmentScanner(segment, readPt, startKey, stopKey));
+      }
+    }
+  }
+
+  @Override
+  protected Iterator<ExtendedCell> getIterator(ExtendedCell cell) {
+    if (startKey != null && segment.compare(cell, startKey) < 0) {
+      cell = startKey;
+    }
+    Iterator<ExtendedCell> iterator = super.getIterator(cell);
+    return stopKey == null ? iterator : new StopKeyIterator(iterator);
+  }
+
+  @Override
+  public boolean backwardSeek(ExtendedCell key) throws IOException {
+    throw new IllegalStateException("backwardSeek cannot be called on " + getClass().getName());
+  }
+
+  @Override
+  public boolean seekToPreviousRow(ExtendedCell cell) throws IOException {
+    throw new IllegalStateException(
+      "seekToPreviousRow cannot be called on " + getClass().getName());
+  }
+
+  @Override
+  public boolean seekToLastRow() throws IOException {
+    throw new IllegalStateException("seekToLastRow cannot be called on " + getClass().getName());
+  }
+
+  @Override
+  public String toString() {
+    return "KeyRangeSegmentScanner[" + startKey + ", " + stopKey + ")";
+  }
+
+  /* Ends the iteration at the first cell not less than the stop key */
+  private final class StopKeyIterator implements Iterator<ExtendedCell> {
+    private final Iterator<ExtendedCell> delegate;
+    private ExtendedCell next;
+
+    private StopKeyIterator(Iterator<ExtendedCell> delegate) {
+      this.delegate = delegate;
+      advance();
+    }
+
+    private void advance() {
+      next = delegate.hasNext() ? delegate.next() : null;
+      if (next != null && segment.compare(next, stopKey) >= 0) {
+        next = null;
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public ExtendedCell next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      ExtendedCell cell = next;
+      advance();
+      return cell;
+    }
+  }
+}
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.function.IntConsumer;
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellComparator;
@@ -42,12 +43,16 @@ import org.slf4j.LoggerFactory;
  * In the Region case, we also need InternalScanner.next(List), so this class also implements
  * InternalScanner. WARNING: As is, if you try to use this as an InternalScanner at the Store level,
  * you will get runtime exceptions.
+ * <p>
+ * The scanners other than the current one are kept in a {@link PriorityQueue}, or in a
+ * {@link KeyValueScannerLoserTree} if asked for at construction, which needs about half the
+ * comparisons to put the current scanner back and take the next one.
  */
 @InterfaceAudience.Private
 public class KeyValueHeap extends NonReversedNonLazyKeyValueScanner
   implements KeyValueScanner, InternalScanner {
   private static final Logger LOG = LoggerFactory.getLogger(KeyValueHeap.class);
-  protected PriorityQueue<KeyValueScanner> heap = null;
+  protected Queue<KeyValueScanner> heap = null;
   // Holds the scanners when a ever a eager close() happens. All such eagerly closed
   // scans are collected and when the final scanner.close() happens will perform the
   // actual close.
@@ -71,7 +76,17 @@ public class KeyValueHeap extends NonReversedNonLazyKeyValueScanner
    */
   public KeyValueHeap(List<? extends KeyValueScanner> scanners, CellComparator comparator)
     throws IOException {
-    this(scanners, new KVScannerComparator(comparator));
+    this(scanners, comparator, false);
+  }
+
+  /**
+   * Constructor. This KeyValueHeap will handle closing of passed in KeyValueScanners.
+   * @param loserTree whether to merge the scanners with a {@link KeyValueScannerLoserTree} instead
+   *                  of a {@link PriorityQueue}
+   */
+  public KeyValueHeap(List<? extends KeyValueScanner> scanners, CellComparator comparator,
+    boolean loserTree) throws IOException {
+    this(scanners, new KVScannerComparator(comparator), loserTree);
   }
 
   /**
@@ -79,10 +94,20 @@ public class KeyValueHeap extends NonReversedNonLazyKeyValueScanner
    */
   KeyValueHeap(List<? extends KeyValueScanner> scanners, KVScannerComparator comparator)
     throws IOException {
+    this(scanners, comparator, false);
+  }
+
+  /**
+   * Constructor.
+   */
+  KeyValueHeap(List<? extends KeyValueScanner> scanners, KVScannerComparator comparator,
+    boolean loserTree) throws IOException {
     this.comparator = comparator;
     this.scannersForDelayedClose = new ArrayList<>(scanners.size());
     if (!scanners.isEmpty()) {
-      this.heap = new PriorityQueue<>(scanners.size(), this.comparator);
+      this.heap = loserTree
+        ? new KeyValueScannerLoserTree(scanners.size(), this.comparator)
+        : new PriorityQueue<>(scanners.size(), this.comparator);
       for (KeyValueScanner scanner : scanners) {
         if (scanner.peek() != null) {
           this.heap.add(scanner);
@@ -126,9 +151,9 @@ public class KeyValueHeap extends NonReversedNonLazyKeyValueScanner
       KeyValueScanner topScanner = this.heap.peek();
       // no need to add current back to the heap if it is the only scanner left
       if (topScanner != null && this.comparator.compare(kvNext, topScanner.peek()) >= 0) {
-        this.heap.add(this.current);
+        KeyValueScanner scanner = this.current;
         this.current = null;
-        this.current = pollRealKV();
+        this.current = pollRealKV(addAndPoll(scanner));
       }
     }
     return kvReturn;
@@ -160,14 +185,15 @@ public class KeyValueHeap extends NonReversedNonLazyKeyValueScanner
      * them in the heap. This is also required for certain optimizations.
      */
 
+    KeyValueScanner scanner = this.current;
+    this.current = null;
     if (pee == null || !moreCells) {
       // add the scanner that is to be closed
-      this.scannersForDelayedClose.add(this.current);
+      this.scannersForDelayedClose.add(scanner);
+      this.current = pollRealKV();
     } else {
-      this.heap.add(this.current);
+      this.current = pollRealKV(addAndPoll(scanner));
     }
-    this.current = null;
-    this.current = pollRealKV();
     if (this.current == null) {
       moreCells = scannerContext.setScannerState(NextState.NO_MORE_VALUES).hasMoreValues();
     }
@@ -301,9 +327,9 @@ public class KeyValueHeap extends NonReversedNonLazyKeyValueScanner
           // invariant that the top scanner has done a real seek. This way
           // StoreScanner and RegionScanner do not have to worry about fake
           // keys.
-          heap.add(scanner);
+          KeyValueScanner top = scanner;
           scanner = null;
-          current = pollRealKV();
+          current = pollRealKV(addAndPoll(top));
           return current != null;
         }
 
@@ -317,10 +343,10 @@ public class KeyValueHeap extends NonReversedNonLazyKeyValueScanner
 
         if (!seekResult) {
           this.scannersForDelayedClose.add(scanner);
+          scanner = heap.poll();
         } else {
-          heap.add(scanner);
+          scanner = addAndPoll(scanner);
         }
-        scanner = heap.poll();
         if (scanner == null) {
           current = null;
         }
@@ -350,7 +376,14 @@ public class KeyValueHeap extends NonReversedNonLazyKeyValueScanner
    * and (2) its KV is the top among all top KVs (some of which are fake) in the scanner heap.
    */
   protected KeyValueScanner pollRealKV() throws IOException {
-    KeyValueScanner kvScanner = heap.poll();
+    return pollRealKV(heap.poll());
+  }
+
+  /**
+   * Same as {@link #pollRealKV()}, for a top sub-scanner that has already been taken out of the
+   * heap, e.g. by {@link #addAndPoll(KeyValueScanner)}.
+   */
+  protected KeyValueScanner pollRealKV(KeyValueScanner kvScanner) throws IOException {
     if (kvScanner == null) {
       return null;
     }
@@ -383,7 +416,8 @@ public class KeyValueHeap extends NonReversedNonLazyKeyValueScanner
           // Otherwise, put the scanner back into the heap and let it compete
           // against all other scanners (both those that have done a "real
           // seek" and a "lazy seek").
-          heap.add(kvScanner);
+          kvScanner = addAndPoll(kvScanner);
+          continue;
         } else {
           // Close the scanner because we did a real seek and found out there
           // are no more KVs.
@@ -400,8 +434,20 @@ public class KeyValueHeap extends NonReversedNonLazyKeyValueScanner
     return kvScanner;
   }
 
+  /**
+   * Puts the given sub-scanner back into the heap and takes the top one out, which may be the same
+   * scanner. The loser tree does this with a single replay.
+   */
+  protected KeyValueScanner addAndPoll(KeyValueScanner scanner) {
+    if (heap instanceof KeyValueScannerLoserTree) {
+      return ((KeyValueScannerLoserTree) heap).addAndPoll(scanner);
+    }
+    heap.add(scanner);
+    return heap.poll();
+  }
+
   /** Returns the current Heap */
-  public PriorityQueue<KeyValueScanner> getHeap() {
+  public Queue<KeyValueScanner> getHeap() {
     return this.heap;
   }
 
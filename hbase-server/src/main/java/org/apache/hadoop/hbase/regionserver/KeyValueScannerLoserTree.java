@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.AbstractQueue;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A tournament (loser) tree of {@link KeyValueScanner}s, used by {@link KeyValueHeap} in place of a
+ * {@link java.util.PriorityQueue} when {@code hbase.storescanner.loser.tree.heap.enable} or
+ * {@code hbase.storescanner.compaction.loser.tree.heap.enable} is set.
+ * <p>
+ * Each scanner sits in a leaf and every internal node remembers the loser of the match played
+ * there, so the winner is always at hand and changing one leaf only replays the matches on its path
+ * to the root: one comparison per level, where a binary heap needs two per level to sift down. The
+ * common merge step, putting the current scanner back and taking the new top, is done by
+ * {@link #addAndPoll(KeyValueScanner)} with a single replay from the leaf of the old top. Empty
+ * leaves lose every match without a comparison. A plain {@link #add(Object)} makes the tree be
+ * built again, n - 1 comparisons, the next time it is looked at.
+ * <p>
+ * The capacity is fixed, which is fine for {@link KeyValueHeap} as it only ever puts back scanners
+ * it took out. Not thread safe.
+ */
+@InterfaceAudience.Private
+class KeyValueScannerLoserTree extends AbstractQueue<KeyValueScanner> {
+
+  private final Comparator<? super KeyValueScanner> comparator;
+  // The scanner of each leaf, null if the leaf is empty
+  private final KeyValueScanner[] leaves;
+  // tree[0] is the leaf of the overall winner, tree[1 .. n - 1] the leaf that lost at that node.
+  // The children of node j are 2j and 2j + 1, where leaf i is node n + i.
+  private final int[] tree;
+  // Stack of the empty leaves
+  private final int[] free;
+  private int numFree;
+  private int size;
+  // Whether tree is up to date with leaves, see offer
+  private boolean built;
+  // The winner of each internal node, only needed while building
+  private final int[] winners;
+
+  KeyValueScannerLoserTree(int capacity, Comparator<? super KeyValueScanner> comparator) {
+    int n = Math.max(1, capacity);
+    this.comparator = comparator;
+    this.leaves = new KeyValueScanner[n];
+    this.tree = new int[n];
+    this.free = new int[n];
+    this.winners = new int[n];
+    for (int i = 0; i < n; i++) {
+      free[i] = n - 1 - i;
+    }
+    this.numFree = n;
+  }
+
+  @Override
+  public boolean offer(KeyValueScanner scanner) {
+    if (scanner == null) {
+      throw new NullPointerException();
+    }
+    if (numFree == 0) {
+      throw new IllegalStateException("Loser tree is full, capacity=" + leaves.length);
+    }
+    int leaf = free[--numFree];
+    leaves[leaf] = scanner;
+    size++;
+    // Only the path of the winner can be replayed, so a scanner added on its own makes the tree be
+    // built again when next looked at. KeyValueHeap always puts scanners back with addAndPoll.
+    built = false;
+    return true;
+  }
+
+  @Override
+  public KeyValueScanner peek() {
+    if (size == 0) {
+      return null;
+    }
+    ensureBuilt();
+    return leaves[tree[0]];
+  }
+
+  @Override
+  public KeyValueScanner poll() {
+    if (size == 0) {
+      return null;
+    }
+    ensureBuilt();
+    int leaf = tree[0];
+    KeyValueScanner top = leaves[leaf];
+    leaves[leaf] = null;
+    free[numFree++] = leaf;
+    size--;
+    replay(leaf);
+    return top;
+  }
+
+  /**
+   * Same as {@link #add(Object)} followed by {@link #poll()}. When the given scanner does not win
+   * it takes the leaf of the top scanner, so the tree is replayed only once.
+   * @return the given scanner if it is before all the others, else the top scanner, which is
+   *         removed
+   */
+  KeyValueScanner addAndPoll(KeyValueScanner scanner) {
+    if (size == 0) {
+      return scanner;
+    }
+    ensureBuilt();
+    int leaf = tree[0];
+    KeyValueScanner top = leaves[leaf];
+    if (comparator.compare(scanner, top) < 0) {
+      return scanner;
+    }
+    leaves[leaf] = scanner;
+    replay(leaf);
+    return top;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    for (int i = 0; i < leaves.length; i++) {
+      if (leaves[i] != null) {
+        leaves[i] = null;
+        free[numFree++] = i;
+      }
+    }
+    size = 0;
+  }
+
+  @Override
+  public Iterator<KeyValueScanner> iterator() {
+    return new Iterator<KeyValueScanner>() {
+      private int next = advance(0);
+
+      private int advance(int from) {
+        while (from < leaves.length && leaves[from] == null) {
+          from++;
+        }
+        return from;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next < leaves.length;
+      }
+
+      @Override
+      public KeyValueScanner next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        KeyValueScanner scanner = leaves[next];
+        next = advance(next + 1);
+        return scanner;
+      }
+    };
+  }
+
+  /** Returns whether the scanner in leaf {@code a} wins against the one in leaf {@code b}. */
+  private boolean beats(int a, int b) {
+    KeyValueScanner left = leaves[a];
+    if (left == null) {
+      return false;
+    }
+    KeyValueScanner right = leaves[b];
+    return right == null || comparator.compare(left, right) < 0;
+  }
+
+  /** Plays all matches bottom up, n - 1 comparisons at most. */
+  private void ensureBuilt() {
+    if (built) {
+      return;
+    }
+    int n = leaves.length;
+    for (int node = n - 1; node > 0; node--) {
+      int left = 2 * node;
+      int right = left + 1;
+      int a = left >= n ? left - n : winners[left];
+      int b = right >= n ? right - n : winners[right];
+      if (beats(b, a)) {
+        winners[node] = b;
+        tree[node] = a;
+      } else {
+        winners[node] = a;
+        tree[node] = b;
+      }
+    }
+    tree[0] = n == 1 ? 0 : winners[1];
+    built = true;
+  }
+
+  /** Replays the matches from the given leaf, whose scanner has changed, up to the root. */
+  private void replay(int leaf) {
+    int winner = leaf;
+    for (int node = (leaf + leaves.length) >>> 1; node > 0; node >>>= 1) {
+      int loser = tree[node];
+      if (beats(loser, winner)) {
+        tree[node] = winner;
+        winner = loser;
+      }
+    }
+    tree[0] = winner;
+  }
+}
@@ -18,14 +18,18 @@
 package org.apache.hadoop.hbase.regionserver;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.ExtendedCell;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.MemoryCompactionPolicy;
 import org.apache.hadoop.hbase.exceptions.IllegalArgumentIOException;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,7 +51,7 @@ public class MemStoreCompactor {
     // compactingMemStore, versionedList, isInterrupted, strategy (the reference)
     // "action" is an enum and thus it is a class with static final constants,
     // so counting only the size of the reference to it and not the size of the internals
-      + Bytes.SIZEOF_INT // compactionKVMax
+      + 3 * Bytes.SIZEOF_INT // compactionKVMax, parallelism, partitionMinCells
       + ClassSize.ATOMIC_BOOLEAN // isInterrupted (the internals)
     );
 
@@ -63,6 +67,10 @@ public class MemStoreCompactor {
   // the limit to the size of the groups to be later provided to MemStoreSegmentsIterator
   private final int compactionKVMax;
 
+  // the number of key ranges compacted in parallel, and the minimal number of cells per key range
+  private final int parallelism;
+  private final int partitionMinCells;
+
   private MemStoreCompactionStrategy strategy;
 
   public MemStoreCompactor(CompactingMemStore compactingMemStore,
@@ -70,13 +78,21 @@ public class MemStoreCompactor {
     this.compactingMemStore = compactingMemStore;
     this.compactionKVMax = compactingMemStore.getConfiguration()
       .getInt(HConstants.COMPACTION_KV_MAX, HConstants.COMPACTION_KV_MAX_DEFAULT);
+    this.parallelism = compactingMemStore.getConfiguration().getInt(
+      CompactingMemStore.IN_MEMORY_COMPACTION_PARALLELISM_KEY,
+      CompactingMemStore.IN_MEMORY_COMPACTION_PARALLELISM_DEFAULT);
+    this.partitionMinCells = Math.max(1,
+      compactingMemStore.getConfiguration().getInt(
+        CompactingMemStore.IN_MEMORY_COMPACTION_PARTITION_MIN_CELLS_KEY,
+        CompactingMemStore.IN_MEMORY_COMPACTION_PARTITION_MIN_CELLS_DEFAULT));
     initiateCompactionStrategy(compactionPolicy, compactingMemStore.getConfiguration(),
       compactingMemStore.getFamilyName());
   }
 
   @Override
   public String toString() {
-    return this.strategy + ", compactionCellMax=" + this.compactionKVMax;
+    return this.strategy + ", compactionCellMax=" + this.compactionKVMax + ", parallelism="
+      + this.parallelism;
   }
 
   /**
@@ -162,6 +178,7 @@ public class MemStoreCompactor {
 
       // Create one segment representing all segments in the compaction pipeline,
       // either by compaction or by merge
+      long startTime = EnvironmentEdgeManager.currentTime();
       if (!isInterrupted.get()) {
         result = createSubstitution(nextStep);
       }
@@ -172,6 +189,8 @@ public class MemStoreCompactor {
         if (resultSwapped) {
           // update compaction strategy
           strategy.updateStats(result);
+          compactingMemStore.getStore().updateMemStoreCompactionMetrics(result.getCellsCount(),
+            EnvironmentEdgeManager.currentTime() - startTime);
           // update the wal so it can be truncated and not get too long
           compactingMemStore.updateLowestUnflushedSequenceIdInWAL(true); // only if greater
         }
@@ -210,10 +229,20 @@ public class MemStoreCompactor {
       // we skip empty segment when create MemStoreSegmentsIterator following.
     }
 
+    CellComparator comparator = compactingMemStore.getComparator();
+    HStore store = compactingMemStore.getStore();
+    List<ExtendedCell> splitKeys = getSplitKeys(segments, action);
     switch (action) {
       case COMPACT:
-        iterator = new MemStoreCompactorSegmentsIterator(segments,
-          compactingMemStore.getComparator(), compactionKVMax, compactingMemStore.getStore());
+        if (splitKeys.isEmpty()) {
+          iterator =
+            new MemStoreCompactorSegmentsIterator(segments, comparator, compactionKVMax, store);
+        } else {
+          iterator = new ParallelMemStoreSegmentsIterator(
+            RegionServicesForStores.getInMemoryCompactionPartitionPool(parallelism), splitKeys,
+            compactionKVMax, (startKey, stopKey) -> new MemStoreCompactorSegmentsIterator(segments,
+              comparator, compactionKVMax, store, startKey, stopKey));
+        }
 
         result = SegmentFactory.instance().createImmutableSegmentByCompaction(
           compactingMemStore.getConfiguration(), compactingMemStore.getComparator(), iterator,
@@ -222,8 +251,14 @@ public class MemStoreCompactor {
         break;
       case MERGE:
       case MERGE_COUNT_UNIQUE_KEYS:
-        iterator = new MemStoreMergerSegmentsIterator(segments, compactingMemStore.getComparator(),
-          compactionKVMax);
+        if (splitKeys.isEmpty()) {
+          iterator = new MemStoreMergerSegmentsIterator(segments, comparator, compactionKVMax);
+        } else {
+          iterator = new ParallelMemStoreSegmentsIterator(
+            RegionServicesForStores.getInMemoryCompactionPartitionPool(parallelism), splitKeys,
+            compactionKVMax, (startKey, stopKey) -> new MemStoreMergerSegmentsIterator(segments,
+              comparator, compactionKVMax, startKey, stopKey));
+        }
 
         result = SegmentFactory.instance().createImmutableSegmentByMerge(
           compactingMemStore.getConfiguration(), compactingMemStore.getComparator(), iterator,
@@ -237,6 +272,27 @@ public class MemStoreCompactor {
     return result;
   }
 
+  /**
+   * Returns the keys to split the compaction of the given segments at, or an empty list when the
+   * segments are compacted by a single iterator. Splitting needs enough cells for every key range,
+   * and a COMPACT is not split when coprocessors are loaded, as their hooks expect to wrap the
+   * single scanner over the whole pipeline.
+   */
+  private List<ExtendedCell> getSplitKeys(List<ImmutableSegment> segments,
+    MemStoreCompactionStrategy.Action action) {
+    int partitions = Math.min(parallelism, versionedList.getNumOfCells() / partitionMinCells);
+    if (partitions < 2) {
+      return Collections.emptyList();
+    }
+    if (action == MemStoreCompactionStrategy.Action.COMPACT) {
+      RegionCoprocessorHost cpHost = compactingMemStore.getStore().getCoprocessorHost();
+      if (cpHost != null && !cpHost.getCoprocessors().isEmpty()) {
+        return Collections.emptyList();
+      }
+    }
+    return ParallelMemStoreSegmentsIterator.getSplitKeys(segments, partitions);
+  }
+
   void initiateCompactionStrategy(MemoryCompactionPolicy compType, Configuration configuration,
     String cfName) throws IllegalArgumentIOException {
 
@@ -51,10 +51,25 @@ public class MemStoreCompactorSegmentsIterator extends MemStoreSegmentsIterator
   // C-tor
   public MemStoreCompactorSegmentsIterator(List<ImmutableSegment> segments,
     CellComparator comparator, int compactionKVMax, HStore store) throws IOException {
+    this(segments, comparator, compactionKVMax, store, null, null);
+  }
+
+  /**
+   * Iterates over the compacted cells of the given segments from the start key (inclusive) to the
+   * stop key (exclusive), a null key leaves the range unbounded on that side. The keys must be on
+   * row boundaries so that all the versions of a row are compacted together.
+   */
+  public MemStoreCompactorSegmentsIterator(List<ImmutableSegment> segments,
+    CellComparator comparator, int compactionKVMax, HStore store, ExtendedCell startKey,
+    ExtendedCell stopKey) throws IOException {
     super(compactionKVMax);
 
     List<KeyValueScanner> scanners = new ArrayList<KeyValueScanner>();
-    AbstractMemStore.addToScanners(segments, Long.MAX_VALUE, scanners);
+    if (startKey == null && stopKey == null) {
+      AbstractMemStore.addToScanners(segments, Long.MAX_VALUE, scanners);
+    } else {
+      KeyRangeSegmentScanner.addToScanners(segments, Long.MAX_VALUE, startKey, stopKey, scanners);
+    }
     // build the scanner based on Query Matcher
     // reinitialize the compacting scanner for each instance of iterator
     compactingScanner = createScanner(store, scanners);
@@ -41,10 +41,23 @@ public class MemStoreMergerSegmentsIterator extends MemStoreSegmentsIterator {
   // C-tor
   public MemStoreMergerSegmentsIterator(List<ImmutableSegment> segments, CellComparator comparator,
     int compactionKVMax) throws IOException {
+    this(segments, comparator, compactionKVMax, null, null);
+  }
+
+  /**
+   * Iterates over the cells of the given segments from the start key (inclusive) to the stop key
+   * (exclusive), a null key leaves the range unbounded on that side.
+   */
+  public MemStoreMergerSegmentsIterator(List<ImmutableSegment> segments, CellComparator comparator,
+    int compactionKVMax, ExtendedCell startKey, ExtendedCell stopKey) throws IOException {
     super(compactionKVMax);
     // create the list of scanners to traverse over all the data
     // no dirty reads here as these are immutable segments
-    AbstractMemStore.addToScanners(segments, Long.MAX_VALUE, scanners);
+    if (startKey == null && stopKey == null) {
+      AbstractMemStore.addToScanners(segments, Long.MAX_VALUE, scanners);
+    } else {
+      KeyRangeSegmentScanner.addToScanners(segments, Long.MAX_VALUE, startKey, stopKey, scanners);
+    }
     heap = new KeyValueHeap(scanners, comparator);
   }
 
@@ -47,6 +47,10 @@ public class MetricsRegionServer {
 
   private MetricRegistry metricRegistry;
   private Timer bulkLoadTimer;
+  // Phases of the region scanners opened through a ParallelSeekPipeline
+  private Timer seekPipelineOpenTimer;
+  private Timer seekPipelineSeekTimer;
+  private Timer seekPipelineAssembleTimer;
   // Incremented once for each call to Scan#nextRaw
   private Meter serverReadQueryMeter;
   // Incremented per write.
@@ -67,6 +71,9 @@ public class MetricsRegionServer {
 
     // create and use metrics from the new hbase-metrics based registry.
     bulkLoadTimer = metricRegistry.timer("Bulkload");
+    seekPipelineOpenTimer = metricRegistry.timer("SeekPipelineOpen");
+    seekPipelineSeekTimer = metricRegistry.timer("SeekPipelineSeek");
+    seekPipelineAssembleTimer = metricRegistry.timer("SeekPipelineAssemble");
 
     slowMetricTime = conf.getLong(SLOW_METRIC_TIME, DEFAULT_SLOW_METRIC_TIME);
     quotaSource = CompatibilitySingletonFactory.getInstance(MetricsRegionServerQuotaSource.class);
@@ -250,6 +257,18 @@ public class MetricsRegionServer {
     this.bulkLoadTimer.updateMillis(millis);
   }
 
+  /**
+   * Records the time a region scanner spent opening its store scanners, seeking their store files
+   * and building its heaps, in microseconds.
+   */
+  public void updateSeekPipeline(long openMicros, long seekMicros, long assembleMicros) {
+    if (seekPipelineOpenTimer != null) {
+      seekPipelineOpenTimer.updateMicros(openMicros);
+      seekPipelineSeekTimer.updateMicros(seekMicros);
+      seekPipelineAssembleTimer.updateMicros(assembleMicros);
+    }
+  }
+
   /**
    * @see MetricsRegionServerQuotaSource#incrementNumRegionSizeReportsSent(long)
    */
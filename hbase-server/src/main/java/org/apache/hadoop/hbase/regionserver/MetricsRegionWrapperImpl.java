@@ -60,6 +60,8 @@ public class MetricsRegionWrapperImpl implements MetricsRegionWrapper, Closeable
   private long maxCompactionQueueSize;
   private Map<String, Long> readsOnlyFromMemstore;
   private Map<String, Long> mixedReadsOnStore;
+  private Map<String, Long> memStoreCompactedCells;
+  private Map<String, Long> memStoreCompactionTime;
 
   private ScheduledFuture<?> regionMetricsUpdateTask;
 
@@ -250,6 +252,16 @@ public class MetricsRegionWrapperImpl implements MetricsRegionWrapper, Closeable
     return mixedReadsOnStore;
   }
 
+  @Override
+  public Map<String, Long> getMemStoreCompactedCellsCount() {
+    return memStoreCompactedCells;
+  }
+
+  @Override
+  public Map<String, Long> getMemStoreCompactionTime() {
+    return memStoreCompactionTime;
+  }
+
   public class HRegionMetricsWrapperRunnable implements Runnable {
 
     @Override
@@ -266,6 +278,8 @@ public class MetricsRegionWrapperImpl implements MetricsRegionWrapper, Closeable
       long tempMaxFlushQueueSize = 0;
       long avgAgeNumerator = 0;
       long numHFiles = 0;
+      Map<String, Long> tempMemStoreCompactedCells = new HashMap<>();
+      Map<String, Long> tempMemStoreCompactionTime = new HashMap<>();
       if (region.stores != null) {
         for (HStore store : region.stores.values()) {
           tempNumStoreFiles += store.getStorefilesCount();
@@ -320,8 +334,14 @@ public class MetricsRegionWrapperImpl implements MetricsRegionWrapper, Closeable
             tempVal += store.getMemstoreOnlyRowReadsCount();
           }
           readsOnlyFromMemstore.put(store.getColumnFamilyName(), tempVal);
+          tempMemStoreCompactedCells.put(store.getColumnFamilyName(),
+            store.getMemStoreCompactedCellsCount());
+          tempMemStoreCompactionTime.put(store.getColumnFamilyName(),
+            store.getMemStoreCompactionTime());
         }
       }
+      memStoreCompactedCells = tempMemStoreCompactedCells;
+      memStoreCompactionTime = tempMemStoreCompactionTime;
       MutableLong regionCachedAmount = new MutableLong(0);
       region.getBlockCache().getRegionCachedInfo().ifPresent(regionCacheRatio -> regionCachedAmount
         .addAndGet(regionCacheRatio.getOrDefault(region.getRegionInfo().getEncodedName(), 0L)));
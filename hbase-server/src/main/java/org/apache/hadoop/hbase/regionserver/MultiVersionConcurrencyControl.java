@@ -17,10 +17,11 @@
  */
 package org.apache.hadoop.hbase.regionserver;
 
-import java.util.LinkedList;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import org.apache.hadoop.hbase.util.Bytes;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.hadoop.hbase.util.ClassSize;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
@@ -33,6 +34,14 @@ import org.apache.hbase.thirdparty.com.google.common.base.MoreObjects.ToStringHe
  * Manages the read/write consistency. This provides an interface for readers to determine what
  * entries to ignore, and a mechanism for writers to obtain new write numbers, then "commit" the new
  * writes for readers to read (thus forming atomic transactions).
+ * <p>
+ * The pending writes are a singly linked list of {@link WriteEntry}s in write number order. A
+ * writer appends its entry by a CAS on the tail, so the tail holds the write point. The head is the
+ * last entry visible to readers, so it holds the read point. Completing an entry does not take a
+ * lock: the completing writer tries to become the single advancer of the read point, moves the head
+ * over the completed entries, running their completion actions in order, and publishes the new read
+ * point. A writer failing to become the advancer leaves its entry to the current advancer, which
+ * checks again for completed entries after it is done.
  */
 @InterfaceAudience.Private
 public class MultiVersionConcurrencyControl {
@@ -41,20 +50,21 @@ public class MultiVersionConcurrencyControl {
 
   final String regionName;
   final AtomicLong readPoint = new AtomicLong(0);
-  final AtomicLong writePoint = new AtomicLong(0);
   private final Object readWaiters = new Object();
+  // the number of threads waiting on readWaiters, so the read point advance notifies only if needed
+  private final AtomicInteger numReadWaiters = new AtomicInteger();
   /**
    * Represents no value, or not set.
    */
   public static final long NONE = -1;
 
-  // This is the pending queue of writes.
-  //
-  // TODO(eclark): Should this be an array of fixed size to
-  // reduce the number of allocations on the write path?
-  // This could be equal to the number of handlers + a small number.
-  // TODO: St.Ack 20150903 Sounds good to me.
-  private final LinkedList<WriteEntry> writeQueue = new LinkedList<>();
+  // This is the pending queue of writes, from the last write visible to readers (head) to the last
+  // write begun (tail). The head is only moved by the thread holding the advancing flag.
+  private volatile WriteEntry head;
+  private final AtomicReference<WriteEntry> tail;
+  private final AtomicBoolean advancing = new AtomicBoolean(false);
+  // Orders the actions of begin(Runnable) like the write numbers
+  private final Object beginLock = new Object();
 
   public MultiVersionConcurrencyControl() {
     this(null);
@@ -62,6 +72,10 @@ public class MultiVersionConcurrencyControl {
 
   public MultiVersionConcurrencyControl(String regionName) {
     this.regionName = regionName;
+    WriteEntry start = new WriteEntry(0);
+    start.markCompleted();
+    this.head = start;
+    this.tail = new AtomicReference<>(start);
   }
 
   /**
@@ -96,9 +110,10 @@ public class MultiVersionConcurrencyControl {
    *         <code>readPoint</code>
    */
   boolean tryAdvanceTo(long newStartPoint, long expected) {
-    synchronized (writeQueue) {
+    synchronized (beginLock) {
+      WriteEntry currentTail = tail.get();
       long currentRead = this.readPoint.get();
-      long currentWrite = this.writePoint.get();
+      long currentWrite = currentTail.getWriteNumber();
       if (currentRead != currentWrite) {
         throw new RuntimeException("Already used this mvcc; currentRead=" + currentRead
           + ", currentWrite=" + currentWrite + "; too late to tryAdvanceTo");
@@ -111,20 +126,21 @@ public class MultiVersionConcurrencyControl {
         return false;
       }
 
-      readPoint.set(newStartPoint);
-      writePoint.set(newStartPoint);
+      // A completed entry with no completion action moves both points when the head passes it. A
+      // concurrent begin() failing the CAS retries after the new tail.
+      WriteEntry start = new WriteEntry(newStartPoint);
+      start.markCompleted();
+      if (!tail.compareAndSet(currentTail, start)) {
+        return false;
+      }
+      currentTail.next = start;
+      while (readPoint.get() < newStartPoint) {
+        advanceReadPoint();
+      }
     }
     return true;
   }
 
-  /**
-   * Call {@link #begin(Runnable)} with an empty {@link Runnable}.
-   */
-  public WriteEntry begin() {
-    return begin(() -> {
-    });
-  }
-
   /**
    * Start a write transaction. Create a new {@link WriteEntry} with a new write number and add it
    * to our queue of ongoing writes. Return this WriteEntry instance. To complete the write
@@ -138,15 +154,38 @@ public class MultiVersionConcurrencyControl {
    * @see #completeAndWait(WriteEntry)
    */
   public WriteEntry begin(Runnable action) {
-    synchronized (writeQueue) {
-      long nextWriteNumber = writePoint.incrementAndGet();
-      WriteEntry e = new WriteEntry(nextWriteNumber);
-      writeQueue.add(e);
+    synchronized (beginLock) {
+      WriteEntry e = append();
       action.run();
       return e;
     }
   }
 
+  /**
+   * Start a write transaction with no action to order with the write number. Unlike
+   * {@link #begin(Runnable)} this does not take a lock.
+   */
+  public WriteEntry begin() {
+    return append();
+  }
+
+  /**
+   * Links a new entry after the tail, numbered after it.
+   */
+  private WriteEntry append() {
+    WriteEntry e = new WriteEntry(0);
+    for (;;) {
+      WriteEntry currentTail = tail.get();
+      e.writeNumber = currentTail.getWriteNumber() + 1;
+      if (tail.compareAndSet(currentTail, e)) {
+        // The entry is not visible to the advancer before this, which is fine as it is not
+        // completed yet, and its completion checks the list again.
+        currentTail.next = e;
+        return e;
+      }
+    }
+  }
+
   /**
    * Wait until the read point catches up to the write point; i.e. wait on all outstanding mvccs to
    * complete.
@@ -177,41 +216,50 @@ public class MultiVersionConcurrencyControl {
    * @return true if e is visible to MVCC readers (that is, readpoint >= e.writeNumber)
    */
   public boolean complete(WriteEntry writeEntry) {
-    synchronized (writeQueue) {
-      writeEntry.markCompleted();
+    writeEntry.markCompleted();
+    advanceReadPoint();
+    return readPoint.get() >= writeEntry.getWriteNumber();
+  }
+
+  /**
+   * Moves the head over the completed entries following it, unless another thread is doing so, then
+   * publishes the new read point. Set the read point to the highest numbered write of S, the set of
+   * all write numbers completed with all the writes before them.
+   */
+  private void advanceReadPoint() {
+    for (;;) {
+      if (!advancing.compareAndSet(false, true)) {
+        // The advancer checks for completed entries after it resets the flag, as the flag is reset
+        // after our entry was marked completed, our entry is not left behind.
+        return;
+      }
+      WriteEntry current = head;
       long nextReadValue = NONE;
-      boolean ranOnce = false;
-      while (!writeQueue.isEmpty()) {
-        ranOnce = true;
-        WriteEntry queueFirst = writeQueue.getFirst();
-
-        if (nextReadValue > 0) {
-          if (nextReadValue + 1 != queueFirst.getWriteNumber()) {
-            throw new RuntimeException("Invariant in complete violated, nextReadValue="
-              + nextReadValue + ", writeNumber=" + queueFirst.getWriteNumber());
-          }
+      try {
+        for (WriteEntry next = current.next; next != null && next.isCompleted(); next =
+          current.next) {
+          // do not let the retired entries, still referenced by their writers, keep the list alive
+          current.next = null;
+          current = next;
+          current.runCompletionAction();
         }
-
-        if (queueFirst.isCompleted()) {
-          nextReadValue = queueFirst.getWriteNumber();
-          writeQueue.removeFirst();
-          queueFirst.runCompletionAction();
-        } else {
-          break;
+      } finally {
+        if (current != head) {
+          head = current;
+          nextReadValue = current.getWriteNumber();
+          readPoint.set(nextReadValue);
         }
+        advancing.set(false);
       }
-
-      if (!ranOnce) {
-        throw new RuntimeException("There is no first!");
-      }
-
-      if (nextReadValue > 0) {
+      if (nextReadValue != NONE && numReadWaiters.get() > 0) {
         synchronized (readWaiters) {
-          readPoint.set(nextReadValue);
           readWaiters.notifyAll();
         }
       }
-      return readPoint.get() >= writeEntry.getWriteNumber();
+      WriteEntry next = head.next;
+      if (next == null || !next.isCompleted()) {
+        return;
+      }
     }
   }
 
@@ -221,21 +269,26 @@ public class MultiVersionConcurrencyControl {
   void waitForRead(WriteEntry e) {
     boolean interrupted = false;
     int count = 0;
-    synchronized (readWaiters) {
-      while (readPoint.get() < e.getWriteNumber()) {
-        if (count % 100 == 0 && count > 0) {
-          long totalWaitTillNow = READPOINT_ADVANCE_WAIT_TIME * count;
-          LOG.warn("STUCK for : " + totalWaitTillNow + " millis. " + this);
-        }
-        count++;
-        try {
-          readWaiters.wait(READPOINT_ADVANCE_WAIT_TIME);
-        } catch (InterruptedException ie) {
-          // We were interrupted... finish the loop -- i.e. cleanup --and then
-          // on our way out, reset the interrupt flag.
-          interrupted = true;
+    numReadWaiters.incrementAndGet();
+    try {
+      synchronized (readWaiters) {
+        while (readPoint.get() < e.getWriteNumber()) {
+          if (count % 100 == 0 && count > 0) {
+            long totalWaitTillNow = READPOINT_ADVANCE_WAIT_TIME * count;
+            LOG.warn("STUCK for : " + totalWaitTillNow + " millis. " + this);
+          }
+          count++;
+          try {
+            readWaiters.wait(READPOINT_ADVANCE_WAIT_TIME);
+          } catch (InterruptedException ie) {
+            // We were interrupted... finish the loop -- i.e. cleanup --and then
+            // on our way out, reset the interrupt flag.
+            interrupted = true;
+          }
         }
       }
+    } finally {
+      numReadWaiters.decrementAndGet();
     }
     if (interrupted) {
       Thread.currentThread().interrupt();
@@ -244,8 +297,8 @@ public class MultiVersionConcurrencyControl {
 
   @Override
   public String toString() {
-    ToStringHelper helper =
-      MoreObjects.toStringHelper(this).add("readPoint", readPoint).add("writePoint", writePoint);
+    ToStringHelper helper = MoreObjects.toStringHelper(this).add("readPoint", readPoint)
+      .add("writePoint", getWritePoint());
     if (this.regionName != null) {
       helper.add("regionName", this.regionName);
     }
@@ -257,7 +310,7 @@ public class MultiVersionConcurrencyControl {
   }
 
   public long getWritePoint() {
-    return writePoint.get();
+    return tail.get().getWriteNumber();
   }
 
   /**
@@ -266,11 +319,13 @@ public class MultiVersionConcurrencyControl {
    */
   @InterfaceAudience.Private
   public static final class WriteEntry {
-    private final long writeNumber;
-    private boolean completed = false;
+    // set before the entry is published by the CAS on the tail
+    private long writeNumber;
+    private volatile boolean completed = false;
+    // the next entry in write number order, set after the entry is published
+    private volatile WriteEntry next;
     /**
-     * Will be called after completion, i.e, when being removed from the
-     * {@link MultiVersionConcurrencyControl#writeQueue}.
+     * Will be called after completion, i.e, when the read point moves over this entry.
      */
     private Optional<Runnable> completionAction = Optional.empty();
 
@@ -309,6 +364,5 @@ public class MultiVersionConcurrencyControl {
     }
   }
 
-  public static final long FIXED_SIZE =
-    ClassSize.align(ClassSize.OBJECT + 2 * Bytes.SIZEOF_LONG + 2 * ClassSize.REFERENCE);
+  public static final long FIXED_SIZE = ClassSize.align(ClassSize.OBJECT + 8 * ClassSize.REFERENCE);
 }
@@ -75,8 +75,8 @@ public class MutableSegment extends Segment {
     while (it.hasNext()) {
       ExtendedCell cur = it.next();
 
-      if (cell == cur) {
-        // ignore the one just put in
+      if (cell == cur || compare(cell, cur) == 0) {
+        // ignore the one just put in, the index may return another instance of it
         continue;
       }
       // check that this is the row and column we are interested in, otherwise bail
@@ -92,12 +92,14 @@ public class MutableSegment extends Segment {
             // area. Only the Cell object as such going way. We need to consider cellLen to be
             // decreased there as 0 only. Just keeping it as existing code now. We need to know the
             // removed cell is from MSLAB or not. Will do once HBASE-16438 is in
-            int cellLen = getCellLength(cur);
-            long heapSize = heapSizeChange(cur, true);
-            long offHeapSize = offHeapSizeChange(cur, true);
-            incMemStoreSize(-cellLen, -heapSize, -offHeapSize, -1);
-            if (memStoreSizing != null) {
-              memStoreSizing.decMemStoreSize(cellLen, heapSize, offHeapSize, 1);
+            if (releasesRemovedCells()) {
+              int cellLen = getCellLength(cur);
+              long heapSize = heapSizeChange(cur, true);
+              long offHeapSize = offHeapSizeChange(cur, true);
+              incMemStoreSize(-cellLen, -heapSize, -offHeapSize, -1);
+              if (memStoreSizing != null) {
+                memStoreSizing.decMemStoreSize(cellLen, heapSize, offHeapSize, 1);
+              }
             }
             it.remove();
           } else {
@@ -111,6 +113,14 @@ public class MutableSegment extends Segment {
     }
   }
 
+  /**
+   * Returns whether the memory of the Cells removed by {@link #upsert} is released, so their size
+   * is deducted from the segment.
+   */
+  protected boolean releasesRemovedCells() {
+    return true;
+  }
+
   public boolean setInMemoryFlushed() {
     return flushed.compareAndSet(false, true);
   }
@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * The ParallelMemStoreSegmentsIterator extends MemStoreSegmentsIterator and splits the iteration
+ * over the segments of the compaction pipeline into key ranges on row boundaries. Each key range is
+ * iterated (merged or compacted) by its own task on a {@link ForkJoinPool}, and the cells of the
+ * key ranges are returned in order, so the consumer sees the same sequence of cells it would get
+ * from one iterator over the whole key space.
+ * <p>
+ * The tasks hand their cells over in batches through a bounded queue per key range. The iterators
+ * of the key ranges, and so the scanners holding the chunks of the pipeline segments, stay open
+ * until {@link #close()}, as the returned cells point into those chunks.
+ */
+@InterfaceAudience.Private
+public class ParallelMemStoreSegmentsIterator extends MemStoreSegmentsIterator {
+
+  /**
+   * Creates the iterator over one key range, from the start key (inclusive) to the stop key
+   * (exclusive). A null key leaves the range unbounded on that side.
+   */
+  @FunctionalInterface
+  interface PartitionIteratorFactory {
+    MemStoreSegmentsIterator create(ExtendedCell startKey, ExtendedCell stopKey) throws IOException;
+  }
+
+  /** How many batches of cells a key range may have queued ahead of the consumer. */
+  static final int QUEUED_BATCHES = 4;
+
+  /** Queued after the last batch of a key range. */
+  private static final List<ExtendedCell> END = Collections.emptyList();
+
+  /** One key range, filled by its task and drained by the consumer. */
+  private static final class Partition implements ForkJoinPool.ManagedBlocker {
+    private final BlockingQueue<List<ExtendedCell>> batches =
+      new ArrayBlockingQueue<>(QUEUED_BATCHES);
+    // set by the task, read by close() once the task is done
+    private MemStoreSegmentsIterator iterator;
+    private volatile Throwable error;
+    // set when the consumer stops reading, the task then stops filling the queue
+    private volatile boolean aborted;
+    private ForkJoinTask<?> task;
+    // the batch the task is waiting to queue
+    private List<ExtendedCell> pending;
+
+    private void fill(PartitionIteratorFactory factory, ExtendedCell startKey, ExtendedCell stopKey,
+      int batchSize) {
+      try {
+        if (aborted) {
+          return;
+        }
+        iterator = factory.create(startKey, stopKey);
+        List<ExtendedCell> batch = new ArrayList<>(batchSize);
+        while (!aborted && iterator.hasNext()) {
+          batch.add(iterator.next());
+          if (batch.size() == batchSize) {
+            put(batch);
+            batch = new ArrayList<>(batchSize);
+          }
+        }
+        if (!batch.isEmpty()) {
+          put(batch);
+        }
+      } catch (Throwable t) {
+        error = t;
+      } finally {
+        try {
+          put(END);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    /**
+     * Queues the batch, letting the pool start another worker while this one waits, so the key
+     * ranges the consumer is waiting for can still run.
+     */
+    private void put(List<ExtendedCell> batch) throws InterruptedException {
+      pending = batch;
+      ForkJoinPool.managedBlock(this);
+    }
+
+    @Override
+    public boolean isReleasable() {
+      return aborted || batches.offer(pending);
+    }
+
+    @Override
+    public boolean block() throws InterruptedException {
+      // close() makes room when it aborts, and the queue is not filled again after that
+      batches.put(pending);
+      return true;
+    }
+
+    private List<ExtendedCell> take() {
+      try {
+        List<ExtendedCell> batch = batches.take();
+        if (batch == END && error != null) {
+          throw new IllegalStateException(error);
+        }
+        return batch;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  private final List<Partition> partitions;
+  private int nextPartition = 0;
+  private Iterator<ExtendedCell> current = Collections.emptyIterator();
+  private boolean closed = false;
+
+  // C-tor
+  public ParallelMemStoreSegmentsIterator(ForkJoinPool pool, List<ExtendedCell> splitKeys,
+    int compactionKVMax, PartitionIteratorFactory factory) throws IOException {
+    super(compactionKVMax);
+    int batchSize = Math.max(compactionKVMax, 1);
+    this.partitions = new ArrayList<>(splitKeys.size() + 1);
+    for (int i = 0; i <= splitKeys.size(); i++) {
+      ExtendedCell startKey = i == 0 ? null : splitKeys.get(i - 1);
+      ExtendedCell stopKey = i == splitKeys.size() ? null : splitKeys.get(i);
+      Partition partition = new Partition();
+      partition.task = pool.submit(() -> partition.fill(factory, startKey, stopKey, batchSize));
+      partitions.add(partition);
+    }
+  }
+
+  /**
+   * Returns up to {@code partitions - 1} split keys, the first keys on the rows found at even
+   * intervals in the largest flat segment. Only flat segments can be sampled without iterating
+   * them, so an empty list, meaning no split, is returned when no segment is flat.
+   */
+  static List<ExtendedCell> getSplitKeys(List<? extends Segment> segments, int partitions) {
+    CellFlatMap<ExtendedCell> flatIndex = null;
+    for (Segment segment : segments) {
+      NavigableMap<ExtendedCell, ExtendedCell> index = segment.getCellSet().getDelegatee();
+      if (index instanceof CellFlatMap && (flatIndex == null || index.size() > flatIndex.size())) {
+        flatIndex = (CellFlatMap<ExtendedCell>) index;
+      }
+    }
+    if (flatIndex == null || partitions < 2) {
+      return Collections.emptyList();
+    }
+    int size = flatIndex.size();
+    List<ExtendedCell> splitKeys = new ArrayList<>(partitions - 1);
+    ExtendedCell previous = size > 0 ? flatIndex.getCell(flatIndex.minCellIdx) : null;
+    for (int i = 1; i < partitions && size > 0; i++) {
+      ExtendedCell cell =
+        flatIndex.getCell(flatIndex.minCellIdx + (int) ((long) size * i / partitions));
+      // the cells are sorted, so a row shared with the previous sample would give an empty range
+      if (CellUtil.matchingRows(previous, cell)) {
+        continue;
+      }
+      // copy the row, the split keys must not point into the chunks of the segment
+      splitKeys.add(PrivateCellUtil.createFirstOnRow(CellUtil.cloneRow(cell)));
+      previous = cell;
+    }
+    return splitKeys;
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!closed && !current.hasNext()) {
+      if (nextPartition == partitions.size()) {
+        return false;
+      }
+      List<ExtendedCell> batch = partitions.get(nextPartition).take();
+      if (batch == END) {
+        nextPartition++;
+      }
+      current = batch.iterator();
+    }
+    return !closed;
+  }
+
+  @Override
+  public ExtendedCell next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return current.next();
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    current = Collections.emptyIterator();
+    for (Partition partition : partitions) {
+      partition.aborted = true;
+      partition.batches.clear();
+    }
+    // the iterators are not thread-safe, close them once their tasks stopped using them
+    for (Partition partition : partitions) {
+      partition.task.quietlyJoin();
+      if (partition.iterator != null) {
+        partition.iterator.close();
+      }
+    }
+    partitions.clear();
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.ipc.RpcCall;
+import org.apache.hadoop.hbase.ipc.RpcServer;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Seeks the store files of all the stores of a region scanner together instead of one store after
+ * the other. The region scanner opens its {@link StoreScanner}s with the pipeline in their
+ * {@link ScanInfo}, see {@link ScanInfo#withSeekPipeline(ParallelSeekPipeline)}, and each of them
+ * hands its store file scanners and start key to the pipeline instead of seeking them.
+ * {@link #seekAll()} then runs all the seeks with at most {@link #CONCURRENCY_KEY} in flight, on
+ * the {@link org.apache.hadoop.hbase.executor.ExecutorType#RS_PARALLEL_SEEK} executor and on the
+ * calling handler thread, and the store scanners build their heaps once all the seeks are done.
+ * <p>
+ * The calling thread takes seeks from the same queue as the helpers, so it never waits for a helper
+ * that has not started yet, and a saturated executor degrades to sequential seeks. The helpers run
+ * their seeks in the RPC call of the handler, so the file system read time is accounted to it and
+ * the call is visible to the code below the seeks as it would be on the handler. Lazy seeks, which
+ * avoid reading files a query may not need, and reversed scans keep seeking store by store.
+ */
+@InterfaceAudience.Private
+class ParallelSeekPipeline {
+
+  /**
+   * Maximum number of store file seeks of a region scanner in flight at once, counting the handler
+   * thread. 0, the default, disables the pipeline.
+   */
+  static final String CONCURRENCY_KEY = "hbase.storescanner.parallel.seek.pipeline.concurrency";
+  static final int DEFAULT_CONCURRENCY = 0;
+
+  /** Threads of the parallel seek executor, shared with {@link StoreScanner} parallel seeks */
+  static final String THREADS_KEY = "hbase.storescanner.parallel.seek.threads";
+  static final int DEFAULT_THREADS = 10;
+
+  private static final class SeekTask {
+    private final KeyValueScanner scanner;
+    private final ExtendedCell key;
+
+    SeekTask(KeyValueScanner scanner, ExtendedCell key) {
+      this.scanner = scanner;
+      this.key = key;
+    }
+  }
+
+  private final Executor executor;
+  private final int concurrency;
+  private final List<StoreScanner> storeScanners = new ArrayList<>();
+  private final Queue<SeekTask> tasks = new ConcurrentLinkedQueue<>();
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private CountDownLatch remaining;
+
+  private long startNanos;
+  private long openNanos;
+  private long seekNanos;
+  private long assembleNanos;
+
+  ParallelSeekPipeline(Executor executor, int concurrency) {
+    this.executor = executor;
+    this.concurrency = concurrency;
+  }
+
+  /**
+   * Starts the open phase, during which the store scanners add their seeks to this pipeline.
+   */
+  void startOpening() {
+    startNanos = System.nanoTime();
+  }
+
+  void stopOpening() {
+    openNanos = System.nanoTime() - startNanos;
+  }
+
+  /**
+   * Adds the seeks of a store scanner. Scanners that do not read files, like the memstore ones, are
+   * sought right away.
+   */
+  void add(StoreScanner storeScanner, List<? extends KeyValueScanner> scanners, ExtendedCell key)
+    throws IOException {
+    List<SeekTask> fileSeeks = new ArrayList<>(scanners.size());
+    for (KeyValueScanner scanner : scanners) {
+      if (scanner.isFileScanner()) {
+        fileSeeks.add(new SeekTask(scanner, key));
+      } else {
+        scanner.seek(key);
+      }
+    }
+    tasks.addAll(fileSeeks);
+    storeScanners.add(storeScanner);
+  }
+
+  /**
+   * Runs all the seeks, then lets every store scanner build its heap.
+   */
+  void seekAll() throws IOException {
+    long seekStartNanos = System.nanoTime();
+    int numTasks = tasks.size();
+    remaining = new CountDownLatch(numTasks);
+    int helpers = Math.min(concurrency, numTasks) - 1;
+    RpcCall rpcCall = RpcServer.getCurrentCall().orElse(null);
+    for (int i = 0; i < helpers; i++) {
+      try {
+        executor.execute(() -> seekInCall(rpcCall));
+      } catch (RejectedExecutionException e) {
+        break;
+      }
+    }
+    seek();
+    // only seeks already taken by a helper can be left, wait for them even if interrupted so that
+    // the scanners are not closed under a helper
+    boolean interrupted = false;
+    while (remaining.getCount() > 0) {
+      try {
+        remaining.await();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    long assembleStartNanos = System.nanoTime();
+    seekNanos = assembleStartNanos - seekStartNanos;
+    Throwable t = failure.get();
+    if (t != null) {
+      if (t instanceof IOException) {
+        throw (IOException) t;
+      }
+      throw new IOException(t);
+    }
+    for (StoreScanner storeScanner : storeScanners) {
+      storeScanner.finishPipelinedSeek();
+    }
+    assembleNanos = System.nanoTime() - assembleStartNanos;
+  }
+
+  private void seekInCall(RpcCall rpcCall) {
+    Optional<RpcCall> previous = RpcServer.unsetCurrentCall();
+    RpcServer.setCurrentCall(rpcCall);
+    try {
+      seek();
+    } finally {
+      RpcServer.setCurrentCall(previous.orElse(null));
+    }
+  }
+
+  private void seek() {
+    for (SeekTask task; (task = tasks.poll()) != null;) {
+      try {
+        // no point in more seeks once one failed, the region scanner will not open
+        if (failure.get() == null) {
+          task.scanner.seek(task.key);
+        }
+      } catch (Throwable t) {
+        failure.compareAndSet(null, t);
+      } finally {
+        remaining.countDown();
+      }
+    }
+  }
+
+  /**
+   * Ends the assemble phase, after the region scanner built its own heap, and reports the time
+   * spent in each phase.
+   */
+  void finish(MetricsRegionServer metrics) {
+    if (metrics != null) {
+      long regionHeapNanos = System.nanoTime() - startNanos - openNanos - seekNanos - assembleNanos;
+      metrics.updateSeekPipeline(TimeUnit.NANOSECONDS.toMicros(openNanos),
+        TimeUnit.NANOSECONDS.toMicros(seekNanos),
+        TimeUnit.NANOSECONDS.toMicros(assembleNanos + regionHeapNanos));
+    }
+  }
+
+  int getNumStoreScanners() {
+    return storeScanners.size();
+  }
+}
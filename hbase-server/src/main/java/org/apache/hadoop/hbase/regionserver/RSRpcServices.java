@@ -240,6 +240,7 @@ import org.apache.hadoop.hbase.shaded.protobuf.generated.QuotaProtos.GetSpaceQuo
 import org.apache.hadoop.hbase.shaded.protobuf.generated.QuotaProtos.GetSpaceQuotaSnapshotsResponse;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.QuotaProtos.GetSpaceQuotaSnapshotsResponse.TableQuotaSnapshot;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.RegistryProtos.ClientMetaService;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.WALProtos;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.WALProtos.BulkLoadDescriptor;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.WALProtos.CompactionDescriptor;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.WALProtos.FlushDescriptor;
@@ -2128,6 +2129,12 @@ public class RSRpcServices extends HBaseRpcServicesBase<HRegionServer>
           long nonce = entry.getKey().hasNonce() ? entry.getKey().getNonce() : HConstants.NO_NONCE;
           server.nonceManager.reportOperationFromWal(nonceGroup, nonce,
             entry.getKey().getWriteTime());
+          for (WALProtos.Attribute attribute : entry.getKey().getExtendedAttributesList()) {
+            if (IncrementCombiner.NONCES_ATTRIBUTE.equals(attribute.getKey())) {
+              IncrementCombiner.reportOperationsFromWal(server.nonceManager,
+                attribute.getValue().toByteArray(), entry.getKey().getWriteTime());
+            }
+          }
         }
         Pair<WALKey, WALEdit> walEntry = (coprocessorHost == null) ? null : new Pair<>();
         List<MutationReplay> edits =
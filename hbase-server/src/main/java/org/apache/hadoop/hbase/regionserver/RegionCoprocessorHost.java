@@ -19,9 +19,11 @@ package org.apache.hadoop.hbase.regionserver;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -81,6 +83,7 @@ import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.hbase.thirdparty.com.google.common.collect.ImmutableSet;
 import org.apache.hbase.thirdparty.com.google.protobuf.Message;
 import org.apache.hbase.thirdparty.com.google.protobuf.Service;
 import org.apache.hbase.thirdparty.org.apache.commons.collections4.map.AbstractReferenceMap;
@@ -113,6 +116,21 @@ public class RegionCoprocessorHost
     return hasCustomPostScannerFilterRow;
   }
 
+  // the hooks called on an increment by the write path of the region
+  private static final Set<String> INCREMENT_HOOKS = ImmutableSet.of("preIncrement",
+    "preIncrementAfterRowLock", "preBatchMutate", "postIncrementBeforeWAL", "postMutationBeforeWAL",
+    "preWALAppend", "postBatchMutate", "postBatchMutateIndispensably", "postIncrement");
+
+  private final boolean hasIncrementObserver;
+
+  /**
+   * Whether any configured CPs override a hook called on an increment. Combined increments go
+   * through these hooks as one, see {@link IncrementCombiner}.
+   */
+  public boolean hasIncrementObserver() {
+    return hasIncrementObserver;
+  }
+
   /**
    * Encapsulation of the environment of each coprocessor
    */
@@ -350,6 +368,23 @@ public class RegionCoprocessorHost
       }
     }
     this.hasCustomPostScannerFilterRow = hasCustomPostScannerFilterRow;
+
+    // and whether any coprocessor observes increments
+    boolean hasIncrementObserver = false;
+    out: for (RegionCoprocessorEnvironment env : coprocEnvironments) {
+      if (env.getInstance() instanceof RegionObserver) {
+        for (Class<?> clazz = env.getInstance().getClass(); clazz != Object.class;) {
+          for (Method method : clazz.getDeclaredMethods()) {
+            if (INCREMENT_HOOKS.contains(method.getName())) {
+              hasIncrementObserver = true;
+              break out;
+            }
+          }
+          clazz = clazz.getSuperclass();
+        }
+      }
+    }
+    this.hasIncrementObserver = hasIncrementObserver;
   }
 
   static List<TableCoprocessorAttribute> getTableCoprocessorAttrsFromSchema(Configuration conf,
@@ -162,9 +162,15 @@ class RegionScannerImpl implements RegionScanner, Shipper, RpcCallback {
     }
 
     try {
+      // Seeks the store files of all the families together, see ParallelSeekPipeline
+      ParallelSeekPipeline seekPipeline = region.newSeekPipeline();
+      if (seekPipeline != null) {
+        seekPipeline.startOpening();
+      }
       for (Map.Entry<byte[], NavigableSet<byte[]>> entry : scan.getFamilyMap().entrySet()) {
         HStore store = region.getStore(entry.getKey());
-        KeyValueScanner scanner = store.getScanner(scan, entry.getValue(), this.readPt);
+        KeyValueScanner scanner =
+          store.getScanner(scan, entry.getValue(), this.readPt, seekPipeline);
         instantiatedScanners.add(scanner);
         if (
           this.filter == null || !scan.doLoadColumnFamiliesOnDemand()
@@ -175,7 +181,16 @@ class RegionScannerImpl implements RegionScanner, Shipper, RpcCallback {
           joinedScanners.add(scanner);
         }
       }
+      if (seekPipeline != null) {
+        seekPipeline.stopOpening();
+        seekPipeline.seekAll();
+      }
       initializeKVHeap(scanners, joinedScanners, region);
+      if (seekPipeline != null) {
+        seekPipeline.finish(region.getRegionServerServices() != null
+          ? region.getRegionServerServices().getMetrics()
+          : null);
+      }
     } catch (Throwable t) {
       throw handleException(instantiatedScanners, t);
     }
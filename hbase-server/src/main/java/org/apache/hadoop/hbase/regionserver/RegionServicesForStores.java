@@ -17,6 +17,8 @@
  */
 package org.apache.hadoop.hbase.regionserver;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -94,6 +96,24 @@ public class RegionServicesForStores {
     return INMEMORY_COMPACTION_POOL_FOR_TEST;
   }
 
+  private static ForkJoinPool INMEMORY_COMPACTION_PARTITION_POOL;
+
+  /**
+   * Returns the pool the key ranges of a parallel in-memory compaction run on. The pool is shared
+   * by all the stores of the process and sized by the parallelism of its first user.
+   */
+  static synchronized ForkJoinPool getInMemoryCompactionPartitionPool(int parallelism) {
+    if (INMEMORY_COMPACTION_PARTITION_POOL == null) {
+      INMEMORY_COMPACTION_PARTITION_POOL = new ForkJoinPool(parallelism, pool -> {
+        ForkJoinWorkerThread thread =
+          ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("InMemoryCompactionPartitions-" + thread.getPoolIndex());
+        return thread;
+      }, null, false);
+    }
+    return INMEMORY_COMPACTION_PARTITION_POOL;
+  }
+
   ThreadPoolExecutor getInMemoryCompactionPool() {
     if (rsServices != null) {
       ExecutorService executorService = rsServices.getExecutorService();
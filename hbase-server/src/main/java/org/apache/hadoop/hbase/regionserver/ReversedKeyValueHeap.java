@@ -40,7 +40,16 @@ public class ReversedKeyValueHeap extends KeyValueHeap {
    *   */
   public ReversedKeyValueHeap(List<? extends KeyValueScanner> scanners, CellComparator comparator)
     throws IOException {
-    super(scanners, new ReversedKVScannerComparator(comparator));
+    this(scanners, comparator, false);
+  }
+
+  /**
+   * @param loserTree whether to merge the scanners with a {@link KeyValueScannerLoserTree} instead
+   *                  of a {@link java.util.PriorityQueue}
+   */
+  public ReversedKeyValueHeap(List<? extends KeyValueScanner> scanners, CellComparator comparator,
+    boolean loserTree) throws IOException {
+    super(scanners, new ReversedKVScannerComparator(comparator), loserTree);
   }
 
   @Override
@@ -64,23 +73,22 @@ public class ReversedKeyValueHeap extends KeyValueHeap {
     if (current == null) {
       return false;
     }
-    heap.add(current);
+    KeyValueScanner scanner = addAndPoll(current);
     current = null;
 
-    KeyValueScanner scanner;
-    while ((scanner = heap.poll()) != null) {
+    while (scanner != null) {
       Cell topKey = scanner.peek();
       if (comparator.getComparator().compareRows(topKey, seekKey) < 0) {
         // Row of Top KeyValue is before Seek row.
-        heap.add(scanner);
-        current = pollRealKV();
+        current = pollRealKV(addAndPoll(scanner));
         return current != null;
       }
 
       if (!scanner.seekToPreviousRow(seekKey)) {
         this.scannersForDelayedClose.add(scanner);
+        scanner = heap.poll();
       } else {
-        heap.add(scanner);
+        scanner = addAndPoll(scanner);
       }
     }
 
@@ -93,25 +101,24 @@ public class ReversedKeyValueHeap extends KeyValueHeap {
     if (current == null) {
       return false;
     }
-    heap.add(current);
+    KeyValueScanner scanner = addAndPoll(current);
     current = null;
 
-    KeyValueScanner scanner;
-    while ((scanner = heap.poll()) != null) {
+    while (scanner != null) {
       Cell topKey = scanner.peek();
       if (
         (CellUtil.matchingRows(seekKey, topKey)
           && comparator.getComparator().compare(seekKey, topKey) <= 0)
           || comparator.getComparator().compareRows(seekKey, topKey) > 0
       ) {
-        heap.add(scanner);
-        current = pollRealKV();
+        current = pollRealKV(addAndPoll(scanner));
         return current != null;
       }
       if (!scanner.backwardSeek(seekKey)) {
         this.scannersForDelayedClose.add(scanner);
+        scanner = heap.poll();
       } else {
-        heap.add(scanner);
+        scanner = addAndPoll(scanner);
       }
     }
     return false;
@@ -125,19 +132,21 @@ public class ReversedKeyValueHeap extends KeyValueHeap {
     ExtendedCell kvReturn = this.current.next();
     ExtendedCell kvNext = this.current.peek();
     if (kvNext == null || this.comparator.kvComparator.compareRows(kvNext, kvReturn) > 0) {
-      if (this.current.seekToPreviousRow(kvReturn)) {
-        this.heap.add(this.current);
+      KeyValueScanner scanner = this.current;
+      if (scanner.seekToPreviousRow(kvReturn)) {
+        this.current = null;
+        this.current = pollRealKV(addAndPoll(scanner));
       } else {
-        this.scannersForDelayedClose.add(this.current);
+        this.scannersForDelayedClose.add(scanner);
+        this.current = null;
+        this.current = pollRealKV();
       }
-      this.current = null;
-      this.current = pollRealKV();
     } else {
       KeyValueScanner topScanner = this.heap.peek();
       if (topScanner != null && this.comparator.compare(this.current, topScanner) > 0) {
-        this.heap.add(this.current);
+        KeyValueScanner scanner = this.current;
         this.current = null;
-        this.current = pollRealKV();
+        this.current = pollRealKV(addAndPoll(scanner));
       }
     }
     return kvReturn;
@@ -55,7 +55,7 @@ public class ReversedStoreScanner extends StoreScanner implements KeyValueScanne
   @Override
   protected KeyValueHeap newKVHeap(List<? extends KeyValueScanner> scanners,
     CellComparator comparator) throws IOException {
-    return new ReversedKeyValueHeap(scanners, comparator);
+    return new ReversedKeyValueHeap(scanners, comparator, loserTreeHeapEnabled);
   }
 
   @Override
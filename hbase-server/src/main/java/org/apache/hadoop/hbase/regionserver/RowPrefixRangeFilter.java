@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.nio.SingleByteBuff;
+import org.apache.hadoop.hbase.util.BloomFilterChunk;
+import org.apache.hadoop.hbase.util.BloomFilterFactory;
+import org.apache.hadoop.hbase.util.BloomFilterUtil;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Hash;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A per store file filter answering whether the file may hold a row in the row range of a
+ * {@link Scan}. The distinct row prefixes of each configured length go into a small Bloom filter of
+ * their own, kept in the file info. A scan whose start and stop rows share a prefix is checked
+ * against the filter of the longest configured length not longer than that prefix, so prefix scans
+ * of any length can skip files, not only the fixed length of a
+ * {@link BloomType#ROWPREFIX_FIXED_LENGTH} Bloom filter.
+ * <p>
+ * A length whose distinct prefixes do not fit in {@link #MAX_BYTE_SIZE_KEY} bytes is dropped when
+ * the file is written, so longer prefixes fall back to the shorter lengths that did fit.
+ */
+@InterfaceAudience.Private
+public class RowPrefixRangeFilter {
+
+  /**
+   * Comma separated row prefix lengths to build filters for, usually set per column family. Empty,
+   * the default, writes no filter.
+   */
+  public static final String PREFIX_LENGTHS_KEY = "hbase.store.row.prefix.filter.lengths";
+
+  /** Maximum size of the filter of a single prefix length, before folding */
+  public static final String MAX_BYTE_SIZE_KEY = "hbase.store.row.prefix.filter.max.size";
+  public static final int DEFAULT_MAX_BYTE_SIZE = 64 * 1024;
+
+  private static final int VERSION = 1;
+
+  private final int[] prefixLengths;
+  private final int[] hashCounts;
+  private final Hash[] hashes;
+  private final ByteBuff[] blooms;
+
+  private RowPrefixRangeFilter(int[] prefixLengths, int[] hashCounts, Hash[] hashes,
+    ByteBuff[] blooms) {
+    this.prefixLengths = prefixLengths;
+    this.hashCounts = hashCounts;
+    this.hashes = hashes;
+    this.blooms = blooms;
+  }
+
+  /**
+   * Returns the filter serialized by {@link Writer#toByteArray()}.
+   */
+  public static RowPrefixRangeFilter parseFrom(byte[] data) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unknown row prefix filter version " + version);
+    }
+    int count = in.readInt();
+    int[] prefixLengths = new int[count];
+    int[] hashCounts = new int[count];
+    Hash[] hashes = new Hash[count];
+    ByteBuff[] blooms = new ByteBuff[count];
+    for (int i = 0; i < count; i++) {
+      prefixLengths[i] = in.readInt();
+      hashCounts[i] = in.readInt();
+      int hashType = in.readInt();
+      hashes[i] = Hash.getInstance(hashType);
+      if (hashes[i] == null) {
+        throw new IOException("Invalid hash type: " + hashType);
+      }
+      byte[] bloom = new byte[in.readInt()];
+      in.readFully(bloom);
+      blooms[i] = new SingleByteBuff(ByteBuffer.wrap(bloom));
+    }
+    return new RowPrefixRangeFilter(prefixLengths, hashCounts, hashes, blooms);
+  }
+
+  /**
+   * Checks whether the store file may hold a row the given scan reads.
+   * @return false if none of the rows in the range of the scan are in the file, true if some may be
+   *         or if the scan is not bounded tightly enough for the filter to tell
+   */
+  public boolean passesScan(Scan scan) {
+    byte[] prefix;
+    int prefixLength;
+    if (scan.isGetScan()) {
+      prefix = scan.getStartRow();
+      prefixLength = prefix.length;
+    } else {
+      byte[] lowest = scan.isReversed() ? scan.getStopRow() : scan.getStartRow();
+      byte[] highest = scan.isReversed() ? scan.getStartRow() : scan.getStopRow();
+      boolean includeHighest = scan.isReversed() ? scan.includeStartRow() : scan.includeStopRow();
+      prefix = lowest;
+      prefixLength = getRangePrefixLength(lowest, highest, includeHighest);
+    }
+    // the longest prefix length that the scan prefix covers
+    int index = -1;
+    for (int i = 0; i < prefixLengths.length && prefixLengths[i] <= prefixLength; i++) {
+      index = i;
+    }
+    if (index < 0) {
+      return true;
+    }
+    ByteBuff bloom = blooms[index];
+    if (bloom.limit() == 0) {
+      // no row of the file is that long
+      return false;
+    }
+    return BloomFilterUtil.contains(prefix, 0, prefixLengths[index], bloom, 0, bloom.limit(),
+      hashes[index], hashCounts[index]);
+  }
+
+  /**
+   * Returns the length of the prefix that all rows from lowest to highest start with. When highest
+   * is excluded and is lowest with its byte after their common prefix incremented, like the stop
+   * row of a prefix scan, the rows also share that byte.
+   */
+  static int getRangePrefixLength(byte[] lowest, byte[] highest, boolean includeHighest) {
+    if (highest.length == 0) {
+      // unbounded
+      return 0;
+    }
+    int common = Bytes.findCommonPrefix(lowest, highest, lowest.length, highest.length, 0, 0);
+    if (
+      !includeHighest && highest.length == common + 1 && lowest.length > common
+        && (highest[common] & 0xff) == (lowest[common] & 0xff) + 1
+    ) {
+      return common + 1;
+    }
+    return common;
+  }
+
+  int[] getPrefixLengths() {
+    return prefixLengths;
+  }
+
+  /**
+   * Creates a writer for the configured prefix lengths, or returns null if there are none.
+   */
+  public static Writer createWriter(Configuration conf) {
+    String[] lengths = conf.getTrimmedStrings(PREFIX_LENGTHS_KEY);
+    if (lengths.length == 0) {
+      return null;
+    }
+    int[] prefixLengths = Arrays.stream(lengths).mapToInt(Integer::parseInt).filter(l -> l > 0)
+      .sorted().distinct().toArray();
+    if (prefixLengths.length == 0) {
+      return null;
+    }
+    return new Writer(prefixLengths, conf.getInt(MAX_BYTE_SIZE_KEY, DEFAULT_MAX_BYTE_SIZE),
+      BloomFilterFactory.getErrorRate(conf), Hash.getHashType(conf),
+      BloomFilterFactory.getMaxFold(conf));
+  }
+
+  /**
+   * Collects the row prefixes of the cells appended to a store file, in order.
+   */
+  public static class Writer {
+
+    private final int[] prefixLengths;
+    // null once the prefixes of the length no longer fit
+    private final BloomFilterChunk[] chunks;
+    private byte[] lastRow;
+
+    Writer(int[] prefixLengths, int maxByteSize, float errorRate, int hashType, int maxFold) {
+      this.prefixLengths = prefixLengths;
+      this.chunks = new BloomFilterChunk[prefixLengths.length];
+      for (int i = 0; i < prefixLengths.length; i++) {
+        chunks[i] =
+          BloomFilterUtil.createBySize(maxByteSize, errorRate, hashType, maxFold, BloomType.ROW);
+        chunks[i].allocBloom();
+      }
+    }
+
+    public void append(Cell cell) {
+      if (lastRow != null && CellUtil.matchingRows(cell, lastRow)) {
+        return;
+      }
+      byte[] row = CellUtil.cloneRow(cell);
+      for (int i = 0; i < prefixLengths.length; i++) {
+        int length = prefixLengths[i];
+        BloomFilterChunk chunk = chunks[i];
+        // rows shorter than the prefix can not match a prefix of that length
+        if (chunk == null || row.length < length) {
+          continue;
+        }
+        // the rows come sorted, so a prefix is new if it differs from the previous one
+        if (
+          lastRow != null && lastRow.length >= length
+            && Bytes.equals(row, 0, length, lastRow, 0, length)
+        ) {
+          continue;
+        }
+        if (chunk.getKeyCount() >= chunk.getMaxKeys()) {
+          chunks[i] = null;
+          continue;
+        }
+        chunk.add(row, 0, length);
+      }
+      lastRow = row;
+    }
+
+    /**
+     * Folds the filters and serializes the ones that held all of their prefixes.
+     */
+    public byte[] toByteArray() throws IOException {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bos);
+      out.writeInt(VERSION);
+      int count = 0;
+      for (BloomFilterChunk chunk : chunks) {
+        if (chunk != null) {
+          count++;
+        }
+      }
+      out.writeInt(count);
+      for (int i = 0; i < chunks.length; i++) {
+        BloomFilterChunk chunk = chunks[i];
+        if (chunk == null) {
+          continue;
+        }
+        out.writeInt(prefixLengths[i]);
+        out.writeInt(chunk.getHashCount());
+        out.writeInt(chunk.getHashType());
+        if (chunk.getKeyCount() == 0) {
+          out.writeInt(0);
+          continue;
+        }
+        chunk.compactBloom();
+        out.writeInt((int) chunk.getByteSize());
+        chunk.writeBloom(out);
+      }
+      out.flush();
+      return bos.toByteArray();
+    }
+  }
+}
@@ -47,10 +47,15 @@ public class ScanInfo {
   private boolean parallelSeekEnabled;
   private final long preadMaxBytes;
   private final boolean newVersionBehavior;
+  private final boolean loserTreeHeapEnabled;
+  private final boolean compactionLoserTreeHeapEnabled;
+  // Set on the copy handed to the store scanners of a region scanner which seeks its stores
+  // together, see withSeekPipeline
+  private final ParallelSeekPipeline seekPipeline;
 
   public static final long FIXED_OVERHEAD =
-    ClassSize.align(ClassSize.OBJECT + (2 * ClassSize.REFERENCE) + (2 * Bytes.SIZEOF_INT)
-      + (4 * Bytes.SIZEOF_LONG) + (4 * Bytes.SIZEOF_BOOLEAN));
+    ClassSize.align(ClassSize.OBJECT + (3 * ClassSize.REFERENCE) + (2 * Bytes.SIZEOF_INT)
+      + (4 * Bytes.SIZEOF_LONG) + (6 * Bytes.SIZEOF_BOOLEAN));
 
   /**
    * @param family             {@link ColumnFamilyDescriptor} describing the column family
@@ -92,13 +97,16 @@ public class ScanInfo {
       conf.getLong(HConstants.TABLE_MAX_ROWSIZE_KEY, HConstants.TABLE_MAX_ROWSIZE_DEFAULT),
       conf.getBoolean("hbase.storescanner.use.pread", false), getCellsPerTimeoutCheck(conf),
       conf.getBoolean(StoreScanner.STORESCANNER_PARALLEL_SEEK_ENABLE, false),
-      conf.getLong(StoreScanner.STORESCANNER_PREAD_MAX_BYTES, 4 * blockSize), newVersionBehavior);
+      conf.getLong(StoreScanner.STORESCANNER_PREAD_MAX_BYTES, 4 * blockSize), newVersionBehavior,
+      conf.getBoolean(StoreScanner.STORESCANNER_LOSER_TREE_HEAP_ENABLE, false),
+      conf.getBoolean(StoreScanner.STORESCANNER_COMPACTION_LOSER_TREE_HEAP_ENABLE, false), null);
   }
 
   private ScanInfo(byte[] family, int minVersions, int maxVersions, long ttl,
     KeepDeletedCells keepDeletedCells, long timeToPurgeDeletes, CellComparator comparator,
     long tableMaxRowSize, boolean usePread, long cellsPerTimeoutCheck, boolean parallelSeekEnabled,
-    long preadMaxBytes, boolean newVersionBehavior) {
+    long preadMaxBytes, boolean newVersionBehavior, boolean loserTreeHeapEnabled,
+    boolean compactionLoserTreeHeapEnabled, ParallelSeekPipeline seekPipeline) {
     this.family = family;
     this.minVersions = minVersions;
     this.maxVersions = maxVersions;
@@ -112,6 +120,9 @@ public class ScanInfo {
     this.parallelSeekEnabled = parallelSeekEnabled;
     this.preadMaxBytes = preadMaxBytes;
     this.newVersionBehavior = newVersionBehavior;
+    this.loserTreeHeapEnabled = loserTreeHeapEnabled;
+    this.compactionLoserTreeHeapEnabled = compactionLoserTreeHeapEnabled;
+    this.seekPipeline = seekPipeline;
   }
 
   long getTableMaxRowSize() {
@@ -130,6 +141,21 @@ public class ScanInfo {
     return this.parallelSeekEnabled;
   }
 
+  boolean isLoserTreeHeapEnabled() {
+    return this.loserTreeHeapEnabled;
+  }
+
+  boolean isCompactionLoserTreeHeapEnabled() {
+    return this.compactionLoserTreeHeapEnabled;
+  }
+
+  /**
+   * Returns the pipeline the store scanner should hand its seeks to, or null to seek them itself.
+   */
+  ParallelSeekPipeline getSeekPipeline() {
+    return this.seekPipeline;
+  }
+
   public byte[] getFamily() {
     return family;
   }
@@ -181,7 +207,19 @@ public class ScanInfo {
     long timeToPurgeDeletes) {
     return new ScanInfo(family, minVersions, maxVersions, ttl, keepDeletedCells, timeToPurgeDeletes,
       comparator, tableMaxRowSize, usePread, cellsPerTimeoutCheck, parallelSeekEnabled,
-      preadMaxBytes, newVersionBehavior);
+      preadMaxBytes, newVersionBehavior, loserTreeHeapEnabled, compactionLoserTreeHeapEnabled,
+      seekPipeline);
+  }
+
+  /**
+   * Used by the region scanner to open the scanner of one of its stores through a
+   * {@link ParallelSeekPipeline}.
+   */
+  ScanInfo withSeekPipeline(ParallelSeekPipeline seekPipeline) {
+    return new ScanInfo(family, minVersions, maxVersions, ttl, keepDeletedCells, timeToPurgeDeletes,
+      comparator, tableMaxRowSize, usePread, cellsPerTimeoutCheck, parallelSeekEnabled,
+      preadMaxBytes, newVersionBehavior, loserTreeHeapEnabled, compactionLoserTreeHeapEnabled,
+      seekPipeline);
   }
 
   @Override
@@ -192,6 +230,8 @@ public class ScanInfo {
       .append("tableMaxRowSize", tableMaxRowSize).append("usePread", usePread)
       .append("cellsPerTimeoutCheck", cellsPerTimeoutCheck)
       .append("parallelSeekEnabled", parallelSeekEnabled).append("preadMaxBytes", preadMaxBytes)
-      .append("newVersionBehavior", newVersionBehavior).toString();
+      .append("newVersionBehavior", newVersionBehavior)
+      .append("loserTreeHeapEnabled", loserTreeHeapEnabled)
+      .append("compactionLoserTreeHeapEnabled", compactionLoserTreeHeapEnabled).toString();
   }
 }
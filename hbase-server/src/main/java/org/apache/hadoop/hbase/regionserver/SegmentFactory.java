@@ -79,7 +79,18 @@ public final class SegmentFactory {
   // create mutable segment
   public MutableSegment createMutableSegment(final Configuration conf, CellComparator comparator,
     MemStoreSizing memstoreSizing) {
+    return createMutableSegment(conf, comparator, memstoreSizing,
+      CompactingMemStore.IndexType.CSLM_MAP);
+  }
+
+  // create mutable segment with the given index type, only CHUNK_MAP changes the default
+  // ConcurrentSkipListMap index and it requires MSLAB
+  public MutableSegment createMutableSegment(final Configuration conf, CellComparator comparator,
+    MemStoreSizing memstoreSizing, CompactingMemStore.IndexType idxType) {
     MemStoreLAB memStoreLAB = MemStoreLAB.newInstance(conf);
+    if (idxType == CompactingMemStore.IndexType.CHUNK_MAP && memStoreLAB != null) {
+      return new CellChunkMutableSegment(comparator, memStoreLAB, memstoreSizing);
+    }
     return generateMutableSegment(conf, comparator, memStoreLAB, memstoreSizing);
   }
 
@@ -21,6 +21,7 @@ import static org.apache.hadoop.hbase.regionserver.HStoreFile.BLOOM_FILTER_PARAM
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.BLOOM_FILTER_TYPE_KEY;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.DELETE_FAMILY_COUNT;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.LAST_BLOOM_KEY;
+import static org.apache.hadoop.hbase.regionserver.HStoreFile.ROW_PREFIX_FILTER_KEY;
 
 import com.google.errorprone.annotations.RestrictedApi;
 import java.io.DataInput;
@@ -78,6 +79,7 @@ public class StoreFileReader {
   private KeyValue.KeyOnlyKeyValue lastBloomKeyOnlyKV = null;
   private boolean skipResetSeqId = true;
   private int prefixLength = -1;
+  private RowPrefixRangeFilter rowPrefixFilter = null;
   protected Configuration conf;
 
   /**
@@ -114,6 +116,7 @@ public class StoreFileReader {
     this.lastBloomKeyOnlyKV = storeFileReader.lastBloomKeyOnlyKV;
     this.skipResetSeqId = storeFileReader.skipResetSeqId;
     this.prefixLength = storeFileReader.prefixLength;
+    this.rowPrefixFilter = storeFileReader.rowPrefixFilter;
   }
 
   public boolean isPrimaryReplicaReader() {
@@ -149,7 +152,8 @@ public class StoreFileReader {
     boolean isCompaction, long readPt, long scannerOrder, boolean canOptimizeForNonNullColumn) {
     return new StoreFileScanner(this, getScanner(cacheBlocks, pread, isCompaction), !isCompaction,
       reader.hasMVCCInfo(), readPt, scannerOrder, canOptimizeForNonNullColumn,
-      reader.getDataBlockEncoding() == DataBlockEncoding.ROW_INDEX_V1);
+      reader.getDataBlockEncoding() == DataBlockEncoding.ROW_INDEX_V1
+        || reader.getDataBlockEncoding() == DataBlockEncoding.COLUMNAR);
   }
 
   /**
@@ -225,6 +229,7 @@ public class StoreFileReader {
     byte[] row = scan.getStartRow();
     switch (this.bloomFilterType) {
       case ROW:
+      case ROW_BLOCKED:
         if (!scan.isGetScan()) {
           return true;
         }
@@ -455,6 +460,15 @@ public class StoreFileReader {
     return !nonOverLapping;
   }
 
+  /**
+   * Checks whether the row range of the given scan passes the row prefix filter of the file, if it
+   * has one.
+   * @return false if the file definitely holds none of the rows of the scan
+   */
+  public boolean passesRowPrefixFilter(Scan scan) {
+    return rowPrefixFilter == null || rowPrefixFilter.passesScan(scan);
+  }
+
   public Map<byte[], byte[]> loadFileInfo() throws IOException {
     Map<byte[], byte[]> fi = reader.getHFileInfo();
 
@@ -472,6 +486,10 @@ public class StoreFileReader {
     if (bloomFilterType == BloomType.ROWCOL) {
       lastBloomKeyOnlyKV = new KeyValue.KeyOnlyKeyValue(lastBloomKey, 0, lastBloomKey.length);
     }
+    byte[] rowPrefixFilterData = fi.get(ROW_PREFIX_FILTER_KEY);
+    if (rowPrefixFilterData != null) {
+      rowPrefixFilter = RowPrefixRangeFilter.parseFrom(rowPrefixFilterData);
+    }
     byte[] cnt = fi.get(DELETE_FAMILY_COUNT);
     if (cnt != null) {
       deleteFamilyCnt = Bytes.toLong(cnt);
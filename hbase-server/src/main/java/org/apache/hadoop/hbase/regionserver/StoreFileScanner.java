@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.NavigableSet;
 import java.util.Optional;
 import java.util.PriorityQueue;
 import java.util.concurrent.atomic.LongAdder;
@@ -131,6 +132,7 @@ public class StoreFileScanner implements KeyValueScanner {
     }
     List<StoreFileScanner> scanners = new ArrayList<>(files.size());
     boolean canOptimizeForNonNullColumn = matcher != null ? !matcher.hasNullColumnInQuery() : false;
+    NavigableSet<byte[]> columnProjection = matcher != null ? matcher.getColumnProjection() : null;
     PriorityQueue<HStoreFile> sortedFiles =
       new PriorityQueue<>(files.size(), StoreFileComparators.SEQ_ID);
     for (HStoreFile file : files) {
@@ -149,6 +151,9 @@ public class StoreFileScanner implements KeyValueScanner {
           scanner = sf.getStreamScanner(canUseDrop, cacheBlocks, isCompaction, readPt, i,
             canOptimizeForNonNullColumn);
         }
+        if (columnProjection != null) {
+          scanner.hfs.setColumnProjection(columnProjection);
+        }
         scanners.add(scanner);
       }
       succ = true;
@@ -495,7 +500,7 @@ public class StoreFileScanner implements KeyValueScanner {
       timeRange = scan.getTimeRange();
     }
     return reader.passesTimerangeFilter(timeRange, oldestUnexpiredTS)
-      && reader.passesKeyRangeFilter(scan)
+      && reader.passesKeyRangeFilter(scan) && reader.passesRowPrefixFilter(scan)
       && reader.passesBloomFilter(scan, scan.getFamilyMap().get(cf));
   }
 
@@ -28,6 +28,7 @@ import static org.apache.hadoop.hbase.regionserver.HStoreFile.MAJOR_COMPACTION_K
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.MAX_SEQ_ID_KEY;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.MOB_CELLS_COUNT;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.MOB_FILE_REFS;
+import static org.apache.hadoop.hbase.regionserver.HStoreFile.ROW_PREFIX_FILTER_KEY;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.TIMERANGE_KEY;
 import static org.apache.hadoop.hbase.regionserver.StoreEngine.STORE_ENGINE_CLASS_KEY;
 
@@ -501,6 +502,7 @@ public class StoreFileWriter implements CellSink, ShipperListener {
     private BloomContext bloomContext = null;
     private BloomContext deleteFamilyBloomContext = null;
     private final TimeRangeTracker timeRangeTracker;
+    private final RowPrefixRangeFilter.Writer rowPrefixFilterWriter;
     private final Supplier<Collection<HStoreFile>> compactedFilesSupplier;
 
     private HFile.Writer writer;
@@ -525,6 +527,7 @@ public class StoreFileWriter implements CellSink, ShipperListener {
       Supplier<Collection<HStoreFile>> compactedFilesSupplier) throws IOException {
       this.compactedFilesSupplier = compactedFilesSupplier;
       this.timeRangeTracker = TimeRangeTracker.create(TimeRangeTracker.Type.NON_SYNC);
+      this.rowPrefixFilterWriter = RowPrefixRangeFilter.createWriter(conf);
       // TODO : Change all writers to be specifically created for compaction context
       writer =
         HFile.getWriterFactory(conf, cacheConf).withPath(fs, path).withFavoredNodes(favoredNodes)
@@ -546,6 +549,7 @@ public class StoreFileWriter implements CellSink, ShipperListener {
         // init bloom context
         switch (bloomType) {
           case ROW:
+          case ROW_BLOCKED:
             bloomContext =
               new RowBloomContext(generalBloomFilterWriter, fileContext.getCellComparator());
             break;
@@ -710,6 +714,9 @@ public class StoreFileWriter implements CellSink, ShipperListener {
     private void append(final ExtendedCell cell) throws IOException {
       appendGeneralBloomfilter(cell);
       appendDeleteFamilyBloomFilter(cell);
+      if (rowPrefixFilterWriter != null) {
+        rowPrefixFilterWriter.append(cell);
+      }
       writer.append(cell);
       trackTimestamps(cell);
     }
@@ -783,6 +790,9 @@ public class StoreFileWriter implements CellSink, ShipperListener {
     private void close() throws IOException {
       boolean hasGeneralBloom = this.closeGeneralBloomFilter();
       boolean hasDeleteFamilyBloom = this.closeDeleteFamilyBloomFilter();
+      if (rowPrefixFilterWriter != null) {
+        writer.appendFileInfo(ROW_PREFIX_FILTER_KEY, rowPrefixFilterWriter.toByteArray());
+      }
 
       writer.close();
 
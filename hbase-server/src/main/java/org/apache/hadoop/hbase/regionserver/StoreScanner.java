@@ -87,6 +87,10 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
    * A flag that enables StoreFileScanner parallel-seeking
    */
   private boolean parallelSeekEnabled = false;
+  // Whether the heap merges the scanners with a loser tree, see KeyValueScannerLoserTree
+  final boolean loserTreeHeapEnabled;
+  // The scanners handed to a ParallelSeekPipeline, until they are sought and in the heap
+  private List<KeyValueScanner> pipelinedScanners;
   private ExecutorService executor;
   private final Scan scan;
   private final long oldestUnexpiredTS;
@@ -119,6 +123,19 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
   public static final String STORESCANNER_PARALLEL_SEEK_ENABLE =
     "hbase.storescanner.parallel.seek.enable";
 
+  /**
+   * Whether user scans merge the memstore and store file scanners of a store with a
+   * {@link KeyValueScannerLoserTree} instead of a {@link java.util.PriorityQueue}. Off by default.
+   */
+  public static final String STORESCANNER_LOSER_TREE_HEAP_ENABLE =
+    "hbase.storescanner.loser.tree.heap.enable";
+
+  /**
+   * Same as {@link #STORESCANNER_LOSER_TREE_HEAP_ENABLE}, for flushes and compactions.
+   */
+  public static final String STORESCANNER_COMPACTION_LOSER_TREE_HEAP_ENABLE =
+    "hbase.storescanner.compaction.loser.tree.heap.enable";
+
   /** Used during unit testing to ensure that lazy seek does save seek ops */
   private static boolean lazySeekEnabledGlobally = LAZY_SEEK_ENABLED_BY_DEFAULT;
 
@@ -211,6 +228,9 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
       this.scanUsePread = this.readType != Scan.ReadType.STREAM;
     }
     this.cellsPerHeartbeatCheck = scanInfo.getCellsPerTimeoutCheck();
+    this.loserTreeHeapEnabled = scanType == ScanType.USER_SCAN
+      ? scanInfo.isLoserTreeHeapEnabled()
+      : scanInfo.isCompactionLoserTreeHeapEnabled();
     // Parallel seeking is on if the config allows and more there is more than one store file.
     if (store != null && store.getStorefilesCount() > 1) {
       RegionServerServices rsService = store.getHRegion().getRegionServerServices();
@@ -258,12 +278,20 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
           scan.includeStartRow(), scan.getStopRow(), scan.includeStopRow(), this.readPt,
           isOnlyLatestVersionScan(scan)));
 
-      // Seek all scanners to the start of the Row (or if the exact matching row
-      // key does not exist, then to the start of the next matching Row).
-      // Always check bloom filter to optimize the top row seek for delete
-      // family marker.
-      seekScanners(scanners, matcher.getStartKey(), explicitColumnQuery && lazySeekEnabledGlobally,
-        parallelSeekEnabled);
+      boolean isLazy = explicitColumnQuery && lazySeekEnabledGlobally;
+      ParallelSeekPipeline seekPipeline = scanInfo.getSeekPipeline();
+      if (seekPipeline != null && !isLazy && !scan.isReversed()) {
+        // Seek together with the other stores of the region, the heap is built once all the
+        // seeks are done, see finishPipelinedSeek.
+        seekPipeline.add(this, scanners, matcher.getStartKey());
+        pipelinedScanners = scanners;
+      } else {
+        // Seek all scanners to the start of the Row (or if the exact matching row
+        // key does not exist, then to the start of the next matching Row).
+        // Always check bloom filter to optimize the top row seek for delete
+        // family marker.
+        seekScanners(scanners, matcher.getStartKey(), isLazy, parallelSeekEnabled);
+      }
 
       // set storeLimit
       this.storeLimit = scan.getMaxResultsPerColumnFamily();
@@ -271,8 +299,10 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
       // set rowOffset
       this.storeOffset = scan.getRowOffsetPerColumnFamily();
       addCurrentScanners(scanners);
-      // Combine all seeked scanners with a heap
-      resetKVHeap(scanners, comparator);
+      if (pipelinedScanners == null) {
+        // Combine all seeked scanners with a heap
+        resetKVHeap(scanners, comparator);
+      }
     } catch (IOException e) {
       clearAndClose(scanners);
       // remove us from the HStore#changedReaderObservers here or we'll have no chance to
@@ -438,7 +468,7 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
 
   protected KeyValueHeap newKVHeap(List<? extends KeyValueScanner> scanners,
     CellComparator comparator) throws IOException {
-    return new KeyValueHeap(scanners, comparator);
+    return new KeyValueHeap(scanners, comparator, loserTreeHeapEnabled);
   }
 
   /**
@@ -513,6 +543,12 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
       if (this.store != null) {
         this.store.deleteChangedReaderObserver(this);
       }
+      if (pipelinedScanners != null) {
+        // closed before the pipeline built the heap
+        clearAndClose(pipelinedScanners);
+        this.currentScanners.clear();
+        pipelinedScanners = null;
+      }
       if (withDelayedScannersClose) {
         clearAndClose(scannersForDelayedClose);
         clearAndClose(memStoreScannersAfterFlush);
@@ -1199,6 +1235,25 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
     return false;
   }
 
+  /**
+   * Builds the heap of a scanner whose seeks ran in a {@link ParallelSeekPipeline}.
+   */
+  void finishPipelinedSeek() throws IOException {
+    long totalScannersSoughtBytes = 0;
+    for (KeyValueScanner scanner : pipelinedScanners) {
+      if (matcher.isUserScan() && totalScannersSoughtBytes >= maxRowSize) {
+        throw new RowTooBigException(
+          "Max row size allowed: " + maxRowSize + ", but row is bigger than that");
+      }
+      Cell c = scanner.peek();
+      if (c != null) {
+        totalScannersSoughtBytes += PrivateCellUtil.estimatedSerializedSizeOf(c);
+      }
+    }
+    resetKVHeap(pipelinedScanners, comparator);
+    pipelinedScanners = null;
+  }
+
   /**
    * Seek storefiles in parallel to optimize IO latency as much as possible
    * @param scanners the list {@link KeyValueScanner}s to be read from
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * The row locks of a region taken from a fixed table of stripes, as an alternative to the map of
+ * row lock contexts of {@link HRegion}. A row hashes to a stripe, which holds the contexts of its
+ * rows currently locked or waited for in a small hash table keyed by row, and a small pool of free
+ * contexts to reuse. Each context carries the read/write lock of one row, so rows sharing a stripe
+ * never share a lock, and prebuilt read and write {@link Region.RowLock}s, so locking a row
+ * allocates nothing once the pools are warm. The stripe monitor is only held to find, take or give
+ * back a context, never while waiting for the row lock.
+ */
+@InterfaceAudience.Private
+class StripedRowLocks {
+
+  // free contexts kept per stripe
+  private static final int MAX_POOLED_PER_STRIPE = 8;
+
+  private final Stripe[] stripes;
+  private final int mask;
+
+  StripedRowLocks(int numStripes) {
+    int size = numStripes <= 1 ? 1 : Integer.highestOneBit(numStripes - 1) << 1;
+    this.stripes = new Stripe[size];
+    for (int i = 0; i < size; i++) {
+      stripes[i] = new Stripe();
+    }
+    this.mask = size - 1;
+  }
+
+  /**
+   * Returns the read or write lock of the row, not locked yet. The caller must either lock it and
+   * later {@link PooledRowLock#release()} it, or give it back with {@link PooledRowLock#abandon()}.
+   */
+  PooledRowLock acquire(byte[] row, boolean readLock) {
+    int hash = Bytes.hashCode(row);
+    Stripe stripe = stripes[spread(hash) & mask];
+    Context context = stripe.acquire(row, hash);
+    return readLock ? context.readLock : context.writeLock;
+  }
+
+  /**
+   * Returns true if the given lock is the read or write lock on the row asked for, which the caller
+   * already holds and must use again instead of locking the row once more: as the holders of a lock
+   * share the same {@link PooledRowLock}, callers tell the locks they took apart by identity.
+   */
+  static boolean isLockOn(Region.RowLock rowLock, byte[] row, boolean readLock) {
+    if (!(rowLock instanceof PooledRowLock)) {
+      return false;
+    }
+    PooledRowLock pooled = (PooledRowLock) rowLock;
+    Context context = pooled.context;
+    return pooled == (readLock ? context.readLock : context.writeLock)
+      && Bytes.equals(context.row, row);
+  }
+
+  /** Returns the number of rows locked or waited for */
+  int getNumLockedRows() {
+    int count = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        count += stripe.size;
+      }
+    }
+    return count;
+  }
+
+  /** Returns a description of every row locked or waited for */
+  List<String> getLockedRows() {
+    List<String> lockedRows = new ArrayList<>();
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        for (Context head : stripe.table) {
+          for (Context context = head; context != null; context = context.nextInBucket) {
+            lockedRows.add(context.toString());
+          }
+        }
+      }
+    }
+    return lockedRows;
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private static final class Stripe {
+    // the contexts of the rows locked or waited for, chained per bucket, few as there are many
+    // stripes
+    private Context[] table = new Context[4];
+    private int size;
+    private Context free;
+    private int numFree;
+
+    private static int bucket(int hash, int length) {
+      // the low bits of the hash already picked the stripe, take the high bits of its product
+      return (hash * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(length));
+    }
+
+    synchronized Context acquire(byte[] row, int hash) {
+      int index = bucket(hash, table.length);
+      for (Context context = table[index]; context != null; context = context.nextInBucket) {
+        if (context.hash == hash && Bytes.equals(context.row, row)) {
+          context.refCount++;
+          return context;
+        }
+      }
+      Context context = free;
+      if (context != null) {
+        free = context.nextFree;
+        context.nextFree = null;
+        numFree--;
+      } else {
+        context = new Context(this);
+      }
+      context.row = row;
+      context.hash = hash;
+      context.refCount = 1;
+      context.nextInBucket = table[index];
+      table[index] = context;
+      if (++size > table.length - (table.length >>> 2)) {
+        resize();
+      }
+      return context;
+    }
+
+    private void resize() {
+      Context[] newTable = new Context[table.length << 1];
+      for (Context head : table) {
+        for (Context context = head, next; context != null; context = next) {
+          next = context.nextInBucket;
+          int index = bucket(context.hash, newTable.length);
+          context.nextInBucket = newTable[index];
+          newTable[index] = context;
+        }
+      }
+      table = newTable;
+    }
+
+    synchronized void release(Context context) {
+      if (--context.refCount > 0) {
+        return;
+      }
+      int index = bucket(context.hash, table.length);
+      if (table[index] == context) {
+        table[index] = context.nextInBucket;
+      } else {
+        Context previous = table[index];
+        while (previous.nextInBucket != context) {
+          previous = previous.nextInBucket;
+        }
+        previous.nextInBucket = context.nextInBucket;
+      }
+      context.nextInBucket = null;
+      size--;
+      context.row = null;
+      context.threadName = null;
+      if (numFree < MAX_POOLED_PER_STRIPE) {
+        context.nextFree = free;
+        free = context;
+        numFree++;
+      }
+    }
+  }
+
+  private static final class Context {
+    private final Stripe stripe;
+    private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
+    private final PooledRowLock readLock;
+    private final PooledRowLock writeLock;
+    // guarded by the stripe
+    private byte[] row;
+    private int hash;
+    private int refCount;
+    private Context nextInBucket;
+    private Context nextFree;
+    private volatile String threadName;
+
+    private Context(Stripe stripe) {
+      this.stripe = stripe;
+      this.readLock = new PooledRowLock(this, readWriteLock.readLock());
+      this.writeLock = new PooledRowLock(this, readWriteLock.writeLock());
+    }
+
+    @Override
+    public String toString() {
+      return "RowLockContext{" + "row=" + Bytes.toStringBinary(row) + ", readWriteLock="
+        + readWriteLock + ", count=" + refCount + ", threadName=" + threadName + '}';
+    }
+  }
+
+  /**
+   * The read or write lock on a row, shared by all the holders of that lock on the row.
+   */
+  static final class PooledRowLock implements Region.RowLock {
+    private final Context context;
+    private final Lock lock;
+
+    private PooledRowLock(Context context, Lock lock) {
+      this.context = context;
+      this.lock = lock;
+    }
+
+    Lock getLock() {
+      return lock;
+    }
+
+    void setThreadName(String threadName) {
+      context.threadName = threadName;
+    }
+
+    /**
+     * Gives back the row lock that could not be locked.
+     */
+    void abandon() {
+      context.stripe.release(context);
+    }
+
+    @Override
+    public void release() {
+      lock.unlock();
+      context.stripe.release(context);
+    }
+
+    @Override
+    public String toString() {
+      return "PooledRowLock{" + "context=" + context + ", lock=" + lock + '}';
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.hadoop.hbase.DroppedSnapshotException;
+import org.apache.hadoop.hbase.wal.LoadAwareGroupingStrategy;
+import org.apache.hadoop.hbase.wal.WAL;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Moves the online regions a {@link LoadAwareGroupingStrategy} placed on another WAL group to the
+ * WAL of that group, see {@link HRegion#switchWAL(WAL)}. The placement is recomputed on the WAL
+ * rolls, which must not wait for the flushes of the switches, so they run on a thread of their own.
+ * A region which could not be switched, because it was flushing for example, is tried again after
+ * the next placement.
+ */
+@InterfaceAudience.Private
+public class WALGroupSwitcher implements LoadAwareGroupingStrategy.PlacementListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WALGroupSwitcher.class);
+
+  private final RegionServerServices services;
+  private final Set<String> pending = ConcurrentHashMap.newKeySet();
+  private final ExecutorService executor;
+
+  public WALGroupSwitcher(RegionServerServices services) {
+    this.services = services;
+    this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+      .setNameFormat(services.getServerName().toShortString() + "-WALGroupSwitcher").setDaemon(true)
+      .build());
+  }
+
+  @Override
+  public void regionsMoved(List<String> encodedRegionNames) {
+    pending.addAll(encodedRegionNames);
+    try {
+      executor.execute(this::switchPending);
+    } catch (RejectedExecutionException e) {
+      LOG.debug("Not switching regions to their new WAL, stopped");
+    }
+  }
+
+  void switchPending() {
+    List<String> retry = new ArrayList<>();
+    for (String encodedRegionName : new ArrayList<>(pending)) {
+      pending.remove(encodedRegionName);
+      if (services.isStopping() || services.isAborted()) {
+        return;
+      }
+      HRegion region = (HRegion) services.getRegion(encodedRegionName);
+      if (region == null) {
+        continue;
+      }
+      try {
+        WAL wal = services.getWAL(region.getRegionInfo());
+        if (!region.switchWAL(wal)) {
+          retry.add(encodedRegionName);
+        }
+      } catch (DroppedSnapshotException e) {
+        // same as a failed flush of the MemStoreFlusher, the memstore has to be replayed
+        services.abort("Failed flush of " + region + " while switching its WAL", e);
+        return;
+      } catch (IOException e) {
+        LOG.warn("Failed switching {} to its new WAL", region, e);
+        retry.add(encodedRegionName);
+      }
+    }
+    pending.addAll(retry);
+  }
+
+  public void stop() {
+    executor.shutdownNow();
+  }
+}
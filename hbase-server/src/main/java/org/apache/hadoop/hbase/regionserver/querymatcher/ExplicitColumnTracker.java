@@ -57,6 +57,7 @@ public class ExplicitColumnTracker implements ColumnTracker {
    * instance also tracks how many versions of the requested column have been returned.
    */
   private final ColumnCount[] columns;
+  private final NavigableSet<byte[]> qualifiers;
   private int index;
   private ColumnCount column;
   /**
@@ -77,6 +78,7 @@ public class ExplicitColumnTracker implements ColumnTracker {
     this.maxVersions = maxVersions;
     this.minVersions = minVersions;
     this.oldestStamp = oldestUnexpiredTS;
+    this.qualifiers = columns;
     this.columns = new ColumnCount[columns.size()];
     int i = 0;
     for (byte[] column : columns) {
@@ -85,6 +87,11 @@ public class ExplicitColumnTracker implements ColumnTracker {
     reset();
   }
 
+  /** Returns the columns specified by the user in the query */
+  public NavigableSet<byte[]> getColumns() {
+    return qualifiers;
+  }
+
   /**
    * Done when there are no more columns to match against.
    */
@@ -246,6 +246,16 @@ public abstract class ScanQueryMatcher implements ShipperListener {
   /** Returns whether there is an null column in the query */
   public abstract boolean hasNullColumnInQuery();
 
+  /**
+   * Returns the qualifiers the query asks for, or null if it asks for all of them. The store files
+   * may step over the puts of the other qualifiers, this matcher would only skip them.
+   */
+  public NavigableSet<byte[]> getColumnProjection() {
+    return columns instanceof ExplicitColumnTracker
+      ? ((ExplicitColumnTracker) columns).getColumns()
+      : null;
+  }
+
   /** Returns a cell represent the current row */
   public ExtendedCell currentRow() {
     return currentRow;
@@ -447,6 +447,16 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
 
   private long highestProcessedAppendTxidAtLastSync;
 
+  // if not null, we may hold a sync for a short while so the sync requests arriving in the meantime
+  // can share it, see AsyncFSWAL.ASYNC_WAL_GROUP_COMMIT_ENABLED.
+  protected GroupCommitWindow groupCommitWindow;
+
+  // the time when we started to hold the pending sync, or -1 if we are not holding it
+  private long syncHoldStartNs = -1L;
+
+  // the time when we should stop holding the pending sync
+  private long syncHoldDeadlineNs;
+
   private int waitOnShutdownInSeconds;
 
   private String waitOnShutdownInSecondsConfigKey;
@@ -1582,7 +1592,12 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
         break;
       }
     }
-    postSync(System.nanoTime() - startTimeNs, finishSync());
+    long nowNs = System.nanoTime();
+    int finished = finishSync();
+    postSync(nowNs - startTimeNs, finished);
+    if (groupCommitWindow != null) {
+      groupCommitWindow.syncCompleted(nowNs, nowNs - startTimeNs, finished);
+    }
     /**
      * This method is used to be compatible with the original logic of {@link FSHLog}.
      */
@@ -1619,6 +1634,11 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
   }
 
   private void sync(W writer) {
+    if (syncHoldStartNs >= 0) {
+      long waitNs = System.nanoTime() - syncHoldStartNs;
+      syncHoldStartNs = -1L;
+      postGroupCommitWait(waitNs);
+    }
     fileLengthAtLastSync = writer.getLength();
     long currentHighestProcessedAppendTxid = highestProcessedAppendTxid;
     boolean shouldUseHsync =
@@ -1857,8 +1877,11 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
             writer.getLength() > fileLengthAtLastSync && !syncFutures.isEmpty()
               && syncFutures.last().getTxid() > highestProcessedAppendTxidAtLastSync
           ) {
-            // no new data in the ringbuffer and we have at least one sync request
-            sync(writer);
+            // no new data in the ringbuffer and we have at least one sync request, issue a sync
+            // unless we want to wait a bit more for other sync requests to join it
+            if (!holdSync()) {
+              sync(writer);
+            }
           }
           return;
         } else {
@@ -1873,6 +1896,51 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
     consumeExecutor.execute(consumer);
   }
 
+  /**
+   * Decide whether to hold the pending sync for a bit longer, to let more sync requests join it. If
+   * so, the consumer will be scheduled again when the hold ends.
+   * @return {@code true} if we hold the sync, {@code false} if the sync should be issued now.
+   */
+  private boolean holdSync() {
+    if (groupCommitWindow == null) {
+      return false;
+    }
+    long nowNs = System.nanoTime();
+    if (syncHoldStartNs < 0) {
+      long windowNs = groupCommitWindow.getWindowNs();
+      if (windowNs <= 0) {
+        return false;
+      }
+      syncHoldStartNs = nowNs;
+      syncHoldDeadlineNs = nowNs + windowNs;
+    }
+    long remainingNs = syncHoldDeadlineNs - nowNs;
+    if (remainingNs <= 0) {
+      return false;
+    }
+    // if someone else has scheduled the consumer we will come back here soon, so just return
+    if (consumerScheduled.compareAndSet(false, true)) {
+      scheduleConsumer(remainingNs);
+    }
+    return true;
+  }
+
+  /**
+   * Run the consumer task after the given delay. Only called when {@link #groupCommitWindow} is
+   * set, the default implementation does not delay at all.
+   */
+  protected void scheduleConsumer(long delayNs) {
+    consumeExecutor.execute(consumer);
+  }
+
+  private void postGroupCommitWait(long timeInNanos) {
+    if (!listeners.isEmpty()) {
+      for (WALActionsListener listener : listeners) {
+        listener.postGroupCommitWait(timeInNanos);
+      }
+    }
+  }
+
   private boolean shouldScheduleConsumer() {
     int currentEpochAndState = epochAndState;
     if (writerBroken(currentEpochAndState) || waitingRoll(currentEpochAndState)) {
@@ -2085,6 +2153,7 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
     onWriterReplaced(nextWriter);
     this.fileLengthAtLastSync = nextWriter.getLength();
     this.highestProcessedAppendTxidAtLastSync = 0L;
+    this.syncHoldStartNs = -1L;
     consumeLock.lock();
     try {
       consumerScheduled.set(true);
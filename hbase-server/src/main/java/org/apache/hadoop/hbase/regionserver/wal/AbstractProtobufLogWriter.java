@@ -148,7 +148,8 @@ public abstract class AbstractProtobufLogWriter {
         }
         this.compressionContext =
           new CompressionContext(LRUDictionary.class, CommonFSUtils.isRecoveredEdits(path),
-            useTagCompression, useValueCompression, valueCompressionType);
+            useTagCompression, useValueCompression, valueCompressionType, conf,
+            useValueCompression ? CompressionContext.getValueCompressionDictionary(conf) : null);
       } catch (Exception e) {
         throw new IOException("Failed to initiate CompressionContext", e);
       }
@@ -179,6 +180,11 @@ public abstract class AbstractProtobufLogWriter {
       if (doValueCompress) {
         headerBuilder.setValueCompressionAlgorithm(
           CompressionContext.getValueCompressionAlgorithm(conf).ordinal());
+        String dictionary = compressionContext.getValueCompressionDictionary();
+        if (dictionary != null) {
+          headerBuilder.setValueCompressionDictionary(dictionary)
+            .setValueCompressionDictionaryId(compressionContext.getValueCompressionDictionaryId());
+        }
       }
       if (conf.getBoolean(HConstants.ENABLE_WAL_ENCRYPTION, false)) {
         length.set(writeMagicAndWALHeader(PB_WAL_MAGIC, buildSecureWALHeader(conf, headerBuilder)));
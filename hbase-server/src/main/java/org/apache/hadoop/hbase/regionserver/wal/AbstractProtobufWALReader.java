@@ -324,13 +324,25 @@ public abstract class AbstractProtobufWALReader
         path, CommonFSUtils.isRecoveredEdits(path), hasTagCompression, hasValueCompression,
         valueCompressionType);
     }
+    String valueCompressionDictionary =
+      header.hasValueCompressionDictionary() ? header.getValueCompressionDictionary() : null;
     try {
-      compressionCtx =
-        new CompressionContext(LRUDictionary.class, CommonFSUtils.isRecoveredEdits(path),
-          hasTagCompression, hasValueCompression, valueCompressionType);
+      compressionCtx = new CompressionContext(LRUDictionary.class,
+        CommonFSUtils.isRecoveredEdits(path), hasTagCompression, hasValueCompression,
+        valueCompressionType, conf, valueCompressionDictionary);
     } catch (Exception e) {
       throw new IOException("Failed to initialize CompressionContext", e);
     }
+    // make sure the dictionary has not been replaced since the WAL was written
+    if (
+      valueCompressionDictionary != null && compressionCtx.getValueCompressionDictionary() != null
+        && compressionCtx.getValueCompressionDictionaryId()
+            != header.getValueCompressionDictionaryId()
+    ) {
+      throw new IOException("Value compression dictionary " + valueCompressionDictionary
+        + " has id " + compressionCtx.getValueCompressionDictionaryId() + " but " + path
+        + " was written with dictionary id " + header.getValueCompressionDictionaryId());
+    }
   }
 
   private WALCellCodec getCodec(Configuration conf, String cellCodecClsName,
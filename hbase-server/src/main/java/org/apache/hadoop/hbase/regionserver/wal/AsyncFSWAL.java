@@ -22,6 +22,7 @@ import java.lang.reflect.Field;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -38,6 +39,7 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.hbase.thirdparty.io.netty.channel.Channel;
 import org.apache.hbase.thirdparty.io.netty.channel.EventLoopGroup;
+import org.apache.hbase.thirdparty.io.netty.util.concurrent.EventExecutor;
 import org.apache.hbase.thirdparty.io.netty.util.concurrent.SingleThreadEventExecutor;
 
 /**
@@ -110,6 +112,26 @@ public class AsyncFSWAL extends AbstractFSWAL<AsyncWriter> {
     "hbase.wal.async.wait.on.shutdown.seconds";
   public static final int DEFAULT_ASYNC_WAL_WAIT_ON_SHUTDOWN_IN_SECONDS = 5;
 
+  /**
+   * When enabled, if there is only a small amount of unsynced data, a sync request may be held for
+   * a short window so the sync requests arriving in the meantime are finished by the same sync. The
+   * window adapts to the recent sync latency and arrival rate of sync requests, and is 0 when the
+   * sync requests come in slower than the syncs complete, see {@link GroupCommitWindow}.
+   */
+  public static final String ASYNC_WAL_GROUP_COMMIT_ENABLED =
+    "hbase.wal.async.group.commit.enabled";
+  public static final boolean DEFAULT_ASYNC_WAL_GROUP_COMMIT_ENABLED = false;
+
+  /** The upper bound of the group commit window, in microseconds. */
+  public static final String ASYNC_WAL_GROUP_COMMIT_MAX_WINDOW_US =
+    "hbase.wal.async.group.commit.max.window.us";
+  public static final long DEFAULT_ASYNC_WAL_GROUP_COMMIT_MAX_WINDOW_US = 1000;
+
+  /** The upper bound of the group commit window, as a fraction of the recent sync latency. */
+  public static final String ASYNC_WAL_GROUP_COMMIT_LATENCY_RATIO =
+    "hbase.wal.async.group.commit.latency.ratio";
+  public static final float DEFAULT_ASYNC_WAL_GROUP_COMMIT_LATENCY_RATIO = 0.25f;
+
   private final EventLoopGroup eventLoopGroup;
 
   private final Class<? extends Channel> channelClass;
@@ -151,6 +173,25 @@ public class AsyncFSWAL extends AbstractFSWAL<AsyncWriter> {
 
     this.setWaitOnShutdownInSeconds(conf.getInt(ASYNC_WAL_WAIT_ON_SHUTDOWN_IN_SECONDS,
       DEFAULT_ASYNC_WAL_WAIT_ON_SHUTDOWN_IN_SECONDS), ASYNC_WAL_WAIT_ON_SHUTDOWN_IN_SECONDS);
+    if (conf.getBoolean(ASYNC_WAL_GROUP_COMMIT_ENABLED, DEFAULT_ASYNC_WAL_GROUP_COMMIT_ENABLED)) {
+      this.groupCommitWindow = new GroupCommitWindow(
+        TimeUnit.MICROSECONDS.toNanos(conf.getLong(ASYNC_WAL_GROUP_COMMIT_MAX_WINDOW_US,
+          DEFAULT_ASYNC_WAL_GROUP_COMMIT_MAX_WINDOW_US)),
+        conf.getFloat(ASYNC_WAL_GROUP_COMMIT_LATENCY_RATIO,
+          DEFAULT_ASYNC_WAL_GROUP_COMMIT_LATENCY_RATIO));
+    }
+  }
+
+  @Override
+  protected void scheduleConsumer(long delayNs) {
+    EventExecutor executor = consumeExecutor instanceof EventExecutor
+      ? (EventExecutor) consumeExecutor
+      : eventLoopGroup.next();
+    executor.schedule(() -> {
+      if (!consumeExecutor.isShutdown()) {
+        consumeExecutor.execute(consumer);
+      }
+    }, delayNs, TimeUnit.NANOSECONDS);
   }
 
   @Override
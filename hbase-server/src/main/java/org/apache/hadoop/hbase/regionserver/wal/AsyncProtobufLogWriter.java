@@ -47,10 +47,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.hbase.thirdparty.com.google.common.base.Throwables;
+import org.apache.hbase.thirdparty.com.google.protobuf.CodedOutputStream;
 import org.apache.hbase.thirdparty.io.netty.channel.Channel;
 import org.apache.hbase.thirdparty.io.netty.channel.EventLoopGroup;
 
 import org.apache.hadoop.hbase.shaded.protobuf.generated.WALProtos.WALHeader;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.WALProtos.WALKey;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.WALProtos.WALTrailer;
 
 /**
@@ -62,6 +64,8 @@ public class AsyncProtobufLogWriter extends AbstractProtobufLogWriter
 
   private static final Logger LOG = LoggerFactory.getLogger(AsyncProtobufLogWriter.class);
 
+  private static final int KEY_BUFFER_SIZE = 4096;
+
   private final EventLoopGroup eventLoopGroup;
 
   private final Class<? extends Channel> channelClass;
@@ -90,10 +94,7 @@ public class AsyncProtobufLogWriter extends AbstractProtobufLogWriter
 
     @Override
     public void write(ByteBuffer b, int off, int len) throws IOException {
-      ByteBuffer bb = b.duplicate();
-      bb.position(off);
-      bb.limit(off + len);
-      out.write(bb);
+      out.write(b, off, len);
     }
 
     @Override
@@ -113,6 +114,9 @@ public class AsyncProtobufLogWriter extends AbstractProtobufLogWriter
   }
 
   private OutputStream asyncOutputWrapper;
+  // Reused for serializing the WALKey of every entry, so that we do not allocate a new buffer for
+  // each append.
+  private CodedOutputStream keyOutput;
   private long waitTimeout;
 
   public AsyncProtobufLogWriter(EventLoopGroup eventLoopGroup,
@@ -133,8 +137,11 @@ public class AsyncProtobufLogWriter extends AbstractProtobufLogWriter
   public void append(Entry entry) {
     int buffered = output.buffered();
     try {
-      entry.getKey().getBuilder(compressor).setFollowingKvCount(entry.getEdit().size()).build()
-        .writeDelimitedTo(asyncOutputWrapper);
+      WALKey key =
+        entry.getKey().getBuilder(compressor).setFollowingKvCount(entry.getEdit().size()).build();
+      keyOutput.writeUInt32NoTag(key.getSerializedSize());
+      key.writeTo(keyOutput);
+      keyOutput.flush();
     } catch (IOException e) {
       throw new AssertionError("should not happen", e);
     }
@@ -185,6 +192,7 @@ public class AsyncProtobufLogWriter extends AbstractProtobufLogWriter
     this.output = AsyncFSOutputHelper.createOutput(fs, path, overwritable, false, replication,
       blockSize, eventLoopGroup, channelClass, monitor, noLocalWrite);
     this.asyncOutputWrapper = new OutputStreamWrapper(output);
+    this.keyOutput = CodedOutputStream.newInstance(asyncOutputWrapper, KEY_BUFFER_SIZE);
   }
 
   @Override
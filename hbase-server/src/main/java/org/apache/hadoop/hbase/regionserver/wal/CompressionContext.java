@@ -24,13 +24,17 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.EnumMap;
 import java.util.Map;
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseInterfaceAudience;
 import org.apache.hadoop.hbase.io.TagCompressionContext;
+import org.apache.hadoop.hbase.io.compress.CanReinit;
 import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.compress.DictionaryCache;
 import org.apache.hadoop.hbase.io.util.Dictionary;
 import org.apache.hadoop.io.compress.Compressor;
 import org.apache.hadoop.io.compress.Decompressor;
@@ -58,6 +62,23 @@ public class CompressionContext {
   public static final String WAL_VALUE_COMPRESSION_TYPE =
     "hbase.regionserver.wal.value.compression.type";
 
+  /**
+   * Location of a pre-trained dictionary for WAL value compression, either a Hadoop path or a
+   * {@link DictionaryCache#RESOURCE_SCHEME} path. Only supported with the ZSTD value compression
+   * type with the codec in hbase-compression-zstd, the Hadoop ZStandardCodec has no dictionary
+   * support. The location and id of the dictionary are recorded in the WAL header, so the readers
+   * load the same dictionary.
+   */
+  public static final String WAL_VALUE_COMPRESSION_DICTIONARY =
+    "hbase.regionserver.wal.value.compression.dictionary";
+
+  // The configuration key used by the ZSTD codec to load its dictionary, see ZstdCodec.
+  private static final String ZSTD_DICTIONARY_KEY = "hbase.io.compress.zstd.dictionary";
+
+  // The only ZSTD codec which reads ZSTD_DICTIONARY_KEY.
+  private static final String ZSTD_DICTIONARY_CODEC =
+    "org.apache.hadoop.hbase.io.compress.zstd.ZstdCodec";
+
   public enum DictionaryIndex {
     REGION,
     TABLE,
@@ -86,6 +107,29 @@ public class CompressionContext {
       this.algorithm = algorithm;
     }
 
+    /**
+     * @param dictionaryConf if not null, used to reinit the (de)compressors so they load the
+     *                       dictionary
+     */
+    ValueCompressor(Compression.Algorithm algorithm, Configuration dictionaryConf)
+      throws IOException {
+      this(algorithm);
+      if (dictionaryConf != null) {
+        // Take both sides now, a codec which cannot load the dictionary would otherwise silently
+        // write or expect values compressed without it.
+        compressor = algorithm.getCompressor();
+        decompressor = algorithm.getDecompressor();
+        if (!(compressor instanceof CanReinit) || !(decompressor instanceof CanReinit)) {
+          algorithm.returnCompressor(compressor);
+          algorithm.returnDecompressor(decompressor);
+          throw new IOException("Compressor " + compressor + " and decompressor " + decompressor
+            + " of " + algorithm + " must both support a dictionary");
+        }
+        compressor.reinit(dictionaryConf);
+        ((CanReinit) decompressor).reinit(dictionaryConf);
+      }
+    }
+
     public Compression.Algorithm getAlgorithm() {
       return algorithm;
     }
@@ -197,11 +241,28 @@ public class CompressionContext {
   // Context used for compressing tags
   TagCompressionContext tagCompressionContext = null;
   ValueCompressor valueCompressor = null;
+  // Location and id of the dictionary used for value compression, if any
+  private String valueCompressionDictionary;
+  private int valueCompressionDictionaryId;
 
   public CompressionContext(Class<? extends Dictionary> dictType, boolean recoveredEdits,
     boolean hasTagCompression, boolean hasValueCompression,
     Compression.Algorithm valueCompressionType) throws SecurityException, NoSuchMethodException,
     InstantiationException, IllegalAccessException, InvocationTargetException, IOException {
+    this(dictType, recoveredEdits, hasTagCompression, hasValueCompression, valueCompressionType,
+      null, null);
+  }
+
+  /**
+   * @param conf                       configuration used to load the value compression dictionary
+   * @param valueCompressionDictionary location of the value compression dictionary, or null if
+   *                                   values are compressed without a dictionary
+   */
+  public CompressionContext(Class<? extends Dictionary> dictType, boolean recoveredEdits,
+    boolean hasTagCompression, boolean hasValueCompression,
+    Compression.Algorithm valueCompressionType, Configuration conf,
+    String valueCompressionDictionary) throws SecurityException, NoSuchMethodException,
+    InstantiationException, IllegalAccessException, InvocationTargetException, IOException {
     Constructor<? extends Dictionary> dictConstructor = dictType.getConstructor();
     for (DictionaryIndex dictionaryIndex : DictionaryIndex.values()) {
       Dictionary newDictionary = dictConstructor.newInstance();
@@ -223,7 +284,25 @@ public class CompressionContext {
       tagCompressionContext = new TagCompressionContext(dictType, Short.MAX_VALUE);
     }
     if (hasValueCompression && valueCompressionType != null) {
-      valueCompressor = new ValueCompressor(valueCompressionType);
+      Configuration dictionaryConf = null;
+      if (valueCompressionDictionary != null) {
+        if (valueCompressionType != Compression.Algorithm.ZSTD) {
+          throw new IOException("Value compression dictionary " + valueCompressionDictionary
+            + " is not supported by compression type " + valueCompressionType);
+        }
+        String codec = valueCompressionType.getCodecClassName();
+        if (!ZSTD_DICTIONARY_CODEC.equals(codec)) {
+          throw new IOException("Value compression dictionary " + valueCompressionDictionary
+            + " needs " + Compression.ZSTD_CODEC_CLASS_KEY + " to be " + ZSTD_DICTIONARY_CODEC
+            + ", but it is " + codec);
+        }
+        this.valueCompressionDictionary = valueCompressionDictionary;
+        this.valueCompressionDictionaryId =
+          getZstdDictionaryId(DictionaryCache.getDictionary(conf, valueCompressionDictionary));
+        dictionaryConf = new Configuration(conf);
+        dictionaryConf.set(ZSTD_DICTIONARY_KEY, valueCompressionDictionary);
+      }
+      valueCompressor = new ValueCompressor(valueCompressionType, dictionaryConf);
     }
   }
 
@@ -249,6 +328,16 @@ public class CompressionContext {
     return valueCompressor;
   }
 
+  /** Returns the location of the value compression dictionary, or null if there is none. */
+  public String getValueCompressionDictionary() {
+    return valueCompressionDictionary;
+  }
+
+  /** Returns the id of the value compression dictionary, only valid if there is one. */
+  public int getValueCompressionDictionaryId() {
+    return valueCompressionDictionaryId;
+  }
+
   void clear() {
     for (Dictionary dictionary : dictionaries.values()) {
       dictionary.clear();
@@ -272,4 +361,26 @@ public class CompressionContext {
     return Compression.Algorithm.NONE;
   }
 
+  /**
+   * Returns the location of the dictionary configured for WAL value compression, or null if values
+   * should be compressed without a dictionary.
+   */
+  public static String getValueCompressionDictionary(Configuration conf) {
+    String dictionary = conf.get(WAL_VALUE_COMPRESSION_DICTIONARY);
+    return dictionary == null || dictionary.isEmpty() ? null : dictionary;
+  }
+
+  // ZStandard dictionaries begin with a 32-bit magic number, 0xEC30A437 in little-endian format,
+  // followed by a 32-bit identifier also in little-endian format.
+  static int getZstdDictionaryId(byte[] dictionary) throws IOException {
+    if (
+      dictionary == null || dictionary.length < 8 || dictionary[0] != (byte) 0x37
+        || dictionary[1] != (byte) 0xA4 || dictionary[2] != (byte) 0x30
+        || dictionary[3] != (byte) 0xEC
+    ) {
+      throw new IOException("Not a ZStandard dictionary");
+    }
+    return ByteBuffer.wrap(dictionary, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+  }
+
 }
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.wal;
+
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Computes how long the WAL consumer holds a sync request before issuing it, so the sync requests
+ * arriving in the meantime go out with the same sync. The window follows the recent sync latency
+ * and the recent interval between sync requests:
+ * <ul>
+ * <li>when less than one request arrives per sync round trip there is nothing to group and the
+ * window is 0;</li>
+ * <li>otherwise the window is long enough for about {@link #TARGET_BATCH_SIZE} more requests to
+ * arrive, but never longer than a fraction of the sync latency nor than the configured maximum.
+ * </li>
+ * </ul>
+ * Not thread safe, only used from the consumer of the WAL.
+ */
+@InterfaceAudience.Private
+class GroupCommitWindow {
+
+  /** The number of extra sync requests we try to gather in a window. */
+  static final int TARGET_BATCH_SIZE = 16;
+
+  /** Weight of the newest sample in the moving averages. */
+  private static final double ALPHA = 0.125;
+
+  private final long maxWindowNs;
+
+  private final double maxLatencyRatio;
+
+  private double syncLatencyNs = -1;
+
+  private double requestIntervalNs = -1;
+
+  private long lastSyncCompletedNs = -1;
+
+  GroupCommitWindow(long maxWindowNs, double maxLatencyRatio) {
+    this.maxWindowNs = maxWindowNs;
+    this.maxLatencyRatio = maxLatencyRatio;
+  }
+
+  private static double average(double average, double sample) {
+    return average < 0 ? sample : average + ALPHA * (sample - average);
+  }
+
+  /**
+   * Called when a sync finished.
+   * @param nowNs         the current {@link System#nanoTime()}
+   * @param latencyNs     how long the sync took
+   * @param finishedSyncs how many sync requests the sync finished
+   */
+  void syncCompleted(long nowNs, long latencyNs, int finishedSyncs) {
+    syncLatencyNs = average(syncLatencyNs, latencyNs);
+    if (lastSyncCompletedNs >= 0 && finishedSyncs > 0) {
+      requestIntervalNs =
+        average(requestIntervalNs, (double) (nowNs - lastSyncCompletedNs) / finishedSyncs);
+    }
+    lastSyncCompletedNs = nowNs;
+  }
+
+  /** Returns how long to hold the next sync, in nanoseconds. */
+  long getWindowNs() {
+    if (syncLatencyNs < 0 || requestIntervalNs < 0 || requestIntervalNs >= syncLatencyNs) {
+      return 0;
+    }
+    double window =
+      Math.min(TARGET_BATCH_SIZE * requestIntervalNs, maxLatencyRatio * syncLatencyNs);
+    return (long) Math.min(window, maxWindowNs);
+  }
+}
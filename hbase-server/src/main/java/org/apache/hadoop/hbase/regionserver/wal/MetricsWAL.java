@@ -49,6 +49,14 @@ public class MetricsWAL implements WALActionsListener {
   @Override
   public void postSync(final long timeInNanos, final int handlerSyncs) {
     source.incrementSyncTime(timeInNanos / 1000000L);
+    if (handlerSyncs > 0) {
+      source.incrementSyncBatchSize(handlerSyncs);
+    }
+  }
+
+  @Override
+  public void postGroupCommitWait(final long timeInNanos) {
+    source.incrementGroupCommitWaitTime(timeInNanos / 1000L);
   }
 
   @Override
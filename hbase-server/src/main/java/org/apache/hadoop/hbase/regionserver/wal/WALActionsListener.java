@@ -115,4 +115,12 @@ public interface WALActionsListener {
    */
   default void postSync(final long timeInNanos, final int handlerSyncs) {
   }
+
+  /**
+   * For notification when a held back sync is finally issued, see
+   * {@link AsyncFSWAL#ASYNC_WAL_GROUP_COMMIT_ENABLED}. Used by metrics system at least.
+   * @param timeInNanos How long the sync was held back in nanoseconds.
+   */
+  default void postGroupCommitWait(final long timeInNanos) {
+  }
 }
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.util;
+
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A Bloom filter chunk made of 64 byte blocks, each holding eight 64 bit lanes. A key hashes to a
+ * single block and sets one bit in each of its lanes, so adding or checking a key touches one cache
+ * line instead of {@link #getHashCount()} random ones, and the eight probes are independent of each
+ * other. The price is a slightly higher false positive rate for the same size, which
+ * {@link BloomFilterUtil#computeBlockedMaxKeys(long, double)} accounts for by putting fewer keys in
+ * a chunk.
+ * <p>
+ * The block of a key is its first hash modulo the number of blocks, so the chunk can be folded like
+ * a classic one for as long as the number of blocks stays even.
+ */
+@InterfaceAudience.Private
+public class BlockedBloomFilterChunk extends BloomFilterChunk {
+
+  /** Bytes in a block, the size of a cache line */
+  public static final int BLOCK_BYTES = 64;
+
+  /** Lanes in a block, one bit is set in each for every key */
+  public static final int NUM_LANES = BLOCK_BYTES / Bytes.SIZEOF_LONG;
+
+  // Odd multipliers turning the second hash of a key into one bit position per lane, as used by
+  // the split block Bloom filters of Parquet
+  private static final int[] SALTS = { 0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d, 0x705495c7,
+    0x2df1424b, 0x9efc4947, 0x5c6bfb31 };
+
+  public BlockedBloomFilterChunk(int hashType, BloomType bloomType) {
+    super(hashType, bloomType);
+    this.hashCount = NUM_LANES;
+  }
+
+  /**
+   * Creates a blocked Bloom filter chunk of the given size.
+   * @param byteSizeHint the desired number of bytes for the Bloom filter bit array. Will be rounded
+   *                     up to whole blocks.
+   * @param errorRate    target false positive rate of the Bloom filter
+   * @param hashType     Bloom filter hash function type
+   */
+  public static BlockedBloomFilterChunk createBySize(int byteSizeHint, double errorRate,
+    int hashType, BloomType bloomType) {
+    BlockedBloomFilterChunk bbf = new BlockedBloomFilterChunk(hashType, bloomType);
+    bbf.byteSize = BloomFilterUtil.computeFoldableByteSize(byteSizeHint * 8L,
+      Integer.numberOfTrailingZeros(BLOCK_BYTES));
+    bbf.maxKeys =
+      (int) BloomFilterUtil.computeBlockedMaxKeys(bbf.byteSize / BLOCK_BYTES, errorRate);
+    return bbf;
+  }
+
+  @Override
+  public BloomFilterChunk createAnother() {
+    BlockedBloomFilterChunk bbf = new BlockedBloomFilterChunk(hashType, this.bloomType);
+    bbf.byteSize = byteSize;
+    bbf.maxKeys = maxKeys;
+    return bbf;
+  }
+
+  @Override
+  public double actualErrorRate() {
+    return BloomFilterUtil.blockedErrorRate(keyCount, byteSize / BLOCK_BYTES);
+  }
+
+  @Override
+  protected void setHashLoc(int hash1, int hash2) {
+    int blockOffset = getBlockOffset(hash1, (int) (byteSize / BLOCK_BYTES));
+    for (int i = 0; i < NUM_LANES; i++) {
+      int laneOffset = blockOffset + i * Bytes.SIZEOF_LONG;
+      bloom.putLong(laneOffset, bloom.getLong(laneOffset) | getLaneBit(hash2, i));
+    }
+    ++this.keyCount;
+  }
+
+  @Override
+  public void compactBloom() {
+    // see if the actual size is exponentially smaller than expected.
+    if (this.keyCount > 0 && this.bloom.hasArray()) {
+      int pieces = 1;
+      int newByteSize = (int) this.byteSize;
+      int newMaxKeys = this.maxKeys;
+
+      // while exponentially smaller & folding keeps whole blocks
+      while (
+        (newByteSize / BLOCK_BYTES & 1) == 0 && newByteSize > BLOCK_BYTES
+          && newMaxKeys > (this.keyCount << 1)
+      ) {
+        pieces <<= 1;
+        newByteSize >>= 1;
+        newMaxKeys >>= 1;
+      }
+
+      // if we should fold these into pieces
+      if (pieces > 1) {
+        byte[] array = this.bloom.array();
+        int start = this.bloom.arrayOffset();
+        int end = start + newByteSize;
+        int off = end;
+        for (int p = 1; p < pieces; ++p) {
+          for (int pos = start; pos < end; ++pos) {
+            array[pos] |= array[off++];
+          }
+        }
+        // folding done, only use a subset of this array
+        this.bloom.rewind();
+        this.bloom.limit(newByteSize);
+        this.bloom = this.bloom.slice();
+        this.byteSize = newByteSize;
+        this.maxKeys = newMaxKeys;
+      }
+    }
+  }
+
+  /**
+   * Returns true if the key of the given hashes may be in the blocked Bloom filter held by the
+   * buffer, false if it is definitely not.
+   */
+  static boolean contains(int hash1, int hash2, ByteBuff bloomBuf, int bloomOffset, int bloomSize) {
+    int blockOffset = bloomOffset + getBlockOffset(hash1, bloomSize / BLOCK_BYTES);
+    // No early exit, the lanes are checked independently of each other.
+    long missing = 0;
+    for (int i = 0; i < NUM_LANES; i++) {
+      missing |= ~bloomBuf.getLong(blockOffset + i * Bytes.SIZEOF_LONG) & getLaneBit(hash2, i);
+    }
+    return missing == 0;
+  }
+
+  private static int getBlockOffset(int hash1, int numBlocks) {
+    return Integer.remainderUnsigned(hash1, numBlocks) * BLOCK_BYTES;
+  }
+
+  private static long getLaneBit(int hash2, int lane) {
+    // the top six bits of the product
+    return 1L << ((hash2 * SALTS[lane]) >>> 26);
+  }
+}
@@ -154,8 +154,7 @@ public class BloomFilterChunk implements BloomFilterBase {
     }
   }
 
-  // Used only by tests
-  void add(byte[] buf, int offset, int len) {
+  public void add(byte[] buf, int offset, int len) {
     /*
      * For faster hashing, use combinatorial generation
      * http://www.eecs.harvard.edu/~kirsch/pubs/bbbf/esa06.pdf
@@ -186,7 +185,7 @@ public class BloomFilterChunk implements BloomFilterBase {
     setHashLoc(hash1, hash2);
   }
 
-  private void setHashLoc(int hash1, int hash2) {
+  protected void setHashLoc(int hash1, int hash2) {
     for (int i = 0; i < this.hashCount; i++) {
       long hashLoc = Math.abs((hash1 + i * hash2) % (this.byteSize * 8));
       set(hashLoc);
@@ -96,6 +96,9 @@ public final class BloomFilterFactory {
       case CompoundBloomFilterBase.VERSION:
         return new CompoundBloomFilter(meta, reader, metrics);
 
+      case CompoundBloomFilterBase.BLOCKED_VERSION:
+        return new CompoundBloomFilter(meta, reader, metrics, true);
+
       default:
         throw new IllegalArgumentException("Bad bloom filter format version " + version);
     }
@@ -118,6 +118,51 @@ public final class BloomFilterUtil {
       .exp(Math.log(1 - Math.exp(-functionCount * maxKeys * 1.0 / bitSize)) * functionCount);
   }
 
+  /**
+   * Computes the error rate of a {@link BlockedBloomFilterChunk} holding the given number of keys.
+   * The keys per block follow a Poisson distribution, and a block holding j keys gives a false
+   * positive when the eight bits probed, one per lane, are all set.
+   * @return the expected error rate
+   */
+  public static double blockedErrorRate(long keys, long numBlocks) {
+    if (keys <= 0) {
+      return 0;
+    }
+    double keysPerBlock = (double) keys / numBlocks;
+    double laneBits = Long.SIZE;
+    // P(j keys in the block), starting with j = 0
+    double probability = Math.exp(-keysPerBlock);
+    double errorRate = 0;
+    double cumulative = probability;
+    long maxJ = (long) (keysPerBlock + 20 * Math.sqrt(keysPerBlock) + 20);
+    for (long j = 1; j <= maxJ; j++) {
+      probability *= keysPerBlock / j;
+      cumulative += probability;
+      errorRate += probability
+        * Math.pow(1 - Math.pow(1 - 1 / laneBits, j), BlockedBloomFilterChunk.NUM_LANES);
+    }
+    // whatever is left of the distribution can only make it worse
+    return errorRate + Math.max(0, 1 - cumulative);
+  }
+
+  /**
+   * The maximum number of keys a {@link BlockedBloomFilterChunk} of the given number of blocks can
+   * hold while keeping the given error rate.
+   */
+  public static long computeBlockedMaxKeys(long numBlocks, double errorRate) {
+    long low = 0;
+    long high = numBlocks * BlockedBloomFilterChunk.BLOCK_BYTES * 8;
+    while (low < high) {
+      long mid = (low + high + 1) >>> 1;
+      if (blockedErrorRate(mid, numBlocks) <= errorRate) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
   /**
    * Increases the given byte size of a Bloom filter until it can be folded by the given factor.
    * @return Foldable byte size
@@ -156,6 +201,9 @@ public final class BloomFilterUtil {
    */
   public static BloomFilterChunk createBySize(int byteSizeHint, double errorRate, int hashType,
     int foldFactor, BloomType bloomType) {
+    if (bloomType == BloomType.ROW_BLOCKED) {
+      return BlockedBloomFilterChunk.createBySize(byteSizeHint, errorRate, hashType, bloomType);
+    }
     BloomFilterChunk bbf = new BloomFilterChunk(hashType, bloomType);
 
     bbf.byteSize = computeFoldableByteSize(byteSizeHint * 8L, foldFactor);
@@ -212,6 +260,38 @@ public final class BloomFilterUtil {
     return contains(bloomBuf, bloomOffset, bloomSize, hash, hashCount, hashKey);
   }
 
+  /**
+   * Checks a key in a Bloom filter made of {@link BlockedBloomFilterChunk} blocks.
+   */
+  public static boolean containsBlocked(byte[] buf, int offset, int length, ByteBuff bloomBuf,
+    int bloomOffset, int bloomSize, Hash hash) {
+    return containsBlocked(bloomBuf, bloomOffset, bloomSize, hash,
+      new ByteArrayHashKey(buf, offset, length));
+  }
+
+  /**
+   * Checks the row of a cell in a Bloom filter made of {@link BlockedBloomFilterChunk} blocks.
+   */
+  public static boolean containsBlocked(Cell cell, ByteBuff bloomBuf, int bloomOffset,
+    int bloomSize, Hash hash) {
+    return containsBlocked(bloomBuf, bloomOffset, bloomSize, hash, new RowBloomHashKey(cell));
+  }
+
+  private static <T> boolean containsBlocked(ByteBuff bloomBuf, int bloomOffset, int bloomSize,
+    Hash hash, HashKey<T> hashKey) {
+    int hash1;
+    int hash2;
+    if (randomGeneratorForTest == null) {
+      hash1 = hash.hash(hashKey, 0);
+      hash2 = hash.hash(hashKey, hash1);
+    } else {
+      // Test mode with "fake look-ups" to estimate "ideal false positive rate"
+      hash1 = randomGeneratorForTest.nextInt();
+      hash2 = randomGeneratorForTest.nextInt();
+    }
+    return BlockedBloomFilterChunk.contains(hash1, hash2, bloomBuf, bloomOffset, bloomSize);
+  }
+
   /**
    * Check if bit at specified index is 1.
    * @param pos index of bit
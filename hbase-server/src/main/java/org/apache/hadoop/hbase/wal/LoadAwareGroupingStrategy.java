@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.wal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.regionserver.wal.WALActionsListener;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.wal.RegionGroupingProvider.RegionGroupingStrategy;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A WAL grouping strategy that places regions by write load. It listens to the appends of the WALs
+ * of its provider, like {@link org.apache.hadoop.hbase.regionserver.wal.MetricsWAL} does, and keeps
+ * a decaying append rate per region. Every WAL roll recomputes the placement: the hottest regions
+ * get a WAL group of their own, at most "hbase.wal.regiongrouping.loadaware.numhotgroups" of them,
+ * and the other regions are spread over "hbase.wal.regiongrouping.numgroups" shared groups by their
+ * append rate. A region keeps its shared group until the groups are unbalanced, so that a placement
+ * only moves the regions it has to.
+ * <p>
+ * The regions whose group changed are handed to the {@link PlacementListener}, the region server
+ * moves them to the WAL of their new group, see
+ * {@link org.apache.hadoop.hbase.regionserver.WALGroupSwitcher}. A region which is not moved, for
+ * example because nobody listens, only picks its new group up when it is opened again on this
+ * server.
+ */
+@InterfaceAudience.Private
+public class LoadAwareGroupingStrategy implements RegionGroupingStrategy, WALActionsListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LoadAwareGroupingStrategy.class);
+
+  static final String NUM_HOT_GROUPS = "hbase.wal.regiongrouping.loadaware.numhotgroups";
+  static final int DEFAULT_NUM_HOT_GROUPS = 2;
+
+  /**
+   * A region is hot when its append rate is at least this fraction of the average rate of a shared
+   * group.
+   */
+  static final String HOT_REGION_RATIO = "hbase.wal.regiongrouping.loadaware.hot.ratio";
+  static final float DEFAULT_HOT_REGION_RATIO = 1.0f;
+
+  /** Regions appending less than this many bytes per second are never hot. */
+  static final String HOT_REGION_MIN_RATE = "hbase.wal.regiongrouping.loadaware.hot.min.rate";
+  static final long DEFAULT_HOT_REGION_MIN_RATE = 1024 * 1024;
+
+  /** Weight of the last roll period in the decaying append rates. */
+  private static final double RATE_DECAY = 0.5;
+
+  /**
+   * Regions are moved between shared groups only while the most loaded group is above this factor
+   * of the average load, as every move flushes the region.
+   */
+  private static final double SHARED_GROUP_IMBALANCE = 1.2;
+
+  /**
+   * Told about the regions whose WAL group changed after a placement.
+   */
+  public interface PlacementListener {
+
+    /**
+     * Called from the WAL roll, must not block.
+     * @param encodedRegionNames the regions which are not on the WAL group of their placement
+     */
+    void regionsMoved(List<String> encodedRegionNames);
+  }
+
+  private String[] groupNames;
+  private String[] hotGroupNames;
+  private float hotRatio;
+  private long hotMinRate;
+  private volatile PlacementListener placementListener;
+
+  /**
+   * Bytes appended per region since the last placement. Keyed by the encoded region name array of
+   * the WAL keys, which is the same array for all the appends of an open region, so the append path
+   * neither copies nor hashes the name.
+   */
+  private final ConcurrentHashMap<byte[], LongAdder> appendedBytes = new ConcurrentHashMap<>();
+
+  // Guarded by this.
+  private final Map<String, Double> regionRates = new HashMap<>();
+  private Map<String, String> placement = new HashMap<>();
+  private double[] groupLoads;
+  private int[] groupSizes;
+  private String[] hotGroupRegions;
+  private long lastPlacementTime;
+
+  @Override
+  public void init(Configuration config, String providerId) {
+    int numGroups = config.getInt(BoundedGroupingStrategy.NUM_REGION_GROUPS,
+      BoundedGroupingStrategy.DEFAULT_NUM_REGION_GROUPS);
+    int numHotGroups = config.getInt(NUM_HOT_GROUPS, DEFAULT_NUM_HOT_GROUPS);
+    groupNames = new String[numGroups];
+    for (int i = 0; i < numGroups; i++) {
+      groupNames[i] = providerId + GROUP_NAME_DELIMITER + "regiongroup-" + i;
+    }
+    hotGroupNames = new String[numHotGroups];
+    for (int i = 0; i < numHotGroups; i++) {
+      hotGroupNames[i] = providerId + GROUP_NAME_DELIMITER + "hotgroup-" + i;
+    }
+    hotRatio = config.getFloat(HOT_REGION_RATIO, DEFAULT_HOT_REGION_RATIO);
+    hotMinRate = config.getLong(HOT_REGION_MIN_RATE, DEFAULT_HOT_REGION_MIN_RATE);
+    synchronized (this) {
+      groupLoads = new double[numGroups];
+      groupSizes = new int[numGroups];
+      hotGroupRegions = new String[numHotGroups];
+      lastPlacementTime = EnvironmentEdgeManager.currentTime();
+    }
+  }
+
+  public void setPlacementListener(PlacementListener placementListener) {
+    this.placementListener = placementListener;
+  }
+
+  @Override
+  public synchronized String group(byte[] identifier, byte[] namespace) {
+    String region = Bytes.toString(identifier);
+    String group = placement.get(region);
+    if (group == null) {
+      // A region we have no load for, place it on the least loaded shared group.
+      int index = leastLoadedGroup(groupLoads, groupSizes);
+      groupSizes[index]++;
+      group = groupNames[index];
+      placement.put(region, group);
+    }
+    return group;
+  }
+
+  @Override
+  public void postAppend(long entryLen, long elapsedTimeMillis, WALKey logKey, WALEdit logEdit) {
+    byte[] region = logKey.getEncodedRegionName();
+    LongAdder bytes = appendedBytes.get(region);
+    if (bytes == null) {
+      bytes = appendedBytes.computeIfAbsent(region, k -> new LongAdder());
+    }
+    bytes.add(entryLen);
+  }
+
+  @Override
+  public void postLogRoll(Path oldPath, Path newPath) {
+    // oldPath is null when the WAL is created, there is nothing to measure yet.
+    if (oldPath != null && newPath != oldPath) {
+      List<String> moved = updatePlacement();
+      PlacementListener listener = placementListener;
+      if (listener != null && !moved.isEmpty()) {
+        listener.regionsMoved(moved);
+      }
+    }
+  }
+
+  /**
+   * Folds the appends since the last call into the region rates and recomputes the placement of all
+   * the regions we know of.
+   * @return the regions placed on another group than before
+   */
+  synchronized List<String> updatePlacement() {
+    long now = EnvironmentEdgeManager.currentTime();
+    double seconds = Math.max(now - lastPlacementTime, 1) / 1000.0;
+    lastPlacementTime = now;
+
+    Map<String, Long> appended = new HashMap<>();
+    appendedBytes.entrySet().removeIf(e -> {
+      long bytes = e.getValue().sumThenReset();
+      if (bytes == 0) {
+        // Closed or idle region, or a stale name array.
+        return true;
+      }
+      appended.merge(Bytes.toString(e.getKey()), bytes, Long::sum);
+      return false;
+    });
+    for (Map.Entry<String, Double> e : regionRates.entrySet()) {
+      Long bytes = appended.remove(e.getKey());
+      e.setValue(
+        RATE_DECAY * (bytes == null ? 0 : bytes) / seconds + (1 - RATE_DECAY) * e.getValue());
+    }
+    for (Map.Entry<String, Long> e : appended.entrySet()) {
+      regionRates.put(e.getKey(), e.getValue() / seconds);
+    }
+    regionRates.values().removeIf(rate -> rate < 1);
+
+    List<Map.Entry<String, Double>> byRate = new ArrayList<>(regionRates.entrySet());
+    byRate.sort(Map.Entry.<String, Double> comparingByValue().reversed());
+    double totalRate = 0;
+    for (Map.Entry<String, Double> e : byRate) {
+      totalRate += e.getValue();
+    }
+
+    Map<String, String> newPlacement = new HashMap<>();
+    // Hot regions keep the dedicated group they already have, so it is not handed to another
+    // region while they are still open on it.
+    String[] newHotGroupRegions = new String[hotGroupNames.length];
+    List<String> hotRegions = new ArrayList<>();
+    for (Map.Entry<String, Double> e : byRate) {
+      double averageGroupRate = totalRate / groupNames.length;
+      if (
+        hotRegions.size() == hotGroupNames.length || e.getValue() < hotMinRate
+          || e.getValue() < hotRatio * averageGroupRate
+      ) {
+        break;
+      }
+      hotRegions.add(e.getKey());
+      totalRate -= e.getValue();
+    }
+    for (int i = 0; i < hotGroupRegions.length; i++) {
+      if (hotGroupRegions[i] != null && hotRegions.remove(hotGroupRegions[i])) {
+        newHotGroupRegions[i] = hotGroupRegions[i];
+        newPlacement.put(hotGroupRegions[i], hotGroupNames[i]);
+      }
+    }
+    for (String region : hotRegions) {
+      for (int i = 0; i < newHotGroupRegions.length; i++) {
+        if (newHotGroupRegions[i] == null) {
+          newHotGroupRegions[i] = region;
+          newPlacement.put(region, hotGroupNames[i]);
+          break;
+        }
+      }
+    }
+
+    // The other regions stay on their shared group, the new ones go hottest first to the least
+    // loaded group.
+    double[] newGroupLoads = new double[groupNames.length];
+    int[] newGroupSizes = new int[groupNames.length];
+    List<List<Map.Entry<String, Double>>> groupRegions = new ArrayList<>(groupNames.length);
+    Map<String, Integer> groupIndexes = new HashMap<>();
+    for (int i = 0; i < groupNames.length; i++) {
+      groupRegions.add(new ArrayList<>());
+      groupIndexes.put(groupNames[i], i);
+    }
+    List<Map.Entry<String, Double>> unplaced = new ArrayList<>();
+    for (Map.Entry<String, Double> e : byRate) {
+      if (!newPlacement.containsKey(e.getKey())) {
+        Integer index = groupIndexes.get(placement.get(e.getKey()));
+        if (index != null) {
+          newGroupLoads[index] += e.getValue();
+          newGroupSizes[index]++;
+          groupRegions.get(index).add(e);
+        } else {
+          unplaced.add(e);
+        }
+      }
+    }
+    for (Map.Entry<String, Double> e : unplaced) {
+      int index = leastLoadedGroup(newGroupLoads, newGroupSizes);
+      newGroupLoads[index] += e.getValue();
+      newGroupSizes[index]++;
+      groupRegions.get(index).add(e);
+    }
+    // Then move the hottest region of the most loaded group which narrows the gap to the least
+    // loaded one, until the groups are balanced enough.
+    double averageLoad = totalRate / groupNames.length;
+    for (int moves = 0; moves < byRate.size(); moves++) {
+      int most = 0;
+      for (int i = 1; i < newGroupLoads.length; i++) {
+        if (newGroupLoads[i] > newGroupLoads[most]) {
+          most = i;
+        }
+      }
+      int least = leastLoadedGroup(newGroupLoads, newGroupSizes);
+      if (newGroupLoads[most] <= SHARED_GROUP_IMBALANCE * averageLoad) {
+        break;
+      }
+      double gap = newGroupLoads[most] - newGroupLoads[least];
+      Map.Entry<String, Double> move = null;
+      for (Map.Entry<String, Double> e : groupRegions.get(most)) {
+        if (e.getValue() < gap && (move == null || e.getValue() > move.getValue())) {
+          move = e;
+        }
+      }
+      if (move == null) {
+        break;
+      }
+      groupRegions.get(most).remove(move);
+      groupRegions.get(least).add(move);
+      newGroupLoads[most] -= move.getValue();
+      newGroupSizes[most]--;
+      newGroupLoads[least] += move.getValue();
+      newGroupSizes[least]++;
+    }
+    for (int i = 0; i < groupNames.length; i++) {
+      for (Map.Entry<String, Double> e : groupRegions.get(i)) {
+        newPlacement.put(e.getKey(), groupNames[i]);
+      }
+    }
+
+    List<String> moved = new ArrayList<>();
+    for (Map.Entry<String, String> e : newPlacement.entrySet()) {
+      if (!e.getValue().equals(placement.get(e.getKey()))) {
+        moved.add(e.getKey());
+      }
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Placed {} regions with writes on the WAL groups, hot regions {}, group loads {}",
+        byRate.size(), Arrays.toString(newHotGroupRegions), Arrays.toString(newGroupLoads));
+    }
+    hotGroupRegions = newHotGroupRegions;
+    placement = newPlacement;
+    groupLoads = newGroupLoads;
+    groupSizes = newGroupSizes;
+    return moved;
+  }
+
+  private static int leastLoadedGroup(double[] loads, int[] sizes) {
+    int index = 0;
+    for (int i = 1; i < loads.length; i++) {
+      if (loads[i] < loads[index] || (loads[i] == loads[index] && sizes[i] < sizes[index])) {
+        index = i;
+      }
+    }
+    return index;
+  }
+}
@@ -31,6 +31,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.client.RegionInfo;
 import org.apache.hadoop.hbase.regionserver.wal.MetricsWAL;
+import org.apache.hadoop.hbase.regionserver.wal.WALActionsListener;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.KeyLocker;
 import org.apache.yetus.audience.InterfaceAudience;
@@ -47,6 +48,8 @@ import org.slf4j.LoggerFactory;
  * "bounded".</li>
  * <li><em>identity</em> : each region belongs to its own group.</li>
  * <li><em>bounded</em> : bounded number of groups and region evenly assigned to each group.</li>
+ * <li><em>loadaware</em> : bounded number of groups, regions placed by their write load and the
+ * hottest regions given a group of their own.</li>
  * </ul>
  * Optionally, a FQCN to a custom implementation may be given.
  */
@@ -75,7 +78,8 @@ public class RegionGroupingProvider extends AbstractWALProvider {
     defaultStrategy(BoundedGroupingStrategy.class),
     identity(IdentityGroupingStrategy.class),
     bounded(BoundedGroupingStrategy.class),
-    namespace(NamespaceGroupingStrategy.class);
+    namespace(NamespaceGroupingStrategy.class),
+    loadaware(LoadAwareGroupingStrategy.class);
 
     final Class<? extends RegionGroupingStrategy> clazz;
 
@@ -160,11 +164,19 @@ public class RegionGroupingProvider extends AbstractWALProvider {
     }
   }
 
+  public RegionGroupingStrategy getRegionGroupingStrategy() {
+    return strategy;
+  }
+
   private WALProvider createProvider(String group) throws IOException {
     WALProvider provider = WALFactory.createProvider(providerClass);
     provider.init(factory, conf,
       META_WAL_PROVIDER_ID.equals(providerId) ? META_WAL_PROVIDER_ID : group, this.abortable);
     provider.addWALActionsListener(new MetricsWAL());
+    if (strategy instanceof WALActionsListener) {
+      // Strategies placing regions by what is written to the WALs, like loadaware.
+      provider.addWALActionsListener((WALActionsListener) strategy);
+    }
     return provider;
   }
 
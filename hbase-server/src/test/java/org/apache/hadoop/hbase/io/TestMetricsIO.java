@@ -52,10 +52,13 @@ public class TestMetricsIO {
     metrics.updateFsWriteTime(500);
     metrics.updateFsWriteTime(600);
 
+    metrics.updateChecksumTime(10);
+
     HELPER.assertCounter("fsChecksumFailureCount", 40, metrics.getMetricsSource());
 
     HELPER.assertCounter("fsReadTime_numOps", 2, metrics.getMetricsSource());
     HELPER.assertCounter("fsPReadTime_numOps", 1, metrics.getMetricsSource());
     HELPER.assertCounter("fsWriteTime_numOps", 3, metrics.getMetricsSource());
+    HELPER.assertCounter("fsChecksumTime_numOps", 1, metrics.getMetricsSource());
   }
 }
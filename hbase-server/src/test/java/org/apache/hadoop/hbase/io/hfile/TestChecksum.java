@@ -29,6 +29,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.util.Random;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
@@ -46,6 +47,7 @@ import org.apache.hadoop.hbase.nio.MultiByteBuff;
 import org.apache.hadoop.hbase.nio.SingleByteBuff;
 import org.apache.hadoop.hbase.testclassification.IOTests;
 import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ChecksumType;
 import org.junit.Before;
 import org.junit.ClassRule;
@@ -171,6 +173,52 @@ public class TestChecksum {
     }
   }
 
+  /**
+   * Checks the JDK checksums agree with hadoop's {@link org.apache.hadoop.util.DataChecksum} on
+   * single and multi buffers, including chunks spanning several buffers.
+   */
+  @Test
+  public void testJdkChecksum() throws IOException {
+    int sizeWithHeader = HConstants.HFILEBLOCK_HEADER_SIZE + 10000;
+    for (ChecksumType ckt : new ChecksumType[] { ChecksumType.CRC32, ChecksumType.CRC32C }) {
+      for (int bytesPerChecksum : BYTES_PER_CHECKSUM) {
+        byte[] block =
+          new byte[sizeWithHeader + (int) ChecksumUtil.numBytes(sizeWithHeader, bytesPerChecksum)];
+        new Random(bytesPerChecksum).nextBytes(block);
+        block[HFileBlock.Header.CHECKSUM_TYPE_INDEX] = ckt.getCode();
+        Bytes.putInt(block, HFileBlock.Header.BYTES_PER_CHECKSUM_INDEX, bytesPerChecksum);
+        Bytes.putInt(block, HFileBlock.Header.ON_DISK_DATA_SIZE_WITH_HEADER_INDEX, sizeWithHeader);
+        ChecksumUtil.generateChecksums(block, 0, sizeWithHeader, block, sizeWithHeader, ckt,
+          bytesPerChecksum);
+        for (boolean corrupt : new boolean[] { false, true }) {
+          if (corrupt) {
+            block[sizeWithHeader - 1]++;
+          }
+          ByteBuffer direct = ByteBuffer.allocateDirect(block.length);
+          direct.put(block).rewind();
+          // Pieces of a size unrelated to bytesPerChecksum
+          int pieceSize = 3001;
+          ByteBuffer[] pieces = new ByteBuffer[(block.length + pieceSize - 1) / pieceSize];
+          for (int i = 0; i < pieces.length; i++) {
+            pieces[i] = ByteBuffer
+              .wrap(block, i * pieceSize, Math.min(pieceSize, block.length - i * pieceSize))
+              .slice();
+          }
+          for (ByteBuff buf : new ByteBuff[] { new SingleByteBuff(ByteBuffer.wrap(block)),
+            new SingleByteBuff(direct), new MultiByteBuff(pieces) }) {
+            String msg = ckt + ", bytesPerChecksum=" + bytesPerChecksum + ", "
+              + buf.getClass().getSimpleName() + ", corrupt=" + corrupt;
+            assertEquals(msg, !corrupt, ChecksumUtil.validateChecksum(buf, "test", 0,
+              HConstants.HFILEBLOCK_HEADER_SIZE, false));
+            assertEquals(msg, !corrupt, ChecksumUtil.validateChecksum(buf, "test", 0,
+              HConstants.HFILEBLOCK_HEADER_SIZE, true));
+            assertEquals(0, buf.position());
+          }
+        }
+      }
+    }
+  }
+
   /**
    * HFileBlock buffer does not include checksum because it is discarded after verifying upon
    * reading from disk. We artificially add a checksum onto the buffer for use in testing that
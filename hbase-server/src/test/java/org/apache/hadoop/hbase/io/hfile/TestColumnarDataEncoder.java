@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparatorImpl;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the {@link DataBlockEncoding#COLUMNAR} encoding on wide rows against
+ * {@link DataBlockEncoding#NONE}.
+ */
+@Category({ IOTests.class, MediumTests.class })
+public class TestColumnarDataEncoder {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestColumnarDataEncoder.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+
+  private static final int NUM_ROWS = 200;
+  private static final int NUM_COLUMNS = 50;
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+
+  private Configuration conf;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws IOException {
+    conf = TEST_UTIL.getConfiguration();
+    fs = FileSystem.get(conf);
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row-%05d", i));
+  }
+
+  private static byte[] qualifier(int j) {
+    return Bytes.toBytes(String.format("metric-%03d", j));
+  }
+
+  private static KeyValue keyValue(int i, int j) {
+    return new KeyValue(row(i), FAMILY, qualifier(j), 1L, Bytes.toBytes(i * NUM_COLUMNS + j));
+  }
+
+  @Test
+  public void testScanAndSeek() throws IOException {
+    HFile.Reader none = writeAndOpen(DataBlockEncoding.NONE);
+    HFile.Reader columnar = writeAndOpen(DataBlockEncoding.COLUMNAR);
+    try {
+      assertEquals(DataBlockEncoding.COLUMNAR, columnar.getDataBlockEncoding());
+      // Rows and columns are stored once per block instead of once per cell.
+      assertTrue(columnar.getTrailer().getTotalUncompressedBytes()
+          < none.getTrailer().getTotalUncompressedBytes());
+      assertEquals(none.getFirstKey().get(), columnar.getFirstKey().get());
+
+      HFileScanner expected = none.getScanner(conf, false, false);
+      HFileScanner actual = columnar.getScanner(conf, false, false);
+      assertTrue(expected.seekTo());
+      assertTrue(actual.seekTo());
+      int count = 0;
+      boolean more;
+      do {
+        assertTrue(PrivateCellUtil.equals(expected.getCell(), actual.getCell()));
+        assertEquals(expected.getValue(), actual.getValue());
+        count++;
+        more = expected.next();
+        assertEquals(more, actual.next());
+      } while (more);
+      assertEquals(NUM_ROWS * NUM_COLUMNS, count);
+
+      // A projection of a few columns reseeks from column to column without reading the others.
+      HFileScanner scanner = columnar.getScanner(conf, false, false);
+      assertTrue(scanner.seekTo());
+      for (int i = 0; i < NUM_ROWS; i++) {
+        for (int j = 7; j < NUM_COLUMNS; j += 20) {
+          KeyValue kv = keyValue(i, j);
+          assertEquals(0, scanner.reseekTo(kv));
+          ExtendedCell cell = scanner.getCell();
+          assertTrue(PrivateCellUtil.equals(kv, cell));
+          assertEquals(i * NUM_COLUMNS + j,
+            Bytes.toInt(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength()));
+        }
+      }
+
+      // Seeking before the first cell of a row lands on the last cell of the previous row.
+      for (int i = 1; i < NUM_ROWS; i++) {
+        assertTrue(scanner.seekBefore(keyValue(i, 0)));
+        assertTrue(PrivateCellUtil.equals(keyValue(i - 1, NUM_COLUMNS - 1), scanner.getCell()));
+      }
+      assertFalse(scanner.seekBefore(keyValue(0, 0)));
+    } finally {
+      none.close();
+      columnar.close();
+    }
+  }
+
+  @Test
+  public void testColumnProjection() throws IOException {
+    HFile.Reader columnar = writeAndOpen(DataBlockEncoding.COLUMNAR, true);
+    try {
+      NavigableSet<byte[]> qualifiers = new TreeSet<>(Bytes.BYTES_COMPARATOR);
+      qualifiers.add(qualifier(7));
+      qualifiers.add(qualifier(27));
+      HFileScanner scanner = columnar.getScanner(conf, false, false);
+      scanner.setColumnProjection(qualifiers);
+      // Delete markers are never stepped over, they may hide a projected column. The first cell of
+      // each block is where the block is loaded, projected or not.
+      List<ExtendedCell> expected = new ArrayList<>();
+      for (int i = 0; i < NUM_ROWS; i++) {
+        for (int j = 0; j < NUM_COLUMNS; j++) {
+          if (i % 10 == 0 && j % 10 == 0) {
+            expected.add(deleteColumn(i, j));
+          }
+          if (j == 7 || j == 27) {
+            expected.add(keyValue(i, j));
+          }
+        }
+      }
+      List<ExtendedCell> actual = new ArrayList<>();
+      int blockFirstCells = 0;
+      assertTrue(scanner.seekTo());
+      do {
+        ExtendedCell cell = scanner.getCell();
+        if (
+          cell.getType() == Cell.Type.Put && !qualifiers.contains(CellUtil.cloneQualifier(cell))
+        ) {
+          blockFirstCells++;
+        } else {
+          actual.add(cell);
+        }
+      } while (scanner.next());
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertTrue(PrivateCellUtil.equals(expected.get(i), actual.get(i)));
+        assertEquals(0, Bytes.compareTo(CellUtil.cloneValue(expected.get(i)),
+          CellUtil.cloneValue(actual.get(i))));
+      }
+      assertTrue(blockFirstCells <= columnar.getTrailer().getDataIndexCount());
+
+      // Seeks still land on the cells of the other columns.
+      assertEquals(0, scanner.seekTo(keyValue(101, 8)));
+      assertTrue(PrivateCellUtil.equals(keyValue(101, 8), scanner.getCell()));
+      assertTrue(scanner.next());
+      assertTrue(PrivateCellUtil.equals(keyValue(101, 27), scanner.getCell()));
+
+      // Without a projection every cell is returned again.
+      scanner.setColumnProjection(null);
+      assertTrue(scanner.next());
+      assertTrue(PrivateCellUtil.equals(keyValue(101, 28), scanner.getCell()));
+    } finally {
+      columnar.close();
+    }
+  }
+
+  private static KeyValue deleteColumn(int i, int j) {
+    return new KeyValue(row(i), FAMILY, qualifier(j), 2L, KeyValue.Type.DeleteColumn);
+  }
+
+  private HFile.Reader writeAndOpen(DataBlockEncoding encoding) throws IOException {
+    return writeAndOpen(encoding, false);
+  }
+
+  private HFile.Reader writeAndOpen(DataBlockEncoding encoding, boolean withDeletes)
+    throws IOException {
+    Path path = new Path(TEST_UTIL.getDataTestDir(),
+      "columnar_" + encoding.name().toLowerCase() + (withDeletes ? "_deletes" : ""));
+    HFileContext context = new HFileContextBuilder().withBlockSize(4096)
+      .withDataBlockEncoding(encoding).withCellComparator(CellComparatorImpl.COMPARATOR).build();
+    CacheConfig cacheConf = new CacheConfig(conf);
+    HFile.Writer writer =
+      HFile.getWriterFactory(conf, cacheConf).withPath(fs, path).withFileContext(context).create();
+    try {
+      for (int i = 0; i < NUM_ROWS; i++) {
+        for (int j = 0; j < NUM_COLUMNS; j++) {
+          if (withDeletes && i % 10 == 0 && j % 10 == 0) {
+            writer.append(deleteColumn(i, j));
+          }
+          writer.append(keyValue(i, j));
+        }
+      }
+    } finally {
+      writer.close();
+    }
+    return HFile.createReader(fs, path, cacheConf, true, conf);
+  }
+}
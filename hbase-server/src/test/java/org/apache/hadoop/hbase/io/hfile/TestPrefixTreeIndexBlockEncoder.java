@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.CellComparatorImpl;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.io.encoding.IndexBlockEncoding;
+import org.apache.hadoop.hbase.nio.SingleByteBuff;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests the {@link IndexBlockEncoding#PREFIX_TREE} index block encoding and compares its index size
+ * and seek latency against {@link IndexBlockEncoding#NONE}.
+ */
+@Category({ IOTests.class, MediumTests.class })
+public class TestPrefixTreeIndexBlockEncoder {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestPrefixTreeIndexBlockEncoder.class);
+
+  private static final Logger LOG = LoggerFactory.getLogger(TestPrefixTreeIndexBlockEncoder.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+
+  private static final int NUM_KV = 20000;
+  private static final int SMALL_BLOCK_SIZE = 1024;
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+
+  private Configuration conf;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws IOException {
+    conf = TEST_UTIL.getConfiguration();
+    fs = FileSystem.get(conf);
+  }
+
+  private static byte[] row(int i) {
+    // Long row keys with a long shared prefix, like the ones of time series or multi tenant tables.
+    return Bytes.toBytes(String.format("tenant-0001/metrics/host-%05d/cpu.user/%010d", i / 100, i));
+  }
+
+  private static KeyValue keyValue(int i) {
+    return new KeyValue(row(i), FAMILY, QUALIFIER, 1L, Bytes.toBytes(i));
+  }
+
+  @Test
+  public void testEncodeAndLocate() throws IOException {
+    BlockIndexChunk chunk = new HFileBlockIndex.BlockIndexChunkImpl();
+    int numEntries = 100;
+    for (int i = 0; i < numEntries; i++) {
+      // Only every other key is indexed so we can look up keys in between.
+      chunk.add(keyValue(2 * i + 1).getKey(), i * 1000L, 1000 + i);
+    }
+    for (boolean root : new boolean[] { true, false }) {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      PrefixTreeIndexBlockEncoder.INSTANCE.encode(chunk, root, new DataOutputStream(baos));
+      byte[] encoded = baos.toByteArray();
+      assertTrue(encoded.length < (root ? chunk.getRootSize() : chunk.getNonRootSize()));
+
+      PrefixTreeIndexBlockEncoder.EncodedChunk encodedChunk =
+        new PrefixTreeIndexBlockEncoder.EncodedChunk(new SingleByteBuff(ByteBuffer.wrap(encoded)),
+          0);
+      assertEquals(numEntries, encodedChunk.getNumEntries());
+      assertEquals(encoded.length, encodedChunk.getEndPosition());
+      for (int i = 0; i < numEntries; i++) {
+        assertTrue(Bytes.equals(chunk.getBlockKey(i), encodedChunk.getKey(i)));
+      }
+      assertNull(encodedChunk.getKey(numEntries));
+
+      // Before the first key
+      assertNull(encodedChunk.locate(keyValue(0), CellComparatorImpl.COMPARATOR, true));
+      for (int k = 1; k < 2 * numEntries + 1; k++) {
+        PrefixTreeIndexBlockEncoder.EncodedChunk.Cursor cursor =
+          encodedChunk.locate(keyValue(k), CellComparatorImpl.COMPARATOR, true);
+        int expected = (k - 1) / 2;
+        assertEquals("k=" + k, expected, cursor.index);
+        assertEquals(chunk.getBlockOffset(expected), cursor.blockOffset);
+        assertEquals(chunk.getOnDiskDataSize(expected), cursor.onDiskSize);
+        if (expected + 1 < numEntries) {
+          assertTrue(Bytes.equals(chunk.getBlockKey(expected + 1), cursor.nextKey));
+        } else {
+          assertNull(cursor.nextKey);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEmptyChunk() throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    PrefixTreeIndexBlockEncoder.INSTANCE.encode(new HFileBlockIndex.BlockIndexChunkImpl(), true,
+      new DataOutputStream(baos));
+    PrefixTreeIndexBlockEncoder.EncodedChunk encodedChunk =
+      new PrefixTreeIndexBlockEncoder.EncodedChunk(
+        new SingleByteBuff(ByteBuffer.wrap(baos.toByteArray())), 0);
+    assertEquals(0, encodedChunk.getNumEntries());
+    assertEquals(Bytes.SIZEOF_INT, encodedChunk.getEndPosition());
+    assertNull(encodedChunk.locate(keyValue(0), CellComparatorImpl.COMPARATOR, true));
+  }
+
+  @Test
+  public void testCompareWithNoneEncoding() throws IOException {
+    for (int indexChunkSize : new int[] { 4096, 512 }) {
+      conf.setInt(HFileBlockIndex.MAX_CHUNK_SIZE_KEY, indexChunkSize);
+      HFile.Reader none = writeAndOpen(IndexBlockEncoding.NONE, indexChunkSize);
+      HFile.Reader prefixTree = writeAndOpen(IndexBlockEncoding.PREFIX_TREE, indexChunkSize);
+      try {
+        assertEquals(IndexBlockEncoding.PREFIX_TREE, HFileIndexBlockEncoderImpl
+          .createFromFileInfo(prefixTree.getHFileInfo()).getIndexBlockEncoding());
+        long noneSize = none.getTrailer().getUncompressedDataIndexSize();
+        long prefixTreeSize = prefixTree.getTrailer().getUncompressedDataIndexSize();
+        LOG.info(
+          "Index chunk size {}: NONE index is {} bytes in {} levels, PREFIX_TREE index is"
+            + " {} bytes in {} levels",
+          indexChunkSize, noneSize, none.getTrailer().getNumDataIndexLevels(), prefixTreeSize,
+          prefixTree.getTrailer().getNumDataIndexLevels());
+        assertTrue(prefixTreeSize < noneSize);
+
+        assertEquals(none.getFirstKey().get(), prefixTree.getFirstKey().get());
+        assertEquals(none.midKey().get(), prefixTree.midKey().get());
+        assertEquals(none.getDataBlockIndexReader().getRootBlockCount(),
+          prefixTree.getDataBlockIndexReader().getRootBlockCount());
+
+        long noneNanos = seekAll(none);
+        long prefixTreeNanos = seekAll(prefixTree);
+        LOG.info(
+          "Index chunk size {}: seeking {} keys took {} ms with NONE, {} ms with PREFIX_TREE",
+          indexChunkSize, NUM_KV, noneNanos / 1000000, prefixTreeNanos / 1000000);
+      } finally {
+        none.close();
+        prefixTree.close();
+      }
+    }
+  }
+
+  private HFile.Reader writeAndOpen(IndexBlockEncoding encoding, int indexChunkSize)
+    throws IOException {
+    Path path = new Path(TEST_UTIL.getDataTestDir(),
+      "index_" + encoding.name().toLowerCase() + "_" + indexChunkSize);
+    HFileContext context = new HFileContextBuilder().withBlockSize(SMALL_BLOCK_SIZE)
+      .withIndexBlockEncoding(encoding).build();
+    CacheConfig cacheConf = new CacheConfig(conf);
+    HFile.Writer writer =
+      HFile.getWriterFactory(conf, cacheConf).withPath(fs, path).withFileContext(context).create();
+    try {
+      for (int i = 0; i < NUM_KV; i++) {
+        writer.append(keyValue(i));
+      }
+    } finally {
+      writer.close();
+    }
+    return HFile.createReader(fs, path, cacheConf, true, conf);
+  }
+
+  private long seekAll(HFile.Reader reader) throws IOException {
+    HFileScanner scanner = reader.getScanner(conf, true, true);
+    long start = System.nanoTime();
+    for (int i = 0; i < NUM_KV; i++) {
+      KeyValue kv = keyValue(i);
+      assertEquals("Failed to seek to key #" + i, 0,
+        scanner.seekTo(KeyValueUtil.createKeyValueFromKey(kv.getKey())));
+      assertEquals(i, Bytes.toInt(CellUtil.cloneValue(scanner.getCell())));
+    }
+    return System.nanoTime() - start;
+  }
+}
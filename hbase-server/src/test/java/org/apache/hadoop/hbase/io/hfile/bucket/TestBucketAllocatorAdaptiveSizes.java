@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the derivation of bucket sizes from the live block sizes in {@link BucketAllocator}, and
+ * the migration of the buckets to them.
+ */
+@Category({ IOTests.class, SmallTests.class })
+public class TestBucketAllocatorAdaptiveSizes {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestBucketAllocatorAdaptiveSizes.class);
+
+  private static final int GRANULE = BucketAllocator.SIZE_GRANULE;
+
+  @Test
+  public void testDeriveBucketSizes() {
+    int largest = 64 * 1024 + 1024;
+    long bucketCapacity = 4L * largest;
+    long[] histogram = new long[largest / GRANULE + 1];
+    // Two clusters of block sizes, around 3K and 21K
+    histogram[11] = 100;
+    histogram[12] = 1000;
+    histogram[83] = 50;
+    histogram[84] = 500;
+    int[] sizes = BucketAllocator.deriveBucketSizes(histogram, 3, largest, bucketCapacity);
+    assertArrayEquals(new int[] { 12 * GRANULE, 84 * GRANULE, largest }, sizes);
+    int[] more = BucketAllocator.deriveBucketSizes(histogram, 5, largest, bucketCapacity);
+    assertArrayEquals(new int[] { 11 * GRANULE, 12 * GRANULE, 83 * GRANULE, 84 * GRANULE, largest },
+      more);
+    assertTrue(BucketAllocator.fragmentationCost(histogram, sizes, bucketCapacity) < BucketAllocator
+      .fragmentationCost(histogram, new int[] { 16 * 1024, 32 * 1024, largest }, bucketCapacity));
+
+    // More sizes than distinct block sizes
+    long[] single = new long[largest / GRANULE + 1];
+    single[20] = 10;
+    assertArrayEquals(new int[] { 20 * GRANULE, largest },
+      BucketAllocator.deriveBucketSizes(single, 4, largest, bucketCapacity));
+    // Nothing cached
+    assertArrayEquals(new int[] { largest }, BucketAllocator
+      .deriveBucketSizes(new long[largest / GRANULE + 1], 4, largest, bucketCapacity));
+  }
+
+  @Test
+  public void testAdaptBucketSizes() throws Exception {
+    int[] configured = new int[] { 8 * 1024, 16 * 1024, 32 * 1024 };
+    long bucketCapacity = 4L * 32 * 1024;
+    BucketAllocator allocator = new BucketAllocator(bucketCapacity * 40, configured.clone());
+    assertArrayEquals(configured, allocator.getActiveBucketSizes());
+
+    // Blocks of a bit more than 8K waste almost half of their 16K buckets
+    int blockSize = 8 * 1024 + GRANULE;
+    List<Long> offsets = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      offsets.add(allocator.allocateBlock(blockSize));
+    }
+    assertEquals(100L * (16 * 1024 - blockSize), totalFragmentation(allocator));
+    assertTrue(allocator.adaptBucketSizes());
+    // A single block size only needs one bucket size, next to the largest one
+    int adapted = blockSize;
+    assertArrayEquals(new int[] { adapted, 32 * 1024 }, allocator.getActiveBucketSizes());
+    // Adapting again changes nothing
+    assertFalse(allocator.adaptBucketSizes());
+
+    // New blocks go to the new size, the buckets of the retired 16K size keep their blocks
+    long offset = allocator.allocateBlock(blockSize);
+    assertEquals(adapted, allocator.sizeOfAllocation(offset));
+    assertEquals(16 * 1024, allocator.sizeOfAllocation(offsets.get(0)));
+    assertTrue(hasItemSize(allocator, 16 * 1024));
+
+    // Once emptied, the buckets of the retired size migrate to the new ones
+    for (long o : offsets) {
+      allocator.freeBlock(o, blockSize);
+    }
+    for (int i = 0; i < 300; i++) {
+      assertEquals(adapted, allocator.sizeOfAllocation(allocator.allocateBlock(blockSize)));
+    }
+    assertFalse(hasItemSize(allocator, 16 * 1024));
+    assertEquals(0, totalFragmentation(allocator));
+  }
+
+  private static long totalFragmentation(BucketAllocator allocator) {
+    long fragmentation = 0;
+    for (BucketAllocator.IndexStatistics stats : allocator.getIndexStatistics()) {
+      fragmentation += stats.fragmentationBytes();
+    }
+    return fragmentation;
+  }
+
+  private static boolean hasItemSize(BucketAllocator allocator, int itemSize) {
+    for (BucketAllocator.IndexStatistics stats : allocator.getIndexStatistics()) {
+      if (stats.itemSize() == itemSize) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
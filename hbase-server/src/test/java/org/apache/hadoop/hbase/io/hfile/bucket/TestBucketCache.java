@@ -327,6 +327,42 @@ public class TestBucketCache {
     }
   }
 
+  @Test
+  public void testIOReadStats() throws Exception {
+    Path testDir = createAndGetTestDir();
+    String ioEngineName = "file:" + testDir + "/bucket.cache";
+    BucketCache bucketCache = null;
+    try {
+      bucketCache = new BucketCache(ioEngineName, capacitySize, constructedBlockSize,
+        new int[] { constructedBlockSize + 1024 }, writeThreads, writerQLen, null);
+      assertTrue(bucketCache.waitForCacheInitialization(10000));
+      HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(constructedBlockSize, 16);
+      for (HFileBlockPair block : blocks) {
+        cacheAndWaitUntilFlushedToBucket(bucketCache, block.getBlockName(), block.getBlock(),
+          false);
+      }
+      BucketCacheStats stats = (BucketCacheStats) bucketCache.getStats();
+      stats.reset();
+      for (HFileBlockPair block : blocks) {
+        Cacheable cached = bucketCache.getBlock(block.getBlockName(), false, false, true);
+        assertNotNull(cached);
+        cached.release();
+      }
+      assertNull(bucketCache.getBlock(new BlockCacheKey("missing", 0), false, false, true));
+      assertEquals(blocks.length, stats.getHitCount());
+      assertEquals(1, stats.getMissCount());
+      // only the reads served by the IOEngine are sampled, not the miss
+      assertEquals(blocks.length, stats.getIOReadLatency().getCount());
+      assertEquals(blocks.length, stats.getIOQueueDepth().getCount());
+      assertTrue(stats.getIOQueueDepth().getMax() >= 1);
+    } finally {
+      if (bucketCache != null) {
+        bucketCache.shutdown();
+      }
+      HBASE_TESTING_UTILITY.cleanupTestDir();
+    }
+  }
+
   @Test
   public void testRetrieveFromMMap() throws Exception {
     final Path testDir = createAndGetTestDir();
@@ -982,20 +1018,50 @@ public class TestBucketCache {
     return bucketCache;
   }
 
+  @Test
+  public void testEvictBlocksByHfileName() throws Exception {
+    Path first = new Path(HBASE_TESTING_UTILITY.getDataTestDir(), "testEvictBlocksByHfileName-1");
+    Path second = new Path(HBASE_TESTING_UTILITY.getDataTestDir(), "testEvictBlocksByHfileName-2");
+    HFileBlockPair[] firstBlocks =
+      CacheTestUtils.generateBlocksForPath(constructedBlockSize, 5, first);
+    HFileBlockPair[] secondBlocks =
+      CacheTestUtils.generateBlocksForPath(constructedBlockSize, 3, second);
+    for (HFileBlockPair pair : firstBlocks) {
+      cacheAndWaitUntilFlushedToBucket(cache, pair.getBlockName(), pair.getBlock(), true);
+    }
+    for (HFileBlockPair pair : secondBlocks) {
+      cacheAndWaitUntilFlushedToBucket(cache, pair.getBlockName(), pair.getBlock(), true);
+    }
+    assertEquals(5, cache.blocksByHFile.getBlockCount(first.getName()));
+    assertEquals(3, cache.blocksByHFile.getBlockCount(second.getName()));
+
+    // evict a range, then the rest of the first file
+    long secondOffset = firstBlocks[1].getBlockName().getOffset();
+    assertEquals(2, cache.evictBlocksRangeByHfileName(first.getName(), 0, secondOffset));
+    assertEquals(3, cache.blocksByHFile.getBlockCount(first.getName()));
+    assertEquals(3, cache.evictBlocksByHfileName(first.getName()));
+    assertEquals(0, cache.blocksByHFile.getBlockCount(first.getName()));
+    assertEquals(1, cache.blocksByHFile.getFileCount());
+    assertEquals(3, cache.getBackingMap().size());
+    for (HFileBlockPair pair : firstBlocks) {
+      assertNull(cache.getBlock(pair.getBlockName(), false, false, false));
+    }
+    assertEquals(2, ((BucketCacheStats) cache.getStats()).getEvictedByFileCount());
+    assertTrue(((BucketCacheStats) cache.getStats()).getEvictionTimePerFile() >= 0);
+  }
+
   @Test
   public void testEvictOrphansOutOfGracePeriod() throws Exception {
     BucketCache bucketCache = testEvictOrphans(0);
     assertEquals(10, bucketCache.getBackingMap().size());
-    assertEquals(0, bucketCache.blocksByHFile.stream()
-      .filter(key -> key.getHfileName().equals("testEvictOrphans-orphan")).count());
+    assertEquals(0, bucketCache.blocksByHFile.getBlockCount("testEvictOrphans-orphan"));
   }
 
   @Test
   public void testEvictOrphansWithinGracePeriod() throws Exception {
     BucketCache bucketCache = testEvictOrphans(60 * 60 * 1000L);
     assertEquals(18, bucketCache.getBackingMap().size());
-    assertTrue(bucketCache.blocksByHFile.stream()
-      .filter(key -> key.getHfileName().equals("testEvictOrphans-orphan")).count() > 0);
+    assertTrue(bucketCache.blocksByHFile.getBlockCount("testEvictOrphans-orphan") > 0);
   }
 
   private BucketCache testEvictOrphans(long orphanEvictionGracePeriod) throws Exception {
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.apache.hadoop.hbase.io.hfile.CacheConfig.BUCKETCACHE_PERSIST_INTERVAL_KEY;
+import static org.apache.hadoop.hbase.io.hfile.bucket.BucketCache.DEFAULT_ERROR_TOLERATION_DURATION;
+import static org.apache.hadoop.hbase.io.hfile.bucket.TestBucketCache.waitUntilFlushedToBucket;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.Waiter;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils;
+import org.apache.hadoop.hbase.io.hfile.Cacheable;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests checkpointing a persistent bucket cache through the {@link BucketCachePersistenceLog}.
+ */
+@Category({ IOTests.class, SmallTests.class })
+public class TestBucketCachePersistenceLog {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestBucketCachePersistenceLog.class);
+
+  private static final long CAPACITY_SIZE = 32 * 1024 * 1024;
+  private static final int[] BUCKET_SIZES = new int[] { 8 * 1024 + 1024 };
+
+  private final HBaseTestingUtil testUtil = new HBaseTestingUtil();
+  private Path testDir;
+  private String persistencePath;
+  private File logFile;
+  private Configuration conf;
+
+  @Before
+  public void setUp() throws Exception {
+    testDir = testUtil.getDataTestDir();
+    testUtil.getTestFileSystem().mkdirs(testDir);
+    persistencePath = testDir + "/bucket.persistence";
+    logFile = new File(persistencePath + BucketCachePersistenceLog.LOG_SUFFIX);
+    conf = HBaseConfiguration.create();
+    // Disables the persister thread, the tests checkpoint explicitly
+    conf.setLong(BUCKETCACHE_PERSIST_INTERVAL_KEY, Long.MAX_VALUE);
+    conf.setBoolean(BucketCache.PERSISTENCE_LOG_KEY, true);
+  }
+
+  @After
+  public void tearDown() {
+    testUtil.cleanupTestDir();
+  }
+
+  private BucketCache newBucketCache() throws Exception {
+    BucketCache cache = new BucketCache("file:" + testDir + "/bucket.cache", CAPACITY_SIZE, 8192,
+      BUCKET_SIZES, BucketCache.DEFAULT_WRITER_THREADS, BucketCache.DEFAULT_WRITER_QUEUE_ITEMS,
+      persistencePath, DEFAULT_ERROR_TOLERATION_DURATION, conf);
+    assertTrue(cache.waitForCacheInitialization(10000));
+    assertNotNull(cache.persistenceLog);
+    return cache;
+  }
+
+  private static void cacheAndWaitUntilFlushedToBucket(BucketCache cache, BlockCacheKey cacheKey,
+    Cacheable block) throws InterruptedException {
+    cache.cacheBlock(cacheKey, block);
+    waitUntilFlushedToBucket(cache, cacheKey);
+  }
+
+  @Test
+  public void testRetrieveSnapshotAndLog() throws Exception {
+    BucketCache bucketCache = newBucketCache();
+    CacheTestUtils.HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(8192, 4);
+    CacheTestUtils.HFileBlockPair[] smallerBlocks = CacheTestUtils.generateHFileBlocks(4096, 1);
+    for (CacheTestUtils.HFileBlockPair block : blocks) {
+      cacheAndWaitUntilFlushedToBucket(bucketCache, block.getBlockName(), block.getBlock());
+    }
+    // There is no snapshot to append to yet
+    bucketCache.checkpoint();
+    assertTrue(new File(persistencePath).exists());
+    assertFalse(logFile.exists());
+    long snapshotLength = new File(persistencePath).length();
+
+    // Reuses the offset of the evicted block, only the log knows about it
+    bucketCache.evictBlock(blocks[3].getBlockName());
+    cacheAndWaitUntilFlushedToBucket(bucketCache, smallerBlocks[0].getBlockName(),
+      smallerBlocks[0].getBlock());
+    bucketCache.checkpoint();
+    assertTrue(logFile.exists());
+    assertEquals(snapshotLength, new File(persistencePath).length());
+
+    // Retrieves without shutting down the first cache, like after a crash
+    BucketCache newBucketCache = newBucketCache();
+    try {
+      assertEquals(4, newBucketCache.backingMap.size());
+      assertNull(newBucketCache.getBlock(blocks[3].getBlockName(), false, false, false));
+      for (int i = 0; i < 3; i++) {
+        assertEquals(blocks[i].getBlock(),
+          newBucketCache.getBlock(blocks[i].getBlockName(), false, false, false));
+      }
+      assertEquals(smallerBlocks[0].getBlock(),
+        newBucketCache.getBlock(smallerBlocks[0].getBlockName(), false, false, false));
+
+      // The first checkpoint after the retrieval compacts the log into a new snapshot
+      newBucketCache.evictBlock(blocks[0].getBlockName());
+      newBucketCache.checkpoint();
+      assertFalse(logFile.exists());
+    } finally {
+      bucketCache.shutdown();
+      newBucketCache.shutdown();
+    }
+  }
+
+  @Test
+  public void testCheckpointWhileInitializing() throws Exception {
+    CacheTestUtils.HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(8192, 1);
+    BucketCache bucketCache = newBucketCache();
+    BucketCachePersister persister = new BucketCachePersister(bucketCache, 10);
+    try {
+      cacheAndWaitUntilFlushedToBucket(bucketCache, blocks[0].getBlockName(), blocks[0].getBlock());
+      assertTrue(bucketCache.isCacheInconsistent());
+      bucketCache.setCacheState(BucketCache.CacheState.INITIALIZING);
+      assertFalse(bucketCache.checkpoint());
+      assertFalse(new File(persistencePath).exists());
+
+      // The persister keeps the change pending until it can be written
+      persister.start();
+      Thread.sleep(200);
+      assertTrue(bucketCache.isCacheInconsistent());
+      assertFalse(new File(persistencePath).exists());
+
+      bucketCache.setCacheState(BucketCache.CacheState.ENABLED);
+      Waiter.waitFor(conf, 10000, () -> !bucketCache.isCacheInconsistent());
+      assertTrue(new File(persistencePath).exists());
+    } finally {
+      persister.shutdown();
+      persister.join();
+      bucketCache.shutdown();
+    }
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+    conf.setFloat(BucketCache.PERSISTENCE_LOG_COMPACTION_RATIO_KEY, 0.5f);
+    conf.setLong(BucketCache.BACKING_MAP_PERSISTENCE_CHUNK_SIZE, 4);
+    CacheTestUtils.HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(8192, 6);
+    BucketCache bucketCache = newBucketCache();
+    try {
+      for (int i = 0; i < 4; i++) {
+        cacheAndWaitUntilFlushedToBucket(bucketCache, blocks[i].getBlockName(),
+          blocks[i].getBlock());
+      }
+      bucketCache.checkpoint();
+      assertFalse(logFile.exists());
+
+      // Two changes are within half of the four cached blocks
+      cacheAndWaitUntilFlushedToBucket(bucketCache, blocks[4].getBlockName(), blocks[4].getBlock());
+      bucketCache.evictBlock(blocks[0].getBlockName());
+      bucketCache.checkpoint();
+      assertTrue(logFile.exists());
+
+      // Two more are not
+      cacheAndWaitUntilFlushedToBucket(bucketCache, blocks[5].getBlockName(), blocks[5].getBlock());
+      bucketCache.checkpoint();
+      assertFalse(logFile.exists());
+    } finally {
+      bucketCache.shutdown();
+    }
+
+    BucketCache newBucketCache = newBucketCache();
+    try {
+      assertEquals(5, newBucketCache.backingMap.size());
+      assertNull(newBucketCache.getBlock(blocks[0].getBlockName(), false, false, false));
+    } finally {
+      newBucketCache.shutdown();
+    }
+  }
+}
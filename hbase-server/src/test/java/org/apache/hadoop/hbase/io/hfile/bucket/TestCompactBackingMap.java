@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.apache.hadoop.hbase.io.hfile.CacheConfig.BUCKETCACHE_PERSIST_INTERVAL_KEY;
+import static org.apache.hadoop.hbase.io.hfile.bucket.BucketCache.DEFAULT_ERROR_TOLERATION_DURATION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.BlockType;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the {@link CompactBackingMap}, alone and as the backing map of a persistent
+ * {@link BucketCache}.
+ */
+@Category({ IOTests.class, SmallTests.class })
+public class TestCompactBackingMap {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestCompactBackingMap.class);
+
+  /** Returns an entry at offset {@code 256 * n}, bucket entry offsets are multiple of 256. */
+  private static BucketEntry newEntry(long n) {
+    return new BucketEntry(n << 8, 10, 10, 0L, false, entry -> ByteBuffAllocator.NONE,
+      ByteBuffAllocator.HEAP);
+  }
+
+  @Test
+  public void testBasicOperations() {
+    CompactBackingMap map = new CompactBackingMap(16, 4);
+    BlockCacheKey key = new BlockCacheKey("file1", 1024, false, BlockType.LEAF_INDEX);
+    BucketEntry entry = newEntry(0);
+    assertNull(map.get(key));
+    assertNull(map.put(key, entry));
+    assertSame(entry, map.get(new BlockCacheKey("file1", 1024)));
+    assertTrue(map.containsKey(key));
+    assertFalse(map.containsKey(new BlockCacheKey("file1", 0)));
+    assertFalse(map.containsKey(new BlockCacheKey("file2", 1024)));
+    assertEquals(1, map.size());
+
+    // the block type and replica flag of the key survive the trip
+    Map.Entry<BlockCacheKey, BucketEntry> e = map.entrySet().iterator().next();
+    assertEquals(key, e.getKey());
+    assertEquals(BlockType.LEAF_INDEX, e.getKey().getBlockType());
+    assertFalse(e.getKey().isPrimary());
+    assertSame(entry, e.getValue());
+
+    BucketEntry other = newEntry(1);
+    assertSame(entry, map.putIfAbsent(key, other));
+    assertSame(entry, map.get(key));
+    assertFalse(map.remove(key, other));
+    assertFalse(map.replace(key, other, other));
+    assertTrue(map.replace(key, entry, other));
+    assertSame(other, map.put(key, entry));
+    assertTrue(map.remove(key, entry));
+    assertNull(map.get(key));
+    assertTrue(map.isEmpty());
+    // the hfile name is released with its last block
+    assertEquals(0, map.getNumberOfHFileNames());
+  }
+
+  @Test
+  public void testAgainstHashMap() {
+    // a few segments and a tiny initial capacity, so tables get resized and probe sequences wrap
+    CompactBackingMap map = new CompactBackingMap(0, 2);
+    Map<BlockCacheKey, BucketEntry> expected = new HashMap<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 200000; i++) {
+      BlockCacheKey key =
+        new BlockCacheKey("hfile" + random.nextInt(20), random.nextInt(2000) * 65536L);
+      int op = random.nextInt(10);
+      if (op < 5) {
+        BucketEntry entry = newEntry(i);
+        assertSame(expected.put(key, entry), map.put(key, entry));
+      } else if (op < 8) {
+        assertSame(expected.remove(key), map.remove(key));
+      } else {
+        assertSame(expected.get(key), map.get(key));
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    Map<BlockCacheKey, BucketEntry> iterated = new HashMap<>();
+    for (Map.Entry<BlockCacheKey, BucketEntry> e : map.entrySet()) {
+      assertNull(iterated.put(e.getKey(), e.getValue()));
+    }
+    assertEquals(expected, iterated);
+
+    // remove every other entry through the iterator
+    int i = 0;
+    for (Iterator<Map.Entry<BlockCacheKey, BucketEntry>> it = map.entrySet().iterator(); it
+      .hasNext();) {
+      BlockCacheKey key = it.next().getKey();
+      if (i++ % 2 == 0) {
+        it.remove();
+        expected.remove(key);
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    for (Map.Entry<BlockCacheKey, BucketEntry> e : expected.entrySet()) {
+      assertSame(e.getValue(), map.get(e.getKey()));
+    }
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertEquals(0, map.getNumberOfHFileNames());
+    assertFalse(map.entrySet().iterator().hasNext());
+  }
+
+  @Test
+  public void testConcurrentAccess() throws Exception {
+    CompactBackingMap map = new CompactBackingMap(0, 4);
+    int numWriters = 4;
+    int keysPerWriter = 20000;
+    ExecutorService executor = Executors.newFixedThreadPool(numWriters * 2);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int w = 0; w < numWriters; w++) {
+        String hfileName = "hfile" + w;
+        futures.add(executor.submit(() -> {
+          for (int round = 0; round < 3; round++) {
+            for (int k = 0; k < keysPerWriter; k++) {
+              BlockCacheKey key = new BlockCacheKey(hfileName, k);
+              map.put(key, newEntry(k));
+            }
+            for (int k = 0; k < keysPerWriter; k += 2) {
+              assertTrue(map.remove(new BlockCacheKey(hfileName, k)) != null);
+            }
+          }
+        }));
+        // readers only ever see entries which were put for the key they look up
+        futures.add(executor.submit(() -> {
+          Random random = new Random();
+          for (int n = 0; n < 200000; n++) {
+            int k = random.nextInt(keysPerWriter);
+            BucketEntry entry = map.get(new BlockCacheKey(hfileName, k));
+            if (entry != null) {
+              assertEquals((long) k << 8, entry.offset());
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(numWriters * keysPerWriter / 2, map.size());
+    for (int w = 0; w < numWriters; w++) {
+      for (int k = 0; k < keysPerWriter; k++) {
+        BucketEntry entry = map.get(new BlockCacheKey("hfile" + w, k));
+        if (k % 2 == 0) {
+          assertNull(entry);
+        } else {
+          assertEquals((long) k << 8, entry.offset());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testPersistentBucketCache() throws Exception {
+    HBaseTestingUtil testUtil = new HBaseTestingUtil();
+    Path testDir = testUtil.getDataTestDir();
+    testUtil.getTestFileSystem().mkdirs(testDir);
+    Configuration conf = HBaseConfiguration.create();
+    conf.setBoolean(BucketCache.BACKING_MAP_COMPACT_KEY, true);
+    conf.setLong(BUCKETCACHE_PERSIST_INTERVAL_KEY, Long.MAX_VALUE);
+    int[] bucketSizes = new int[] { 8 * 1024 + 1024 };
+    long capacitySize = 32 * 1024 * 1024;
+    BucketCache bucketCache = new BucketCache("file:" + testDir + "/bucket.cache", capacitySize,
+      8192, bucketSizes, BucketCache.DEFAULT_WRITER_THREADS, BucketCache.DEFAULT_WRITER_QUEUE_ITEMS,
+      testDir + "/bucket.persistence", DEFAULT_ERROR_TOLERATION_DURATION, conf);
+    assertTrue(bucketCache.waitForCacheInitialization(10000));
+    assertTrue(bucketCache.backingMap instanceof CompactBackingMap);
+
+    CacheTestUtils.HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(8192, 4);
+    for (CacheTestUtils.HFileBlockPair block : blocks) {
+      bucketCache.cacheBlock(block.getBlockName(), block.getBlock());
+      TestBucketCache.waitUntilFlushedToBucket(bucketCache, block.getBlockName());
+    }
+    bucketCache.persistToFile();
+    bucketCache.shutdown();
+
+    BucketCache newBucketCache = new BucketCache("file:" + testDir + "/bucket.cache", capacitySize,
+      8192, bucketSizes, BucketCache.DEFAULT_WRITER_THREADS, BucketCache.DEFAULT_WRITER_QUEUE_ITEMS,
+      testDir + "/bucket.persistence", DEFAULT_ERROR_TOLERATION_DURATION, conf);
+    try {
+      assertTrue(newBucketCache.waitForCacheInitialization(10000));
+      assertTrue(newBucketCache.backingMap instanceof CompactBackingMap);
+      assertEquals(4, newBucketCache.backingMap.size());
+      for (CacheTestUtils.HFileBlockPair block : blocks) {
+        assertEquals(block.getBlock(),
+          newBucketCache.getBlock(block.getBlockName(), false, false, false));
+      }
+      newBucketCache.evictBlocksByHfileName(blocks[0].getBlockName().getHfileName());
+      assertEquals(3, newBucketCache.backingMap.size());
+      assertNull(newBucketCache.getBlock(blocks[0].getBlockName(), false, false, false));
+    } finally {
+      newBucketCache.shutdown();
+      testUtil.cleanupTestDir();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.BlockType;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ IOTests.class, SmallTests.class })
+public class TestFileBlockIndex {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestFileBlockIndex.class);
+
+  @Test
+  public void testAddRemoveAndRange() {
+    FileBlockIndex index = new FileBlockIndex();
+    int numBlocks = 1000;
+    for (int i = 0; i < numBlocks; i++) {
+      BlockType blockType = i % 10 == 0 ? BlockType.LEAF_INDEX : BlockType.DATA;
+      index.add(new BlockCacheKey("file1", i * 100L, i % 2 == 0, blockType));
+      index.add(new BlockCacheKey("file2", i * 100L));
+    }
+    assertEquals(2, index.getFileCount());
+    assertEquals(numBlocks, index.getBlockCount("file1"));
+    assertEquals(0, index.getBlockCount("file3"));
+    assertTrue(index.getBlocks("file3", 0, Long.MAX_VALUE).isEmpty());
+
+    List<BlockCacheKey> range = index.getBlocks("file1", 1000, 1900);
+    assertEquals(10, range.size());
+    for (BlockCacheKey key : range) {
+      int i = (int) (key.getOffset() / 100);
+      assertTrue(i >= 10 && i <= 19);
+      assertEquals(i % 10 == 0 ? BlockType.LEAF_INDEX : BlockType.DATA, key.getBlockType());
+      assertEquals(i % 2 == 0, key.isPrimary());
+    }
+
+    // remove every other block of the first file, in an order which exercises the probing
+    for (int i = numBlocks - 1; i >= 0; i -= 2) {
+      index.remove(new BlockCacheKey("file1", i * 100L));
+    }
+    index.remove(new BlockCacheKey("file1", 12345));
+    assertEquals(numBlocks / 2, index.getBlockCount("file1"));
+    Set<Long> offsets = new HashSet<>();
+    for (BlockCacheKey key : index.getBlocks("file1", 0, Long.MAX_VALUE)) {
+      assertTrue(offsets.add(key.getOffset()));
+      assertEquals(0, key.getOffset() / 100 % 2);
+    }
+    assertEquals(numBlocks / 2, offsets.size());
+
+    // the file goes away with its last block
+    for (BlockCacheKey key : index.getBlocks("file2", 0, Long.MAX_VALUE)) {
+      index.remove(key);
+    }
+    assertEquals(1, index.getFileCount());
+    index.clear();
+    assertTrue(index.isEmpty());
+    assertFalse(index.getBlocks("file1", 0, Long.MAX_VALUE).iterator().hasNext());
+  }
+}
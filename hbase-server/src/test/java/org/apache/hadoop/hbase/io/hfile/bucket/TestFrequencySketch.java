@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.apache.hadoop.hbase.io.hfile.bucket.BucketCache.DEFAULT_ERROR_TOLERATION_DURATION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests {@link FrequencySketch} and the admission filter of {@link BucketCache} built on it.
+ */
+@Category({ IOTests.class, SmallTests.class })
+public class TestFrequencySketch {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestFrequencySketch.class);
+
+  @Test
+  public void testFrequency() {
+    FrequencySketch sketch = new FrequencySketch(1000);
+    assertEquals(1024, sketch.getTableSize());
+    BlockCacheKey hot = new BlockCacheKey("hot", 0);
+    BlockCacheKey cold = new BlockCacheKey("cold", 0);
+    assertEquals(0, sketch.frequency(hot));
+    for (int i = 1; i <= 20; i++) {
+      sketch.increment(hot);
+      // Counters saturate at 15
+      assertEquals(Math.min(i, 15), sketch.frequency(hot));
+    }
+    sketch.increment(cold);
+    assertEquals(1, sketch.frequency(cold));
+    // Blocks of the same file at other offsets are told apart
+    int collisions = 0;
+    for (int i = 1; i < 100; i++) {
+      if (sketch.frequency(new BlockCacheKey("hot", i * 65536L)) > 0) {
+        collisions++;
+      }
+    }
+    assertTrue("collisions=" + collisions, collisions < 5);
+  }
+
+  @Test
+  public void testAging() {
+    FrequencySketch sketch = new FrequencySketch(16);
+    BlockCacheKey key = new BlockCacheKey("file", 0);
+    for (int i = 0; i < 8; i++) {
+      sketch.increment(key);
+    }
+    sketch.reset();
+    assertEquals(4, sketch.frequency(key));
+
+    // Enough increments age the counters by themselves
+    for (int i = 0; i < 20; i++) {
+      sketch.increment(key);
+    }
+    assertEquals(15, sketch.frequency(key));
+    for (int i = 0; i < 10 * sketch.getTableSize(); i++) {
+      sketch.increment(new BlockCacheKey("other", i));
+    }
+    assertTrue(sketch.frequency(key) <= 7);
+  }
+
+  @Test
+  public void testMaxTableSize() {
+    assertEquals(FrequencySketch.MAX_TABLE_SIZE,
+      new FrequencySketch(FrequencySketch.MAX_TABLE_SIZE).getTableSize());
+    // The expected number of keys of a very large cache is capped
+    FrequencySketch sketch = new FrequencySketch(Long.MAX_VALUE);
+    assertEquals(FrequencySketch.MAX_TABLE_SIZE, sketch.getTableSize());
+    // The counters of the keys are spread over the whole table, up to its last long
+    for (int i = 0; i < 10000; i++) {
+      BlockCacheKey key = new BlockCacheKey("file", i * 65536L);
+      sketch.increment(key);
+      assertTrue(sketch.frequency(key) >= 1);
+    }
+    sketch.reset();
+    assertEquals(0, sketch.frequency(new BlockCacheKey("file", 0)));
+  }
+
+  @Test
+  public void testBucketCacheAdmission() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setBoolean(BucketCache.ADMISSION_FILTER_KEY, true);
+    conf.setFloat(BucketCache.MIN_FACTOR_CONFIG_NAME, 0.5f);
+    conf.setFloat(BucketCache.EXTRA_FREE_FACTOR_CONFIG_NAME, 0.1f);
+    BucketCache cache = new BucketCache("offheap", 1024 * 1024, 8192, new int[] { 8 * 1024 + 1024 },
+      1, BucketCache.DEFAULT_WRITER_QUEUE_ITEMS, null, DEFAULT_ERROR_TOLERATION_DURATION, conf);
+    try {
+      assertNotNull(cache.frequencySketch);
+      BucketCacheStats stats = (BucketCacheStats) cache.getStats();
+      CacheTestUtils.HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(8192, 200);
+      int next = 0;
+      // Blocks are admitted, whatever their frequency, until the cache fills up to its minimum size
+      while (cache.getAllocator().getUsedSize() < cache.getPartitionSize(1.0f)) {
+        cache.cacheBlock(blocks[next].getBlockName(), blocks[next].getBlock());
+        TestBucketCache.waitUntilFlushedToBucket(cache, blocks[next].getBlockName());
+        next++;
+      }
+      assertEquals(0, stats.getAdmissionRejectedCount());
+
+      // A block seen for the first time is now a one-hit-wonder
+      BlockCacheKey oneHit = blocks[next].getBlockName();
+      assertNull(cache.getBlock(oneHit, true, false, true));
+      cache.cacheBlock(oneHit, blocks[next].getBlock());
+      assertNull(cache.getBlock(oneHit, true, false, true));
+      assertEquals(1, stats.getAdmissionRejectedCount());
+
+      // Its second miss made it popular enough
+      cache.cacheBlock(oneHit, blocks[next].getBlock());
+      TestBucketCache.waitUntilFlushedToBucket(cache, oneHit);
+      assertEquals(blocks[next].getBlock(), cache.getBlock(oneHit, true, false, true));
+      assertEquals(1, stats.getAdmissionRejectedCount());
+
+      // In-memory blocks are always admitted
+      next++;
+      cache.cacheBlock(blocks[next].getBlockName(), blocks[next].getBlock(), true);
+      TestBucketCache.waitUntilFlushedToBucket(cache, blocks[next].getBlockName());
+      assertEquals(1, stats.getAdmissionRejectedCount());
+    } finally {
+      cache.shutdown();
+    }
+  }
+}
@@ -203,4 +203,18 @@ public class MetricsRegionWrapperStub implements MetricsRegionWrapper {
     map.put("info", 0L);
     return map;
   }
+
+  @Override
+  public Map<String, Long> getMemStoreCompactedCellsCount() {
+    Map<String, Long> map = new HashMap<>();
+    map.put("info", 109L);
+    return map;
+  }
+
+  @Override
+  public Map<String, Long> getMemStoreCompactionTime() {
+    Map<String, Long> map = new HashMap<>();
+    map.put("info", 110L);
+    return map;
+  }
 }
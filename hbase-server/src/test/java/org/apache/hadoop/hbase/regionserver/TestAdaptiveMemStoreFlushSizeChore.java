@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+/**
+ * Tests that {@link AdaptiveMemStoreFlushSizeChore} shares the memstore budget among the regions by
+ * write rate and store file pressure.
+ */
+@Category({ RegionServerTests.class, MediumTests.class })
+public class TestAdaptiveMemStoreFlushSizeChore {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestAdaptiveMemStoreFlushSizeChore.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final long FLUSH_SIZE = 1024 * 1024;
+
+  @Rule
+  public TestName name = new TestName();
+
+  private HRegion first;
+  private HRegion second;
+  private AdaptiveMemStoreFlushSizeChore chore;
+
+  @Before
+  public void setUp() throws IOException {
+    TEST_UTIL.getConfiguration().setInt(HStore.BLOCKING_STOREFILES_KEY, 4);
+    first = createRegion(name.getMethodName() + "_first");
+    second = createRegion(name.getMethodName() + "_second");
+    HRegionServer regionServer = mock(HRegionServer.class);
+    when(regionServer.getConfiguration()).thenReturn(TEST_UTIL.getConfiguration());
+    chore = new AdaptiveMemStoreFlushSizeChore(1000, regionServer, null);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    HBaseTestingUtil.closeRegionAndWAL(first);
+    HBaseTestingUtil.closeRegionAndWAL(second);
+  }
+
+  private static HRegion createRegion(String tableName) throws IOException {
+    TableDescriptor desc = TableDescriptorBuilder.newBuilder(TableName.valueOf(tableName))
+      .setMemStoreFlushSize(FLUSH_SIZE).setColumnFamily(ColumnFamilyDescriptorBuilder.of(FAMILY))
+      .build();
+    return TEST_UTIL.createLocalHRegion(desc, null, null);
+  }
+
+  private static void write(HRegion region, int numRows) throws IOException {
+    for (int i = 0; i < numRows; i++) {
+      region.put(new Put(Bytes.toBytes(i)).addColumn(FAMILY, FAMILY, new byte[100]));
+    }
+  }
+
+  @Test
+  public void testHotRegionFlushesLater() throws IOException {
+    List<HRegion> regions = Arrays.asList(first, second);
+    // the first run only starts measuring
+    chore.adjust(regions, 10 * FLUSH_SIZE, 1000);
+    assertEquals(FLUSH_SIZE, first.getMemStoreFlushSize());
+    assertEquals(FLUSH_SIZE, second.getMemStoreFlushSize());
+
+    write(first, 1000);
+    chore.adjust(regions, 10 * FLUSH_SIZE, 2000);
+    // all of the budget goes to the only region written, up to the largest multiple
+    assertEquals(AdaptiveMemStoreFlushSizeChore.DEFAULT_MAX_MULTIPLIER * FLUSH_SIZE,
+      first.getMemStoreFlushSize());
+    assertEquals(FLUSH_SIZE, second.getMemStoreFlushSize());
+
+    // a region is never given less than its configured flush size
+    chore.adjust(regions, FLUSH_SIZE / 2, 3000);
+    assertEquals(FLUSH_SIZE, first.getMemStoreFlushSize());
+    assertEquals(FLUSH_SIZE, second.getMemStoreFlushSize());
+  }
+
+  @Test
+  public void testStoreFilePressure() throws IOException {
+    // two store files out of the four blocking ones
+    for (int i = 0; i < 2; i++) {
+      write(second, 10);
+      second.flush(true);
+    }
+    write(first, 20);
+    List<HRegion> regions = Arrays.asList(first, second);
+    chore.adjust(regions, 5 * FLUSH_SIZE, 1000);
+
+    // the same write rate, but the second region weighs one and a half
+    write(first, 1000);
+    write(second, 1000);
+    chore.adjust(regions, 5 * FLUSH_SIZE, 2000);
+    assertEquals(2 * FLUSH_SIZE, first.getMemStoreFlushSize());
+    assertEquals(3 * FLUSH_SIZE, second.getMemStoreFlushSize());
+  }
+}
@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueTestUtil;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestCellChunkSkipListMap {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestCellChunkSkipListMap.class);
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final CellComparator COMPARATOR = CellComparator.getInstance();
+
+  private MemStoreLAB mslab;
+  private CellChunkSkipListMap<ExtendedCell> map;
+
+  @Before
+  public void setUp() {
+    ChunkCreator.initialize(MemStoreLAB.CHUNK_SIZE_DEFAULT, false, 0, 0, 0, null,
+      MemStoreLAB.INDEX_CHUNK_SIZE_PERCENTAGE_DEFAULT);
+    mslab = new MemStoreLABImpl(new Configuration());
+    map = new CellChunkSkipListMap<>(COMPARATOR, mslab);
+  }
+
+  @After
+  public void tearDown() {
+    mslab.close();
+  }
+
+  private ExtendedCell cell(int row, long ts, String value) {
+    return mslab.copyCellInto(new KeyValue(Bytes.toBytes(String.format("row-%06d", row)), FAMILY,
+      QUALIFIER, ts, Bytes.toBytes(value)));
+  }
+
+  private List<ExtendedCell> putShuffled(int numOfCells) {
+    List<ExtendedCell> cells = new ArrayList<>(numOfCells);
+    for (int i = 0; i < numOfCells; i++) {
+      cells.add(cell(i, 1, "v" + i));
+    }
+    List<ExtendedCell> shuffled = new ArrayList<>(cells);
+    Collections.shuffle(shuffled, new Random(42));
+    for (ExtendedCell c : shuffled) {
+      assertNull(map.put(c, c));
+    }
+    return cells;
+  }
+
+  private static void assertSameCells(List<ExtendedCell> expected, Iterator<ExtendedCell> it) {
+    for (ExtendedCell c : expected) {
+      assertTrue(it.hasNext());
+      assertEquals(0, COMPARATOR.compare(c, it.next()));
+    }
+    assertFalse(it.hasNext());
+  }
+
+  @Test
+  public void testEmpty() {
+    assertTrue(map.isEmpty());
+    assertEquals(0, map.size());
+    assertNull(map.firstEntry());
+    assertNull(map.lastEntry());
+    assertNull(map.get(cell(1, 1, "v")));
+    assertFalse(map.values().iterator().hasNext());
+    // no index chunk is allocated before the first put
+    assertEquals(0, map.getNumOfIndexChunks());
+  }
+
+  @Test
+  public void testPutAndIterate() {
+    // enough cells to need more than one index chunk
+    List<ExtendedCell> cells = putShuffled(20000);
+    assertTrue(map.getNumOfIndexChunks() > 1);
+    assertEquals(cells.size(), map.size());
+    assertSameCells(cells, map.values().iterator());
+    List<ExtendedCell> reversed = new ArrayList<>(cells);
+    Collections.reverse(reversed);
+    assertSameCells(reversed, map.descendingMap().values().iterator());
+
+    assertEquals(0, COMPARATOR.compare(cells.get(0), map.firstKey()));
+    assertEquals(0, COMPARATOR.compare(cells.get(cells.size() - 1), map.lastKey()));
+    for (int i = 0; i < cells.size(); i += 97) {
+      ExtendedCell c = cells.get(i);
+      assertTrue(CellUtil.equals(c, map.get(c)));
+      assertTrue(CellUtil.matchingValue(c, map.get(c)));
+      assertTrue(map.containsKey(c));
+    }
+    assertFalse(map.containsKey(cell(cells.size(), 1, "v")));
+  }
+
+  @Test
+  public void testNavigation() {
+    List<ExtendedCell> cells = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      // only even rows so there are keys in between
+      ExtendedCell c = cell(2 * i, 1, "v");
+      cells.add(c);
+      map.put(c, c);
+    }
+    ExtendedCell odd = cell(51, 1, "v");
+    ExtendedCell even = cells.get(25);
+    assertEquals(0, COMPARATOR.compare(cells.get(26), map.ceilingKey(odd)));
+    assertEquals(0, COMPARATOR.compare(cells.get(25), map.floorKey(odd)));
+    assertEquals(0, COMPARATOR.compare(even, map.ceilingKey(even)));
+    assertEquals(0, COMPARATOR.compare(even, map.floorKey(even)));
+    assertEquals(0, COMPARATOR.compare(cells.get(26), map.higherKey(even)));
+    assertEquals(0, COMPARATOR.compare(cells.get(24), map.lowerKey(even)));
+    assertNull(map.lowerKey(cells.get(0)));
+    assertNull(map.higherKey(cells.get(99)));
+
+    NavigableMap<ExtendedCell, ExtendedCell> tail = map.tailMap(odd, true);
+    assertSameCells(cells.subList(26, 100), tail.values().iterator());
+    NavigableMap<ExtendedCell, ExtendedCell> head = map.headMap(even, false);
+    assertSameCells(cells.subList(0, 25), head.values().iterator());
+    assertEquals(0, COMPARATOR.compare(cells.get(24), head.lastEntry().getValue()));
+    assertSameCells(cells.subList(26, 60),
+      map.subMap(even, false, cells.get(60), false).values().iterator());
+    // views of views keep the narrowest bounds
+    assertSameCells(cells.subList(26, 40), tail.headMap(cells.get(40), false).values().iterator());
+    assertNull(head.get(cells.get(30)));
+    assertTrue(map.headMap(cells.get(0), false).isEmpty());
+
+    List<ExtendedCell> reversed = new ArrayList<>(cells.subList(0, 25));
+    Collections.reverse(reversed);
+    assertSameCells(reversed, head.descendingMap().values().iterator());
+    NavigableMap<ExtendedCell, ExtendedCell> descending = map.descendingMap();
+    assertEquals(0, COMPARATOR.compare(cells.get(25), descending.ceilingKey(odd)));
+    assertEquals(0, COMPARATOR.compare(cells.get(99), descending.firstKey()));
+    reversed = new ArrayList<>(cells.subList(0, 26));
+    Collections.reverse(reversed);
+    assertSameCells(reversed, descending.tailMap(odd, true).values().iterator());
+  }
+
+  @Test
+  public void testOverwriteAndRemove() {
+    List<ExtendedCell> cells = putShuffled(100);
+    ExtendedCell c = cells.get(10);
+    ExtendedCell sameKey = cell(10, 1, "other");
+    ExtendedCell old = map.put(sameKey, sameKey);
+    assertTrue(CellUtil.matchingValue(c, old));
+    assertTrue(CellUtil.matchingValue(sameKey, map.get(c)));
+    assertEquals(100, map.size());
+
+    assertTrue(CellUtil.matchingValue(sameKey, map.remove(c)));
+    assertNull(map.get(c));
+    assertNull(map.remove(c));
+    assertEquals(99, map.size());
+    List<ExtendedCell> expected = new ArrayList<>(cells);
+    expected.remove(10);
+    assertSameCells(expected, map.values().iterator());
+
+    // removing through the iterator, like MutableSegment#upsert does
+    Iterator<ExtendedCell> it = map.tailMap(cells.get(50), true).values().iterator();
+    it.next();
+    it.remove();
+    expected.remove(cells.get(50));
+    assertSameCells(expected, map.values().iterator());
+
+    // removed keys can be put again
+    assertNull(map.put(c, c));
+    assertTrue(CellUtil.matchingValue(c, map.get(c)));
+    assertEquals(99, map.size());
+    map.remove(cells.get(0));
+    map.remove(cells.get(99));
+    assertEquals(0, COMPARATOR.compare(cells.get(1), map.firstKey()));
+    assertEquals(0, COMPARATOR.compare(cells.get(98), map.lastKey()));
+  }
+
+  @Test
+  public void testRejectCellsNotOnChunks() {
+    KeyValue kv = new KeyValue(Bytes.toBytes("row"), FAMILY, QUALIFIER, 1, Bytes.toBytes("v"));
+    try {
+      map.put(kv, kv);
+      fail("Cells which are not allocated on MSLAB chunks must be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testConcurrentPuts() throws Exception {
+    int numOfThreads = 8;
+    int cellsPerThread = 5000;
+    List<ExtendedCell> cells = new ArrayList<>();
+    for (int i = 0; i < numOfThreads * cellsPerThread; i++) {
+      cells.add(cell(i, 1, "v" + i));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(numOfThreads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < numOfThreads; t++) {
+        int thread = t;
+        futures.add(executor.submit(() -> {
+          // interleave the cells of the threads so they insert next to each other
+          for (int i = cells.size() - numOfThreads + thread; i >= 0; i -= numOfThreads) {
+            ExtendedCell c = cells.get(i);
+            map.put(c, c);
+            // every thread also overwrites a shared key
+            map.put(cells.get(0), cells.get(0));
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(cells.size(), map.size());
+    assertSameCells(cells, map.values().iterator());
+  }
+
+  @Test
+  public void testChunkIndexedDefaultMemStore() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.set(DefaultMemStore.MEMSTORE_ACTIVE_INDEX_KEY, "CHUNK_MAP");
+    DefaultMemStore memstore = new DefaultMemStore(conf, CellComparator.getInstance());
+    assertTrue(memstore.getActive() instanceof CellChunkMutableSegment);
+
+    // a big cell is not copied to MSLAB by the memstore, the segment copies it
+    byte[] bigValue =
+      new byte[conf.getInt(MemStoreLAB.MAX_ALLOC_KEY, MemStoreLAB.MAX_ALLOC_DEFAULT) + 1];
+    KeyValue big = new KeyValue(Bytes.toBytes("big"), FAMILY, QUALIFIER, 1, bigValue);
+    memstore.add(big, null);
+    KeyValue small = KeyValueTestUtil.create("r", "f", "q", 100, "v");
+    memstore.add(small, null);
+    assertEquals(2, memstore.getActive().getCellsCount());
+    assertTrue(CellUtil.matchingValue(big, memstore.getActive().first()));
+
+    List<ExtendedCell> upserts = new ArrayList<>();
+    KeyValue kv1 = KeyValueTestUtil.create("r", "f", "q", 101, "v1");
+    KeyValue kv2 = KeyValueTestUtil.create("r", "f", "q", 102, "v2");
+    kv1.setSequenceId(1);
+    kv2.setSequenceId(1);
+    upserts.add(kv1);
+    upserts.add(kv2);
+    MemStoreSize before = memstore.size();
+    // readpoint is 2, the oldest version is removed
+    memstore.upsert(upserts, 2, null);
+    List<ExtendedCell> found = new ArrayList<>();
+    for (ExtendedCell c : memstore.getActive().getCellSet()) {
+      found.add(c);
+    }
+    assertEquals(3, found.size());
+    assertTrue(CellUtil.matchingValue(kv2, found.get(1)));
+    assertTrue(CellUtil.matchingValue(kv1, found.get(2)));
+    // the removed cell stays on the MSLAB, so it stays accounted
+    assertEquals(before.getDataSize() + kv1.getSerializedSize() + kv2.getSerializedSize(),
+      memstore.size().getDataSize());
+    assertEquals(4, memstore.getActive().getCellsCount());
+
+    memstore.snapshot();
+    // the active segment is replaced with a new chunk indexed one after the snapshot
+    assertTrue(memstore.getActive() instanceof CellChunkMutableSegment);
+    assertTrue(memstore.getActive().isEmpty());
+    assertEquals(4, memstore.getSnapshot().getCellsCount());
+  }
+}
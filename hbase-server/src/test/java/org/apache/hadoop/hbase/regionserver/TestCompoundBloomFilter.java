@@ -74,22 +74,23 @@ public class TestCompoundBloomFilter {
 
   private static final Logger LOG = LoggerFactory.getLogger(TestCompoundBloomFilter.class);
 
-  private static final int NUM_TESTS = 9;
-  private static final BloomType BLOOM_TYPES[] =
-    { BloomType.ROW, BloomType.ROW, BloomType.ROWCOL, BloomType.ROWCOL, BloomType.ROW,
-      BloomType.ROWCOL, BloomType.ROWCOL, BloomType.ROWCOL, BloomType.ROW };
+  private static final int NUM_TESTS = 11;
+  private static final BloomType BLOOM_TYPES[] = { BloomType.ROW, BloomType.ROW, BloomType.ROWCOL,
+    BloomType.ROWCOL, BloomType.ROW, BloomType.ROWCOL, BloomType.ROWCOL, BloomType.ROWCOL,
+    BloomType.ROW, BloomType.ROW_BLOCKED, BloomType.ROW_BLOCKED };
 
   private static final int NUM_KV[];
   static {
     final int N = 10000; // Only used in initialization.
-    NUM_KV = new int[] { 21870, N, N, N, N, 1000, N, 7500, 7500 };
+    NUM_KV = new int[] { 21870, N, N, N, N, 1000, N, 7500, 7500, N, 7500 };
     assert NUM_KV.length == NUM_TESTS;
   }
 
   private static final int BLOCK_SIZES[];
   static {
     final int blkSize = 65536;
-    BLOCK_SIZES = new int[] { 512, 1000, blkSize, blkSize, blkSize, 128, 300, blkSize, blkSize };
+    BLOCK_SIZES =
+      new int[] { 512, 1000, blkSize, blkSize, blkSize, 128, 300, blkSize, blkSize, 1000, blkSize };
     assert BLOCK_SIZES.length == NUM_TESTS;
   }
 
@@ -98,13 +99,13 @@ public class TestCompoundBloomFilter {
    * oversized chunk and the observed false positive rate will be too low.
    */
   private static final int BLOOM_BLOCK_SIZES[] =
-    { 1000, 4096, 4096, 4096, 8192, 128, 1024, 600, 600 };
+    { 1000, 4096, 4096, 4096, 8192, 128, 1024, 600, 600, 4096, 1024 };
   static {
     assert BLOOM_BLOCK_SIZES.length == NUM_TESTS;
   }
 
   private static final double TARGET_ERROR_RATES[] =
-    { 0.025, 0.01, 0.015, 0.01, 0.03, 0.01, 0.01, 0.07, 0.07 };
+    { 0.025, 0.01, 0.015, 0.01, 0.03, 0.01, 0.01, 0.07, 0.07, 0.01, 0.03 };
   static {
     assert TARGET_ERROR_RATES.length == NUM_TESTS;
   }
@@ -308,7 +309,7 @@ public class TestCompoundBloomFilter {
       // Validate the key count in the Bloom filter.
       boolean newKey = true;
       if (prev != null) {
-        newKey = !(bt == BloomType.ROW
+        newKey = !(bt != BloomType.ROWCOL
           ? CellUtil.matchingRows(kv, prev)
           : CellUtil.matchingRowColumn(kv, prev));
       }
@@ -0,0 +1,476 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.Stoppable;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.Waiter;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Durability;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.coprocessor.ObserverContext;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessor;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.coprocessor.RegionObserver;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.NonceKey;
+import org.apache.hadoop.hbase.wal.AbstractFSWALProvider;
+import org.apache.hadoop.hbase.wal.WAL;
+import org.apache.hadoop.hbase.wal.WALEdit;
+import org.apache.hadoop.hbase.wal.WALFactory;
+import org.apache.hadoop.hbase.wal.WALKey;
+import org.apache.hadoop.hbase.wal.WALStreamReader;
+import org.junit.AfterClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests that {@link IncrementCombiner} gives every caller the result of its own increment, alone
+ * and as the increment path of a region.
+ */
+@Category({ RegionServerTests.class, MediumTests.class })
+public class TestIncrementCombiner {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestIncrementCombiner.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final byte[] ROW = Bytes.toBytes("row");
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] OTHER_FAMILY = Bytes.toBytes("o");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final byte[] BAD_QUALIFIER = Bytes.toBytes("bad");
+  private static final byte[] FAILING_QUALIFIER = Bytes.toBytes("failing");
+  private static final long NONCE_GROUP = 1L;
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    TEST_UTIL.cleanupTestDir();
+  }
+
+  /**
+   * Counters of a single row, rejecting the increments of {@link #BAD_QUALIFIER} before they are
+   * written, failing the ones of {@link #FAILING_QUALIFIER} after, and holding the first increment
+   * until released.
+   */
+  private static final class Counters implements IncrementCombiner.Applier {
+    private final Map<String, Long> values = new TreeMap<>();
+    private final CountDownLatch applying = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<List<NonceKey>> appliedNonceKeys = new ArrayList<>();
+    private int numApplied;
+
+    @Override
+    public Result apply(Increment increment, List<NonceKey> nonceKeys) throws IOException {
+      applying.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+      synchronized (this) {
+        numApplied++;
+        appliedNonceKeys.add(nonceKeys);
+        if (increment.has(FAMILY, BAD_QUALIFIER)) {
+          throw new NoSuchColumnFamilyException("bad increment");
+        }
+        if (increment.has(FAMILY, FAILING_QUALIFIER)) {
+          throw new IOException("failed after the write");
+        }
+        List<Cell> cells = new ArrayList<>();
+        for (Cell delta : increment.getFamilyCellMap().get(FAMILY)) {
+          byte[] qualifier = CellUtil.cloneQualifier(delta);
+          long value = values.merge(Bytes.toString(qualifier),
+            Bytes.toLong(CellUtil.cloneValue(delta)), Long::sum);
+          cells.add(new KeyValue(ROW, FAMILY, qualifier, 1L, Bytes.toBytes(value)));
+        }
+        return increment.isReturnResults() ? Result.create(cells) : Result.EMPTY_RESULT;
+      }
+    }
+  }
+
+  @Test
+  public void testCombinedResults() throws Exception {
+    Counters counters = new Counters();
+    IncrementCombiner combiner = new IncrementCombiner(counters, 100);
+    int numIncrements = 20;
+    ExecutorService executor = Executors.newFixedThreadPool(numIncrements);
+    try {
+      List<Future<Result>> futures = new ArrayList<>();
+      futures.add(executor
+        .submit(() -> combiner.increment(increment(QUALIFIER, 1), new NonceKey(NONCE_GROUP, 0))));
+      counters.applying.await();
+      // queue up the others behind the first increment, one of them not asking for results and
+      // another one without a nonce
+      List<NonceKey> nonceKeys = new ArrayList<>();
+      for (int i = 1; i < numIncrements; i++) {
+        Increment increment = increment(QUALIFIER, 1).addColumn(FAMILY, Bytes.toBytes("i"), i);
+        increment.setReturnResults(i != 1);
+        NonceKey nonceKey = i == 2 ? null : new NonceKey(NONCE_GROUP, i);
+        if (nonceKey != null) {
+          nonceKeys.add(nonceKey);
+        }
+        futures.add(executor.submit(() -> combiner.increment(increment, nonceKey)));
+      }
+      Waiter.waitFor(TEST_UTIL.getConfiguration(), 10000,
+        () -> combiner.getQueueLength(ROW) == numIncrements - 1);
+      counters.release.countDown();
+
+      Set<Long> seen = new HashSet<>();
+      for (int i = 0; i < numIncrements; i++) {
+        Result result = futures.get(i).get();
+        if (i == 1) {
+          assertTrue(result.isEmpty());
+          continue;
+        }
+        long value = Bytes.toLong(result.getValue(FAMILY, QUALIFIER));
+        assertTrue(seen.add(value));
+        if (i > 1) {
+          assertEquals(2, result.size());
+          // the "i" column is incremented by i, with the increments applied in the queue order
+          // of the callers
+          assertNotNull(result.getValue(FAMILY, Bytes.toBytes("i")));
+        } else {
+          assertEquals(1, result.size());
+        }
+      }
+      // every caller saw a distinct value, as if the increments were applied one by one
+      assertEquals(numIncrements - 1, seen.size());
+      for (long value : seen) {
+        assertTrue(value >= 1 && value <= numIncrements);
+      }
+      assertEquals(numIncrements, (long) counters.values.get(Bytes.toString(QUALIFIER)));
+      // the first increment alone, then the others together
+      assertEquals(2, counters.numApplied);
+      assertEquals(1, combiner.getNumAppliedBatches());
+      assertEquals(numIncrements - 1, combiner.getNumCombinedIncrements());
+      assertEquals(0, combiner.getQueueLength(ROW));
+      // the batch is written with the nonces of its increments
+      assertEquals(Arrays.asList(new NonceKey(NONCE_GROUP, 0)), counters.appliedNonceKeys.get(0));
+      assertEquals(nonceKeys.size(), counters.appliedNonceKeys.get(1).size());
+      assertEquals(new HashSet<>(nonceKeys), new HashSet<>(counters.appliedNonceKeys.get(1)));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFailedBatchIsAppliedOneByOne() throws Exception {
+    Counters counters = new Counters();
+    IncrementCombiner combiner = new IncrementCombiner(counters, 100);
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      Future<Result> first =
+        executor.submit(() -> combiner.increment(increment(QUALIFIER, 1), null));
+      counters.applying.await();
+      Future<Result> bad =
+        executor.submit(() -> combiner.increment(increment(BAD_QUALIFIER, 1), null));
+      Waiter.waitFor(TEST_UTIL.getConfiguration(), 10000, () -> combiner.getQueueLength(ROW) == 1);
+      Future<Result> good =
+        executor.submit(() -> combiner.increment(increment(QUALIFIER, 2), null));
+      Waiter.waitFor(TEST_UTIL.getConfiguration(), 10000, () -> combiner.getQueueLength(ROW) == 2);
+      counters.release.countDown();
+
+      assertEquals(1L, Bytes.toLong(first.get().getValue(FAMILY, QUALIFIER)));
+      assertEquals(3L, Bytes.toLong(good.get().getValue(FAMILY, QUALIFIER)));
+      try {
+        bad.get();
+        fail("the increment of the bad qualifier should fail");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof DoNotRetryIOException);
+      }
+      // the first alone, the failed batch, then its two increments one by one
+      assertEquals(4, counters.numApplied);
+      assertEquals(0, combiner.getNumAppliedBatches());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFailedWriteFailsTheBatch() throws Exception {
+    Counters counters = new Counters();
+    IncrementCombiner combiner = new IncrementCombiner(counters, 100);
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      Future<Result> first =
+        executor.submit(() -> combiner.increment(increment(QUALIFIER, 1), null));
+      counters.applying.await();
+      Future<Result> failing =
+        executor.submit(() -> combiner.increment(increment(FAILING_QUALIFIER, 1), null));
+      Waiter.waitFor(TEST_UTIL.getConfiguration(), 10000, () -> combiner.getQueueLength(ROW) == 1);
+      Future<Result> good =
+        executor.submit(() -> combiner.increment(increment(QUALIFIER, 2), null));
+      Waiter.waitFor(TEST_UTIL.getConfiguration(), 10000, () -> combiner.getQueueLength(ROW) == 2);
+      counters.release.countDown();
+
+      assertEquals(1L, Bytes.toLong(first.get().getValue(FAMILY, QUALIFIER)));
+      // the batch may have been written, so neither increment is applied again
+      for (Future<Result> future : Arrays.asList(failing, good)) {
+        try {
+          future.get();
+          fail("the increments of the failed batch should fail");
+        } catch (ExecutionException e) {
+          assertEquals("failed after the write", e.getCause().getMessage());
+        }
+      }
+      assertEquals(2, counters.numApplied);
+      assertEquals(0, combiner.getQueueLength(ROW));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCanCombine() throws Exception {
+    assertTrue(IncrementCombiner.canCombine(increment(QUALIFIER, 1)));
+    assertFalse(IncrementCombiner.canCombine(new Increment(ROW)));
+    assertFalse(IncrementCombiner.canCombine(increment(QUALIFIER, 1).setTimeRange(0, 10)));
+    assertFalse(IncrementCombiner.canCombine(increment(QUALIFIER, 1).setTTL(1000)));
+    assertFalse(
+      IncrementCombiner.canCombine(increment(QUALIFIER, 1).setDurability(Durability.SKIP_WAL)));
+    assertFalse(IncrementCombiner
+      .canCombine(increment(QUALIFIER, 1).setAttribute("attribute", Bytes.toBytes(1))));
+  }
+
+  @Test
+  public void testRegionIncrements() throws Exception {
+    TableDescriptor desc = TableDescriptorBuilder.newBuilder(TableName.valueOf("combined"))
+      .setColumnFamily(ColumnFamilyDescriptorBuilder.newBuilder(FAMILY)
+        .setConfiguration(HRegion.INCREMENT_COMBINING_KEY, "true").build())
+      .setColumnFamily(ColumnFamilyDescriptorBuilder.of(OTHER_FAMILY)).build();
+    HRegion region = TEST_UTIL.createLocalHRegion(desc, null, null);
+    int numThreads = 8;
+    int numIncrements = 200;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      assertNotNull(region.getIncrementCombiner());
+      List<Future<List<Long>>> futures = new ArrayList<>();
+      for (int i = 0; i < numThreads; i++) {
+        futures.add(executor.submit(() -> {
+          List<Long> values = new ArrayList<>();
+          for (int j = 0; j < numIncrements; j++) {
+            Result result = region.increment(increment(QUALIFIER, 1));
+            values.add(Bytes.toLong(result.getValue(FAMILY, QUALIFIER)));
+          }
+          return values;
+        }));
+      }
+      Set<Long> seen = new HashSet<>();
+      for (Future<List<Long>> future : futures) {
+        for (long value : future.get()) {
+          assertTrue(seen.add(value));
+        }
+      }
+      long total = (long) numThreads * numIncrements;
+      assertEquals(total, seen.size());
+      assertEquals(total, Bytes.toLong(region.get(new Get(ROW)).getValue(FAMILY, QUALIFIER)));
+
+      // increments of families not combining go the regular way
+      Result result = region.increment(new Increment(ROW).addColumn(OTHER_FAMILY, QUALIFIER, 5));
+      assertEquals(5L, Bytes.toLong(result.getValue(OTHER_FAMILY, QUALIFIER)));
+      assertEquals(0, region.getIncrementCombiner().getQueueLength(ROW));
+    } finally {
+      executor.shutdownNow();
+      HBaseTestingUtil.closeRegionAndWAL(region);
+    }
+  }
+
+  @Test
+  public void testRegionIncrementsWithNonces() throws Exception {
+    ServerNonceManager nonceManager = new ServerNonceManager(TEST_UTIL.getConfiguration());
+    HRegion region = openRegion(TableName.valueOf("combinedWithNonces"), nonceManager, null);
+    int numThreads = 8;
+    int numIncrements = 100;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      assertNotNull(region.getIncrementCombiner());
+      List<Future<Long>> futures = new ArrayList<>();
+      for (int i = 0; i < numThreads; i++) {
+        long nonceGroup = i;
+        futures.add(executor.submit(() -> {
+          long value = 0;
+          for (int j = 0; j < numIncrements; j++) {
+            Result result = region.increment(increment(QUALIFIER, 1), nonceGroup, j + 1);
+            value = Bytes.toLong(result.getValue(FAMILY, QUALIFIER));
+          }
+          return value;
+        }));
+      }
+      for (Future<Long> future : futures) {
+        future.get();
+      }
+      long total = (long) numThreads * numIncrements;
+      assertEquals(total, Bytes.toLong(region.get(new Get(ROW)).getValue(FAMILY, QUALIFIER)));
+
+      // retries are not applied again, they read the value as of the batch of their increment
+      for (int i = 0; i < numThreads; i++) {
+        long value = futures.get(i).get();
+        Result result = region.increment(increment(QUALIFIER, 1), i, numIncrements);
+        long retried = Bytes.toLong(result.getValue(FAMILY, QUALIFIER));
+        assertTrue(retried >= value && retried <= total);
+      }
+      assertEquals(total, Bytes.toLong(region.get(new Get(ROW)).getValue(FAMILY, QUALIFIER)));
+
+      // and every nonce can be read back from the WAL, wherever the increment ended up
+      ServerNonceManager replayed = new ServerNonceManager(TEST_UTIL.getConfiguration());
+      Path walPath = AbstractFSWALProvider.getCurrentFileName(region.getWAL());
+      region.getWAL().rollWriter(true);
+      try (WALStreamReader reader = WALFactory.createStreamReader(TEST_UTIL.getTestFileSystem(),
+        walPath, TEST_UTIL.getConfiguration())) {
+        for (WAL.Entry entry; (entry = reader.next()) != null;) {
+          WALKey key = entry.getKey();
+          replayed.reportOperationFromWal(key.getNonceGroup(), key.getNonce(), key.getWriteTime());
+          IncrementCombiner.reportOperationsFromWal(replayed,
+            key.getExtendedAttribute(IncrementCombiner.NONCES_ATTRIBUTE), key.getWriteTime());
+        }
+      }
+      Stoppable stoppable = mock(Stoppable.class);
+      for (int i = 0; i < numThreads; i++) {
+        for (int j = 0; j < numIncrements; j++) {
+          assertFalse(replayed.startOperation(i, j + 1, stoppable));
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+      HBaseTestingUtil.closeRegionAndWAL(region);
+    }
+  }
+
+  @Test
+  public void testCombiningWithCoprocessors() throws Exception {
+    HRegion region = openRegion(TableName.valueOf("getObserver"), null, GetObserver.class);
+    try {
+      assertNotNull(region.getIncrementCombiner());
+    } finally {
+      HBaseTestingUtil.closeRegionAndWAL(region);
+    }
+    region = openRegion(TableName.valueOf("incrementObserver"), null, IncrementObserver.class);
+    try {
+      // the observer would see the combined increments only
+      assertNull(region.getIncrementCombiner());
+    } finally {
+      HBaseTestingUtil.closeRegionAndWAL(region);
+    }
+  }
+
+  /** Observes gets only, so increments can be combined */
+  public static class GetObserver implements RegionCoprocessor, RegionObserver {
+    @Override
+    public Optional<RegionObserver> getRegionObserver() {
+      return Optional.of(this);
+    }
+
+    @Override
+    public void preGetOp(ObserverContext<? extends RegionCoprocessorEnvironment> c, Get get,
+      List<Cell> result) {
+    }
+  }
+
+  /** Observes increments, so they must not be combined */
+  public static class IncrementObserver extends GetObserver {
+    @Override
+    public Result preIncrement(ObserverContext<? extends RegionCoprocessorEnvironment> c,
+      Increment increment, WALEdit edit) {
+      return null;
+    }
+  }
+
+  /**
+   * Opens a region combining the increments of {@link #FAMILY}, hosted by a region server with the
+   * nonce manager.
+   */
+  private static HRegion openRegion(TableName tableName, ServerNonceManager nonceManager,
+    Class<?> coprocessor) throws IOException {
+    TableDescriptorBuilder builder =
+      TableDescriptorBuilder.newBuilder(tableName).setColumnFamily(ColumnFamilyDescriptorBuilder
+        .newBuilder(FAMILY).setConfiguration(HRegion.INCREMENT_COMBINING_KEY, "true").build());
+    if (coprocessor != null) {
+      builder.setCoprocessor(coprocessor.getName());
+    }
+    TableDescriptor desc = builder.build();
+    RegionInfo info = RegionInfoBuilder.newBuilder(tableName).build();
+    Configuration conf = TEST_UTIL.getConfiguration();
+    RegionServerServices rss = mock(RegionServerServices.class);
+    when(rss.getServerName()).thenReturn(ServerName.valueOf("localhost", 1000, 1000));
+    when(rss.getConfiguration()).thenReturn(conf);
+    when(rss.getRegionServerAccounting()).thenReturn(new RegionServerAccounting(conf));
+    when(rss.getNonceManager()).thenReturn(nonceManager);
+    Path rootDir = TEST_UTIL.getDataTestDir(tableName.getNameAsString());
+    WAL wal = HBaseTestingUtil.createWal(conf, rootDir, info);
+    return HRegion.createHRegion(info, rootDir, conf, desc, wal, true, rss);
+  }
+
+  @Test
+  public void testNotCombiningByDefault() throws Exception {
+    TableDescriptor desc = TableDescriptorBuilder.newBuilder(TableName.valueOf("notCombined"))
+      .setColumnFamily(ColumnFamilyDescriptorBuilder.of(FAMILY)).build();
+    HRegion region = TEST_UTIL.createLocalHRegion(desc, null, null);
+    try {
+      assertNull(region.getIncrementCombiner());
+    } finally {
+      HBaseTestingUtil.closeRegionAndWAL(region);
+    }
+  }
+
+  private static Increment increment(byte[] qualifier, long amount) {
+    return new Increment(ROW).addColumn(FAMILY, qualifier, amount);
+  }
+}
@@ -37,14 +37,25 @@ import org.apache.hadoop.hbase.util.CollectionBackedScanner;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 
 @Category({ RegionServerTests.class, SmallTests.class })
+@RunWith(Parameterized.class)
 public class TestKeyValueHeap {
 
   @ClassRule
   public static final HBaseClassTestRule CLASS_RULE =
     HBaseClassTestRule.forClass(TestKeyValueHeap.class);
 
+  @Parameterized.Parameters(name = "loserTree={0}")
+  public static Object[] data() {
+    return new Object[] { false, true };
+  }
+
+  @Parameterized.Parameter
+  public boolean loserTree;
+
   private byte[] row1 = Bytes.toBytes("row1");
   private byte[] fam1 = Bytes.toBytes("fam1");
   private byte[] col1 = Bytes.toBytes("col1");
@@ -84,7 +95,7 @@ public class TestKeyValueHeap {
   public List<Cell> assertCells(List<Cell> expected, List<KeyValueScanner> scanners)
     throws IOException {
     // Creating KeyValueHeap
-    try (KeyValueHeap kvh = new KeyValueHeap(scanners, CellComparatorImpl.COMPARATOR)) {
+    try (KeyValueHeap kvh = new KeyValueHeap(scanners, CellComparatorImpl.COMPARATOR, loserTree)) {
       List<Cell> actual = new ArrayList<>();
       while (kvh.peek() != null) {
         actual.add(kvh.next());
@@ -121,7 +132,7 @@ public class TestKeyValueHeap {
     List<Cell> expected = Arrays.asList(kv211);
 
     // Creating KeyValueHeap
-    try (KeyValueHeap kvh = new KeyValueHeap(scanners, CellComparatorImpl.COMPARATOR)) {
+    try (KeyValueHeap kvh = new KeyValueHeap(scanners, CellComparatorImpl.COMPARATOR, loserTree)) {
       ExtendedCell seekKv = new KeyValue(row2, fam1, null, null);
       kvh.seek(seekKv);
 
@@ -140,7 +151,7 @@ public class TestKeyValueHeap {
     scanners.add(s4);
 
     // Creating KeyValueHeap
-    try (KeyValueHeap kvh = new KeyValueHeap(scanners, CellComparatorImpl.COMPARATOR)) {
+    try (KeyValueHeap kvh = new KeyValueHeap(scanners, CellComparatorImpl.COMPARATOR, loserTree)) {
       for (;;) {
         if (kvh.next() == null) {
           break;
@@ -173,7 +184,7 @@ public class TestKeyValueHeap {
     List<KeyValueScanner> scanners = new ArrayList<>(Arrays.asList(s1, s2, s3, s4));
 
     // Creating KeyValueHeap
-    try (KeyValueHeap kvh = new KeyValueHeap(scanners, CellComparatorImpl.COMPARATOR)) {
+    try (KeyValueHeap kvh = new KeyValueHeap(scanners, CellComparatorImpl.COMPARATOR, loserTree)) {
       for (KeyValueScanner scanner : scanners) {
         ((SeekTestScanner) scanner).setRealSeekDone(false);
       }
@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparatorImpl;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.CollectionBackedScanner;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests {@link KeyValueScannerLoserTree} against {@link PriorityQueue}, on its own and as the heap
+ * of {@link KeyValueHeap} and {@link ReversedKeyValueHeap}.
+ */
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestKeyValueScannerLoserTree {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestKeyValueScannerLoserTree.class);
+
+  private static final Logger LOG = LoggerFactory.getLogger(TestKeyValueScannerLoserTree.class);
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final int NUM_ROWS = 500;
+  private static final int NUM_QUALIFIERS = 4;
+
+  /** Counts the cell comparisons done by the heaps. */
+  private static final class CountingComparator extends CellComparatorImpl {
+    private long count;
+
+    @Override
+    public int compare(Cell left, Cell right, boolean ignoreSequenceid) {
+      count++;
+      return super.compare(left, right, ignoreSequenceid);
+    }
+
+    @Override
+    public int compareRows(Cell left, Cell right) {
+      count++;
+      return super.compareRows(left, right);
+    }
+  }
+
+  /** A sorted in memory scanner which can also go backwards, like a store file scanner. */
+  private static final class ArrayScanner extends NonLazyKeyValueScanner {
+    private final List<ExtendedCell> cells;
+    private final long order;
+    private int index;
+
+    ArrayScanner(List<ExtendedCell> cells, long order) {
+      this.cells = cells;
+      this.order = order;
+    }
+
+    @Override
+    public ExtendedCell peek() {
+      return index < cells.size() ? cells.get(index) : null;
+    }
+
+    @Override
+    public ExtendedCell next() {
+      ExtendedCell cell = peek();
+      index++;
+      return cell;
+    }
+
+    @Override
+    public boolean seek(ExtendedCell key) {
+      index = 0;
+      return reseek(key);
+    }
+
+    @Override
+    public boolean reseek(ExtendedCell key) {
+      while (index < cells.size() && CellComparatorImpl.COMPARATOR.compare(peek(), key) < 0) {
+        index++;
+      }
+      return peek() != null;
+    }
+
+    @Override
+    public long getScannerOrder() {
+      return order;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public boolean seekToPreviousRow(ExtendedCell key) {
+      int i = cells.size() - 1;
+      while (i >= 0 && CellComparatorImpl.COMPARATOR.compareRows(cells.get(i), key) >= 0) {
+        i--;
+      }
+      if (i < 0) {
+        index = cells.size();
+        return false;
+      }
+      while (i > 0 && CellUtil.matchingRows(cells.get(i - 1), cells.get(i))) {
+        i--;
+      }
+      index = i;
+      return true;
+    }
+
+    @Override
+    public boolean backwardSeek(ExtendedCell key) {
+      if (seek(key) && CellUtil.matchingRows(peek(), key)) {
+        return true;
+      }
+      return seekToPreviousRow(key);
+    }
+
+    @Override
+    public boolean seekToLastRow() {
+      if (cells.isEmpty()) {
+        return false;
+      }
+      index = cells.size() - 1;
+      while (index > 0 && CellUtil.matchingRows(cells.get(index - 1), cells.get(index))) {
+        index--;
+      }
+      return true;
+    }
+  }
+
+  private static KeyValue keyValue(int row, int qualifier) {
+    return new KeyValue(Bytes.toBytes(String.format("row-%05d", row)), FAMILY,
+      Bytes.toBytes("q" + qualifier), 1L, Bytes.toBytes(row));
+  }
+
+  private static List<ExtendedCell> allCells() {
+    List<ExtendedCell> cells = new ArrayList<>();
+    for (int row = 0; row < NUM_ROWS; row++) {
+      for (int q = 0; q < NUM_QUALIFIERS; q++) {
+        cells.add(keyValue(row, q));
+      }
+    }
+    return cells;
+  }
+
+  /** Deals the sorted cells at random to the given number of sorted inputs. */
+  private static List<List<ExtendedCell>> deal(List<ExtendedCell> cells, int numInputs, long seed) {
+    Random rand = new Random(seed);
+    List<List<ExtendedCell>> inputs = new ArrayList<>(numInputs);
+    for (int i = 0; i < numInputs; i++) {
+      inputs.add(new ArrayList<>());
+    }
+    for (ExtendedCell cell : cells) {
+      inputs.get(rand.nextInt(numInputs)).add(cell);
+    }
+    return inputs;
+  }
+
+  private static List<KeyValueScanner> scanners(List<List<ExtendedCell>> inputs) {
+    List<KeyValueScanner> scanners = new ArrayList<>(inputs.size());
+    for (int i = 0; i < inputs.size(); i++) {
+      scanners.add(new ArrayScanner(inputs.get(i), i));
+    }
+    return scanners;
+  }
+
+  @Test
+  public void testSameOrderAsPriorityQueue() {
+    KeyValueHeap.KVScannerComparator comparator =
+      new KeyValueHeap.KVScannerComparator(CellComparatorImpl.COMPARATOR);
+    Random rand = new Random(42);
+    int capacity = 13;
+    List<KeyValueScanner> out = new ArrayList<>();
+    for (int i = 0; i < capacity; i++) {
+      // Scanners 2i and 2i + 1 share a cell so the scanner order has to break the tie
+      out.add(new CollectionBackedScanner(CellComparatorImpl.COMPARATOR,
+        keyValue(rand.nextInt(capacity / 2 + 1), 0)) {
+        private final long order = rand.nextLong();
+
+        @Override
+        public long getScannerOrder() {
+          return order;
+        }
+      });
+    }
+    PriorityQueue<KeyValueScanner> queue = new PriorityQueue<>(capacity, comparator);
+    KeyValueScannerLoserTree tree = new KeyValueScannerLoserTree(capacity, comparator);
+    for (int i = 0; i < 3; i++) {
+      KeyValueScanner scanner = out.remove(out.size() - 1);
+      queue.add(scanner);
+      tree.add(scanner);
+    }
+    for (int op = 0; op < 10000; op++) {
+      int choice = rand.nextInt(3);
+      if (choice == 0 && !out.isEmpty()) {
+        KeyValueScanner scanner = out.remove(rand.nextInt(out.size()));
+        queue.add(scanner);
+        tree.add(scanner);
+      } else if (choice == 1 && !out.isEmpty()) {
+        KeyValueScanner scanner = out.remove(rand.nextInt(out.size()));
+        queue.add(scanner);
+        KeyValueScanner top = queue.poll();
+        assertSame(top, tree.addAndPoll(scanner));
+        out.add(top);
+      } else {
+        KeyValueScanner top = queue.poll();
+        assertSame(top, tree.poll());
+        if (top != null) {
+          out.add(top);
+        }
+      }
+      assertEquals(queue.size(), tree.size());
+      assertSame(queue.peek(), tree.peek());
+      assertEquals(new HashSet<>(queue), new HashSet<>(tree));
+    }
+    tree.clear();
+    assertEquals(0, tree.size());
+    assertNull(tree.poll());
+    assertNull(tree.peek());
+  }
+
+  @Test
+  public void testMerge() throws IOException {
+    List<ExtendedCell> expected = allCells();
+    for (int numScanners : new int[] { 1, 2, 5, 32 }) {
+      List<List<ExtendedCell>> inputs = deal(expected, numScanners, numScanners);
+      long[] comparisons = new long[2];
+      for (boolean loserTree : new boolean[] { false, true }) {
+        CountingComparator comparator = new CountingComparator();
+        List<ExtendedCell> actual = new ArrayList<>();
+        try (KeyValueHeap heap = new KeyValueHeap(scanners(inputs), comparator, loserTree)) {
+          ExtendedCell cell;
+          while ((cell = heap.next()) != null) {
+            actual.add(cell);
+          }
+        }
+        assertEquals(expected, actual);
+        comparisons[loserTree ? 1 : 0] = comparator.count;
+
+        // reseek to every 37th cell
+        try (KeyValueHeap heap = new KeyValueHeap(scanners(inputs), comparator, loserTree)) {
+          for (int i = 0; i < expected.size(); i += 37) {
+            assertTrue(heap.reseek(expected.get(i)));
+            assertSame(expected.get(i), heap.peek());
+          }
+        }
+      }
+      LOG.info(
+        "Merging {} scanners took {} comparisons with a priority queue, {} with a loser tree",
+        numScanners, comparisons[0], comparisons[1]);
+      if (numScanners >= 5) {
+        assertTrue(comparisons[1] < comparisons[0]);
+      }
+    }
+  }
+
+  @Test
+  public void testReversedMerge() throws IOException {
+    List<ExtendedCell> cells = allCells();
+    // rows backwards, the cells of a row forwards
+    List<ExtendedCell> expected = new ArrayList<>();
+    List<ExtendedCell> firstOfRows = new ArrayList<>();
+    for (int row = NUM_ROWS - 1; row >= 0; row--) {
+      expected.addAll(cells.subList(row * NUM_QUALIFIERS, (row + 1) * NUM_QUALIFIERS));
+      firstOfRows.add(cells.get(row * NUM_QUALIFIERS));
+    }
+    for (int numScanners : new int[] { 1, 2, 5, 32 }) {
+      List<List<ExtendedCell>> inputs = deal(cells, numScanners, numScanners);
+      for (boolean loserTree : new boolean[] { false, true }) {
+        List<ExtendedCell> actual = new ArrayList<>();
+        try (ReversedKeyValueHeap heap = newReversedHeap(inputs, loserTree)) {
+          ExtendedCell cell;
+          while ((cell = heap.next()) != null) {
+            actual.add(cell);
+          }
+        }
+        assertEquals("loserTree=" + loserTree, expected, actual);
+
+        // read the first cell of each row only
+        actual.clear();
+        try (ReversedKeyValueHeap heap = newReversedHeap(inputs, loserTree)) {
+          ExtendedCell cell;
+          while ((cell = heap.peek()) != null) {
+            actual.add(cell);
+            heap.seekToPreviousRow(cell);
+          }
+        }
+        assertEquals("loserTree=" + loserTree, firstOfRows, actual);
+
+        // jump to the second cell of every 10th row
+        try (ReversedKeyValueHeap heap = newReversedHeap(inputs, loserTree)) {
+          for (int row = NUM_ROWS - 1; row >= 0; row -= 10) {
+            ExtendedCell key = cells.get(row * NUM_QUALIFIERS + 1);
+            assertTrue(heap.backwardSeek(key));
+            assertSame(key, heap.peek());
+          }
+        }
+      }
+    }
+  }
+
+  private static ReversedKeyValueHeap newReversedHeap(List<List<ExtendedCell>> inputs,
+    boolean loserTree) throws IOException {
+    List<KeyValueScanner> scanners = scanners(inputs);
+    for (KeyValueScanner scanner : scanners) {
+      scanner.seekToLastRow();
+    }
+    Collections.shuffle(scanners, new Random(inputs.size()));
+    return new ReversedKeyValueHeap(scanners, CellComparatorImpl.COMPARATOR, loserTree);
+  }
+}
@@ -71,6 +71,10 @@ public class TestMetricsRegion {
     HELPER.assertCounter(
       "namespace_TestNS_table_MetricsRegionWrapperStub_region_DEADBEEF001_metric_replicaid", 0,
       agg);
+    HELPER.assertCounter("namespace_TestNS_table_MetricsRegionWrapperStub_region_DEADBEEF001"
+      + "_store_info_metric_memstoreCompactedCellsCount", 109, agg);
+    HELPER.assertCounter("namespace_TestNS_table_MetricsRegionWrapperStub_region_DEADBEEF001"
+      + "_store_info_metric_memstoreCompactionTime", 110, agg);
     mr.close();
 
     // test region with replica id > 0
@@ -18,7 +18,11 @@
 package org.apache.hadoop.hbase.regionserver;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.hadoop.hbase.HBaseClassTestRule;
 import org.apache.hadoop.hbase.testclassification.RegionServerTests;
 import org.apache.hadoop.hbase.testclassification.SmallTests;
@@ -49,4 +53,43 @@ public class TestMultiVersionConcurrencyControlBasic {
     mvcc.complete(writeEntry);
     assertEquals(readPoint + 2, mvcc.getWritePoint());
   }
+
+  @Test
+  public void testOutOfOrderCompletion() {
+    MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl();
+    List<Long> completed = new ArrayList<>();
+    MultiVersionConcurrencyControl.WriteEntry[] entries =
+      new MultiVersionConcurrencyControl.WriteEntry[3];
+    for (int i = 0; i < entries.length; i++) {
+      MultiVersionConcurrencyControl.WriteEntry e = mvcc.begin();
+      e.attachCompletionAction(() -> completed.add(e.getWriteNumber()));
+      entries[i] = e;
+    }
+    assertEquals(3, mvcc.getWritePoint());
+    // the later writes are not visible before the first one completes
+    assertFalse(mvcc.complete(entries[2]));
+    assertFalse(mvcc.complete(entries[1]));
+    assertEquals(0, mvcc.getReadPoint());
+    assertTrue(completed.isEmpty());
+    assertTrue(mvcc.complete(entries[0]));
+    assertEquals(3, mvcc.getReadPoint());
+    // the completion actions run in write number order
+    assertEquals(List.of(1L, 2L, 3L), completed);
+  }
+
+  @Test
+  public void testAdvanceTo() {
+    MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl(10);
+    assertEquals(10, mvcc.getReadPoint());
+    assertEquals(10, mvcc.getWritePoint());
+    mvcc.advanceTo(20);
+    assertEquals(20, mvcc.getReadPoint());
+    // never moves backwards
+    mvcc.advanceTo(15);
+    assertEquals(20, mvcc.getWritePoint());
+    MultiVersionConcurrencyControl.WriteEntry e = mvcc.begin();
+    assertEquals(21, e.getWriteNumber());
+    mvcc.completeAndWait(e);
+    assertEquals(21, mvcc.getReadPoint());
+  }
 }
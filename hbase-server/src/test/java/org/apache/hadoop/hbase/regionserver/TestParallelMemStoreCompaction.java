@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.MemoryCompactionPolicy;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptor;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.io.util.MemorySizeUtil;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.wal.WAL;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Compares the in-memory compactions and merges of a {@link CompactingMemStore} split into key
+ * ranges compacted in parallel with the ones running on a single thread.
+ */
+@Category({ RegionServerTests.class, MediumTests.class })
+public class TestParallelMemStoreCompaction {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestParallelMemStoreCompaction.class);
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final int NUM_ROWS = 2000;
+  private static final int NUM_QUALIFIERS = 3;
+  private static final int PARALLELISM = 4;
+
+  private final HBaseTestingUtil hbaseUtility = new HBaseTestingUtil();
+  private Configuration conf;
+  private HRegion region;
+  private ColumnFamilyDescriptor familyDescriptor;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = hbaseUtility.getConfiguration();
+    conf.setBoolean(MemStoreLAB.USEMSLAB_KEY, true);
+    long globalMemStoreLimit =
+      (long) (ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax()
+        * MemorySizeUtil.getGlobalMemStoreHeapPercent(conf, false));
+    ChunkCreator.initialize(MemStoreLAB.CHUNK_SIZE_DEFAULT, false, globalMemStoreLimit, 0.4f,
+      MemStoreLAB.POOL_INITIAL_SIZE_DEFAULT, null, MemStoreLAB.INDEX_CHUNK_SIZE_PERCENTAGE_DEFAULT);
+    familyDescriptor = ColumnFamilyDescriptorBuilder.of(FAMILY);
+    TableDescriptor tableDescriptor = TableDescriptorBuilder
+      .newBuilder(TableName.valueOf("parallel")).setColumnFamily(familyDescriptor).build();
+    RegionInfo info = RegionInfoBuilder.newBuilder(TableName.valueOf("parallel")).build();
+    WAL wal = HBaseTestingUtil.createWal(conf, hbaseUtility.getDataTestDir(), info);
+    region =
+      HRegion.createHRegion(info, hbaseUtility.getDataTestDir(), conf, tableDescriptor, wal, true);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    HBaseTestingUtil.closeRegionAndWAL(region);
+    hbaseUtility.cleanupTestDir();
+  }
+
+  @Test
+  public void testCompact() throws IOException {
+    // every in-memory flush compacts the whole pipeline
+    compareWithSingleThread(MemoryCompactionPolicy.EAGER);
+  }
+
+  @Test
+  public void testMerge() throws IOException {
+    // every in-memory flush merges the pipeline once it has two segments
+    conf.setInt(MemStoreCompactionStrategy.COMPACTING_MEMSTORE_THRESHOLD_KEY, 1);
+    compareWithSingleThread(MemoryCompactionPolicy.BASIC);
+  }
+
+  @Test
+  public void testKeyRanges() throws IOException {
+    CompactingMemStore memStore = createMemStore(MemoryCompactionPolicy.EAGER, PARALLELISM,
+      new HStore(region, familyDescriptor, conf, false));
+    addAndFlushInMemory(memStore, 0);
+    List<ImmutableSegment> segments = memStore.getImmutableSegments().getStoreSegments();
+    assertEquals(1, segments.size());
+
+    List<ExtendedCell> splitKeys =
+      ParallelMemStoreSegmentsIterator.getSplitKeys(segments, PARALLELISM);
+    assertEquals(PARALLELISM - 1, splitKeys.size());
+    for (int i = 1; i < splitKeys.size(); i++) {
+      assertTrue(CellComparator.getInstance().compare(splitKeys.get(i - 1), splitKeys.get(i)) < 0);
+    }
+    // more key ranges than rows, the ranges sharing a row are dropped
+    assertTrue(
+      ParallelMemStoreSegmentsIterator.getSplitKeys(segments, NUM_ROWS * NUM_QUALIFIERS).size()
+          < NUM_ROWS);
+
+    MemStoreSegmentsIterator iterator = new ParallelMemStoreSegmentsIterator(
+      RegionServicesForStores.getInMemoryCompactionPartitionPool(PARALLELISM), splitKeys, 100,
+      (startKey, stopKey) -> new MemStoreMergerSegmentsIterator(segments,
+        CellComparator.getInstance(), 100, startKey, stopKey));
+    try {
+      assertCellsEqual(toList(segments.get(0).iterator()), toList(iterator));
+    } finally {
+      iterator.close();
+    }
+  }
+
+  @Test
+  public void testIteratorsStayOpenUntilClose() throws IOException {
+    CompactingMemStore memStore = createMemStore(MemoryCompactionPolicy.EAGER, PARALLELISM,
+      new HStore(region, familyDescriptor, conf, false));
+    addAndFlushInMemory(memStore, 0);
+    List<ImmutableSegment> segments = memStore.getImmutableSegments().getStoreSegments();
+    List<ExtendedCell> splitKeys =
+      ParallelMemStoreSegmentsIterator.getSplitKeys(segments, PARALLELISM);
+    AtomicInteger opened = new AtomicInteger();
+    AtomicInteger closed = new AtomicInteger();
+    ParallelMemStoreSegmentsIterator.PartitionIteratorFactory factory = (startKey, stopKey) -> {
+      MemStoreSegmentsIterator delegate = new MemStoreMergerSegmentsIterator(segments,
+        CellComparator.getInstance(), 10, startKey, stopKey);
+      opened.incrementAndGet();
+      return new MemStoreSegmentsIterator(10) {
+        @Override
+        public boolean hasNext() {
+          return delegate.hasNext();
+        }
+
+        @Override
+        public ExtendedCell next() {
+          return delegate.next();
+        }
+
+        @Override
+        public void close() {
+          delegate.close();
+          closed.incrementAndGet();
+        }
+      };
+    };
+
+    // the returned cells point into the chunks the iterators hold, even the drained ones
+    MemStoreSegmentsIterator iterator = new ParallelMemStoreSegmentsIterator(
+      RegionServicesForStores.getInMemoryCompactionPartitionPool(PARALLELISM), splitKeys, 10,
+      factory);
+    assertCellsEqual(toList(segments.get(0).iterator()), toList(iterator));
+    assertEquals(splitKeys.size() + 1, opened.get());
+    assertEquals(0, closed.get());
+    iterator.close();
+    assertEquals(opened.get(), closed.get());
+
+    // closing early stops the key ranges still waiting for the consumer to make room
+    opened.set(0);
+    closed.set(0);
+    iterator = new ParallelMemStoreSegmentsIterator(
+      RegionServicesForStores.getInMemoryCompactionPartitionPool(PARALLELISM), splitKeys, 10,
+      factory);
+    for (int i = 0; i < 5; i++) {
+      assertTrue(iterator.hasNext());
+      iterator.next();
+    }
+    iterator.close();
+    assertFalse(iterator.hasNext());
+    assertEquals(opened.get(), closed.get());
+  }
+
+  private void compareWithSingleThread(MemoryCompactionPolicy policy) throws IOException {
+    HStore singleThreadStore = new HStore(region, familyDescriptor, conf, false);
+    HStore parallelStore = new HStore(region, familyDescriptor, conf, false);
+    CompactingMemStore singleThread = createMemStore(policy, 1, singleThreadStore);
+    CompactingMemStore parallel = createMemStore(policy, PARALLELISM, parallelStore);
+    for (int batch = 0; batch < 3; batch++) {
+      addAndFlushInMemory(singleThread, batch);
+      addAndFlushInMemory(parallel, batch);
+      assertCellsEqual(getCells(singleThread), getCells(parallel));
+    }
+    assertEquals(1, parallel.getImmutableSegments().getNumOfSegments());
+    assertEquals(singleThreadStore.getMemStoreCompactedCellsCount(),
+      parallelStore.getMemStoreCompactedCellsCount());
+    assertTrue(parallelStore.getMemStoreCompactedCellsCount() > 0);
+  }
+
+  private CompactingMemStore createMemStore(MemoryCompactionPolicy policy, int parallelism,
+    HStore store) throws IOException {
+    Configuration memStoreConf = new Configuration(conf);
+    memStoreConf.setInt(CompactingMemStore.IN_MEMORY_COMPACTION_PARALLELISM_KEY, parallelism);
+    memStoreConf.setInt(CompactingMemStore.IN_MEMORY_COMPACTION_PARTITION_MIN_CELLS_KEY, 100);
+    CompactingMemStore memStore = new CompactingMemStore(memStoreConf, CellComparator.getInstance(),
+      store, region.getRegionServicesForStores(), policy);
+    memStore.setIndexType(CompactingMemStore.IndexType.CHUNK_MAP);
+    return memStore;
+  }
+
+  /**
+   * Adds a new version of the cells of every row, and a delete marker for every tenth row of the
+   * batch, then pushes the active segment to the pipeline and compacts it.
+   */
+  private void addAndFlushInMemory(CompactingMemStore memStore, int batch) {
+    long seqId = batch * NUM_ROWS * (NUM_QUALIFIERS + 1L);
+    for (int i = 0; i < NUM_ROWS; i++) {
+      byte[] row = Bytes.toBytes(String.format("row-%05d", i));
+      for (int j = 0; j < NUM_QUALIFIERS; j++) {
+        KeyValue kv = new KeyValue(row, FAMILY, Bytes.toBytes("q" + j), batch + 1L,
+          Bytes.toBytes("value-" + batch + "-" + i));
+        kv.setSequenceId(++seqId);
+        memStore.add(kv, null);
+      }
+      if (i % 10 == batch) {
+        KeyValue delete =
+          new KeyValue(row, FAMILY, Bytes.toBytes("q0"), batch + 1L, KeyValue.Type.Delete);
+        delete.setSequenceId(++seqId);
+        memStore.add(delete, null);
+      }
+    }
+    memStore.flushInMemory();
+  }
+
+  private static List<ExtendedCell> getCells(CompactingMemStore memStore) {
+    List<ExtendedCell> cells = new ArrayList<>();
+    for (ImmutableSegment segment : memStore.getImmutableSegments().getStoreSegments()) {
+      cells.addAll(toList(segment.iterator()));
+    }
+    return cells;
+  }
+
+  private static List<ExtendedCell> toList(Iterator<ExtendedCell> iterator) {
+    List<ExtendedCell> cells = new ArrayList<>();
+    iterator.forEachRemaining(cells::add);
+    return cells;
+  }
+
+  private static void assertCellsEqual(List<ExtendedCell> expected, List<ExtendedCell> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertTrue("Cell #" + i, CellUtil.equals(expected.get(i), actual.get(i)));
+      assertTrue("Cell #" + i, CellUtil.matchingValue(expected.get(i), actual.get(i)));
+      assertEquals("Cell #" + i, expected.get(i).getSequenceId(), actual.get(i).getSequenceId());
+    }
+  }
+}
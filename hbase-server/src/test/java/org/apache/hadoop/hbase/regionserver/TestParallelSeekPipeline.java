@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.executor.ExecutorService;
+import org.apache.hadoop.hbase.executor.ExecutorType;
+import org.apache.hadoop.hbase.ipc.RpcCall;
+import org.apache.hadoop.hbase.ipc.RpcServer;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.AfterClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests that region scanners opened through a {@link ParallelSeekPipeline} read the same data as
+ * sequentially sought ones, and that the pipeline copes with failed seeks and a busy executor.
+ */
+@Category({ RegionServerTests.class, MediumTests.class })
+public class TestParallelSeekPipeline {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestParallelSeekPipeline.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final byte[][] FAMILIES =
+    { Bytes.toBytes("a"), Bytes.toBytes("b"), Bytes.toBytes("c") };
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final int NUM_ROWS = 50;
+  private static final int NUM_FLUSHES = 4;
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    TEST_UTIL.cleanupTestDir();
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row-%03d", i));
+  }
+
+  private static HRegion createRegion(String name, int concurrency) throws IOException {
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setInt(ParallelSeekPipeline.CONCURRENCY_KEY, concurrency);
+    TableDescriptorBuilder builder = TableDescriptorBuilder.newBuilder(TableName.valueOf(name));
+    for (byte[] family : FAMILIES) {
+      builder.setColumnFamily(ColumnFamilyDescriptorBuilder.of(family));
+    }
+    TableDescriptor htd = builder.build();
+    HRegion region =
+      HBaseTestingUtil.createRegionAndWAL(RegionInfoBuilder.newBuilder(htd.getTableName()).build(),
+        TEST_UTIL.getDataTestDir(name), conf, htd);
+    RegionServerServices rsServices = mock(RegionServerServices.class);
+    when(rsServices.getServerName()).thenReturn(ServerName.valueOf("localhost", 1000, 1000));
+    when(rsServices.getExecutorService()).thenReturn(new ExecutorService(name));
+    region.rsServices = rsServices;
+
+    // every row is in each store file of each family, overwritten or deleted by later files
+    for (int flush = 0; flush < NUM_FLUSHES; flush++) {
+      for (int i = 0; i < NUM_ROWS; i++) {
+        if (flush == NUM_FLUSHES - 1 && i % 5 == 0) {
+          region.delete(new Delete(row(i)).addFamily(FAMILIES[i % FAMILIES.length]));
+          continue;
+        }
+        Put put = new Put(row(i));
+        for (byte[] family : FAMILIES) {
+          put.addColumn(family, QUALIFIER, Bytes.toBytes(flush * 1000 + i));
+        }
+        region.put(put);
+      }
+      region.flush(true);
+    }
+    return region;
+  }
+
+  private static String toString(Cell cell) {
+    // timestamps and sequence ids differ between regions
+    return Bytes.toString(CellUtil.cloneRow(cell)) + "/"
+      + Bytes.toString(CellUtil.cloneFamily(cell)) + "=" + Bytes.toInt(CellUtil.cloneValue(cell));
+  }
+
+  private static List<String> read(HRegion region) throws IOException {
+    List<String> values = new ArrayList<>();
+    for (int i = 0; i < NUM_ROWS; i++) {
+      // no explicit columns, so the store files are not sought lazily
+      for (Cell cell : region.get(new Get(row(i))).rawCells()) {
+        values.add(toString(cell));
+      }
+    }
+    for (int start = 0; start < NUM_ROWS; start += 7) {
+      Scan scan = new Scan().withStartRow(row(start)).withStopRow(row(start + 10));
+      try (RegionScanner scanner = region.getScanner(scan)) {
+        List<Cell> cells = new ArrayList<>();
+        boolean more;
+        do {
+          more = scanner.next(cells);
+        } while (more);
+        for (Cell cell : cells) {
+          values.add(toString(cell));
+        }
+      }
+    }
+    return values;
+  }
+
+  @Test
+  public void testSameResults() throws IOException {
+    HRegion sequential = createRegion("testSequential", 0);
+    HRegion pipelined = createRegion("testPipelined", 4);
+    try {
+      assertNull(sequential.newSeekPipeline());
+      assertTrue(pipelined.newSeekPipeline() != null);
+      List<String> expected = read(sequential);
+      assertEquals(expected, read(pipelined));
+
+      Result result = pipelined.get(new Get(row(1)));
+      for (byte[] family : FAMILIES) {
+        assertEquals((NUM_FLUSHES - 1) * 1000 + 1, Bytes.toInt(result.getValue(family, QUALIFIER)));
+      }
+      assertTrue(pipelined.getRegionServerServices().getExecutorService()
+        .getExecutorThreadPool(ExecutorType.RS_PARALLEL_SEEK).getCompletedTaskCount() > 0);
+    } finally {
+      HBaseTestingUtil.closeRegionAndWAL(sequential);
+      HBaseTestingUtil.closeRegionAndWAL(pipelined);
+      sequential.getRegionServerServices().getExecutorService().shutdown();
+      pipelined.getRegionServerServices().getExecutorService().shutdown();
+    }
+  }
+
+  private static KeyValueScanner fileScanner() {
+    KeyValueScanner scanner = mock(KeyValueScanner.class);
+    when(scanner.isFileScanner()).thenReturn(true);
+    return scanner;
+  }
+
+  @Test
+  public void testRejectedHelpers() throws IOException {
+    ParallelSeekPipeline pipeline = new ParallelSeekPipeline(r -> {
+      throw new RejectedExecutionException();
+    }, 8);
+    KeyValueScanner memStoreScanner = mock(KeyValueScanner.class);
+    List<KeyValueScanner> scanners =
+      Arrays.asList(fileScanner(), memStoreScanner, fileScanner(), fileScanner());
+    ExtendedCell key = new KeyValue(row(0), FAMILIES[0], QUALIFIER);
+    StoreScanner storeScanner = mock(StoreScanner.class);
+    pipeline.startOpening();
+    // the memstore scanner is sought right away
+    pipeline.add(storeScanner, scanners, key);
+    verify(memStoreScanner).seek(key);
+    pipeline.stopOpening();
+
+    pipeline.seekAll();
+    for (KeyValueScanner scanner : scanners) {
+      verify(scanner).seek(key);
+    }
+    verify(storeScanner).finishPipelinedSeek();
+    assertEquals(1, pipeline.getNumStoreScanners());
+  }
+
+  @Test
+  public void testFailedSeek() throws IOException {
+    ParallelSeekPipeline pipeline = new ParallelSeekPipeline(Runnable::run, 2);
+    KeyValueScanner failing = fileScanner();
+    IOException error = new IOException("failed seek");
+    when(failing.seek(any())).thenThrow(error);
+    List<KeyValueScanner> scanners = Arrays.asList(failing, fileScanner(), fileScanner());
+    ExtendedCell key = new KeyValue(row(0), FAMILIES[0], QUALIFIER);
+    StoreScanner storeScanner = mock(StoreScanner.class);
+    pipeline.startOpening();
+    pipeline.add(storeScanner, scanners, key);
+    pipeline.stopOpening();
+    try {
+      pipeline.seekAll();
+      fail("the failed seek should fail the pipeline");
+    } catch (IOException e) {
+      assertSame(error, e);
+    }
+    // the seeks after the failed one are skipped
+    verify(scanners.get(1), never()).seek(key);
+    verify(storeScanner, times(0)).finishPipelinedSeek();
+  }
+
+  @Test
+  public void testHelpersRunInRpcCall() throws Exception {
+    // the helper runs to completion before the handler thread looks at the queue, so it takes
+    // all the seeks
+    ParallelSeekPipeline pipeline = new ParallelSeekPipeline(r -> {
+      Thread helper = new Thread(r);
+      helper.start();
+      try {
+        helper.join();
+      } catch (InterruptedException e) {
+        throw new RejectedExecutionException(e);
+      }
+    }, 2);
+    List<Thread> seekThreads = new ArrayList<>();
+    List<RpcCall> seekCalls = new ArrayList<>();
+    List<KeyValueScanner> scanners = Arrays.asList(fileScanner(), fileScanner());
+    for (KeyValueScanner scanner : scanners) {
+      when(scanner.seek(any())).thenAnswer(invocation -> {
+        synchronized (seekCalls) {
+          seekThreads.add(Thread.currentThread());
+          seekCalls.add(RpcServer.getCurrentCall().orElse(null));
+        }
+        return true;
+      });
+    }
+    ExtendedCell key = new KeyValue(row(0), FAMILIES[0], QUALIFIER);
+    RpcCall call = mock(RpcCall.class);
+    RpcServer.setCurrentCall(call);
+    try {
+      pipeline.startOpening();
+      pipeline.add(mock(StoreScanner.class), scanners, key);
+      pipeline.stopOpening();
+      pipeline.seekAll();
+    } finally {
+      RpcServer.unsetCurrentCall();
+    }
+    assertEquals(2, seekCalls.size());
+    for (int i = 0; i < seekCalls.size(); i++) {
+      assertNotSame(Thread.currentThread(), seekThreads.get(i));
+      assertSame(call, seekCalls.get(i));
+    }
+  }
+}
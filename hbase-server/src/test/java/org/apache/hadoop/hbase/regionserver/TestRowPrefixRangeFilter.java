@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestRowPrefixRangeFilter {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestRowPrefixRangeFilter.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final int NUM_HOSTS = 200;
+  private static final int NUM_METRICS = 20;
+
+  private static byte[] row(int host, int metric) {
+    return Bytes.toBytes(String.format("host-%04d/metric-%03d", host, metric));
+  }
+
+  private static Scan prefixScan(String prefix) {
+    return new Scan().setStartStopRowForPrefixScan(Bytes.toBytes(prefix));
+  }
+
+  private static RowPrefixRangeFilter write(Configuration conf) throws IOException {
+    RowPrefixRangeFilter.Writer writer = RowPrefixRangeFilter.createWriter(conf);
+    // only the even hosts
+    for (int host = 0; host < NUM_HOSTS; host += 2) {
+      for (int metric = 0; metric < NUM_METRICS; metric++) {
+        KeyValue kv = new KeyValue(row(host, metric), FAMILY, QUALIFIER, Bytes.toBytes(metric));
+        writer.append(kv);
+        // more cells of the same row
+        writer.append(new KeyValue(row(host, metric), FAMILY, FAMILY, Bytes.toBytes(metric)));
+      }
+    }
+    return RowPrefixRangeFilter.parseFrom(writer.toByteArray());
+  }
+
+  @Test
+  public void testRangePrefixLength() {
+    byte[] abc = Bytes.toBytes("abc");
+    assertEquals(0, RowPrefixRangeFilter.getRangePrefixLength(abc, new byte[0], false));
+    assertEquals(2, RowPrefixRangeFilter.getRangePrefixLength(abc, Bytes.toBytes("abz"), false));
+    // the stop row of a prefix scan
+    assertEquals(3, RowPrefixRangeFilter.getRangePrefixLength(abc, Bytes.toBytes("abd"), false));
+    assertEquals(3, RowPrefixRangeFilter.getRangePrefixLength(Bytes.toBytes("abc1"),
+      Bytes.toBytes("abd"), false));
+    // the stop row itself is read, and does not start with abc
+    assertEquals(2, RowPrefixRangeFilter.getRangePrefixLength(abc, Bytes.toBytes("abd"), true));
+    assertEquals(2,
+      RowPrefixRangeFilter.getRangePrefixLength(Bytes.toBytes("ab"), Bytes.toBytes("abd"), false));
+    assertEquals(2, RowPrefixRangeFilter.getRangePrefixLength(abc, Bytes.toBytes("abd0"), false));
+    // a prefix ending with 0xff
+    byte[] start = new byte[] { 'a', (byte) 0xff };
+    Scan scan = new Scan().setStartStopRowForPrefixScan(start);
+    assertEquals(1, RowPrefixRangeFilter.getRangePrefixLength(start, scan.getStopRow(), false));
+  }
+
+  @Test
+  public void testPassesScan() throws IOException {
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    assertNull(RowPrefixRangeFilter.createWriter(conf));
+    conf.set(RowPrefixRangeFilter.PREFIX_LENGTHS_KEY, "9, 5,0, 9");
+    RowPrefixRangeFilter filter = write(conf);
+    assertArrayEquals(new int[] { 5, 9 }, filter.getPrefixLengths());
+
+    int falsePositives = 0;
+    for (int host = 0; host < NUM_HOSTS; host++) {
+      String prefix = String.format("host-%04d", host);
+      boolean passes = filter.passesScan(prefixScan(prefix));
+      if (host % 2 == 0) {
+        assertTrue(prefix, passes);
+        assertTrue(filter.passesScan(prefixScan(prefix + "/metric-00")));
+        assertTrue(filter.passesScan(new Scan().withStartRow(row(host, 3))
+          .withStopRow(row(host, NUM_METRICS)).setReversed(false)));
+        assertTrue(filter.passesScan(new Scan().withStartRow(Bytes.toBytes(prefix + "/z"))
+          .withStopRow(Bytes.toBytes(prefix)).setReversed(true)));
+        assertTrue(filter
+          .passesScan(new Scan().withStartRow(row(host, 1), true).withStopRow(row(host, 1), true)));
+      } else if (passes) {
+        falsePositives++;
+      }
+    }
+    assertTrue("false positives: " + falsePositives, falsePositives < 5);
+    // prefixes shorter than the shortest length, and unbounded scans, can not be filtered
+    assertTrue(filter.passesScan(prefixScan("zzzz")));
+    assertTrue(filter.passesScan(new Scan().withStartRow(Bytes.toBytes("zzzzzzzz"))));
+    assertFalse(filter.passesScan(prefixScan("zzzzzzzz")));
+    assertFalse(filter.passesScan(new Scan().withStartRow(Bytes.toBytes("host-0001/metric-001"))
+      .withStopRow(Bytes.toBytes("host-0001/metric-002"))));
+  }
+
+  @Test
+  public void testDropsLengthsThatDoNotFit() throws IOException {
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.set(RowPrefixRangeFilter.PREFIX_LENGTHS_KEY, "9,20");
+    // enough for the hosts, not for all the rows
+    conf.setInt(RowPrefixRangeFilter.MAX_BYTE_SIZE_KEY, 256);
+    RowPrefixRangeFilter filter = write(conf);
+    assertArrayEquals(new int[] { 9 }, filter.getPrefixLengths());
+    assertTrue(
+      filter.passesScan(new Scan().withStartRow(row(2, 3), true).withStopRow(row(2, 3), true)));
+    assertFalse(filter.passesScan(prefixScan("host-0003/metric-001")));
+  }
+
+  @Test
+  public void testStoreFileScanner() throws IOException {
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.set(RowPrefixRangeFilter.PREFIX_LENGTHS_KEY, "9");
+    FileSystem fs = FileSystem.get(conf);
+    CacheConfig cacheConf = new CacheConfig(conf);
+    StoreFileWriter writer = new StoreFileWriter.Builder(conf, cacheConf, fs)
+      .withOutputDir(TEST_UTIL.getDataTestDir("testStoreFileScanner"))
+      .withFileContext(new HFileContextBuilder().withBlockSize(1024).build()).build();
+    for (int host = 0; host < NUM_HOSTS; host += 2) {
+      for (int metric = 0; metric < NUM_METRICS; metric++) {
+        writer.append(new KeyValue(row(host, metric), FAMILY, QUALIFIER, Bytes.toBytes(metric)));
+      }
+    }
+    writer.close();
+
+    StoreFileInfo storeFileInfo =
+      StoreFileInfo.createStoreFileInfoForHFile(conf, fs, writer.getPath(), true);
+    HStoreFile sf = new HStoreFile(storeFileInfo, BloomType.NONE, cacheConf);
+    sf.initReader();
+    HStore store = mock(HStore.class);
+    when(store.getColumnFamilyDescriptor()).thenReturn(ColumnFamilyDescriptorBuilder.of(FAMILY));
+    try (StoreFileScanner scanner =
+      sf.getReader().getStoreFileScanner(false, false, false, 0, 0, false)) {
+      assertTrue(scanner.shouldUseScanner(prefixScan("host-0010"), store, Long.MIN_VALUE));
+      assertTrue(scanner.shouldUseScanner(prefixScan("host-0"), store, Long.MIN_VALUE));
+      assertFalse(scanner.shouldUseScanner(prefixScan("host-0011"), store, Long.MIN_VALUE));
+      assertFalse(
+        scanner.shouldUseScanner(prefixScan("host-0011/metric-00"), store, Long.MIN_VALUE));
+    } finally {
+      sf.closeStoreFile(true);
+    }
+  }
+}
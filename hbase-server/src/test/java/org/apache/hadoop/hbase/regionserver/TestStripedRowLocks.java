@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RowMutations;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.AfterClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the row locks of {@link StripedRowLocks}, alone and as the row locks of a region.
+ */
+@Category({ RegionServerTests.class, MediumTests.class })
+public class TestStripedRowLocks {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestStripedRowLocks.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    TEST_UTIL.cleanupTestDir();
+  }
+
+  @Test
+  public void testRowsOfOneStripe() throws Exception {
+    // a single stripe, every row shares it
+    StripedRowLocks locks = new StripedRowLocks(1);
+    byte[] row1 = Bytes.toBytes("row1");
+    byte[] row2 = Bytes.toBytes("row2");
+    StripedRowLocks.PooledRowLock write1 = locks.acquire(row1, false);
+    write1.getLock().lock();
+    StripedRowLocks.PooledRowLock write2 = locks.acquire(row2, false);
+    assertNotSame(write1, write2);
+    // another row is not locked by the write lock on row1
+    ExecutorService otherThread = Executors.newSingleThreadExecutor();
+    try {
+      assertTrue(otherThread.submit(() -> write2.getLock().tryLock()).get());
+      assertEquals(2, locks.getNumLockedRows());
+
+      // the same row shares its lock, another thread cannot read it while it is written
+      StripedRowLocks.PooledRowLock read1 = locks.acquire(row1, true);
+      assertFalse(CompletableFuture.supplyAsync(() -> read1.getLock().tryLock()).get());
+      read1.abandon();
+      assertEquals(2, locks.getNumLockedRows());
+
+      write1.release();
+      assertEquals(1, locks.getNumLockedRows());
+      otherThread.submit(write2::release).get();
+    } finally {
+      otherThread.shutdown();
+    }
+    assertEquals(0, locks.getNumLockedRows());
+  }
+
+  @Test
+  public void testManyRowsOfOneStripe() {
+    // the contexts of a stripe are looked up by row, whatever their number
+    StripedRowLocks locks = new StripedRowLocks(1);
+    int numRows = 1000;
+    List<StripedRowLocks.PooledRowLock> writeLocks = new ArrayList<>();
+    for (int i = 0; i < numRows; i++) {
+      StripedRowLocks.PooledRowLock lock = locks.acquire(Bytes.toBytes("row" + i), false);
+      lock.getLock().lock();
+      writeLocks.add(lock);
+    }
+    assertEquals(numRows, locks.getNumLockedRows());
+    assertEquals(numRows, locks.getLockedRows().size());
+    for (int i = 0; i < numRows; i++) {
+      StripedRowLocks.PooledRowLock lock = locks.acquire(Bytes.toBytes("row" + i), false);
+      assertSame(writeLocks.get(i), lock);
+      lock.abandon();
+    }
+    // release from the middle out so the chains of the buckets are unlinked everywhere
+    Collections.shuffle(writeLocks, new Random(42));
+    for (int i = 0; i < numRows; i++) {
+      writeLocks.get(i).release();
+      assertEquals(numRows - i - 1, locks.getNumLockedRows());
+    }
+    assertTrue(locks.getLockedRows().isEmpty());
+  }
+
+  @Test
+  public void testReadLocks() throws Exception {
+    StripedRowLocks locks = new StripedRowLocks(16);
+    byte[] row = Bytes.toBytes("row");
+    StripedRowLocks.PooledRowLock read = locks.acquire(row, true);
+    read.getLock().lock();
+    assertTrue(StripedRowLocks.isLockOn(read, row, true));
+    assertFalse(StripedRowLocks.isLockOn(read, row, false));
+    assertFalse(StripedRowLocks.isLockOn(read, Bytes.toBytes("other"), true));
+    // readers share the row, the writer waits for them
+    StripedRowLocks.PooledRowLock otherRead = locks.acquire(row, true);
+    assertTrue(CompletableFuture.supplyAsync(() -> {
+      boolean locked = otherRead.getLock().tryLock();
+      if (locked) {
+        otherRead.release();
+      }
+      return locked;
+    }).get());
+    StripedRowLocks.PooledRowLock write = locks.acquire(row, false);
+    assertFalse(StripedRowLocks.isLockOn(write, row, true));
+    assertTrue(StripedRowLocks.isLockOn(write, row, false));
+    assertFalse(CompletableFuture.supplyAsync(() -> write.getLock().tryLock()).get());
+    write.abandon();
+    read.release();
+    assertEquals(0, locks.getNumLockedRows());
+  }
+
+  @Test
+  public void testContextsArePooled() {
+    StripedRowLocks locks = new StripedRowLocks(1);
+    StripedRowLocks.PooledRowLock first = locks.acquire(Bytes.toBytes("row1"), false);
+    first.getLock().lock();
+    first.release();
+    // the free context of the stripe is reused for the next row
+    StripedRowLocks.PooledRowLock second = locks.acquire(Bytes.toBytes("row2"), false);
+    assertSame(first, second);
+    second.abandon();
+  }
+
+  @Test
+  public void testRegionRowLocks() throws Exception {
+    TEST_UTIL.getConfiguration().setInt(HRegion.ROW_LOCK_STRIPES_KEY, 64);
+    TEST_UTIL.getConfiguration().setInt("hbase.rowlock.wait.duration", 2000);
+    TableDescriptor desc = TableDescriptorBuilder.newBuilder(TableName.valueOf("striped"))
+      .setColumnFamily(ColumnFamilyDescriptorBuilder.of(FAMILY)).build();
+    HRegion region = TEST_UTIL.createLocalHRegion(desc, null, null);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      byte[] row = Bytes.toBytes("row");
+      Region.RowLock writeLock = region.getRowLock(row, false);
+      assertEquals(1, region.getNumLockedRows());
+      assertEquals(1, region.getLockedRowDescriptions().size());
+      Future<?> blocked = executor.submit(() -> region.getRowLock(row, true));
+      try {
+        blocked.get();
+        fail("the row is write locked");
+      } catch (java.util.concurrent.ExecutionException e) {
+        assertTrue(e.getCause() instanceof IOException);
+      }
+      writeLock.release();
+      assertEquals(0, region.getNumLockedRows());
+
+      // the increments of a row are serialized by its write lock
+      int numThreads = 8;
+      int numIncrements = 200;
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < numThreads; i++) {
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < numIncrements; j++) {
+            region.increment(new Increment(row).addColumn(FAMILY, QUALIFIER, 1));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      assertEquals(numThreads * numIncrements,
+        Bytes.toLong(region.get(new Get(row)).getValue(FAMILY, QUALIFIER)));
+      assertEquals(0, region.getNumLockedRows());
+
+      // a row mutated twice in one atomic batch is locked and released once
+      RowMutations rm = new RowMutations(row);
+      rm.add(new Put(row).addColumn(FAMILY, QUALIFIER, Bytes.toBytes(0L)));
+      rm.add(new Delete(row).addColumns(FAMILY, QUALIFIER));
+      region.mutateRow(rm);
+      assertEquals(0, region.getNumLockedRows());
+      region.getRowLock(row, false).release();
+    } finally {
+      executor.shutdownNow();
+      HBaseTestingUtil.closeRegionAndWAL(region);
+    }
+  }
+}
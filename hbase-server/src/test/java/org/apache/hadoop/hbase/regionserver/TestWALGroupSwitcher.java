@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Collections;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.wal.WAL;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+/**
+ * Tests that a region moved to another WAL leaves nothing unflushed on the WAL it left.
+ */
+@Category({ RegionServerTests.class, MediumTests.class })
+public class TestWALGroupSwitcher {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestWALGroupSwitcher.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+
+  @Rule
+  public TestName name = new TestName();
+
+  private HRegion region;
+  private WAL originalWAL;
+  private WAL otherWAL;
+
+  @Before
+  public void setUp() throws IOException {
+    TableDescriptor htd = TableDescriptorBuilder.newBuilder(TableName.valueOf(name.getMethodName()))
+      .setColumnFamily(ColumnFamilyDescriptorBuilder.of(FAMILY)).build();
+    RegionInfo info = RegionInfoBuilder.newBuilder(htd.getTableName()).build();
+    region = HBaseTestingUtil.createRegionAndWAL(info,
+      TEST_UTIL.getDataTestDir(name.getMethodName()), TEST_UTIL.getConfiguration(), htd);
+    originalWAL = region.getWAL();
+    otherWAL = HBaseTestingUtil.createWal(TEST_UTIL.getConfiguration(),
+      TEST_UTIL.getDataTestDir(name.getMethodName() + "-other"), info);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    region.close();
+    originalWAL.close();
+    otherWAL.close();
+  }
+
+  private void put(int i) throws IOException {
+    region.put(new Put(Bytes.toBytes(i)).addColumn(FAMILY, QUALIFIER, Bytes.toBytes(i)));
+  }
+
+  private long earliestUnflushed(WAL wal) {
+    return wal.getEarliestMemStoreSeqNum(region.getRegionInfo().getEncodedNameAsBytes(), FAMILY);
+  }
+
+  @Test
+  public void testSwitchWAL() throws IOException {
+    for (int i = 0; i < 10; i++) {
+      put(i);
+    }
+    assertNotEquals(HConstants.NO_SEQNUM, earliestUnflushed(originalWAL));
+
+    assertTrue(region.switchWAL(otherWAL));
+    assertSame(otherWAL, region.getWAL());
+    assertEquals(0, region.getMemStoreDataSize());
+    assertEquals(HConstants.NO_SEQNUM, earliestUnflushed(originalWAL));
+
+    put(10);
+    assertEquals(HConstants.NO_SEQNUM, earliestUnflushed(originalWAL));
+    assertNotEquals(HConstants.NO_SEQNUM, earliestUnflushed(otherWAL));
+    for (int i = 0; i <= 10; i++) {
+      assertEquals(i,
+        Bytes.toInt(region.get(new Get(Bytes.toBytes(i))).getValue(FAMILY, QUALIFIER)));
+    }
+  }
+
+  @Test
+  public void testSwitcher() throws Exception {
+    put(0);
+    RegionServerServices services = mock(RegionServerServices.class);
+    when(services.getServerName()).thenReturn(ServerName.valueOf("localhost", 1000, 1000));
+    String encodedName = region.getRegionInfo().getEncodedName();
+    when(services.getRegion(encodedName)).thenReturn(region);
+    when(services.getWAL(region.getRegionInfo())).thenReturn(otherWAL);
+    WALGroupSwitcher switcher = new WALGroupSwitcher(services);
+    try {
+      switcher.regionsMoved(Collections.singletonList(encodedName));
+      TEST_UTIL.waitFor(30000, () -> region.getWAL() == otherWAL);
+      assertEquals(HConstants.NO_SEQNUM, earliestUnflushed(originalWAL));
+    } finally {
+      switcher.stop();
+    }
+  }
+}
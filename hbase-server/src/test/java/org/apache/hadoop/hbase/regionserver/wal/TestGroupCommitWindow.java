@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.wal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestGroupCommitWindow {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestGroupCommitWindow.class);
+
+  private static final long MAX_WINDOW_NS = TimeUnit.MICROSECONDS.toNanos(1000);
+
+  /**
+   * Simulate syncs of the given latency, each finishing the given number of sync requests which
+   * arrived in the given interval.
+   */
+  private static void simulate(GroupCommitWindow window, long latencyNs, long intervalNs,
+    int finishedSyncs) {
+    long nowNs = 0;
+    for (int i = 0; i < 100; i++) {
+      nowNs += intervalNs * finishedSyncs;
+      window.syncCompleted(nowNs, latencyNs, finishedSyncs);
+    }
+  }
+
+  @Test
+  public void testNoSamples() {
+    assertEquals(0, new GroupCommitWindow(MAX_WINDOW_NS, 0.25).getWindowNs());
+  }
+
+  @Test
+  public void testLowArrivalRate() {
+    GroupCommitWindow window = new GroupCommitWindow(MAX_WINDOW_NS, 0.25);
+    // one request every 2ms while a sync takes 1ms, nothing to group
+    simulate(window, 1000000, 2000000, 1);
+    assertEquals(0, window.getWindowNs());
+  }
+
+  @Test
+  public void testBoundedByArrivalRate() {
+    GroupCommitWindow window = new GroupCommitWindow(MAX_WINDOW_NS, 0.25);
+    // one request every 10us while a sync takes 2ms
+    simulate(window, 2000000, 10000, 4);
+    assertEquals(GroupCommitWindow.TARGET_BATCH_SIZE * 10000, window.getWindowNs());
+  }
+
+  @Test
+  public void testBoundedBySyncLatency() {
+    GroupCommitWindow window = new GroupCommitWindow(MAX_WINDOW_NS, 0.25);
+    // one request every 100us while a sync takes 1ms
+    simulate(window, 1000000, 100000, 10);
+    assertEquals(250000, window.getWindowNs());
+  }
+
+  @Test
+  public void testBoundedByMaxWindow() {
+    GroupCommitWindow window = new GroupCommitWindow(MAX_WINDOW_NS, 0.25);
+    // one request every 500us while a sync takes 20ms
+    simulate(window, 20000000, 500000, 40);
+    assertEquals(MAX_WINDOW_NS, window.getWindowNs());
+  }
+}
@@ -18,6 +18,7 @@
 package org.apache.hadoop.hbase.regionserver.wal;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -75,6 +76,18 @@ public class TestMetricsWAL {
     MetricsWAL metricsWAL = new MetricsWAL(source);
     metricsWAL.postSync(nanos, 1);
     verify(source, times(1)).incrementSyncTime(145);
+    verify(source, times(1)).incrementSyncBatchSize(1);
+    metricsWAL.postSync(nanos, 0);
+    verify(source, times(2)).incrementSyncTime(145);
+    verify(source, times(1)).incrementSyncBatchSize(anyInt());
+  }
+
+  @Test
+  public void testPostGroupCommitWait() throws Exception {
+    MetricsWALSource source = mock(MetricsWALSourceImpl.class);
+    MetricsWAL metricsWAL = new MetricsWAL(source);
+    metricsWAL.postGroupCommitWait(TimeUnit.MICROSECONDS.toNanos(250));
+    verify(source, times(1)).incrementGroupCommitWaitTime(250);
   }
 
   @Test
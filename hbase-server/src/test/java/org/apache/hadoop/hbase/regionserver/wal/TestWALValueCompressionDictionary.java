@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.wal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.util.LRUDictionary;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * The round trip of values compressed with a dictionary is tested in the hbase-compression-zstd
+ * module, here we only test the parts which do not need the ZStandard codec.
+ */
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestWALValueCompressionDictionary {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestWALValueCompressionDictionary.class);
+
+  @Test
+  public void testGetDictionary() {
+    Configuration conf = HBaseConfiguration.create();
+    assertNull(CompressionContext.getValueCompressionDictionary(conf));
+    conf.set(CompressionContext.WAL_VALUE_COMPRESSION_DICTIONARY, "");
+    assertNull(CompressionContext.getValueCompressionDictionary(conf));
+    conf.set(CompressionContext.WAL_VALUE_COMPRESSION_DICTIONARY, "/dict");
+    assertEquals("/dict", CompressionContext.getValueCompressionDictionary(conf));
+  }
+
+  @Test
+  public void testGetZstdDictionaryId() throws IOException {
+    byte[] dictionary =
+      new byte[] { (byte) 0x37, (byte) 0xA4, (byte) 0x30, (byte) 0xEC, 0x04, 0x03, 0x02, 0x01, 0 };
+    assertEquals(0x01020304, CompressionContext.getZstdDictionaryId(dictionary));
+    assertThrows(IOException.class,
+      () -> CompressionContext.getZstdDictionaryId(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }));
+    assertThrows(IOException.class, () -> CompressionContext.getZstdDictionaryId(new byte[4]));
+  }
+
+  @Test
+  public void testDictionaryNeedsZstd() {
+    assertThrows(IOException.class, () -> new CompressionContext(LRUDictionary.class, false, false,
+      true, Compression.Algorithm.GZ, HBaseConfiguration.create(), "/dict"));
+  }
+
+  @Test
+  public void testDictionaryNeedsHBaseZstdCodec() {
+    // The default Hadoop ZStandardCodec ignores the dictionary, so it must be rejected up front
+    // instead of writing values the readers cannot decompress.
+    Configuration conf = HBaseConfiguration.create();
+    assertEquals(Compression.ZSTD_CODEC_CLASS_DEFAULT,
+      Compression.Algorithm.ZSTD.getCodecClassName());
+    IOException e =
+      assertThrows(IOException.class, () -> new CompressionContext(LRUDictionary.class, false,
+        false, true, Compression.Algorithm.ZSTD, conf, "/dict"));
+    assertTrue(e.getMessage(), e.getMessage().contains(Compression.ZSTD_CODEC_CLASS_KEY));
+  }
+}
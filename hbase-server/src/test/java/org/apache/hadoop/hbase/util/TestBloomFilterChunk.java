@@ -26,6 +26,7 @@ import java.io.DataOutputStream;
 import java.nio.ByteBuffer;
 import org.apache.hadoop.hbase.HBaseClassTestRule;
 import org.apache.hadoop.hbase.nio.MultiByteBuff;
+import org.apache.hadoop.hbase.regionserver.BloomType;
 import org.apache.hadoop.hbase.testclassification.MiscTests;
 import org.apache.hadoop.hbase.testclassification.SmallTests;
 import org.junit.ClassRule;
@@ -173,6 +174,85 @@ public class TestBloomFilterChunk {
     // test: foldFactor > log(max/actual)
   }
 
+  @Test
+  public void testBlockedBloom() throws Exception {
+    BlockedBloomFilterChunk b =
+      BlockedBloomFilterChunk.createBySize(4096, 0.01, Hash.MURMUR_HASH, BloomType.ROW_BLOCKED);
+    b.allocBloom();
+    assertEquals(0, b.getByteSize() % BlockedBloomFilterChunk.BLOCK_BYTES);
+    assertEquals(BlockedBloomFilterChunk.NUM_LANES, b.getHashCount());
+    // fewer keys than a classic chunk of the same size, for the same error rate
+    assertTrue(b.getMaxKeys() < BloomFilterUtil.idealMaxKeys(b.getByteSize() * 8, 0.01));
+    assertTrue(BloomFilterUtil.blockedErrorRate(b.getMaxKeys(), b.getByteSize() / 64) <= 0.01);
+
+    int numKeys = (int) (b.getMaxKeys() / 6);
+    for (int i = 0; i < numKeys; ++i) {
+      byte[] ib = Bytes.toBytes(i);
+      b.add(ib, 0, ib.length);
+    }
+    long origSize = b.getByteSize();
+    b.compactBloom();
+    assertEquals(origSize >> 2, b.getByteSize());
+    assertTrue(b.actualErrorRate() <= 0.01);
+
+    int falsePositives = 0;
+    int numChecks = 100 * numKeys;
+    for (int i = 0; i < numChecks; ++i) {
+      byte[] bytes = Bytes.toBytes(i);
+      if (
+        BloomFilterUtil.containsBlocked(bytes, 0, bytes.length, new MultiByteBuff(b.bloom), 0,
+          (int) b.byteSize, b.hash)
+      ) {
+        if (i >= numKeys) falsePositives++;
+      } else {
+        assertFalse(i < numKeys);
+      }
+    }
+    double falsePosRate = falsePositives * 1.0 / (numChecks - numKeys);
+    System.out.println(
+      "Blocked false positive rate = " + falsePosRate + ", expected " + b.actualErrorRate());
+    assertTrue(falsePosRate < 2 * b.actualErrorRate());
+  }
+
+  @Test
+  public void testBlockedBloomPerf() throws Exception {
+    float err = (float) 0.01;
+    int numKeys = 1000 * 1000;
+    BloomFilterChunk classic = new BloomFilterChunk(numKeys, err, Hash.MURMUR_HASH, 0);
+    BloomFilterChunk blocked = BlockedBloomFilterChunk.createBySize(
+      (int) (BloomFilterUtil.computeBitSize(numKeys, err) / 8 * 5 / 4), err, Hash.MURMUR_HASH,
+      BloomType.ROW_BLOCKED);
+    assertTrue(blocked.getMaxKeys() >= numKeys);
+    for (BloomFilterChunk b : new BloomFilterChunk[] { classic, blocked }) {
+      b.allocBloom();
+      for (int i = 0; i < numKeys; ++i) {
+        byte[] ib = Bytes.toBytes(i);
+        b.add(ib, 0, ib.length);
+      }
+      MultiByteBuff bloomBuf = new MultiByteBuff(b.bloom);
+      long startTime = EnvironmentEdgeManager.currentTime();
+      int falsePositives = 0;
+      for (int i = 0; i < 2 * numKeys; ++i) {
+        byte[] bytes = Bytes.toBytes(i);
+        boolean found = b == blocked
+          ? BloomFilterUtil.containsBlocked(bytes, 0, bytes.length, bloomBuf, 0, (int) b.byteSize,
+            b.hash)
+          : BloomFilterUtil.contains(bytes, 0, bytes.length, bloomBuf, 0, (int) b.byteSize, b.hash,
+            b.hashCount);
+        if (found) {
+          if (i >= numKeys) falsePositives++;
+        } else {
+          assertFalse(i < numKeys);
+        }
+      }
+      long endTime = EnvironmentEdgeManager.currentTime();
+      System.out.println((b == blocked ? "Blocked" : "Classic") + " bloom of " + b.getByteSize()
+        + " bytes: " + (2L * numKeys * 1000 / Math.max(1, endTime - startTime))
+        + " checks/sec, false positives = " + falsePositives);
+      assertTrue(falsePositives <= numKeys * err * 1.5);
+    }
+  }
+
   @Test
   public void testSizing() {
     int bitSize = 8 * 128 * 1024; // 128 KB
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.wal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.ManualEnvironmentEdge;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestLoadAwareGroupingStrategy {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestLoadAwareGroupingStrategy.class);
+
+  private static final TableName TABLE = TableName.valueOf("test");
+  private static final int NUM_REGIONS = 20;
+
+  private final ManualEnvironmentEdge clock = new ManualEnvironmentEdge();
+  private LoadAwareGroupingStrategy strategy;
+  private byte[][] regions;
+
+  @Before
+  public void setUp() {
+    clock.setValue(1);
+    EnvironmentEdgeManager.injectEdge(clock);
+    Configuration conf = HBaseConfiguration.create();
+    conf.setInt(BoundedGroupingStrategy.NUM_REGION_GROUPS, 2);
+    conf.setInt(LoadAwareGroupingStrategy.NUM_HOT_GROUPS, 1);
+    conf.setLong(LoadAwareGroupingStrategy.HOT_REGION_MIN_RATE, 1024);
+    strategy = new LoadAwareGroupingStrategy();
+    strategy.init(conf, "rs");
+    regions = new byte[NUM_REGIONS][];
+    for (int i = 0; i < NUM_REGIONS; i++) {
+      regions[i] = Bytes.toBytes(String.format("region%02d", i));
+    }
+  }
+
+  @After
+  public void tearDown() {
+    EnvironmentEdgeManager.reset();
+  }
+
+  private void append(int region, long bytes) {
+    strategy.postAppend(bytes, 0, new WALKeyImpl(regions[region], TABLE, 0), null);
+  }
+
+  private void roll() {
+    strategy.postLogRoll(new Path("/wal.1"), new Path("/wal.2"));
+  }
+
+  @Test
+  public void testNewRegionsAreSpread() {
+    Set<String> groups = new HashSet<>();
+    int[] counts = new int[2];
+    for (int i = 0; i < NUM_REGIONS; i++) {
+      String group = strategy.group(regions[i], TABLE.getNamespace());
+      assertEquals(group, strategy.group(regions[i], TABLE.getNamespace()));
+      groups.add(group);
+      counts[group.endsWith("regiongroup-0") ? 0 : 1]++;
+    }
+    assertEquals(2, groups.size());
+    assertEquals(counts[0], counts[1]);
+  }
+
+  @Test
+  public void testHotRegionGetsItsOwnGroup() {
+    for (int i = 0; i < NUM_REGIONS; i++) {
+      strategy.group(regions[i], TABLE.getNamespace());
+    }
+    // One region writes as much as all the others together.
+    for (int i = 1; i < NUM_REGIONS; i++) {
+      append(i, 100 * 1024);
+    }
+    append(0, (NUM_REGIONS - 1) * 100 * 1024);
+    clock.incValue(1000);
+    roll();
+
+    String hotGroup = strategy.group(regions[0], TABLE.getNamespace());
+    assertEquals("rs.hotgroup-0", hotGroup);
+    double[] loads = new double[2];
+    for (int i = 1; i < NUM_REGIONS; i++) {
+      String group = strategy.group(regions[i], TABLE.getNamespace());
+      assertNotEquals(hotGroup, group);
+      loads[group.endsWith("regiongroup-0") ? 0 : 1]++;
+    }
+    assertTrue(Math.abs(loads[0] - loads[1]) <= 1);
+
+    // The region keeps its group while it is hot, and gives it back once it cools down.
+    append(0, (NUM_REGIONS - 1) * 100 * 1024);
+    clock.incValue(1000);
+    roll();
+    assertEquals(hotGroup, strategy.group(regions[0], TABLE.getNamespace()));
+    for (int round = 0; round < 10; round++) {
+      for (int i = 0; i < NUM_REGIONS; i++) {
+        append(i, 100 * 1024);
+      }
+      clock.incValue(1000);
+      roll();
+    }
+    assertNotEquals(hotGroup, strategy.group(regions[0], TABLE.getNamespace()));
+  }
+
+  @Test
+  public void testMovedRegions() {
+    List<String> moved = new ArrayList<>();
+    strategy.setPlacementListener(moved::addAll);
+    for (int i = 0; i < NUM_REGIONS; i++) {
+      strategy.group(regions[i], TABLE.getNamespace());
+    }
+    append(0, NUM_REGIONS * 100 * 1024);
+    for (int i = 1; i < NUM_REGIONS; i++) {
+      append(i, 100 * 1024);
+    }
+    clock.incValue(1000);
+    roll();
+    assertEquals(Collections.singletonList(Bytes.toString(regions[0])), moved);
+    assertEquals("rs.hotgroup-0", strategy.group(regions[0], TABLE.getNamespace()));
+
+    // Same load, every region stays where it is.
+    moved.clear();
+    for (int round = 0; round < 3; round++) {
+      append(0, NUM_REGIONS * 100 * 1024);
+      for (int i = 1; i < NUM_REGIONS; i++) {
+        append(i, 100 * 1024);
+      }
+      clock.incValue(1000);
+      roll();
+    }
+    assertTrue(moved.isEmpty());
+
+    // The regions of one shared group get busier, some of them move to the other group.
+    moved.clear();
+    String busyGroup = strategy.group(regions[1], TABLE.getNamespace());
+    Map<String, String> before = new HashMap<>();
+    for (int round = 0; round < 3; round++) {
+      append(0, NUM_REGIONS * 400 * 1024);
+      for (int i = 1; i < NUM_REGIONS; i++) {
+        String group = strategy.group(regions[i], TABLE.getNamespace());
+        before.put(Bytes.toString(regions[i]), group);
+        append(i, group.equals(busyGroup) ? 400 * 1024 : 100 * 1024);
+      }
+      clock.incValue(1000);
+      roll();
+      if (!moved.isEmpty()) {
+        break;
+      }
+    }
+    assertTrue(moved.size() > 0);
+    for (String region : moved) {
+      assertEquals(busyGroup, before.get(region));
+      assertNotEquals(busyGroup, strategy.group(Bytes.toBytes(region), TABLE.getNamespace()));
+    }
+  }
+
+  @Test
+  public void testIdleServerHasNoHotRegion() {
+    append(0, 100);
+    append(1, 1);
+    clock.incValue(1000);
+    roll();
+    assertNotEquals("rs.hotgroup-0", strategy.group(regions[0], TABLE.getNamespace()));
+  }
+}